@@ -1,63 +1,74 @@
 package com.example.localization;
 
-import org.apache.commons.io.IOUtils;
-import org.json.JSONArray;
-import org.json.JSONException;
-
+import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
- * This class is responsible for fetching all beacons from the API
+ * This class is responsible for fetching all beacons from the API.
+ * The catalogue is cached on the device, so the cached beacons are published first
+ * and the API is only asked whether anything changed since.
+ * Without a cached catalogue the beacon list bundled with the app is published first.
+ * Responses are decoded by a streaming parser straight into the catalogue.
  */
 public class Api implements Runnable {
     private static final String API = "https://locvis.group16.nl/beacons";
-    private Set<iBeacon> allBeacons; // Stores all beacon objects retrieved from the Excel document
+    private static final String SNAPSHOT = "beacons.lcat";
+    private volatile Set<iBeacon> allBeacons; // Stores all beacon objects retrieved from the API
 
-    private static final int MAC_INDEX = 0;
-    private static final int LONGITUDE_INDEX = 1;
-    private static final int LATITUDE_INDEX = 2;
-    private static final int FLOOR_INDEX = 3;
+    private final CatalogueSync sync;
+    private final Callable<CatalogueSnapshot> bundled;
+    private final Listener listener;
 
     /**
-     * This function initializes a new object of this class and initializes the allBeacons set
+     * Receives every new version of the catalogue, on the thread running this object.
      */
-    public Api() {
-        this.allBeacons = new HashSet<>();
+    public interface Listener {
+        /**
+         * @param beacons projected beacons of the catalogue
+         */
+        void onCatalogue(Set<iBeacon> beacons);
     }
 
     /**
-     * This function fetches all the beacons from the API and puts them in the allBeacons set.
-     * The beacons are casted to iBeacon objects.
-     * @throws IOException
-     * @throws JSONException
+     * This function initializes a new object of this class and initializes the allBeacons set
+     * @param cacheDirectory directory the catalogue snapshot is kept in
+     * @param bundled loads the beacon list bundled with the app
+     * @param listener receiver of the catalogue
      */
-    private void fetchAllBeacons() throws IOException, JSONException {
-        // Fetch JSON from API
-        JSONArray json = new JSONArray(IOUtils.toString(new URL(API), StandardCharsets.UTF_8));
-
-        String mac_address;
-        double longitude;
-        double latitude;
-        int floor;
-
-        // Iterate through the JSON array
-        for (int i = 0; i < json.length(); i++) {
-            mac_address = json.getJSONArray(i).get(MAC_INDEX).toString();
-            longitude = Double.parseDouble(json.getJSONArray(i).get(LONGITUDE_INDEX).toString());
-            latitude = Double.parseDouble(json.getJSONArray(i).get(LATITUDE_INDEX).toString());
-            floor = Integer.parseInt(json.getJSONArray(i).get(FLOOR_INDEX).toString());
-
-            this.allBeacons.add(new iBeacon(mac_address, new Location(longitude, latitude), floor));
+    public Api(File cacheDirectory, Callable<CatalogueSnapshot> bundled, Listener listener) {
+        this.allBeacons = Collections.emptySet();
+        this.bundled = bundled;
+        this.listener = listener;
+        try {
+            this.sync = new CatalogueSync(new URL(API), new File(cacheDirectory, SNAPSHOT),
+                    new JsonCatalogueParser());
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
         }
     }
 
+    /**
+     * This function publishes a catalogue to the listener
+     * @param snapshot catalogue to publish
+     */
+    private void publish(CatalogueSnapshot snapshot) {
+        List<iBeacon> beacons = snapshot.beacons();
+        // Project all beacons once so the solver can work in metres
+        beacons = LocalFrame.around(beacons).project(beacons);
+        this.allBeacons = Collections.unmodifiableSet(new HashSet<>(beacons));
+        this.listener.onCatalogue(this.allBeacons);
+    }
+
     /**
      * This function returns the beacons set
-     * @return set of all iBeacons from the API
+     * @return read-only set of all iBeacons from the API, safe to share between threads
      */
     public Set<iBeacon> getAllBeacons() {
         return this.allBeacons;
@@ -65,9 +76,24 @@ public class Api implements Runnable {
 
     @Override
     public void run() {
+        // Publish the cached catalogue first, so the user does not wait for the network
+        CatalogueSnapshot cached = this.sync.load();
+        if (cached.size() > 0) {
+            this.publish(cached);
+        } else {
+            // First start or offline, use the beacon list bundled with the app
+            try {
+                this.publish(this.bundled.call());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
         try {
-            this.fetchAllBeacons();
-        } catch (IOException | JSONException e) {
+            CatalogueSnapshot updated = this.sync.sync();
+            if (updated != null) {
+                this.publish(updated);
+            }
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
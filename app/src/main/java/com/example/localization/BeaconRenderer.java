@@ -0,0 +1,282 @@
+package com.example.localization;
+
+import android.graphics.Color;
+import android.util.LongSparseArray;
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.Circle;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.IndoorBuilding;
+import com.google.android.gms.maps.model.IndoorLevel;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+
+import java.util.List;
+
+/**
+ * This class draws the user, the connected beacons and the floor on the map.
+ * Results are handed in with {@link #submit} and drawn once per frame from a {@link Choreographer} callback,
+ * so a burst of results only draws the latest one. Beacon circles are kept per MAC address and only moved or
+ * resized when the change would be visible at the current zoom; circles of beacons that are gone are removed.
+ * The camera follows the user at most twice a second and only when the user moved noticeably, and the indoor
+ * level is only activated when the floor changes. Must be used on the UI thread.
+ */
+public class BeaconRenderer implements Choreographer.FrameCallback {
+    private static final double USER_RADIUS = 0.75;
+    private static final double MOVE_THRESHOLD = 2;       // dp a circle has to change before it is redrawn
+    private static final double CAMERA_THRESHOLD = 48;    // dp the user has to move before the camera follows
+    private static final long CAMERA_INTERVAL = 500000000L;    // nanoseconds between camera moves
+    private static final double METRES_PER_DP = 156543.03392;  // at zoom level 0 on the equator
+
+    private final GoogleMap map;
+    private final int zoomLevel;
+    private final LongSparseArray<Marker> markers = new LongSparseArray<>();
+    private int stamp;
+
+    private BeaconGrid grid;
+    private int lowestFloor;
+    private int highestFloor;
+    private int[] visibleSlots;     // scratch for viewport queries
+    private int[] visibleMarks;     // stamp per slot of the last viewport query
+    private int visibleStamp;
+
+    // Latest result, drawn on the next frame
+    private boolean scheduled;
+    private Location location;
+    private int floor;
+    private ScanSnapshot snapshot;
+
+    private Circle tracker;
+    private double trackerLatitude;
+    private double trackerLongitude;
+    private int shownFloor = Integer.MIN_VALUE;    // floor whose indoor level is active
+    private boolean cameraPlaced;
+    private long cameraTime;
+    private double cameraLatitude;
+    private double cameraLongitude;
+
+    /**
+     * Circle of a beacon with the center and radius it was drawn with
+     */
+    private static final class Marker {
+        final Circle circle;
+        double latitude;
+        double longitude;
+        double radius;
+        int stamp;
+
+        Marker(Circle circle, double latitude, double longitude, double radius) {
+            this.circle = circle;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radius = radius;
+        }
+    }
+
+    /**
+     * Create a renderer.
+     * @param map map to draw on
+     * @param zoomLevel zoom level the camera is placed at the first time
+     */
+    public BeaconRenderer(GoogleMap map, int zoomLevel) {
+        this.map = map;
+        this.zoomLevel = zoomLevel;
+    }
+
+    /**
+     * Sets the catalogue used to leave out beacons outside the visible region
+     * @param registry registry of the catalogue
+     * @param grid spatial index of the catalogue
+     */
+    public void setCatalogue(BeaconRegistry registry, BeaconGrid grid) {
+        this.grid = grid;
+        this.lowestFloor = registry.getLowestFloor();
+        this.highestFloor = registry.getHighestFloor();
+        this.visibleSlots = new int[registry.size()];
+        this.visibleMarks = new int[registry.size()];
+    }
+
+    /**
+     * Queues a result to be drawn on the next frame, replacing a result that was not drawn yet
+     * @param location estimated location
+     * @param floor floor to show
+     * @param snapshot snapshot of the connected beacons, or null to leave the beacon circles as they are
+     */
+    public void submit(Location location, int floor, ScanSnapshot snapshot) {
+        this.location = location;
+        this.floor = floor;
+        if (snapshot != null) this.snapshot = snapshot;
+        if (!this.scheduled) {
+            this.scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops drawing queued results.
+     */
+    public void stop() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        this.scheduled = false;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        this.scheduled = false;
+        double metresPerDp = METRES_PER_DP * Math.cos(Math.toRadians(this.location.getLatitude()))
+                / Math.pow(2, this.map.getCameraPosition().zoom);
+
+        this.follow(frameTimeNanos, metresPerDp);
+        this.showFloor();
+        this.drawTracker(metresPerDp * MOVE_THRESHOLD);
+        if (this.snapshot != null) {
+            this.drawBeacons(this.snapshot, metresPerDp * MOVE_THRESHOLD);
+            this.snapshot = null;
+        }
+    }
+
+    /**
+     * Moves the camera to the user if it has not moved recently and the user is far enough from its last target
+     * @param now frame time in nanoseconds
+     * @param metresPerDp metres per dp at the current zoom
+     */
+    private void follow(long now, double metresPerDp) {
+        LatLng position = new LatLng(this.location.getLatitude(), this.location.getLongitude());
+        if (!this.cameraPlaced) {
+            this.map.moveCamera(CameraUpdateFactory.newLatLngZoom(position, this.zoomLevel));
+        } else {
+            if (now - this.cameraTime < CAMERA_INTERVAL) return;
+            if (metres(this.cameraLatitude, this.cameraLongitude, position.latitude, position.longitude)
+                    < CAMERA_THRESHOLD * metresPerDp) return;
+            // Keep the zoom of the user
+            this.map.moveCamera(CameraUpdateFactory.newLatLng(position));
+        }
+        this.cameraPlaced = true;
+        this.cameraTime = now;
+        this.cameraLatitude = position.latitude;
+        this.cameraLongitude = position.longitude;
+    }
+
+    /**
+     * Activates the indoor level of the floor, only when it differs from the level shown
+     */
+    private void showFloor() {
+        if (this.floor == this.shownFloor) return;
+        IndoorBuilding building = this.map.getFocusedBuilding();
+        if (building == null) return;
+        List<IndoorLevel> levels = building.getLevels();
+        // Levels are listed from the top floor down
+        int level = levels.size() - this.floor;
+        if (level < 0 || level >= levels.size()) return;
+        levels.get(level).activate();
+        this.shownFloor = this.floor;
+    }
+
+    /**
+     * Draws the user, moving the circle only if it moved at least the threshold
+     * @param threshold distance in metres
+     */
+    private void drawTracker(double threshold) {
+        double latitude = this.location.getLatitude();
+        double longitude = this.location.getLongitude();
+        if (this.tracker == null) {
+            this.tracker = this.map.addCircle(new CircleOptions()
+                    .center(new LatLng(latitude, longitude))
+                    .radius(USER_RADIUS)
+                    .strokeColor(Color.MAGENTA)
+                    .strokeWidth(7f)
+                    .fillColor(Color.WHITE));
+        } else if (metres(this.trackerLatitude, this.trackerLongitude, latitude, longitude) >= threshold) {
+            this.tracker.setCenter(new LatLng(latitude, longitude));
+        } else {
+            return;
+        }
+        this.trackerLatitude = latitude;
+        this.trackerLongitude = longitude;
+    }
+
+    /**
+     * Brings the beacon circles in line with the beacons of the snapshot that are in view
+     * @param snapshot snapshot of the connected beacons
+     * @param threshold distance in metres a center or radius has to change before the circle is updated
+     */
+    private void drawBeacons(ScanSnapshot snapshot, double threshold) {
+        // Snapshots taken before a catalogue swap refer to slots of the previous catalogue
+        boolean current = this.grid != null && snapshot.getFrame() == this.grid.getFrame();
+        if (current) this.markVisible();
+
+        this.stamp++;
+        for (int i = 0; i < snapshot.getCount(); i++) {
+            if (current && this.visibleMarks[snapshot.getSlots()[i]] != this.visibleStamp) continue;
+
+            long address = snapshot.getAddress()[i];
+            double latitude = snapshot.getLatitude()[i];
+            double longitude = snapshot.getLongitude()[i];
+            double radius = snapshot.getDistance()[i];
+            Marker marker = this.markers.get(address);
+            if (marker == null) {
+                // Shows position of a beacon
+                Circle circle = this.map.addCircle(new CircleOptions()
+                        .center(new LatLng(latitude, longitude))
+                        .radius(radius)
+                        .strokeColor(Color.CYAN)
+                        .strokeWidth(7f)
+                        .fillColor(Color.TRANSPARENT));
+                marker = new Marker(circle, latitude, longitude, radius);
+                this.markers.put(address, marker);
+            } else {
+                if (metres(marker.latitude, marker.longitude, latitude, longitude) >= threshold) {
+                    marker.circle.setCenter(new LatLng(latitude, longitude));
+                    marker.latitude = latitude;
+                    marker.longitude = longitude;
+                }
+                if (Math.abs(marker.radius - radius) >= threshold) {
+                    marker.circle.setRadius(radius);
+                    marker.radius = radius;
+                }
+            }
+            marker.stamp = this.stamp;
+        }
+
+        // Remove the circles of beacons that are gone or out of view
+        for (int i = this.markers.size() - 1; i >= 0; i--) {
+            Marker marker = this.markers.valueAt(i);
+            if (marker.stamp != this.stamp) {
+                marker.circle.remove();
+                this.markers.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Marks the slots of all beacons inside the visible region of the map, on any floor
+     */
+    private void markVisible() {
+        LatLngBounds bounds = this.map.getProjection().getVisibleRegion().latLngBounds;
+        LocalFrame frame = this.grid.getFrame();
+        double minX = frame.toX(bounds.southwest.longitude);
+        double minY = frame.toY(bounds.southwest.latitude);
+        double maxX = frame.toX(bounds.northeast.longitude);
+        double maxY = frame.toY(bounds.northeast.latitude);
+
+        this.visibleStamp++;
+        for (int floor = this.lowestFloor; floor <= this.highestFloor; floor++) {
+            int count = this.grid.within(floor, minX, minY, maxX, maxY, this.visibleSlots);
+            for (int i = 0; i < count; i++) {
+                this.visibleMarks[this.visibleSlots[i]] = this.visibleStamp;
+            }
+        }
+    }
+
+    /**
+     * Distance between two nearby points on a local flat approximation
+     * @return distance in metres
+     */
+    private static double metres(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dy = (latitude2 - latitude1) * LocalFrame.METRES_PER_DEGREE;
+        double dx = (longitude2 - longitude1) * LocalFrame.metresPerDegreeLongitude(latitude1);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.localization;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class loads the beacon list that ships with the app, used while there is no cached catalogue.
+ * The build compiles the workbook into a binary table that is stored uncompressed, so it is
+ * memory-mapped straight out of the APK. Without the table the workbook itself is streamed.
+ */
+final class BundledCatalogue {
+    private static final String TABLE = "beacon_list.lcat";
+    private static final String WORKBOOK = "beacon_list.xlsx";
+
+    private BundledCatalogue() {}
+
+    /**
+     * Loads the bundled beacon list
+     * @param assets assets of the app
+     * @return the beacon list
+     * @throws IOException if neither the table nor the workbook can be read
+     */
+    static CatalogueSnapshot load(AssetManager assets) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assets.openFd(TABLE);
+        } catch (FileNotFoundException e) {
+            // Missing, or compressed so it can not be mapped
+            try (InputStream in = assets.open(WORKBOOK)) {
+                return CatalogueSnapshot.of(null, new ExcelReader(in).getAllBeacons());
+            }
+        }
+        try (FileInputStream in = descriptor.createInputStream()) {
+            return CatalogueSnapshot.read(in.getChannel(), descriptor.getStartOffset(), descriptor.getLength());
+        } finally {
+            descriptor.close();
+        }
+    }
+}
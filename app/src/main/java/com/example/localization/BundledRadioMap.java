@@ -0,0 +1,39 @@
+package com.example.localization;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * This class loads the surveyed radio map that can ship with the app for fingerprinting.
+ * The map is stored uncompressed, so it is memory-mapped straight out of the APK.
+ */
+final class BundledRadioMap {
+    private static final String MAP = "radio_map.lrmp";
+
+    private BundledRadioMap() {}
+
+    /**
+     * Maps the bundled radio map
+     * @param assets assets of the app
+     * @return the radio map, or null if the app ships without one
+     * @throws IOException if the map can not be read
+     */
+    static RadioMap load(AssetManager assets) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assets.openFd(MAP);
+        } catch (FileNotFoundException e) {
+            // Missing, or compressed so it can not be mapped
+            return null;
+        }
+        try (FileInputStream in = descriptor.createInputStream()) {
+            return RadioMap.read(in.getChannel(), descriptor.getStartOffset(), descriptor.getLength());
+        } finally {
+            descriptor.close();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.localization;
+
+import android.util.Log;
+
+import java.util.Map;
+
+/**
+ * This class writes every metrics report to logcat, one line per metric.
+ */
+public class LogcatMetricsSink implements MetricsSink {
+    private static final String TAG = "Metrics";
+
+    @Override
+    public void report(MetricsSnapshot interval) {
+        for (Map.Entry<String, Long> counter : interval.getCounters().entrySet()) {
+            Log.i(TAG, counter.getKey() + " count=" + counter.getValue());
+        }
+        for (Histogram.Snapshot histogram : interval.getHistograms().values()) {
+            if (histogram.getCount() > 0) Log.i(TAG, histogram.toString());
+        }
+    }
+}
@@ -3,18 +3,11 @@ package com.example.localization;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.Manifest;
-import android.graphics.Color;
 import android.os.Bundle;
 import android.view.WindowManager;
 
-import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.Circle;
-import com.google.android.gms.maps.model.CircleOptions;
-import com.google.android.gms.maps.model.IndoorBuilding;
-import com.google.android.gms.maps.model.IndoorLevel;
-import com.google.android.gms.maps.model.LatLng;
 import com.karumi.dexter.Dexter;
 import com.karumi.dexter.MultiplePermissionsReport;
 import com.karumi.dexter.PermissionToken;
@@ -24,14 +17,16 @@ import com.karumi.dexter.listener.multi.MultiplePermissionsListener;
 import org.altbeacon.beacon.Beacon;
 import org.altbeacon.beacon.BeaconManager;
 import org.altbeacon.beacon.BeaconParser;
+import org.altbeacon.beacon.RangeNotifier;
 import org.altbeacon.beacon.Region;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class contains the main Google Maps activity.
@@ -39,22 +34,26 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class MapsActivity extends AppCompatActivity {
 
     private static final String IBEACON = "m:2-3=0215,i:4-19,i:20-21,i:22-23,p:24-24";
-    private static final String FILENAME = "beacon_list.xlsx";
     private static final int ZOOM_LEVEL = 20;
-    private static final int THRESHOLD = -90;
-    private static final double USER_RADIUS = 0.75;
+    private static final double MIN_FLOOR_CONFIDENCE = 0.5;    // probability a floor needs before it is shown
+    private static final boolean RECORD_TRACE = BuildConfig.DEBUG;    // record scans for replay on the JVM
+    private static final long METRICS_PERIOD = 60;    // seconds between metrics reports
+    private static final Histogram SCAN_CALLBACK = Metrics.shared().histogram("scan.callback", "ns");
 
     private SupportMapFragment smf;
     private GoogleMap map;
     private BeaconManager beaconManager;
-    private ExcelReader excelReader;
+    private Region rangingRegion;
+    private RangeNotifier rangeNotifier;
     private Api api;
-    private LocationFinder locationFinder;
-    private ArrayList<iBeacon> connectedBeacons;
+    private BeaconRenderer renderer;
+    private ExecutorService solverExecutor;
+    private LocalizationEngine engine;
+    private volatile ScanTraceWriter traceWriter;    // written on the ranging thread, closed on the UI thread
+    private MetricsReporter logcatReporter;
+    private MetricsReporter fileReporter;
     private Location currentLocation;
     private int currentFloor;
-    private Circle tracker;
-    private Set<Circle> markers;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -91,90 +90,165 @@ public class MapsActivity extends AppCompatActivity {
     private void init() {
         this.smf.getMapAsync(this::onMapReady);
 
-        this.connectedBeacons = new ArrayList<>();
-        this.api = new Api();
-        this.markers = new HashSet<>();
-        this.locationFinder = new LocationFinder();
         this.currentFloor = 5;
+        this.solverExecutor = Executors.newSingleThreadExecutor();
+        // Solve on a background thread and hand the results to the UI thread
+        this.engine = new LocalizationEngine(this.solverExecutor, this::runOnUiThread,
+                (location, floor, floorConfidence, error, snapshot) -> {
+                    this.currentLocation = location;
+                    if (floorConfidence >= MIN_FLOOR_CONFIDENCE) this.currentFloor = floor;
+                    this.renderer.submit(location, this.currentFloor, snapshot);
+                });
+        this.useRadioMap();
 
-        // Start API fetching on separate thread and wait for it to finish
-        Thread apiThread = new Thread(api);
-        apiThread.start();
+        // Load the cached catalogue and revalidate it against the API in the background
+        this.api = new Api(getFilesDir(), () -> BundledCatalogue.load(getAssets()),
+                beacons -> runOnUiThread(() -> this.setCatalogue(beacons)));
+        new Thread(this.api).start();
+
+        if (RECORD_TRACE) {
+            this.startTrace();
+        }
+        this.startMetrics();
+    }
+
+    /**
+     * Swaps in a new version of the catalogue
+     * @param beacons projected beacons of the catalogue
+     */
+    private void setCatalogue(Set<iBeacon> beacons) {
+        if (isDestroyed()) return;
+        this.engine.setCatalogue(beacons);
+        if (this.renderer != null) this.renderer.setCatalogue(this.engine.getRegistry(), this.engine.getGrid());
+    }
+
+    /**
+     * Switches to fingerprinting when the app ships with a surveyed radio map, trilateration is used otherwise
+     */
+    private void useRadioMap() {
         try {
-            apiThread.join();
-        } catch (InterruptedException e) {
+            RadioMap radioMap = BundledRadioMap.load(getAssets());
+            if (radioMap != null) {
+                this.engine.setLocalizers((registry, grid) -> new FingerprintLocalizer(radioMap));
+            }
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Starts recording the scans to a trace in the external files directory of the app
+     */
+    private void startTrace() {
+        File directory = new File(getExternalFilesDir(null), "traces");
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+        try {
+            this.traceWriter = new ScanTraceWriter(new File(directory, System.currentTimeMillis() + ".ltrc"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts reporting the metrics to logcat, and in debug builds also to a file in the external files directory
+     */
+    private void startMetrics() {
+        this.logcatReporter = new MetricsReporter(Metrics.shared(), new LogcatMetricsSink(), METRICS_PERIOD, TimeUnit.SECONDS);
+        if (!BuildConfig.DEBUG) return;
+        try {
+            MetricsSink file = new TextMetricsSink(new File(getExternalFilesDir(null), "metrics.log"));
+            this.fileReporter = new MetricsReporter(Metrics.shared(), file, METRICS_PERIOD, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // No more callbacks may arrive once the engine and the trace are shut down
+        if (this.beaconManager != null) {
+            this.beaconManager.stopRangingBeacons(this.rangingRegion);
+            this.beaconManager.removeRangeNotifier(this.rangeNotifier);
+        }
+        if (this.renderer != null) {
+            this.renderer.stop();
+        }
+        if (this.solverExecutor != null) {
+            this.solverExecutor.shutdownNow();
+        }
+        if (this.logcatReporter != null) {
+            this.logcatReporter.close();
+        }
+        if (this.fileReporter != null) {
+            this.fileReporter.close();
+        }
+        ScanTraceWriter writer = this.traceWriter;
+        if (writer != null) {
+            this.traceWriter = null;
+            // A callback already running finishes its record before the file is cut
+            synchronized (writer) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
     /**
      * Sets up the BeaconManager and range notifier
      */
     private void setupBeaconDetection() {
         this.beaconManager =  BeaconManager.getInstanceForApplication(this);
         this.beaconManager.getBeaconParsers().add(new BeaconParser().setBeaconLayout(IBEACON));
-        this.beaconManager.addRangeNotifier((beacons, region) -> {
-            if (beacons.size() > 0) {
-                // Keep track of whether or not the connected beacons set has been updated
-                AtomicBoolean updated = new AtomicBoolean(false);
-
-                // Clear the markers
-                for (Circle marker : this.markers) {
-                    marker.remove();
-                }
-                this.markers.clear();
-
-                for (Beacon beacon : beacons) {
-                    System.out.println("[SYSTEM] FOUND DEVICE WITH RSSI " + beacon.getRssi() + " WITH ADDRESS " + beacon.getBluetoothAddress()
-                    + " WITH ID3 " + beacon.getId3());
-                    Optional<iBeacon> value = this.connectedBeacons.stream().filter(x -> x.getMac().equals(beacon.getBluetoothAddress())).findFirst();
-
-                    if (beacon.getRssi() <= THRESHOLD && this.connectedBeacons.size() > 3) {
-                        // Deletes the iBeacon if it exists in the set of active beacons
-                        value.ifPresent(iBeacon -> {
-                            this.connectedBeacons.remove(iBeacon);
-                            updated.set(true);
-                        });
-                    } else {
-                        // Update beacon information if it already exists in the set of all active beacons
-                        if (value.isPresent()) {
-                            iBeacon currentBeacon = value.get();
-                            currentBeacon.setDistance(beacon.getDistance());
-                            currentBeacon.setRssi(beacon.getRssi());
-                            updated.set(true);
-                        } else { // Retrieve beacon from excel reader or api and put it in the active set of beacons
-                            Optional<iBeacon> foundBeacon = this.api.getAllBeacons().stream().filter(x -> x.getMac().equals(beacon.getBluetoothAddress())).findFirst();
-                            foundBeacon.ifPresent(iBeacon -> {
-                                iBeacon.setDistance(beacon.getDistance());
-                                iBeacon.setRssi(beacon.getRssi());
-                                this.connectedBeacons.add(iBeacon);
-                                updated.set(true);
-                            });
-                        }
-                    }
-                }
+        this.rangeNotifier = (beacons, region) -> {
+            // Empty callbacks are fed as well, so beacons that went silent are dropped
+            long now = System.nanoTime();
+            int count = beacons.size();
+            long[] addresses = new long[count];
+            int[] rssi = new int[count];
+            double[] distances = new double[count];
 
-                // Set markers on the map for connected beacons
-                for (iBeacon beacon : this.connectedBeacons) {
-                    this.setBeaconMarker(beacon);
-                }
+            int i = 0;
+            for (Beacon beacon : beacons) {
+                addresses[i] = MacAddress.parse(beacon.getBluetoothAddress());
+                rssi[i] = beacon.getRssi();
+                distances[i] = beacon.getDistance();
+                this.record(now, addresses[i], rssi[i], distances[i]);
+                i++;
+            }
 
-                // If the connected beacons set has been updated, a new current position will be calculated and updated on the map
-                if (updated.get()) {
-                    System.out.println("[SYSTEM] LIST: " + this.connectedBeacons.size());
-                    this.currentLocation = this.locationFinder.optimisation(this.connectedBeacons);
-                    onLocationChange();
+            // If the connected beacons set has been updated, a new current position is calculated and shown on the map
+            this.engine.scan(now, addresses, rssi, distances, count);
+            SCAN_CALLBACK.recordSince(now);
+        };
+        this.beaconManager.addRangeNotifier(this.rangeNotifier);
 
-                    try {
-                        Thread.sleep(500);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        });
+        this.rangingRegion = new Region("myRangingUniqueId", null, null, null);
+        this.beaconManager.startRangingBeacons(this.rangingRegion);
+    }
 
-        beaconManager.startRangingBeacons(new Region("myRangingUniqueId", null, null, null));
+    /**
+     * Appends an advertisement to the trace if one is being recorded
+     * @param timestamp timestamp of the ranging callback
+     * @param address packed MAC address of the beacon
+     * @param rssi received signal strength
+     * @param distance distance estimated by the beacon library
+     */
+    private void record(long timestamp, long address, int rssi, double distance) {
+        ScanTraceWriter writer = this.traceWriter;
+        if (writer == null) return;
+        synchronized (writer) {
+            try {
+                writer.writeScan(timestamp, address, rssi, distance);
+            } catch (IOException e) {
+                // Also thrown once the writer is closed, recording stops either way
+                e.printStackTrace();
+                this.traceWriter = null;
+            }
+        }
     }
 
     /**
@@ -182,48 +256,12 @@ public class MapsActivity extends AppCompatActivity {
      */
     private void onMapReady(GoogleMap googleMap) {
         this.map = googleMap;
+        this.renderer = new BeaconRenderer(googleMap, ZOOM_LEVEL);
+        if (this.engine.getRegistry() != null) {
+            this.renderer.setCatalogue(this.engine.getRegistry(), this.engine.getGrid());
+        }
         this.currentLocation = new Location(52.239346220076186, 6.856276336536508);
-        this.onLocationChange();
+        this.renderer.submit(this.currentLocation, this.currentFloor, null);
         this.setupBeaconDetection();
     }
-
-    /**
-     * This function gets called whenever a location is changed, which will update the map and floor number and put a marker
-     */
-    private void onLocationChange() {
-        LatLng currentPosition = new LatLng(currentLocation.getLatitude(), currentLocation.getLongitude());
-        this.map.moveCamera(CameraUpdateFactory.newLatLngZoom(currentPosition, ZOOM_LEVEL));
-
-        //Here you can take the snapshot or whatever you want
-        IndoorBuilding building = map.getFocusedBuilding();
-        if(building != null) {
-            List<IndoorLevel> levels = building.getLevels();
-            //active the level you want to display on the map
-            levels.get(levels.size() - currentFloor).activate();
-        }
-
-        // Shows current position of user on the map
-        if (this.tracker == null) {
-            this.tracker = this.map.addCircle(new CircleOptions()
-                    .center(new LatLng(currentLocation.getLatitude(), currentLocation.getLongitude()))
-                    .radius(USER_RADIUS)
-                    .strokeColor(Color.MAGENTA)
-                    .strokeWidth(7f)
-                    .fillColor(Color.WHITE));
-        } else {
-            this.tracker.setCenter(new LatLng(currentLocation.getLatitude(), currentLocation.getLongitude()));
-        }
-    }
-
-    private void setBeaconMarker(iBeacon beacon) {
-        // Shows position of a beacon
-        CircleOptions circle = new CircleOptions()
-                .center(new LatLng(beacon.getLocation().getLatitude(), beacon.getLocation().getLongitude()))
-                .radius(beacon.getDistance())
-                .strokeColor(Color.CYAN)
-                .strokeWidth(7f)
-                .fillColor(Color.TRANSPARENT);
-
-        this.markers.add(map.addCircle(circle));
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks one ranging callback on a large deployment: every beacon in range is updated with a new sample,
+ * silent beacons are expired and a snapshot is taken if anything changed, with all active beacons or only the
+ * strongest ones in the snapshot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ActiveBeaconsBenchmark {
+    private static final long CALLBACK = 1000000000L;    // nanoseconds between ranging callbacks
+
+    @Param({"100", "1000"})
+    int inRange;
+
+    @Param({"0", "12"})
+    int maxBeacons;
+
+    private ActiveBeacons activeBeacons;
+    private long[] addresses;
+    private int[][] rssi;
+    private long now;
+    private int cycle;
+
+    @Setup
+    public void setup() {
+        BeaconConstellation constellation = new BeaconConstellation(this.inRange, 5, 0, 42);
+        BeaconRegistry registry = new BeaconRegistry(constellation.beacons);
+        this.activeBeacons = new ActiveBeacons(registry, -200, ActiveBeacons.DEFAULT_MINIMUM,
+                new KalmanRssiFilter(registry.size()), new PathLossModel(), 0.25,
+                LocalizationEngine.DEFAULT_TIME_TO_LIVE, this.maxBeacons);
+
+        // Samples of 16 callbacks, the free space signal strength with a few dB of noise
+        Random random = new Random(42);
+        this.addresses = new long[this.inRange];
+        this.rssi = new int[16][this.inRange];
+        for (int i = 0; i < this.inRange; i++) {
+            this.addresses[i] = constellation.beacons.get(i).getAddress();
+            for (int[] samples : this.rssi) {
+                samples[i] = constellation.rssi[i] + (int) Math.round(random.nextGaussian() * 3);
+            }
+        }
+    }
+
+    @Benchmark
+    public ScanSnapshot callback() {
+        int[] samples = this.rssi[this.cycle++ & (this.rssi.length - 1)];
+        this.now += CALLBACK;
+        this.activeBeacons.expire(this.now);
+        for (int i = 0; i < this.inRange; i++) {
+            this.activeBeacons.update(this.now, this.addresses[i], samples[i], 0);
+        }
+        return this.activeBeacons.hasChanges() ? this.activeBeacons.snapshot(this.now) : null;
+    }
+}
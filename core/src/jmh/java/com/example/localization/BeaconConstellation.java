@@ -0,0 +1,51 @@
+package com.example.localization;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * This class generates synthetic beacon constellations around a fixed anchor for the benchmarks.
+ * The same seed always produces the same constellation so runs can be compared.
+ */
+final class BeaconConstellation {
+    static final Location ANCHOR = new Location(6.856276336536508, 52.239346220076186);
+    static final double AREA = 60;    // metres, side of the square the beacons are placed in
+    static final double FLOOR_HEIGHT = 3;
+
+    final LocalFrame frame = new LocalFrame(ANCHOR);
+    final ArrayList<iBeacon> beacons = new ArrayList<>();
+    final double[] distance;    // measured distance per beacon, in list order
+    final int[] rssi;           // received signal strength per beacon, in list order
+    final Location truth;
+
+    /**
+     * Create a constellation with the receiver at a random point inside the area.
+     * @param count number of beacons
+     * @param floors number of floors the beacons are spread over, the receiver is on floor 1
+     * @param noise standard deviation of the distance noise in metres
+     * @param seed random seed
+     */
+    BeaconConstellation(int count, int floors, double noise, long seed) {
+        Random random = new Random(seed);
+        double truthX = (random.nextDouble() - 0.5) * AREA / 2;
+        double truthY = (random.nextDouble() - 0.5) * AREA / 2;
+        this.truth = this.frame.toLocation(truthX, truthY);
+        this.distance = new double[count];
+        this.rssi = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            double x = (random.nextDouble() - 0.5) * AREA;
+            double y = (random.nextDouble() - 0.5) * AREA;
+            int floor = 1 + i % floors;
+            double height = (floor - 1) * FLOOR_HEIGHT;
+            double range = Math.sqrt((x - truthX) * (x - truthX) + (y - truthY) * (y - truthY) + height * height);
+
+            iBeacon beacon = new iBeacon(String.format("00:00:00:00:%02X:%02X", i >> 8, i & 0xFF),
+                    this.frame.toLocation(x, y), floor);
+            this.distance[i] = Math.max(0.1, range + random.nextGaussian() * noise);
+            // Free space path loss with -59 dBm at 1 metre
+            this.rssi[i] = (int) Math.round(-59 - 20 * Math.log10(Math.max(range, 0.1)));
+            this.beacons.add(beacon);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks spatial queries on a venue scale catalogue, grid versus a scan of the floor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BeaconGridBenchmark {
+    private static final double VENUE = 1000;    // metres, side of the venue
+    private static final int FLOORS = 5;
+    private static final double RADIUS = 40;
+    private static final int K = 8;
+
+    @Param({"1000", "20000"})
+    int catalogueSize;
+
+    private BeaconRegistry registry;
+    private BeaconGrid grid;
+    private double[][] queries;
+    private int next;
+
+    private final int[] slots = new int[4096];
+    private final double[] squaredDistances = new double[K];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        LocalFrame frame = new LocalFrame(BeaconConstellation.ANCHOR);
+        List<iBeacon> beacons = new ArrayList<>();
+        for (int i = 0; i < this.catalogueSize; i++) {
+            beacons.add(new iBeacon(MacAddress.format(i + 1),
+                    frame.toLocation(random.nextDouble() * VENUE, random.nextDouble() * VENUE), i % FLOORS));
+        }
+        this.registry = new BeaconRegistry(frame.project(beacons));
+        this.grid = new BeaconGrid(this.registry);
+
+        this.queries = new double[1024][];
+        for (int i = 0; i < this.queries.length; i++) {
+            iBeacon near = this.registry.get(random.nextInt(this.registry.size()));
+            this.queries[i] = new double[]{near.getX() + random.nextGaussian() * 5, near.getY() + random.nextGaussian() * 5};
+        }
+    }
+
+    private double[] query() {
+        return this.queries[this.next++ & (this.queries.length - 1)];
+    }
+
+    @Benchmark
+    public int gridRadius() {
+        double[] q = query();
+        return this.grid.radius(1, q[0], q[1], RADIUS, this.slots);
+    }
+
+    @Benchmark
+    public int scanRadius() {
+        double[] q = query();
+        int count = 0;
+        for (int slot : this.registry.slotsOnFloor(1)) {
+            iBeacon beacon = this.registry.get(slot);
+            double dx = beacon.getX() - q[0];
+            double dy = beacon.getY() - q[1];
+            if (dx * dx + dy * dy <= RADIUS * RADIUS) this.slots[count++] = slot;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int gridNearest() {
+        double[] q = query();
+        return this.grid.nearest(1, q[0], q[1], K, this.slots, this.squaredDistances);
+    }
+
+    @Benchmark
+    public int gridViewport() {
+        double[] q = query();
+        return this.grid.within(1, q[0] - 50, q[1] - 30, q[0] + 50, q[1] + 30, this.slots);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks looking up an advertised MAC address in the catalogue, registry versus the old stream scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BeaconRegistryBenchmark {
+
+    @Param({"100", "5000"})
+    int catalogueSize;
+
+    private Set<iBeacon> catalogue;
+    private BeaconRegistry registry;
+    private String mac;
+
+    @Setup
+    public void setup() {
+        this.catalogue = new HashSet<>(new BeaconConstellation(this.catalogueSize, 5, 0, 42).beacons);
+        this.registry = new BeaconRegistry(this.catalogue);
+        this.mac = this.registry.get(this.catalogueSize / 2).getMac();
+    }
+
+    @Benchmark
+    public iBeacon registryLookup() {
+        return this.registry.get(this.registry.slotOf(this.mac));
+    }
+
+    @Benchmark
+    public iBeacon streamScan() {
+        return this.catalogue.stream().filter(x -> x.getMac().equals(this.mac)).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.localization;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks decoding a catalogue response, streaming parser versus the old org.json tree.
+ * Run with -prof gc to compare the allocation per catalogue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CatalogueParserBenchmark {
+    private static final int MAC_INDEX = 0;
+    private static final int LONGITUDE_INDEX = 1;
+    private static final int LATITUDE_INDEX = 2;
+    private static final int FLOOR_INDEX = 3;
+
+    @Param({"10000", "100000"})
+    int catalogueSize;
+
+    private byte[] body;
+    private final JsonCatalogueParser parser = new JsonCatalogueParser();
+
+    @Setup
+    public void setup() {
+        // Coordinates with full double precision, as a JSON serializer writes them
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < this.catalogueSize; i++) {
+            if (i > 0) json.append(',');
+            json.append("[\"").append(MacAddress.format(i)).append("\",")
+                    .append(4.3 + random.nextDouble() * 0.01).append(',')
+                    .append(52.0 + random.nextDouble() * 0.01).append(',')
+                    .append(random.nextInt(10)).append(']');
+        }
+        this.body = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        System.out.println(String.format(Locale.ROOT, "%n%d rows, %.1f MiB", this.catalogueSize, this.body.length / 1048576.0));
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws IOException {
+        this.parser.parse(new ByteArrayInputStream(this.body), new CatalogueParser.Sink() {
+            @Override
+            public void beacon(CharSequence mac, double longitude, double latitude, int floor) {
+                blackhole.consume(MacAddress.parse(mac));
+                blackhole.consume(longitude);
+                blackhole.consume(latitude);
+                blackhole.consume(floor);
+            }
+
+            @Override
+            public void removed(CharSequence mac) {
+                blackhole.consume(mac);
+            }
+        });
+    }
+
+    /**
+     * The path Api used before: the body as a String, a JSONArray and numbers through toString.
+     */
+    @Benchmark
+    public void orgJson(Blackhole blackhole) {
+        JSONArray json = new JSONArray(new String(this.body, StandardCharsets.UTF_8));
+        for (int i = 0; i < json.length(); i++) {
+            String mac = json.getJSONArray(i).get(MAC_INDEX).toString();
+            double longitude = Double.parseDouble(json.getJSONArray(i).get(LONGITUDE_INDEX).toString());
+            double latitude = Double.parseDouble(json.getJSONArray(i).get(LATITUDE_INDEX).toString());
+            int floor = Integer.parseInt(json.getJSONArray(i).get(FLOOR_INDEX).toString());
+            blackhole.consume(MacAddress.parse(mac));
+            blackhole.consume(longitude);
+            blackhole.consume(latitude);
+            blackhole.consume(floor);
+        }
+    }
+}
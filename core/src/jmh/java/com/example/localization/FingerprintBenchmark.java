@@ -0,0 +1,131 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a fingerprint lookup on a synthetic venue with beacons on a 10 metre grid and reference points on a
+ * square grid, 5 floors, each point hearing the beacons above -90 dBm with 15 dB lost per floor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FingerprintBenchmark {
+    private static final int FLOORS = 5;
+    private static final double BEACON_SPACING = 10;    // metres
+    private static final double FLOOR_LOSS = 15;        // dB
+    private static final int THRESHOLD = -90;
+
+    @Param({"10000", "100000"})
+    int points;
+
+    private final PathLossModel model = new PathLossModel();
+    private final LocalFrame frame = new LocalFrame(BeaconConstellation.ANCHOR);
+    private File file;
+    private FingerprintLocalizer localizer;
+    private ScanSnapshot[] scans;
+    private int next;
+    private final Location result = new Location();
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        LocalFrame frame = this.frame;
+        int side = (int) Math.ceil(Math.sqrt((double) this.points / FLOORS));    // metres, one point per square metre
+        int perSide = (int) Math.ceil(side / BEACON_SPACING);
+
+        List<iBeacon> beacons = new ArrayList<>();
+        for (int floor = 0; floor < FLOORS; floor++) {
+            for (int i = 0; i < perSide * perSide; i++) {
+                double x = (i % perSide + 0.5) * BEACON_SPACING;
+                double y = (i / perSide + 0.5) * BEACON_SPACING;
+                beacons.add(new iBeacon(MacAddress.format(beacons.size() + 1), frame.toLocation(x, y), floor));
+            }
+        }
+        BeaconRegistry registry = new BeaconRegistry(beacons);
+
+        long[] addresses = new long[beacons.size()];
+        for (int i = 0; i < addresses.length; i++) addresses[i] = beacons.get(i).getAddress();
+        double[] longitudes = new double[this.points];
+        double[] latitudes = new double[this.points];
+        int[] floors = new int[this.points];
+        int[] first = new int[this.points + 1];
+        int[] columns = new int[1 << 20];
+        double[] rssi = new double[1 << 20];
+        int entries = 0;
+        for (int p = 0; p < this.points; p++) {
+            int floor = p % FLOORS;
+            double x = (p / FLOORS) % side + 0.5;
+            double y = (p / FLOORS) / side + 0.5;
+            longitudes[p] = frame.toLongitude(x);
+            latitudes[p] = frame.toLatitude(y);
+            floors[p] = floor;
+            first[p] = entries;
+            for (int c = 0; c < addresses.length; c++) {
+                double value = received(beacons.get(c), x, y, floor) + random.nextGaussian() * 2;
+                if (value <= THRESHOLD) continue;
+                if (entries == columns.length) {
+                    columns = Arrays.copyOf(columns, entries * 2);
+                    rssi = Arrays.copyOf(rssi, entries * 2);
+                }
+                columns[entries] = c;
+                rssi[entries] = value;
+                entries++;
+            }
+        }
+        first[this.points] = entries;
+
+        this.file = File.createTempFile("fingerprint", ".lrmp");
+        RadioMap.write(this.file, addresses, longitudes, latitudes, floors, first, columns, rssi, this.points);
+        this.localizer = new FingerprintLocalizer(RadioMap.read(this.file));
+
+        // Scans at random points with the noise of a single sample
+        this.scans = new ScanSnapshot[256];
+        for (int i = 0; i < this.scans.length; i++) {
+            double x = random.nextDouble() * side;
+            double y = random.nextDouble() * side;
+            int floor = random.nextInt(FLOORS);
+            List<iBeacon> heard = new ArrayList<>();
+            int[] heardRssi = new int[beacons.size()];
+            for (iBeacon beacon : beacons) {
+                int value = (int) Math.round(received(beacon, x, y, floor) + random.nextGaussian() * 4);
+                if (value <= THRESHOLD) continue;
+                heardRssi[heard.size()] = value;
+                heard.add(beacon);
+            }
+            this.scans[i] = new ScanSnapshot(i, heard, new double[heard.size()], heardRssi, registry);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.file.delete();
+    }
+
+    private double received(iBeacon beacon, double x, double y, int floor) {
+        double dx = this.frame.toX(beacon.getLongitude()) - x;
+        double dy = this.frame.toY(beacon.getLatitude()) - y;
+        return this.model.rssi(Math.max(0.5, Math.sqrt(dx * dx + dy * dy)))
+                - FLOOR_LOSS * Math.abs(beacon.getFloor() - floor);
+    }
+
+    @Benchmark
+    public double locate() {
+        return this.localizer.locate(this.scans[this.next++ & (this.scans.length - 1)], this.result);
+    }
+}
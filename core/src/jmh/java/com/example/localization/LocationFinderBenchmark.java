@@ -0,0 +1,72 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the building blocks of LocationFinder: haversine distance, error evaluation and floor detection,
+ * per scan and tracked by the FloorEstimator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocationFinderBenchmark {
+
+    @Param({"3", "10", "50", "200"})
+    int beaconCount;
+
+    @Param({"0.0", "0.5", "2.0"})
+    double noise;
+
+    private LocationFinder locationFinder;
+    private BeaconConstellation constellation;
+    private Location other;
+    private FloorEstimator floorEstimator;
+    private int[] rssi;
+    private int[] floor;
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        this.locationFinder = new LocationFinder();
+        this.constellation = new BeaconConstellation(this.beaconCount, 5, this.noise, 42);
+        this.other = this.constellation.beacons.get(0).getLocation();
+        this.floorEstimator = new FloorEstimator(1, 5);
+        this.rssi = new int[this.beaconCount];
+        this.floor = new int[this.beaconCount];
+        for (int i = 0; i < this.beaconCount; i++) {
+            this.rssi[i] = this.constellation.rssi[i];
+            this.floor[i] = this.constellation.beacons.get(i).getFloor();
+        }
+    }
+
+    @Benchmark
+    public double calculateDistance() {
+        return this.locationFinder.calculateDistance(this.constellation.truth, this.other);
+    }
+
+    @Benchmark
+    public double calculateError() {
+        return this.locationFinder.calculateError(this.constellation.truth, this.constellation.beacons,
+                this.constellation.distance);
+    }
+
+    @Benchmark
+    public int findFloor() {
+        return this.locationFinder.findFloor(this.constellation.beacons, this.constellation.rssi);
+    }
+
+    @Benchmark
+    public int floorEstimator() {
+        this.timestamp += 1000000000L;
+        return this.floorEstimator.update(this.rssi, this.floor, this.beaconCount, this.timestamp);
+    }
+}
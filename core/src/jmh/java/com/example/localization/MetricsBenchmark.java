@@ -0,0 +1,77 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks recording into the metrics on the hot path, next to the System.out.println it replaces in the
+ * range notifier, and taking the snapshot of a periodic report.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+
+    private Metrics metrics;
+    private Histogram histogram;
+    private Metrics.Counter counter;
+    private long value;
+    private PrintStream out;
+
+    @Setup
+    public void setup() {
+        this.metrics = new Metrics();
+        this.histogram = this.metrics.histogram("benchmark.histogram", "ns");
+        this.counter = this.metrics.counter("benchmark.counter");
+        // Discards the output, so only the formatting and locking of the stream is measured
+        this.out = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        for (int i = 0; i < 8; i++) {
+            this.metrics.histogram("benchmark.histogram" + i, "ns").record(i);
+        }
+    }
+
+    @Benchmark
+    public void println() {
+        this.out.println("[SYSTEM] FOUND DEVICE WITH RSSI " + (int) this.value + " WITH ADDRESS " + "AC:23:3F:A0:12:34"
+                + " WITH ID3 " + 17);
+    }
+
+    @Benchmark
+    public void counter() {
+        this.counter.increment();
+    }
+
+    @Benchmark
+    public void histogram() {
+        // Spread over the buckets like latencies of a few microseconds
+        this.value = (this.value * 6364136223846793005L + 1442695040888963407L);
+        this.histogram.record((this.value >>> 52) + 1000);
+    }
+
+    @Benchmark
+    public void histogramSince() {
+        this.histogram.recordSince(System.nanoTime());
+    }
+
+    @Benchmark
+    public MetricsSnapshot snapshot() {
+        return this.metrics.snapshot();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a cold solve of a corridor, beacons on a nearly straight line, with one or more starts.
+ * Every invocation starts from the same point, so the numbers are the cost of a fix after the previous one was lost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiStartBenchmark {
+
+    @Param({"4", "8"})
+    int beaconCount;
+
+    @Param({"1", "4"})
+    int starts;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    private PositionSolver solver;
+    private ForkJoinPool pool;
+    private double[] x;
+    private double[] y;
+    private double[] distance;
+    private final double[] position = new double[2];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        this.x = new double[this.beaconCount];
+        this.y = new double[this.beaconCount];
+        this.distance = new double[this.beaconCount];
+        for (int i = 0; i < this.beaconCount; i++) {
+            this.x[i] = random.nextDouble() * 40;
+            this.y[i] = random.nextGaussian() * 0.5;
+            double dx = this.x[i] - 12;
+            double dy = this.y[i] - 4;
+            this.distance[i] = Math.sqrt(dx * dx + dy * dy) + random.nextGaussian();
+        }
+        this.pool = this.parallel ? new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors())) : null;
+        this.solver = this.starts == 1
+                ? new LevenbergMarquardtSolver()
+                : new MultiStartSolver(new LevenbergMarquardtSolver(), this.starts,
+                        MultiStartSolver.DEFAULT_BUDGET, this.pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.pool != null) this.pool.shutdown();
+    }
+
+    @Benchmark
+    public double[] solve() {
+        this.position[0] = 20;
+        this.position[1] = -3;
+        this.solver.solve(this.x, this.y, this.distance, this.beaconCount, this.position);
+        return this.position;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a full LocationFinder.optimisation run per solver.
+ * All beacons are placed on a single floor, so the floor correction leaves the distances untouched between runs.
+ * Run with -prof gc to check that the packed array variant does not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OptimisationBenchmark {
+
+    @Param({"3", "10", "50", "200"})
+    int beaconCount;
+
+    @Param({"0.0", "0.5", "2.0"})
+    double noise;
+
+    @Param({"levenberg-marquardt", "hill-climb"})
+    String solver;
+
+    private LocationFinder locationFinder;
+    private BeaconConstellation constellation;
+    private double[] latitude;
+    private double[] longitude;
+    private LocalFrame frame;
+    private List<iBeacon> beacons;    // the constellation projected into frame
+    private double[] x;
+    private double[] y;
+    private double[] distance;
+    private int[] rssi;
+    private int[] floor;
+    private final Location result = new Location();
+
+    @Setup
+    public void setup() {
+        PositionSolver positionSolver = this.solver.equals("hill-climb")
+                ? new HillClimbSolver()
+                : new LevenbergMarquardtSolver();
+        this.locationFinder = new LocationFinder(positionSolver);
+        this.constellation = new BeaconConstellation(this.beaconCount, 1, this.noise, 42);
+
+        // Projected like Api does at load time
+        this.frame = LocalFrame.around(this.constellation.beacons);
+        this.beacons = this.frame.project(this.constellation.beacons);
+
+        this.latitude = new double[this.beaconCount];
+        this.longitude = new double[this.beaconCount];
+        this.x = new double[this.beaconCount];
+        this.y = new double[this.beaconCount];
+        this.distance = new double[this.beaconCount];
+        this.rssi = new int[this.beaconCount];
+        this.floor = new int[this.beaconCount];
+        for (int i = 0; i < this.beaconCount; i++) {
+            iBeacon beacon = this.beacons.get(i);
+            this.latitude[i] = beacon.getLatitude();
+            this.longitude[i] = beacon.getLongitude();
+            this.x[i] = beacon.getX();
+            this.y[i] = beacon.getY();
+            this.distance[i] = this.constellation.distance[i];
+            this.rssi[i] = this.constellation.rssi[i];
+            this.floor[i] = beacon.getFloor();
+        }
+    }
+
+    @Benchmark
+    public Location optimisation() {
+        return this.locationFinder.optimisation(this.beacons, this.distance, this.rssi);
+    }
+
+    @Benchmark
+    public double optimisationArrays() {
+        return this.locationFinder.optimisation(this.latitude, this.longitude, this.distance, this.rssi, this.floor,
+                this.beaconCount, this.result);
+    }
+
+    @Benchmark
+    public double optimisationProjected() {
+        return this.locationFinder.optimisation(this.frame, this.x, this.y, this.distance, this.rssi, this.floor,
+                this.beaconCount, this.result);
+    }
+}
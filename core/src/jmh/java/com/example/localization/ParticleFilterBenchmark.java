@@ -0,0 +1,60 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks one particle filter step per particle count, on the calling thread and on the common pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParticleFilterBenchmark {
+
+    @Param({"500", "2000", "10000"})
+    int particles;
+
+    @Param({"20"})
+    int beaconCount;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    private static final int STEPS = 1024;
+
+    private ParticleFilterTracker tracker;
+    private final ScanSnapshot[] snapshots = new ScanSnapshot[STEPS];
+    private final Location result = new Location();
+    private int step;
+
+    @Setup
+    public void setup() {
+        BeaconConstellation constellation = new BeaconConstellation(this.beaconCount, 2, 0.5, 42);
+        List<iBeacon> beacons = LocalFrame.around(constellation.beacons).project(constellation.beacons);
+        BeaconRegistry registry = new BeaconRegistry(beacons);
+        // Same measurements every step, half a second apart, so the particles keep moving
+        for (int s = 0; s < STEPS; s++) {
+            this.snapshots[s] = new ScanSnapshot(s * 500_000_000L, beacons, constellation.distance,
+                    constellation.rssi, registry);
+        }
+        this.tracker = new ParticleFilterTracker(registry, this.particles, new PathLossModel(),
+                this.parallel ? ForkJoinPool.commonPool() : null);
+    }
+
+    @Benchmark
+    public double step() {
+        ScanSnapshot snapshot = this.snapshots[this.step];
+        this.step = (this.step + 1) % STEPS;
+        return this.tracker.locate(snapshot, this.result);
+    }
+}
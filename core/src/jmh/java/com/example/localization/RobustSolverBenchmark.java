@@ -0,0 +1,66 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a cold solve of beacons scattered over a room, where a share of the ranges is too long by 5 to 20
+ * metres as after a reflection, with Levenberg-Marquardt against the robust solver.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RobustSolverBenchmark {
+
+    @Param({"6", "12"})
+    int beaconCount;
+
+    @Param({"0", "0.25"})
+    double outliers;
+
+    @Param({"false", "true"})
+    boolean robust;
+
+    private PositionSolver solver;
+    private double[] x;
+    private double[] y;
+    private double[] distance;
+    private final double[] position = new double[2];
+    private final boolean[] rejected = new boolean[12];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        this.x = new double[this.beaconCount];
+        this.y = new double[this.beaconCount];
+        this.distance = new double[this.beaconCount];
+        for (int i = 0; i < this.beaconCount; i++) {
+            this.x[i] = random.nextDouble() * 40;
+            this.y[i] = random.nextDouble() * 40;
+            double dx = this.x[i] - 12;
+            double dy = this.y[i] - 25;
+            this.distance[i] = Math.sqrt(dx * dx + dy * dy) + random.nextGaussian();
+            if (i < this.outliers * this.beaconCount) {
+                this.distance[i] += 5 + random.nextDouble() * 15;
+            }
+        }
+        this.solver = this.robust ? new RobustSolver() : new LevenbergMarquardtSolver();
+    }
+
+    @Benchmark
+    public double[] solve() {
+        this.position[0] = 20;
+        this.position[1] = 20;
+        this.solver.solve(this.x, this.y, this.distance, this.beaconCount, this.position, this.rejected);
+        return this.position;
+    }
+}
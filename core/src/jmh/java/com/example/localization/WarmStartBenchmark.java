@@ -0,0 +1,73 @@
+package com.example.localization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks solving consecutive snapshots of a user walking 10 cm per scan, cold versus warm started.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WarmStartBenchmark {
+    private static final int STEPS = 256;
+    private static final double STEP = 0.1;
+
+    @Param({"10", "50"})
+    int beaconCount;
+
+    @Param({"0.0", "0.5"})
+    double noise;
+
+    @Param({"cold", "warm"})
+    String start;
+
+    private LocationFinder locationFinder;
+    private ScanSnapshot[] snapshots;
+    private final Location result = new Location();
+    private int step;
+
+    @Setup
+    public void setup() {
+        BeaconConstellation constellation = new BeaconConstellation(this.beaconCount, 1, 0, 42);
+        LocalFrame frame = LocalFrame.around(constellation.beacons);
+        List<iBeacon> beacons = frame.project(constellation.beacons);
+        BeaconRegistry registry = new BeaconRegistry(beacons);
+        Random random = new Random(7);
+
+        // Walk east from the starting point, distances taken from the true position plus noise
+        double truthX = frame.toX(constellation.truth.getLongitude());
+        double truthY = frame.toY(constellation.truth.getLatitude());
+        this.snapshots = new ScanSnapshot[STEPS];
+        for (int s = 0; s < STEPS; s++) {
+            double x = truthX + s * STEP;
+            double[] distance = new double[beacons.size()];
+            for (int i = 0; i < beacons.size(); i++) {
+                double range = Math.hypot(beacons.get(i).getX() - x, beacons.get(i).getY() - truthY);
+                distance[i] = Math.max(0.1, range + random.nextGaussian() * this.noise);
+            }
+            this.snapshots[s] = new ScanSnapshot(s, beacons, distance, constellation.rssi, registry);
+        }
+
+        this.locationFinder = this.start.equals("warm")
+                ? new LocationFinder(new LevenbergMarquardtSolver(), 0.05)
+                : new LocationFinder(new LevenbergMarquardtSolver());
+    }
+
+    @Benchmark
+    public double walk() {
+        ScanSnapshot snapshot = this.snapshots[this.step];
+        this.step = (this.step + 1) % STEPS;
+        return this.locationFinder.optimisation(snapshot, this.result);
+    }
+}
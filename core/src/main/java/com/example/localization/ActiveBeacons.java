@@ -0,0 +1,369 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps track of the beacons that are currently used for localization.
+ * A beacon becomes active when it is heard, and is dropped again when it is heard below the threshold
+ * while enough other beacons are active, or when it was not heard for longer than the time to live.
+ * Samples can be smoothed by an {@link RssiFilter} and turned into distances by a {@link PathLossModel},
+ * in which case small distance changes are not reported as an update.
+ * Measurements are kept per registry slot, the catalogue beacons are never modified.
+ * A snapshot can be limited to the strongest beacons by filtered signal strength. Changes to beacons that were
+ * left out of the last snapshot and stay too weak to make it into the next one are not reported either,
+ * so with many beacons in range the solver only runs when its input changes.
+ * The changes since the last snapshot are kept as deltas per registry slot, see {@link #getChange(int)}.
+ * Instances are confined to the thread delivering the scan results.
+ */
+public class ActiveBeacons {
+    static final int DEFAULT_THRESHOLD = -90;
+    static final int DEFAULT_MINIMUM = 3;
+
+    /** Change of a beacon that became active */
+    public static final int ADDED = 1;
+    /** Change of a beacon that was dropped */
+    public static final int REMOVED = 2;
+    /** Change of an active beacon whose distance changed by at least the minimum change */
+    public static final int MOVED = 3;
+
+    private static final Metrics.Counter MISSES = Metrics.shared().counter("registry.misses");
+    private static final Metrics.Counter EXPIRED = Metrics.shared().counter("beacons.expired");
+    private static final Histogram ACTIVE = Metrics.shared().histogram("beacons.active", "beacons");
+
+    private final BeaconRegistry registry;
+    private final int threshold;
+    private final int minimum;
+    private final RssiFilter filter;
+    private final PathLossModel model;
+    private final double minimumChange;
+    private final long timeToLive;        // nanoseconds, 0 if beacons never expire
+    private final int maxBeacons;         // beacons per snapshot, 0 if unlimited
+
+    private final int[] members;          // registry slot of each active beacon
+    private int size;
+    private final int[] index;            // index in members of each registry slot, -1 if not active
+    private final double[] distance;      // distance per slot
+    private final int[] rssi;             // rounded filtered signal strength per slot
+    private final double[] reported;      // distance per slot at the last reported update
+    private final double[] level;         // filtered signal strength per slot
+    private final long[] lastSeen;        // time per slot the beacon was last heard above the threshold
+
+    // Strongest beacons of the last snapshot
+    private final int[] heap;             // slots of a min-heap on the filtered signal strength
+    private final int[] selection;        // slots in the last snapshot
+    private int selectionCount;
+    private final boolean[] selected;     // whether each slot was in the last snapshot
+    private double cutoff = Double.NEGATIVE_INFINITY;    // weakest level in the last snapshot if it was limited
+
+    // Changes since the last snapshot
+    private final byte[] change;          // change per slot, 0 if unchanged
+    private final int[] changed;          // slots with a change
+    private int changeCount;
+
+    /**
+     * Create an empty active set with the default threshold of -90 dBm and at least 3 beacons.
+     * @param registry registry of all known beacons
+     */
+    public ActiveBeacons(BeaconRegistry registry) {
+        this(registry, DEFAULT_THRESHOLD, DEFAULT_MINIMUM);
+    }
+
+    /**
+     * Create an empty active set.
+     * @param registry registry of all known beacons
+     * @param threshold signal strength at or below which a beacon is dropped
+     * @param minimum number of beacons that are kept regardless of their signal strength
+     */
+    public ActiveBeacons(BeaconRegistry registry, int threshold, int minimum) {
+        this(registry, threshold, minimum, null, null, 0);
+    }
+
+    /**
+     * Create an empty active set with filtered samples, where beacons never expire and every beacon is solved.
+     * @param registry registry of all known beacons
+     * @param threshold filtered signal strength at or below which a beacon is dropped
+     * @param minimum number of beacons that are kept regardless of their signal strength
+     * @param filter filter smoothing the samples, or null to use the raw samples
+     * @param model model turning the filtered signal strength into a distance, or null to use the scanner's distance
+     * @param minimumChange distance change in metres below which an update of an active beacon is not reported
+     */
+    public ActiveBeacons(BeaconRegistry registry, int threshold, int minimum, RssiFilter filter, PathLossModel model,
+                         double minimumChange) {
+        this(registry, threshold, minimum, filter, model, minimumChange, 0, 0);
+    }
+
+    /**
+     * Create an empty active set with filtered samples.
+     * @param registry registry of all known beacons
+     * @param threshold filtered signal strength at or below which a beacon is dropped
+     * @param minimum number of beacons that are kept regardless of their signal strength
+     * @param filter filter smoothing the samples, or null to use the raw samples
+     * @param model model turning the filtered signal strength into a distance, or null to use the scanner's distance
+     * @param minimumChange distance change in metres below which an update of an active beacon is not reported
+     * @param timeToLive nanoseconds after which a beacon that was not heard is dropped, 0 to keep it
+     * @param maxBeacons number of strongest beacons in a snapshot, 0 for all of them
+     */
+    public ActiveBeacons(BeaconRegistry registry, int threshold, int minimum, RssiFilter filter, PathLossModel model,
+                         double minimumChange, long timeToLive, int maxBeacons) {
+        if (timeToLive < 0 || maxBeacons < 0) {
+            throw new IllegalArgumentException("Time to live and maximum beacons must not be negative");
+        }
+        this.registry = registry;
+        this.threshold = threshold;
+        this.minimum = minimum;
+        this.filter = filter;
+        this.model = model;
+        this.minimumChange = minimumChange;
+        this.timeToLive = timeToLive;
+        this.maxBeacons = maxBeacons;
+        int size = registry.size();
+        this.members = new int[size];
+        this.index = new int[size];
+        Arrays.fill(this.index, -1);
+        this.distance = new double[size];
+        this.rssi = new int[size];
+        this.reported = new double[size];
+        this.level = new double[size];
+        this.lastSeen = new long[size];
+        this.heap = new int[maxBeacons];
+        this.selection = new int[size];
+        this.selected = new boolean[size];
+        this.change = new byte[size];
+        this.changed = new int[size];
+    }
+
+    /**
+     * Processes one advertisement heard now, see {@link System#nanoTime()}.
+     * @param mac MAC address of the advertising device
+     * @param rssi received signal strength
+     * @param distance estimated distance in metres
+     * @return whether the active set changed or one of its beacons changed by at least the minimum change
+     */
+    public boolean update(String mac, int rssi, double distance) {
+        return update(System.nanoTime(), MacAddress.parse(mac), rssi, distance);
+    }
+
+    /**
+     * Processes one advertisement heard now, see {@link System#nanoTime()}.
+     * @param address packed MAC address of the advertising device, see {@link MacAddress#parse(CharSequence)}
+     * @param rssi received signal strength
+     * @param distance estimated distance in metres
+     * @return whether the active set changed or one of its beacons changed by at least the minimum change
+     */
+    public boolean update(long address, int rssi, double distance) {
+        return update(System.nanoTime(), address, rssi, distance);
+    }
+
+    /**
+     * Processes one advertisement.
+     * @param timestamp time the advertisement was heard in nanoseconds, on the clock passed to {@link #expire}
+     * @param address packed MAC address of the advertising device, see {@link MacAddress#parse(CharSequence)}
+     * @param rssi received signal strength
+     * @param distance estimated distance in metres
+     * @return whether the active set changed or one of its beacons changed by at least the minimum change,
+     * in a way that can change the next snapshot
+     */
+    public boolean update(long timestamp, long address, int rssi, double distance) {
+        int slot = this.registry.slotOf(address);
+        if (slot < 0) {
+            // Not a beacon from the catalogue
+            MISSES.increment();
+            return false;
+        }
+
+        double filtered = this.filter != null ? this.filter.update(slot, rssi) : rssi;
+        int level = (int) Math.round(filtered);
+        double estimate = this.model != null ? this.model.distance(filtered) : distance;
+
+        if (level <= this.threshold && this.size > this.minimum) {
+            // Deletes the iBeacon if it exists in the set of active beacons
+            if (this.index[slot] >= 0) {
+                remove(slot);
+                return record(slot, REMOVED);
+            }
+            return false;
+        }
+
+        // Update beacon information and put it in the active set of beacons if it is not there yet
+        this.distance[slot] = estimate;
+        this.rssi[slot] = level;
+        this.level[slot] = filtered;
+        this.lastSeen[slot] = timestamp;
+        int kind;
+        if (this.index[slot] < 0) {
+            this.index[slot] = this.size;
+            this.members[this.size++] = slot;
+            kind = ADDED;
+        } else if (Math.abs(estimate - this.reported[slot]) < this.minimumChange) {
+            return false;
+        } else {
+            kind = MOVED;
+        }
+        this.reported[slot] = estimate;
+        return record(slot, kind);
+    }
+
+    /**
+     * Drops the beacons that were not heard for longer than the time to live, regardless of the minimum,
+     * as their distances are stale. Does nothing if beacons never expire.
+     * @param now current time in nanoseconds, on the clock of the advertisements
+     * @return number of beacons dropped
+     */
+    public int expire(long now) {
+        if (this.timeToLive == 0) return 0;
+        int expired = 0;
+        for (int i = this.size - 1; i >= 0; i--) {
+            int slot = this.members[i];
+            if (now - this.lastSeen[slot] <= this.timeToLive) continue;
+            remove(slot);
+            record(slot, REMOVED);
+            expired++;
+        }
+        EXPIRED.add(expired);
+        return expired;
+    }
+
+    /**
+     * Removes the beacon in a slot from the active set by moving the last beacon into its place
+     */
+    private void remove(int slot) {
+        int i = this.index[slot];
+        int last = --this.size;
+        if (i != last) {
+            this.members[i] = this.members[last];
+            this.index[this.members[i]] = i;
+        }
+        this.index[slot] = -1;
+        if (this.filter != null) this.filter.reset(slot);
+    }
+
+    /**
+     * Keeps the change of a slot for the next snapshot, a beacon added since the last snapshot stays added.
+     * A beacon left out of the last snapshot only matters once it is stronger than the weakest one in it.
+     * @return whether the change can change the next snapshot
+     */
+    private boolean record(int slot, int kind) {
+        if (!this.selected[slot] && this.level[slot] <= this.cutoff) return false;
+        if (this.change[slot] == 0) {
+            this.changed[this.changeCount++] = slot;
+        } else if (this.change[slot] == ADDED && kind == MOVED) {
+            return true;
+        }
+        this.change[slot] = (byte) kind;
+        return true;
+    }
+
+    /**
+     * @return whether anything that can change the next snapshot happened since the last snapshot
+     */
+    public boolean hasChanges() {
+        return this.changeCount > 0;
+    }
+
+    /**
+     * @return number of beacons that changed since the last snapshot
+     */
+    public int getChangeCount() {
+        return this.changeCount;
+    }
+
+    /**
+     * @param i index of the change, below {@link #getChangeCount()}
+     * @return registry slot of the beacon that changed
+     */
+    public int getChangedSlot(int i) {
+        return this.changed[i];
+    }
+
+    /**
+     * @param slot registry slot of a beacon
+     * @return last change of the beacon since the last snapshot, {@link #ADDED}, {@link #REMOVED},
+     * {@link #MOVED} or 0 if it did not change
+     */
+    public int getChange(int slot) {
+        return this.change[slot];
+    }
+
+    /**
+     * @return number of active beacons
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param i index of the active beacon, below {@link #size()}
+     * @return registry slot of the active beacon
+     */
+    public int getSlot(int i) {
+        return this.members[i];
+    }
+
+    /**
+     * Copies the strongest active beacons so they can be solved on another thread, and clears the changes
+     * @param timestamp time of the scan in nanoseconds
+     * @return snapshot of the active beacons
+     */
+    public ScanSnapshot snapshot(long timestamp) {
+        ACTIVE.record(this.size);
+        for (int i = 0; i < this.changeCount; i++) {
+            this.change[this.changed[i]] = 0;
+        }
+        this.changeCount = 0;
+
+        for (int i = 0; i < this.selectionCount; i++) {
+            this.selected[this.selection[i]] = false;
+        }
+        int[] slots;
+        if (this.maxBeacons == 0 || this.size <= this.maxBeacons) {
+            this.cutoff = Double.NEGATIVE_INFINITY;
+            slots = this.members;
+            this.selectionCount = this.size;
+        } else {
+            slots = this.heap;
+            this.selectionCount = selectStrongest();
+            this.cutoff = this.level[this.heap[0]];
+        }
+        for (int i = 0; i < this.selectionCount; i++) {
+            this.selection[i] = slots[i];
+            this.selected[slots[i]] = true;
+        }
+        return new ScanSnapshot(timestamp, this.registry, this.selection, this.selectionCount, this.distance,
+                this.rssi);
+    }
+
+    /**
+     * Puts the slots of the strongest active beacons in the heap, with the weakest of them at the root.
+     * Takes O(n log k) for n active beacons and k beacons per snapshot.
+     * @return number of slots in the heap
+     */
+    private int selectStrongest() {
+        int[] heap = this.heap;
+        int size = 0;
+        for (int n = 0; n < this.size; n++) {
+            int slot = this.members[n];
+            if (size < heap.length) {
+                // Sift up
+                int i = size++;
+                while (i > 0 && this.level[heap[(i - 1) / 2]] > this.level[slot]) {
+                    heap[i] = heap[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = slot;
+            } else if (this.level[slot] > this.level[heap[0]]) {
+                // Replace the weakest and sift down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && this.level[heap[child + 1]] < this.level[heap[child]]) child++;
+                    if (this.level[heap[child]] >= this.level[slot]) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = slot;
+            }
+        }
+        return size;
+    }
+}
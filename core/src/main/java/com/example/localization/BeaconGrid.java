@@ -0,0 +1,317 @@
+package com.example.localization;
+
+/**
+ * This class is a spatial index over the projected beacons of a {@link BeaconRegistry}, a uniform grid per floor.
+ * The slots of each floor are sorted by cell with their coordinates copied alongside, so a query only touches
+ * the cells it overlaps and its cost depends on the local beacon density instead of the catalogue size.
+ * Queries write slots into arrays of the caller and do not allocate.
+ * The grid is not modified after construction and can be read from any thread.
+ */
+public class BeaconGrid {
+    public static final double DEFAULT_CELL_SIZE = 10;    // metres
+
+    // Cells per beacon above which the cell size of a sparse floor is doubled
+    private static final int MAX_CELLS_PER_BEACON = 4;
+
+    private final LocalFrame frame;
+    private final int lowestFloor;
+    private final Floor[] floors;    // indexed by floor - lowestFloor, null if the floor has no beacons
+
+    /**
+     * Grid of one floor
+     */
+    private static final class Floor {
+        double minX;
+        double minY;
+        double cellSize;
+        int columns;
+        int rows;
+        int[] cellStart;    // index of the first entry per cell, cellStart[cells] is the entry count
+        int[] slots;        // slots sorted by cell
+        double[] x;         // coordinates per entry
+        double[] y;
+
+        int column(double x) {
+            return clamp((x - this.minX) / this.cellSize, this.columns);
+        }
+
+        int row(double y) {
+            return clamp((y - this.minY) / this.cellSize, this.rows);
+        }
+    }
+
+    /**
+     * Builds the grid with the default cell size.
+     * @param registry registry whose beacons are projected into one frame, see {@link LocalFrame#project}
+     */
+    public BeaconGrid(BeaconRegistry registry) {
+        this(registry, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Builds the grid.
+     * @param registry registry whose beacons are projected into one frame, see {@link LocalFrame#project}
+     * @param cellSize edge of a cell in metres, about the radius of a typical query
+     */
+    public BeaconGrid(BeaconRegistry registry, double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive, got " + cellSize);
+        }
+        this.frame = registry.size() > 0 ? registry.get(0).getFrame() : null;
+        for (int slot = 0; slot < registry.size(); slot++) {
+            if (registry.get(slot).getFrame() == null || registry.get(slot).getFrame() != this.frame) {
+                throw new IllegalArgumentException("All beacons must be projected into the same frame");
+            }
+        }
+
+        this.lowestFloor = registry.getLowestFloor();
+        int floorCount = registry.size() == 0 ? 0 : registry.getHighestFloor() - this.lowestFloor + 1;
+        this.floors = new Floor[floorCount];
+        for (int f = 0; f < floorCount; f++) {
+            int[] slots = registry.slotsOnFloor(this.lowestFloor + f);
+            if (slots.length > 0) this.floors[f] = build(registry, slots, cellSize);
+        }
+    }
+
+    private static Floor build(BeaconRegistry registry, int[] slots, double cellSize) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int slot : slots) {
+            iBeacon beacon = registry.get(slot);
+            minX = Math.min(minX, beacon.getX());
+            minY = Math.min(minY, beacon.getY());
+            maxX = Math.max(maxX, beacon.getX());
+            maxY = Math.max(maxY, beacon.getY());
+        }
+
+        Floor grid = new Floor();
+        grid.minX = minX;
+        grid.minY = minY;
+        grid.cellSize = cellSize;
+        // Coarsen sparse floors so the cell array stays proportional to the beacon count
+        while (true) {
+            grid.columns = (int) Math.min(Integer.MAX_VALUE / 2, (long) ((maxX - minX) / grid.cellSize) + 1);
+            grid.rows = (int) Math.min(Integer.MAX_VALUE / 2, (long) ((maxY - minY) / grid.cellSize) + 1);
+            if ((long) grid.columns * grid.rows <= (long) MAX_CELLS_PER_BEACON * slots.length + 16) break;
+            grid.cellSize *= 2;
+        }
+
+        // Counting sort of the slots by cell
+        int cells = grid.columns * grid.rows;
+        grid.cellStart = new int[cells + 1];
+        int[] cellOf = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            iBeacon beacon = registry.get(slots[i]);
+            cellOf[i] = grid.row(beacon.getY()) * grid.columns + grid.column(beacon.getX());
+            grid.cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            grid.cellStart[c + 1] += grid.cellStart[c];
+        }
+        int[] next = new int[cells];
+        System.arraycopy(grid.cellStart, 0, next, 0, cells);
+        grid.slots = new int[slots.length];
+        grid.x = new double[slots.length];
+        grid.y = new double[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            int entry = next[cellOf[i]]++;
+            iBeacon beacon = registry.get(slots[i]);
+            grid.slots[entry] = slots[i];
+            grid.x[entry] = beacon.getX();
+            grid.y[entry] = beacon.getY();
+        }
+        return grid;
+    }
+
+    /**
+     * @return frame the coordinates of the queries are in, null if the registry is empty
+     */
+    public LocalFrame getFrame() {
+        return this.frame;
+    }
+
+    /**
+     * Finds the beacons on a floor within a radius of a point, in no particular order
+     * @param floor floor number
+     * @param x metres east of the frame origin
+     * @param y metres north of the frame origin
+     * @param radius radius in metres
+     * @param out slots found, at most out.length are written
+     * @return number of slots written
+     */
+    public int radius(int floor, double x, double y, double radius, int[] out) {
+        Floor grid = floor(floor);
+        if (grid == null || !(radius >= 0)) return 0;
+        double r2 = radius * radius;
+        int columnFrom = grid.column(x - radius);
+        int columnTo = grid.column(x + radius);
+        int rowFrom = grid.row(y - radius);
+        int rowTo = grid.row(y + radius);
+
+        int count = 0;
+        for (int row = rowFrom; row <= rowTo; row++) {
+            int from = grid.cellStart[row * grid.columns + columnFrom];
+            int to = grid.cellStart[row * grid.columns + columnTo + 1];
+            for (int e = from; e < to; e++) {
+                double dx = grid.x[e] - x;
+                double dy = grid.y[e] - y;
+                if (dx * dx + dy * dy <= r2) {
+                    if (count == out.length) return count;
+                    out[count++] = grid.slots[e];
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the beacons on a floor inside a rectangle, such as the visible region of the map
+     * @param floor floor number
+     * @param minX west edge in metres east of the frame origin
+     * @param minY south edge in metres north of the frame origin
+     * @param maxX east edge in metres east of the frame origin
+     * @param maxY north edge in metres north of the frame origin
+     * @param out slots found, at most out.length are written
+     * @return number of slots written
+     */
+    public int within(int floor, double minX, double minY, double maxX, double maxY, int[] out) {
+        Floor grid = floor(floor);
+        if (grid == null || !(minX <= maxX) || !(minY <= maxY)) return 0;
+        int columnFrom = grid.column(minX);
+        int columnTo = grid.column(maxX);
+        int rowFrom = grid.row(minY);
+        int rowTo = grid.row(maxY);
+
+        int count = 0;
+        for (int row = rowFrom; row <= rowTo; row++) {
+            int from = grid.cellStart[row * grid.columns + columnFrom];
+            int to = grid.cellStart[row * grid.columns + columnTo + 1];
+            for (int e = from; e < to; e++) {
+                if (grid.x[e] >= minX && grid.x[e] <= maxX && grid.y[e] >= minY && grid.y[e] <= maxY) {
+                    if (count == out.length) return count;
+                    out[count++] = grid.slots[e];
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the k beacons on a floor nearest to a point by searching rings of cells outwards
+     * @param floor floor number
+     * @param x metres east of the frame origin
+     * @param y metres north of the frame origin
+     * @param k number of beacons wanted, at most the length of both output arrays
+     * @param slots slots found, nearest first
+     * @param squaredDistances squared distance in square metres of each slot found
+     * @return number of slots written, less than k if the floor has fewer beacons
+     */
+    public int nearest(int floor, double x, double y, int k, int[] slots, double[] squaredDistances) {
+        Floor grid = floor(floor);
+        k = Math.min(k, Math.min(slots.length, squaredDistances.length));
+        if (grid == null || k <= 0) return 0;
+
+        int centerColumn = grid.column(x);
+        int centerRow = grid.row(y);
+        int rings = Math.max(Math.max(centerColumn, grid.columns - 1 - centerColumn),
+                Math.max(centerRow, grid.rows - 1 - centerRow));
+        int size = 0;    // slots and squaredDistances hold a max heap on the distance while searching
+
+        for (int ring = 0; ring <= rings; ring++) {
+            if (size == k && ring > 0 && square(ringBound(grid, x, y, centerColumn, centerRow, ring)) > squaredDistances[0]) {
+                break;    // no cell of this ring can be closer than the current k-th nearest
+            }
+            int rowFrom = Math.max(0, centerRow - ring);
+            int rowTo = Math.min(grid.rows - 1, centerRow + ring);
+            for (int row = rowFrom; row <= rowTo; row++) {
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int column = centerColumn - ring; column <= centerColumn + ring; column += Math.max(1, step)) {
+                    if (column < 0 || column >= grid.columns) continue;
+                    int cell = row * grid.columns + column;
+                    for (int e = grid.cellStart[cell]; e < grid.cellStart[cell + 1]; e++) {
+                        double dx = grid.x[e] - x;
+                        double dy = grid.y[e] - y;
+                        double d2 = dx * dx + dy * dy;
+                        if (size < k) {
+                            siftUp(slots, squaredDistances, size++, grid.slots[e], d2);
+                        } else if (d2 < squaredDistances[0]) {
+                            siftDown(slots, squaredDistances, size, grid.slots[e], d2);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Heap sort into ascending distance
+        for (int end = size - 1; end > 0; end--) {
+            int slot = slots[end];
+            double d2 = squaredDistances[end];
+            slots[end] = slots[0];
+            squaredDistances[end] = squaredDistances[0];
+            siftDown(slots, squaredDistances, end, slot, d2);
+        }
+        return size;
+    }
+
+    /**
+     * Lower bound of the distance from the point to any cell of a ring, the distance to leave the rings inside it
+     */
+    private static double ringBound(Floor grid, double x, double y, int centerColumn, int centerRow, int ring) {
+        double left = grid.minX + (centerColumn - ring + 1) * grid.cellSize;
+        double right = grid.minX + (centerColumn + ring) * grid.cellSize;
+        double bottom = grid.minY + (centerRow - ring + 1) * grid.cellSize;
+        double top = grid.minY + (centerRow + ring) * grid.cellSize;
+        if (x < left || x > right || y < bottom || y > top) return 0;    // point outside the grid
+        return Math.min(Math.min(x - left, right - x), Math.min(y - bottom, top - y));
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    private static void siftUp(int[] slots, double[] d2, int index, int slot, double distance) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (d2[parent] >= distance) break;
+            slots[index] = slots[parent];
+            d2[index] = d2[parent];
+            index = parent;
+        }
+        slots[index] = slot;
+        d2[index] = distance;
+    }
+
+    /**
+     * Replaces the root of the max heap and restores the heap
+     */
+    private static void siftDown(int[] slots, double[] d2, int size, int slot, double distance) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) break;
+            if (child + 1 < size && d2[child + 1] > d2[child]) child++;
+            if (d2[child] <= distance) break;
+            slots[index] = slots[child];
+            d2[index] = d2[child];
+            index = child;
+        }
+        slots[index] = slot;
+        d2[index] = distance;
+    }
+
+    private Floor floor(int floor) {
+        int f = floor - this.lowestFloor;
+        return f >= 0 && f < this.floors.length ? this.floors[f] : null;
+    }
+
+    /**
+     * Column and row of a coordinate, clamped to the grid
+     */
+    private static int clamp(double cell, int cells) {
+        if (!(cell >= 0)) return 0;    // also NaN
+        return cell >= cells ? cells - 1 : (int) cell;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.localization;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * This class indexes the known beacons by MAC address.
+ * Every beacon gets a dense slot number in [0, size) that other components can use to index primitive arrays.
+ * Lookups go through an open-addressing table of packed addresses, so they take constant time and do not allocate.
+ * The registry is not modified after construction and can be read from any thread.
+ */
+public class BeaconRegistry {
+    private static final long EMPTY = MacAddress.INVALID;
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final long[] keys;    // packed MAC address per table position, EMPTY if unused
+    private final int[] values;   // slot per table position
+    private final int mask;
+
+    private final iBeacon[] beacons;    // beacon per slot
+    private final int lowestFloor;
+    private final int[][] floors;       // slots per floor, indexed by floor - lowestFloor
+
+    /**
+     * Builds the registry for the given catalogue.
+     * Beacons without a valid MAC address are left out, for duplicate addresses the last one wins.
+     * @param catalogue all known beacons
+     */
+    public BeaconRegistry(Collection<iBeacon> catalogue) {
+        int capacity = Integer.highestOneBit(Math.max(2, catalogue.size()) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(this.keys, EMPTY);
+
+        iBeacon[] slots = new iBeacon[catalogue.size()];
+        int size = 0;
+        for (iBeacon beacon : catalogue) {
+            long address = MacAddress.parse(beacon.getMac());
+            if (address == EMPTY) continue;
+
+            int index = indexOf(address);
+            if (this.keys[index] == address) {
+                slots[this.values[index]] = beacon;
+            } else {
+                this.keys[index] = address;
+                this.values[index] = size;
+                slots[size++] = beacon;
+            }
+        }
+        this.beacons = Arrays.copyOf(slots, size);
+
+        // Secondary index of slots per floor
+        int lowestFloor = Integer.MAX_VALUE;
+        int highestFloor = Integer.MIN_VALUE;
+        for (iBeacon beacon : this.beacons) {
+            lowestFloor = Math.min(lowestFloor, beacon.getFloor());
+            highestFloor = Math.max(highestFloor, beacon.getFloor());
+        }
+        this.lowestFloor = size == 0 ? 0 : lowestFloor;
+        int floorCount = size == 0 ? 0 : highestFloor - lowestFloor + 1;
+        int[] counts = new int[floorCount];
+        for (iBeacon beacon : this.beacons) {
+            counts[beacon.getFloor() - this.lowestFloor]++;
+        }
+        this.floors = new int[floorCount][];
+        for (int f = 0; f < floorCount; f++) {
+            this.floors[f] = new int[counts[f]];
+            counts[f] = 0;
+        }
+        for (int slot = 0; slot < size; slot++) {
+            int f = this.beacons[slot].getFloor() - this.lowestFloor;
+            this.floors[f][counts[f]++] = slot;
+        }
+    }
+
+    /**
+     * Finds the table position of the given address by linear probing
+     * @param address packed MAC address
+     * @return position holding the address, or the empty position where it would be inserted
+     */
+    private int indexOf(long address) {
+        int index = mix(address) & this.mask;
+        while (this.keys[index] != EMPTY && this.keys[index] != address) {
+            index = (index + 1) & this.mask;
+        }
+        return index;
+    }
+
+    /**
+     * Spreads the bits of an address, consecutive MAC addresses would otherwise cluster
+     * @param address packed MAC address
+     * @return hash of the address
+     */
+    private static int mix(long address) {
+        long h = address * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @param address packed MAC address, see {@link MacAddress#parse(CharSequence)}
+     * @return slot of the beacon, or -1 if the beacon is unknown
+     */
+    public int slotOf(long address) {
+        if (address == EMPTY) return -1;
+        int index = indexOf(address);
+        return this.keys[index] == address ? this.values[index] : -1;
+    }
+
+    /**
+     * @param mac textual MAC address
+     * @return slot of the beacon, or -1 if the beacon is unknown
+     */
+    public int slotOf(String mac) {
+        return slotOf(MacAddress.parse(mac));
+    }
+
+    /**
+     * @param slot slot of a beacon
+     * @return the beacon in that slot
+     */
+    public iBeacon get(int slot) {
+        return this.beacons[slot];
+    }
+
+    /**
+     * @param mac textual MAC address
+     * @return the beacon with that address, or null if it is unknown
+     */
+    public iBeacon find(String mac) {
+        int slot = slotOf(mac);
+        return slot < 0 ? null : this.beacons[slot];
+    }
+
+    /**
+     * @return number of known beacons, slots range from 0 to size - 1
+     */
+    public int size() {
+        return this.beacons.length;
+    }
+
+    /**
+     * @return lowest floor in the catalogue
+     */
+    public int getLowestFloor() {
+        return this.lowestFloor;
+    }
+
+    /**
+     * @return highest floor in the catalogue
+     */
+    public int getHighestFloor() {
+        return this.lowestFloor + this.floors.length - 1;
+    }
+
+    /**
+     * Returns the slots of all beacons on a floor. The array is shared and must not be modified.
+     * @param floor floor number
+     * @return slots on that floor, empty if there are none
+     */
+    public int[] slotsOnFloor(int floor) {
+        int f = floor - this.lowestFloor;
+        return f >= 0 && f < this.floors.length ? this.floors[f] : NO_SLOTS;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.localization;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This interface parses a beacon catalogue response of the API.
+ * The response is an array of rows [mac_address, longitude, latitude, floor].
+ * In a delta response a row whose longitude, latitude or floor is null removes the beacon.
+ */
+public interface CatalogueParser {
+    /**
+     * Receives the rows of a response in order.
+     */
+    interface Sink {
+        /**
+         * @param mac mac_address, only valid during the call
+         * @param longitude longitude of the beacon
+         * @param latitude latitude of the beacon
+         * @param floor floor number
+         */
+        void beacon(CharSequence mac, double longitude, double latitude, int floor);
+
+        /**
+         * @param mac mac_address of a beacon that no longer exists
+         */
+        void removed(CharSequence mac);
+    }
+
+    /**
+     * Parses a response and passes its rows to the sink.
+     * The stream is read to the end but not closed.
+     * @param in response body
+     * @param sink receiver of the rows
+     * @throws IOException if the body can not be read or is malformed
+     */
+    void parse(InputStream in, Sink sink) throws IOException;
+}
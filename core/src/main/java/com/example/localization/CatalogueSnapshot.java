@@ -0,0 +1,205 @@
+package com.example.localization;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class is an immutable copy of the beacon catalogue together with the ETag it was served with.
+ * It is persisted in a compact big endian binary file that is loaded through a memory map:
+ * <pre>
+ * header: int magic 'LCAT', short version, short ETag length, ETag (UTF-8), int count
+ * row:    long packed MAC, double longitude, double latitude, int floor
+ * </pre>
+ */
+public final class CatalogueSnapshot {
+    static final int MAGIC = 0x4C434154;
+    static final short VERSION = 1;
+    static final int ROW_SIZE = 8 + 8 + 8 + 4;
+
+    /** Catalogue without beacons, used before anything was downloaded. */
+    public static final CatalogueSnapshot EMPTY = new CatalogueSnapshot(null, new long[0], new double[0], new double[0], new int[0], 0);
+
+    private final String etag;
+    private final long[] addresses;
+    private final double[] longitudes;
+    private final double[] latitudes;
+    private final int[] floors;
+    private final int count;
+
+    /**
+     * Create a snapshot, the arrays are owned by the snapshot from now on.
+     * @param etag ETag of the response the catalogue was built from, may be null
+     * @param addresses packed MAC addresses
+     * @param longitudes longitudes
+     * @param latitudes latitudes
+     * @param floors floor numbers
+     * @param count number of beacons
+     */
+    CatalogueSnapshot(String etag, long[] addresses, double[] longitudes, double[] latitudes, int[] floors, int count) {
+        this.etag = etag;
+        this.addresses = addresses;
+        this.longitudes = longitudes;
+        this.latitudes = latitudes;
+        this.floors = floors;
+        this.count = count;
+    }
+
+    /**
+     * Loads a snapshot file
+     * @param file snapshot file
+     * @return the snapshot
+     * @throws IOException if the file can not be read or is not a snapshot
+     */
+    public static CatalogueSnapshot read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return read(raf.getChannel(), 0, raf.length());
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Loads a snapshot stored in a region of a file, such as an uncompressed asset inside an APK
+     * @param channel channel of the file
+     * @param offset start of the snapshot in the file
+     * @param length length of the snapshot
+     * @return the snapshot
+     * @throws IOException if the region can not be read or is not a snapshot
+     */
+    public static CatalogueSnapshot read(FileChannel channel, long offset, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        try {
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a catalogue snapshot");
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            byte[] tag = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(tag);
+            String etag = tag.length > 0 ? new String(tag, StandardCharsets.UTF_8) : null;
+
+            int count = buffer.getInt();
+            if (count < 0 || buffer.remaining() < (long) count * ROW_SIZE) {
+                throw new IOException("Truncated snapshot");
+            }
+            long[] addresses = new long[count];
+            double[] longitudes = new double[count];
+            double[] latitudes = new double[count];
+            int[] floors = new int[count];
+            for (int i = 0; i < count; i++) {
+                addresses[i] = buffer.getLong();
+                longitudes[i] = buffer.getDouble();
+                latitudes[i] = buffer.getDouble();
+                floors[i] = buffer.getInt();
+            }
+            return new CatalogueSnapshot(etag, addresses, longitudes, latitudes, floors, count);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+    }
+
+    /**
+     * Create a snapshot of a set of beacons, for example of a beacon list read by {@link ExcelReader}.
+     * Beacons without a valid MAC address are left out.
+     * @param etag version of the beacons, may be null
+     * @param beacons beacons to copy
+     * @return the snapshot
+     */
+    public static CatalogueSnapshot of(String etag, Collection<iBeacon> beacons) {
+        long[] addresses = new long[beacons.size()];
+        double[] longitudes = new double[beacons.size()];
+        double[] latitudes = new double[beacons.size()];
+        int[] floors = new int[beacons.size()];
+        int count = 0;
+        for (iBeacon beacon : beacons) {
+            if (beacon.getAddress() == MacAddress.INVALID) continue;
+            addresses[count] = beacon.getAddress();
+            longitudes[count] = beacon.getLongitude();
+            latitudes[count] = beacon.getLatitude();
+            floors[count] = beacon.getFloor();
+            count++;
+        }
+        return new CatalogueSnapshot(etag, addresses, longitudes, latitudes, floors, count);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and renames it over the target,
+     * so a crash never leaves a half written snapshot behind.
+     * @param file snapshot file
+     * @throws IOException if the file can not be written
+     */
+    public void write(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        byte[] tag = this.etag != null ? this.etag.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(tag.length);
+            out.write(tag);
+            out.writeInt(this.count);
+            for (int i = 0; i < this.count; i++) {
+                out.writeLong(this.addresses[i]);
+                out.writeDouble(this.longitudes[i]);
+                out.writeDouble(this.latitudes[i]);
+                out.writeInt(this.floors[i]);
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Creates new beacon objects for the catalogue, the caller is free to project or modify them
+     * @return list of all beacons
+     */
+    public List<iBeacon> beacons() {
+        List<iBeacon> beacons = new ArrayList<>(this.count);
+        for (int i = 0; i < this.count; i++) {
+            beacons.add(new iBeacon(MacAddress.format(this.addresses[i]),
+                    new Location(this.longitudes[i], this.latitudes[i]), this.floors[i]));
+        }
+        return beacons;
+    }
+
+    /**
+     * @return ETag of the response the catalogue was built from, or null
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    long getAddress(int index) {
+        return addresses[index];
+    }
+
+    double getLongitude(int index) {
+        return longitudes[index];
+    }
+
+    double getLatitude(int index) {
+        return latitudes[index];
+    }
+
+    int getFloor(int index) {
+        return floors[index];
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.localization;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class keeps a local snapshot of the beacon catalogue in sync with the API.
+ * <p>
+ * A request carries the ETag of the local snapshot in If-None-Match and asks for a delta with "A-IM: delta".
+ * The API answers with
+ * <ul>
+ *     <li>304 Not Modified when the snapshot is current,</li>
+ *     <li>226 IM Used with only the changed rows, where a row with null fields removes a beacon,</li>
+ *     <li>200 OK with the full catalogue, which is what a server without delta support sends.</li>
+ * </ul>
+ * Every new catalogue is persisted before it is returned, so the next start can use it without the network.
+ * The methods block and are meant to be called from a background thread.
+ */
+public class CatalogueSync {
+    public static final int IM_USED = 226;
+    private static final int TIMEOUT = 10000;    // milliseconds
+    private static final Histogram LOAD_TIME = Metrics.shared().histogram("catalogue.load", "ns");
+    private static final Histogram SYNC_TIME = Metrics.shared().histogram("catalogue.sync", "ns");
+
+    private final URL url;
+    private final File file;
+    private final CatalogueParser parser;
+    private CatalogueSnapshot snapshot = CatalogueSnapshot.EMPTY;
+    private int lastStatus;
+
+    /**
+     * Create a sync for an API endpoint.
+     * @param url catalogue endpoint
+     * @param file file the snapshot is persisted in
+     * @param parser parser of the response body
+     */
+    public CatalogueSync(URL url, File file, CatalogueParser parser) {
+        this.url = url;
+        this.file = file;
+        this.parser = parser;
+    }
+
+    /**
+     * Loads the persisted snapshot if there is one. A corrupt snapshot is treated as missing.
+     * @return the persisted catalogue, empty if there is none
+     */
+    public CatalogueSnapshot load() {
+        long start = System.nanoTime();
+        if (this.file.isFile()) {
+            try {
+                this.snapshot = CatalogueSnapshot.read(this.file);
+            } catch (IOException e) {
+                e.printStackTrace();
+                this.snapshot = CatalogueSnapshot.EMPTY;
+            }
+        }
+        LOAD_TIME.recordSince(start);
+        return this.snapshot;
+    }
+
+    /**
+     * Revalidates the catalogue against the API
+     * @return the new catalogue, or null if the local snapshot is still current
+     * @throws IOException if the request fails or the response is malformed
+     */
+    public CatalogueSnapshot sync() throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) this.url.openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (this.snapshot.getETag() != null) {
+                connection.setRequestProperty("If-None-Match", this.snapshot.getETag());
+                connection.setRequestProperty("A-IM", "delta");
+            }
+
+            this.lastStatus = connection.getResponseCode();
+            if (this.lastStatus == HttpURLConnection.HTTP_NOT_MODIFIED) return null;
+            if (this.lastStatus != HttpURLConnection.HTTP_OK && this.lastStatus != IM_USED) {
+                throw new IOException("Unexpected response " + this.lastStatus + " from " + this.url);
+            }
+
+            // A delta applies to the local snapshot, a full response replaces it
+            Merge merge = new Merge(this.lastStatus == IM_USED ? this.snapshot : CatalogueSnapshot.EMPTY);
+            try (InputStream in = body(connection)) {
+                this.parser.parse(in, merge);
+            }
+            CatalogueSnapshot updated = merge.build(connection.getHeaderField("ETag"));
+            updated.write(this.file);
+            this.snapshot = updated;
+            return updated;
+        } finally {
+            connection.disconnect();
+            SYNC_TIME.recordSince(start);
+        }
+    }
+
+    private static InputStream body(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        return "gzip".equalsIgnoreCase(connection.getContentEncoding()) ? new GZIPInputStream(in) : in;
+    }
+
+    /**
+     * @return the current catalogue
+     */
+    public CatalogueSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return status code of the last response
+     */
+    public int getLastStatus() {
+        return lastStatus;
+    }
+
+    /**
+     * Applies parsed rows to a copy of a snapshot
+     */
+    private static final class Merge implements CatalogueParser.Sink {
+        private final Map<Long, Integer> index = new HashMap<>();
+        private long[] addresses;
+        private double[] longitudes;
+        private double[] latitudes;
+        private int[] floors;
+        private int count;
+        private int removed;
+
+        Merge(CatalogueSnapshot base) {
+            int capacity = Math.max(16, base.size());
+            this.addresses = new long[capacity];
+            this.longitudes = new double[capacity];
+            this.latitudes = new double[capacity];
+            this.floors = new int[capacity];
+            for (int i = 0; i < base.size(); i++) {
+                this.beacon(base.getAddress(i), base.getLongitude(i), base.getLatitude(i), base.getFloor(i));
+            }
+        }
+
+        @Override
+        public void beacon(CharSequence mac, double longitude, double latitude, int floor) {
+            long address = MacAddress.parse(mac);
+            if (address != MacAddress.INVALID) this.beacon(address, longitude, latitude, floor);
+        }
+
+        private void beacon(long address, double longitude, double latitude, int floor) {
+            Integer existing = this.index.get(address);
+            int i;
+            if (existing != null) {
+                i = existing;
+                if (this.addresses[i] == MacAddress.INVALID) this.removed--;    // removed earlier in the same delta
+            } else {
+                if (this.count == this.addresses.length) this.grow();
+                i = this.count++;
+                this.index.put(address, i);
+            }
+            this.addresses[i] = address;
+            this.longitudes[i] = longitude;
+            this.latitudes[i] = latitude;
+            this.floors[i] = floor;
+        }
+
+        @Override
+        public void removed(CharSequence mac) {
+            Integer existing = this.index.get(MacAddress.parse(mac));
+            if (existing != null && this.addresses[existing] != MacAddress.INVALID) {
+                this.addresses[existing] = MacAddress.INVALID;
+                this.removed++;
+            }
+        }
+
+        private void grow() {
+            int capacity = this.addresses.length * 2;
+            this.addresses = Arrays.copyOf(this.addresses, capacity);
+            this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+            this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+            this.floors = Arrays.copyOf(this.floors, capacity);
+        }
+
+        CatalogueSnapshot build(String etag) {
+            // Compact the removed rows away
+            int size = this.count - this.removed;
+            long[] a = new long[size];
+            double[] lon = new double[size];
+            double[] lat = new double[size];
+            int[] f = new int[size];
+            int j = 0;
+            for (int i = 0; i < this.count; i++) {
+                if (this.addresses[i] == MacAddress.INVALID) continue;
+                a[j] = this.addresses[i];
+                lon[j] = this.longitudes[i];
+                lat[j] = this.latitudes[i];
+                f[j] = this.floors[i];
+                j++;
+            }
+            return new CatalogueSnapshot(etag, a, lon, lat, f, size);
+        }
+    }
+}
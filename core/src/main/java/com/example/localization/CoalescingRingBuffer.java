@@ -0,0 +1,84 @@
+package com.example.localization;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is a lock-free ring buffer for one producer and one consumer where only the newest element matters.
+ * When the buffer is full the producer overwrites the oldest element instead of blocking,
+ * and the consumer always takes the newest element and skips everything older.
+ * @param <T> element type
+ */
+public class CoalescingRingBuffer<T> {
+    private final AtomicReferenceArray<T> elements;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();    // sequence of the next element to write
+    private final AtomicLong tail = new AtomicLong();    // sequence of the next element to read
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Create a ring buffer.
+     * @param capacity number of elements, rounded up to a power of two
+     */
+    public CoalescingRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an element, overwriting the oldest one if the buffer is full. Called by the producer only.
+     * @param element element to add
+     */
+    public void offer(T element) {
+        long sequence = this.head.get();
+        if (sequence - this.tail.get() > this.mask) {
+            this.dropped.incrementAndGet();
+        }
+        this.elements.set((int) (sequence & this.mask), element);
+        this.head.set(sequence + 1);
+    }
+
+    /**
+     * Takes the newest element and discards all older ones. Called by the consumer only.
+     * If the producer laps the consumer during the call, an even newer element may be returned instead.
+     * @return the newest element, or null if there is nothing new since the last call
+     */
+    public T pollLatest() {
+        long sequence = this.head.get();
+        long last = this.tail.get();
+        if (sequence == last) return null;
+
+        T element = this.elements.get((int) ((sequence - 1) & this.mask));
+        this.coalesced.addAndGet(Math.min(sequence - 1 - last, this.mask));
+        this.tail.set(sequence);
+        return element;
+    }
+
+    /**
+     * @return number of elements written but not yet consumed or skipped, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(this.head.get() - this.tail.get(), this.mask + 1);
+    }
+
+    /**
+     * @return number of elements overwritten before the consumer got to them
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return number of elements skipped because a newer one was available
+     */
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class smooths RSSI samples with an exponential moving average per beacon.
+ */
+public class EmaRssiFilter implements RssiFilter {
+    static final double DEFAULT_ALPHA = 0.25;
+
+    private final double alpha;
+    private final double[] average;    // NaN if the slot has no samples yet
+
+    /**
+     * Create a filter with the default smoothing factor.
+     * @param capacity number of slots, the size of the registry
+     */
+    public EmaRssiFilter(int capacity) {
+        this(capacity, DEFAULT_ALPHA);
+    }
+
+    /**
+     * Create a filter.
+     * @param capacity number of slots, the size of the registry
+     * @param alpha weight of a new sample in (0, 1], higher follows changes faster
+     */
+    public EmaRssiFilter(int capacity, double alpha) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("alpha must be in (0, 1], got " + alpha);
+        }
+        this.alpha = alpha;
+        this.average = new double[capacity];
+        Arrays.fill(this.average, Double.NaN);
+    }
+
+    @Override
+    public double update(int slot, double rssi) {
+        double previous = this.average[slot];
+        this.average[slot] = Double.isNaN(previous) ? rssi : previous + this.alpha * (rssi - previous);
+        return this.average[slot];
+    }
+
+    @Override
+    public void reset(int slot) {
+        this.average[slot] = Double.NaN;
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.localization;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * This class represents an Excel Reader object.
+ * The first sheet is streamed through the XSSF event model, so only the current row is held in memory
+ * instead of the DOM of the whole workbook. Every row becomes a beacon as soon as it ends.
+ * The workbook is opened from a file, so POI reads the zip entries it needs from disk instead of
+ * copying the whole package into memory. A stream is staged to a temporary file first.
+ * The beacons are not projected, that is left to whoever builds the localization state from them.
+ */
+public class ExcelReader {
+    private Set<iBeacon> allBeacons; // Stores all beacon objects retrieved from the Excel document
+
+    private static final int ID_INDEX = 0;
+    private static final int NAME_INDEX = 1;
+    private static final int MAC_INDEX = 2;
+    private static final int LONGITUDE_INDEX = 3;
+    private static final int LATITUDE_INDEX = 4;
+    private static final int FLOOR_INDEX = 5;
+    private static final int COLUMNS = 6;
+
+    /**
+     * Disallowing use of empty constructor
+     */
+    private ExcelReader() {}
+
+    /**
+     * Constructor initializes this object with a workbook file and fetches all beacons
+     * @param file workbook to read from
+     * @throws IOException if the workbook can not be read or a row is malformed
+     */
+    public ExcelReader(File file) throws IOException {
+        this.allBeacons = new HashSet<>();
+        this.fetchAllBeacons(file);
+    }
+
+    /**
+     * Constructor initializes this object with an input streamer and fetches all beacons.
+     * The stream is copied to a temporary file that is deleted again once the beacons are read.
+     * @param in Input stream object to read from
+     * @throws IOException if the workbook can not be read or a row is malformed
+     */
+    public ExcelReader(InputStream in) throws IOException {
+        this.allBeacons = new HashSet<>();
+        File file = File.createTempFile("beacons", ".xlsx");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) > 0) {
+                    out.write(chunk, 0, read);
+                }
+            }
+            this.fetchAllBeacons(file);
+        } finally {
+            if (!file.delete()) file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Fetches all the beacons from the excel file
+     * @param file workbook to read from
+     * @throws IOException if the workbook can not be read or a row is malformed
+     */
+    private void fetchAllBeacons(File file) throws IOException {
+        OPCPackage workbook = null;
+        try {
+            workbook = OPCPackage.open(file, PackageAccess.READ);
+            XSSFReader reader = new XSSFReader(workbook);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(workbook);
+
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader parser = factory.newSAXParser().getXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), strings,
+                    new RowHandler(), new DataFormatter(), false));
+
+            //Stream the first/desired sheet from the workbook
+            try (InputStream sheet = reader.getSheetsData().next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Could not read the beacon list", e);
+        } catch (MalformedRowException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            // A read-only package is released with revert, close would try to save it
+            if (workbook != null) workbook.revert();
+        }
+    }
+
+    public Set<iBeacon> getAllBeacons() {
+        return this.allBeacons;
+    }
+
+    /**
+     * Collects the cells of a row and turns a complete row into a beacon
+     */
+    private final class RowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final String[] cells = new String[COLUMNS];
+
+        @Override
+        public void startRow(int rowNum) {
+            for (int i = 0; i < COLUMNS; i++) {
+                this.cells[i] = null;
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = column(cellReference);
+            if (column >= 0 && column < COLUMNS) this.cells[column] = formattedValue;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            // Ignore first row and empty rows
+            if (rowNum == 0 || this.cells[MAC_INDEX] == null) return;
+
+            try {
+                // Get values from Excel document
+                int id = (int) Double.parseDouble(this.cells[ID_INDEX]);
+                String name = this.cells[NAME_INDEX];
+                String mac = this.cells[MAC_INDEX];
+                double longitude = Double.parseDouble(this.cells[LONGITUDE_INDEX]);
+                double latitude = Double.parseDouble(this.cells[LATITUDE_INDEX]);
+                Location location = new Location(longitude, latitude);
+                int floor = (int) Double.parseDouble(this.cells[FLOOR_INDEX]);
+
+                // Create iBeacon object and add to set
+                allBeacons.add(new iBeacon(id, name, mac, location, floor));
+            } catch (NullPointerException | NumberFormatException e) {
+                throw new MalformedRowException("Malformed beacon in row " + (rowNum + 1));
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {}
+
+        /**
+         * @param reference cell reference such as "C12"
+         * @return zero based column index of the reference
+         */
+        private int column(String reference) {
+            if (reference == null) return -1;
+            int column = 0;
+            for (int i = 0; i < reference.length(); i++) {
+                char c = reference.charAt(i);
+                if (c < 'A' || c > 'Z') break;
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+    }
+
+    /**
+     * Carries a malformed row out of the SAX callbacks
+     */
+    private static final class MalformedRowException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedRowException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class locates the user by matching the signal strengths of a scan against a surveyed {@link RadioMap}
+ * with weighted k nearest neighbours, instead of trilaterating distances like {@link LocationFinder}.
+ * The distance between a scan and a reference point is the squared difference in dBm over all beacons, where a
+ * beacon that was not heard counts as -100 dBm, so a point only costs as much as the beacons heard there.
+ * Only the partitions of the few strongest beacons of the scan are searched, which keeps a lookup well below a
+ * millisecond on maps with 100k reference points; when they hold fewer than k points the whole map is searched.
+ * The floor is a vote of the neighbours weighted by similarity, and the location is the weighted mean of the
+ * neighbours on that floor. A scan without any surveyed beacon gives no estimate, see {@link Localizer#locate}.
+ * A localizer keeps scratch arrays and its last fix, and is called from one thread at a time.
+ */
+public class FingerprintLocalizer implements Localizer {
+    static final int DEFAULT_NEIGHBOURS = 4;
+    static final int DEFAULT_STRONGEST = 3;
+
+    private static final Histogram CANDIDATES = Metrics.shared().histogram("fingerprint.candidates", "points");
+
+    private final RadioMap map;
+    private final int neighbours;
+    private final int strongest;
+
+    // Scratch, reused between scans
+    private int[] columns = new int[16];
+    private int[] rssi = new int[16];
+    private int observed;
+    private final int[] query;     // signal strength of the scan per column, -100 where not heard
+    private int queryBase;         // distance of the scan to a point that heard nothing
+    private final int[] searched;
+    private final int[] searchedRssi;
+    private final int[] nearest;
+    private final int[] nearestDistance;
+    private final int[] nearestFloor;
+
+    private int floor;
+    private double floorConfidence;
+    private boolean located;
+    private double longitude;
+    private double latitude;
+
+    /**
+     * Create a localizer using the 4 nearest neighbours found in the partitions of the 3 strongest beacons.
+     * @param map surveyed radio map
+     */
+    public FingerprintLocalizer(RadioMap map) {
+        this(map, DEFAULT_NEIGHBOURS, DEFAULT_STRONGEST);
+    }
+
+    /**
+     * Create a localizer.
+     * @param map surveyed radio map
+     * @param neighbours number of nearest reference points averaged
+     * @param strongest number of strongest beacons of a scan whose partitions are searched
+     */
+    public FingerprintLocalizer(RadioMap map, int neighbours, int strongest) {
+        if (neighbours < 1 || strongest < 1) {
+            throw new IllegalArgumentException("Neighbours and strongest beacons must be positive");
+        }
+        this.map = map;
+        this.neighbours = neighbours;
+        this.strongest = strongest;
+        this.query = new int[map.getBeaconCount()];
+        Arrays.fill(this.query, RadioMap.MISSING_RSSI);
+        this.searched = new int[strongest];
+        this.searchedRssi = new int[strongest];
+        this.nearest = new int[neighbours];
+        this.nearestDistance = new int[neighbours];
+        this.nearestFloor = new int[neighbours];
+    }
+
+    /**
+     * Estimates the current location. When none of the beacons of the scan was surveyed the previous fix is
+     * written again, or nothing before the first fix, and the error is infinite.
+     * @param snapshot snapshot of the active beacons, must not be empty
+     * @param result location the estimate is written to
+     * @return weighted spread of the neighbours around the estimate in square metres
+     */
+    @Override
+    public double locate(ScanSnapshot snapshot, Location result) {
+        int count = snapshot.getCount();
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one beacon is needed, got " + count);
+        }
+        int observed = observe(snapshot);
+        if (observed == 0) return keepLastFix(result);
+
+        int found = 0;
+        int candidates = 0;
+        int searchedColumns = selectStrongest(observed);
+        for (int s = 0; s < searchedColumns; s++) {
+            int column = this.searched[s];
+            for (int p = this.map.firstPartition(column); p < this.map.endPartition(column); p++) {
+                found = search(this.map.partitionStart(p), this.map.partitionCount(p), this.map.partitionFloor(p),
+                        found);
+                candidates += this.map.partitionCount(p);
+            }
+        }
+        if (found < this.neighbours) {
+            // Too few points share a strongest beacon with the scan, fall back to the whole map
+            found = 0;
+            candidates = this.map.size();
+            for (int p = 0; p < this.map.getPartitionCount(); p++) {
+                found = search(this.map.partitionStart(p), this.map.partitionCount(p), this.map.partitionFloor(p),
+                        found);
+            }
+        }
+        CANDIDATES.record(candidates);
+        if (found == 0) return keepLastFix(result);
+        return estimate(found, result);
+    }
+
+    /**
+     * Writes the previous fix, if there is one
+     * @param result location the previous fix is written to
+     * @return infinite error
+     */
+    private double keepLastFix(Location result) {
+        if (this.located) {
+            result.setLongitude(this.longitude);
+            result.setLatitude(this.latitude);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Looks up the columns of the surveyed beacons of a snapshot and fills in the query vector
+     * @param snapshot snapshot of the active beacons
+     * @return number of surveyed beacons, their columns and signal strengths are in the scratch arrays
+     */
+    private int observe(ScanSnapshot snapshot) {
+        // Clear the beacons of the previous scan
+        for (int i = 0; i < this.observed; i++) {
+            this.query[this.columns[i]] = RadioMap.MISSING_RSSI;
+        }
+        int count = snapshot.getCount();
+        if (this.columns.length < count) {
+            this.columns = new int[count];
+            this.rssi = new int[count];
+        }
+        int observed = 0;
+        int base = 0;
+        for (int i = 0; i < count; i++) {
+            int column = this.map.columnOf(snapshot.getAddress()[i]);
+            if (column < 0) continue;
+            int value = Math.max(RadioMap.MISSING_RSSI, Math.min(0, snapshot.getRssi()[i]));
+            this.columns[observed] = column;
+            this.rssi[observed] = value;
+            this.query[column] = value;
+            base += (value - RadioMap.MISSING_RSSI) * (value - RadioMap.MISSING_RSSI);
+            observed++;
+        }
+        this.observed = observed;
+        this.queryBase = base;
+        return observed;
+    }
+
+    /**
+     * Selects the columns of the strongest observed beacons into the searched scratch array
+     * @param observed number of observed beacons
+     * @return number of selected columns
+     */
+    private int selectStrongest(int observed) {
+        int selected = 0;
+        for (int i = 0; i < observed; i++) {
+            int value = this.rssi[i];
+            if (selected == this.strongest && value <= this.searchedRssi[selected - 1]) continue;
+            // Insertion into the list sorted by decreasing signal strength, dropping the weakest when full
+            int at = selected < this.strongest ? selected++ : selected - 1;
+            while (at > 0 && this.searchedRssi[at - 1] < value) {
+                this.searched[at] = this.searched[at - 1];
+                this.searchedRssi[at] = this.searchedRssi[at - 1];
+                at--;
+            }
+            this.searched[at] = this.columns[i];
+            this.searchedRssi[at] = value;
+        }
+        return selected;
+    }
+
+    /**
+     * Scores a range of reference points and merges them into the nearest neighbours
+     * @param start first point of the range
+     * @param length number of points in the range
+     * @param floor floor of the points in the range
+     * @param found number of neighbours found so far
+     * @return number of neighbours found
+     */
+    private int search(int start, int length, int floor, int found) {
+        int[] query = this.query;
+        int end = this.map.firstEntry(start);
+        for (int point = start; point < start + length; point++) {
+            int first = end;
+            end = this.map.firstEntry(point + 1);
+            // The base counts every beacon as not heard by the point, correct it for the beacons that were
+            int distance = this.queryBase;
+            for (int e = first; e < end; e++) {
+                int q = query[this.map.entryColumn(e)];
+                int heard = this.map.entryRssi(e) - q;
+                int missing = RadioMap.MISSING_RSSI - q;
+                distance += heard * heard - missing * missing;
+            }
+
+            if (found == this.neighbours && distance >= this.nearestDistance[found - 1]) continue;
+            int at = found < this.neighbours ? found++ : found - 1;
+            while (at > 0 && this.nearestDistance[at - 1] > distance) {
+                this.nearest[at] = this.nearest[at - 1];
+                this.nearestDistance[at] = this.nearestDistance[at - 1];
+                this.nearestFloor[at] = this.nearestFloor[at - 1];
+                at--;
+            }
+            this.nearest[at] = point;
+            this.nearestDistance[at] = distance;
+            this.nearestFloor[at] = floor;
+        }
+        return found;
+    }
+
+    /**
+     * Votes the floor and averages the neighbours on it
+     * @param found number of neighbours
+     * @param result location the estimate is written to
+     * @return weighted spread of the neighbours on the floor around the estimate in square metres
+     */
+    private double estimate(int found, Location result) {
+        // Vote for the floor, weighted by similarity
+        double total = 0;
+        double bestWeight = 0;
+        int bestFloor = this.nearestFloor[0];
+        for (int i = 0; i < found; i++) {
+            double floorWeight = 0;
+            for (int j = 0; j < found; j++) {
+                if (this.nearestFloor[j] == this.nearestFloor[i]) floorWeight += weight(j);
+            }
+            if (floorWeight > bestWeight) {
+                bestWeight = floorWeight;
+                bestFloor = this.nearestFloor[i];
+            }
+            total += weight(i);
+        }
+        this.floor = bestFloor;
+        this.floorConfidence = bestWeight / total;
+
+        double longitude = 0;
+        double latitude = 0;
+        for (int i = 0; i < found; i++) {
+            if (this.nearestFloor[i] != bestFloor) continue;
+            longitude += weight(i) * this.map.longitude(this.nearest[i]);
+            latitude += weight(i) * this.map.latitude(this.nearest[i]);
+        }
+        longitude /= bestWeight;
+        latitude /= bestWeight;
+
+        double spread = 0;
+        double metresPerDegreeLongitude = LocalFrame.metresPerDegreeLongitude(latitude);
+        for (int i = 0; i < found; i++) {
+            if (this.nearestFloor[i] != bestFloor) continue;
+            double dx = (this.map.longitude(this.nearest[i]) - longitude) * metresPerDegreeLongitude;
+            double dy = (this.map.latitude(this.nearest[i]) - latitude) * LocalFrame.METRES_PER_DEGREE;
+            spread += weight(i) * (dx * dx + dy * dy);
+        }
+
+        this.located = true;
+        this.longitude = longitude;
+        this.latitude = latitude;
+        result.setLongitude(longitude);
+        result.setLatitude(latitude);
+        return spread / bestWeight;
+    }
+
+    /**
+     * @param neighbour index into the nearest neighbours
+     * @return weight of a neighbour, the inverse of its signal distance in dB
+     */
+    private double weight(int neighbour) {
+        return 1 / (Math.sqrt(this.nearestDistance[neighbour]) + 1);
+    }
+
+    @Override
+    public int getFloor() {
+        return this.floor;
+    }
+
+    @Override
+    public double getFloorConfidence() {
+        return this.floorConfidence;
+    }
+}
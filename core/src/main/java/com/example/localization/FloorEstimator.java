@@ -0,0 +1,234 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class estimates the floor with a hidden Markov model over the floors of the catalogue.
+ * The belief is a probability per floor, kept in a double[] indexed by floor - lowest floor. Between scans the user
+ * moves to an adjacent floor with a small probability per second; every scan weighs each floor by the received
+ * power it would see, where beacons on other floors are attenuated per floor in between.
+ * The published floor only changes when another floor has become clearly more likely than it, so the floor does
+ * not flicker between two floors with similar evidence. The probability of the published floor is its confidence.
+ * Updates do not allocate. An estimator keeps state between scans and is called from one thread at a time.
+ */
+public class FloorEstimator {
+    static final double DEFAULT_FLOOR_CHANGE = 0.05;      // probability per second of moving to an adjacent floor
+    static final double DEFAULT_FLOOR_LOSS = 15;          // dB lost per floor between a beacon and the receiver
+    static final double DEFAULT_EVIDENCE_SCALE = 8;       // dB of power making a floor e times as likely
+    static final double DEFAULT_SWITCH_PROBABILITY = 0.9; // probability a new floor needs before it is published
+
+    private static final double MAX_STEP_TIME = 10;       // seconds, longer gaps count as 10 s
+    private static final double MIN_PROBABILITY = 1e-6;   // keeps every floor reachable after a long stay
+
+    private final int lowestFloor;
+    private final double floorChange;
+    private final double evidenceScale;
+    private final double switchProbability;
+
+    private final double[] belief;
+    private final double[] next;
+    private final double[] received;     // mW received from the beacons on each floor
+    private final double[] power;        // dBm each floor would receive
+    private final double[] attenuation;  // factor per number of floors in between
+
+    private boolean initialised;
+    private long lastTimestamp;
+    private int floor;
+
+    /**
+     * Create an estimator with the default parameters over the floors of a catalogue.
+     * @param registry registry of all known beacons, provides the floor range
+     */
+    public FloorEstimator(BeaconRegistry registry) {
+        this(registry.getLowestFloor(), Math.max(registry.getLowestFloor(), registry.getHighestFloor()));
+    }
+
+    /**
+     * Create an estimator with the default parameters.
+     * @param lowestFloor lowest floor of the building
+     * @param highestFloor highest floor of the building
+     */
+    public FloorEstimator(int lowestFloor, int highestFloor) {
+        this(lowestFloor, highestFloor, DEFAULT_FLOOR_CHANGE, DEFAULT_FLOOR_LOSS, DEFAULT_EVIDENCE_SCALE,
+                DEFAULT_SWITCH_PROBABILITY);
+    }
+
+    /**
+     * Create an estimator.
+     * @param lowestFloor lowest floor of the building
+     * @param highestFloor highest floor of the building
+     * @param floorChange probability per second of moving to an adjacent floor
+     * @param floorLoss attenuation in dB per floor between a beacon and the receiver
+     * @param evidenceScale difference in dB of received power that makes a floor e times as likely
+     * @param switchProbability probability another floor needs before it replaces the published floor
+     */
+    public FloorEstimator(int lowestFloor, int highestFloor, double floorChange, double floorLoss,
+                          double evidenceScale, double switchProbability) {
+        if (highestFloor < lowestFloor) {
+            throw new IllegalArgumentException("Highest floor " + highestFloor + " is below lowest floor " + lowestFloor);
+        }
+        this.lowestFloor = lowestFloor;
+        this.floorChange = floorChange;
+        this.evidenceScale = evidenceScale;
+        this.switchProbability = switchProbability;
+        int floors = highestFloor - lowestFloor + 1;
+        this.belief = new double[floors];
+        this.next = new double[floors];
+        this.received = new double[floors];
+        this.power = new double[floors];
+        this.attenuation = new double[floors];
+        for (int d = 0; d < floors; d++) {
+            this.attenuation[d] = Math.pow(10, -floorLoss * d / 10);
+        }
+        reset();
+    }
+
+    /**
+     * Forgets all scans, every floor is equally likely again.
+     */
+    public void reset() {
+        Arrays.fill(this.belief, 1.0 / this.belief.length);
+        this.initialised = false;
+        this.floor = this.lowestFloor;
+    }
+
+    /**
+     * Updates the belief with a snapshot of the active beacons
+     * @param snapshot snapshot of the active beacons
+     * @return the published floor
+     */
+    public int update(ScanSnapshot snapshot) {
+        return update(snapshot.getRssi(), snapshot.getFloor(), snapshot.getCount(), snapshot.getTimestamp());
+    }
+
+    /**
+     * Updates the belief with a scan. Beacons on floors outside the range of the estimator are ignored.
+     * @param rssi received signal strength of each beacon in dBm
+     * @param floor floor number of each beacon
+     * @param count number of beacons
+     * @param timestamp time of the scan in nanoseconds, only differences between scans are used
+     * @return the published floor
+     */
+    public int update(int[] rssi, int[] floor, int count, long timestamp) {
+        int floors = this.belief.length;
+        if (this.initialised) {
+            predict(Math.min(MAX_STEP_TIME, Math.max(0, (timestamp - this.lastTimestamp) / 1e9)));
+        }
+        this.lastTimestamp = timestamp;
+
+        // Received power in mW per floor, beacons on other floors are attenuated by the floors in between
+        Arrays.fill(this.received, 0);
+        boolean heard = false;
+        for (int i = 0; i < count; i++) {
+            int f = floor[i] - this.lowestFloor;
+            if (f < 0 || f >= floors) continue;
+            this.received[f] += Math.pow(10, rssi[i] / 10.0);
+            heard = true;
+        }
+        if (!heard) return this.floor;
+        for (int g = 0; g < floors; g++) {
+            double sum = 0;
+            for (int f = 0; f < floors; f++) {
+                sum += this.received[f] * this.attenuation[Math.abs(f - g)];
+            }
+            this.power[g] = sum;
+        }
+
+        // Likelihood relative to the strongest floor, so the exponent never overflows
+        double strongest = Double.NEGATIVE_INFINITY;
+        for (int g = 0; g < floors; g++) {
+            this.power[g] = 10 * Math.log10(this.power[g]);
+            strongest = Math.max(strongest, this.power[g]);
+        }
+        double total = 0;
+        for (int g = 0; g < floors; g++) {
+            this.belief[g] *= Math.exp((this.power[g] - strongest) / this.evidenceScale);
+            total += this.belief[g];
+        }
+        normalise(total);
+
+        int best = 0;
+        for (int g = 1; g < floors; g++) {
+            if (this.belief[g] > this.belief[best]) best = g;
+        }
+        // The first scan publishes its best floor, after that another floor has to be clearly more likely
+        int published = this.floor - this.lowestFloor;
+        if (!this.initialised || best != published && this.belief[best] >= this.switchProbability) {
+            this.floor = this.lowestFloor + best;
+        }
+        this.initialised = true;
+        return this.floor;
+    }
+
+    /**
+     * Moves belief to the adjacent floors for the time since the last scan
+     * @param seconds time since the last scan
+     */
+    private void predict(double seconds) {
+        int floors = this.belief.length;
+        if (floors == 1) return;
+        double change = Math.min(0.5, this.floorChange * seconds);
+        double total = 0;
+        for (int g = 0; g < floors; g++) {
+            // Half of the change goes up and half down, the top and bottom floors keep the half that has nowhere to go
+            double stay = 1 - change;
+            if (g == 0) stay += change / 2;
+            if (g == floors - 1) stay += change / 2;
+            double value = stay * this.belief[g];
+            if (g > 0) value += change / 2 * this.belief[g - 1];
+            if (g < floors - 1) value += change / 2 * this.belief[g + 1];
+            this.next[g] = value;
+            total += value;
+        }
+        System.arraycopy(this.next, 0, this.belief, 0, floors);
+        normalise(total);
+    }
+
+    private void normalise(double total) {
+        double sum = 0;
+        for (int g = 0; g < this.belief.length; g++) {
+            this.belief[g] = Math.max(MIN_PROBABILITY, this.belief[g] / total);
+            sum += this.belief[g];
+        }
+        for (int g = 0; g < this.belief.length; g++) {
+            this.belief[g] /= sum;
+        }
+    }
+
+    /**
+     * @return the published floor
+     */
+    public int getFloor() {
+        return this.floor;
+    }
+
+    /**
+     * @return probability of the published floor
+     */
+    public double getConfidence() {
+        return this.belief[this.floor - this.lowestFloor];
+    }
+
+    /**
+     * @param floor floor number
+     * @return probability of being on that floor, 0 outside the range of the estimator
+     */
+    public double getProbability(int floor) {
+        int f = floor - this.lowestFloor;
+        return f >= 0 && f < this.belief.length ? this.belief[f] : 0;
+    }
+
+    /**
+     * @return lowest floor of the estimator
+     */
+    public int getLowestFloor() {
+        return this.lowestFloor;
+    }
+
+    /**
+     * @return highest floor of the estimator
+     */
+    public int getHighestFloor() {
+        return this.lowestFloor + this.belief.length - 1;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.localization;
+
+/**
+ * This class solves the multilateration problem by moving to the best of the 4 neighbours
+ * at a fixed step size until no neighbour lowers the error.
+ * It is the original LocationFinder search and is kept as a reference for comparison.
+ */
+public class HillClimbSolver implements PositionSolver {
+    static final double DEFAULT_STEP_SIZE = 1.0;    // metres, roughly the old 0.00001 degree step
+
+    private final double stepSize;
+
+    /**
+     * Create a solver with the default step size.
+     */
+    public HillClimbSolver() {
+        this(DEFAULT_STEP_SIZE);
+    }
+
+    /**
+     * Create a solver with the given step size.
+     * @param stepSize distance to the neighbours in metres
+     */
+    public HillClimbSolver(double stepSize) {
+        this.stepSize = stepSize;
+    }
+
+    @Override
+    public int solve(double[] x, double[] y, double[] distance, int count, double[] position) {
+        double px = position[0];
+        double py = position[1];
+        double error = LevenbergMarquardtSolver.cost(px, py, x, y, distance, count);
+        int iteration = 0;
+        boolean moved = true;
+
+        //keep checking neighbours until all neighbours have more error
+        while (moved) {
+            iteration++;
+            moved = false;
+            double bestX = px;
+            double bestY = py;
+
+            double errorNorth = LevenbergMarquardtSolver.cost(px, py + stepSize, x, y, distance, count);
+            if (errorNorth < error) { error = errorNorth; bestX = px; bestY = py + stepSize; moved = true; }
+            double errorSouth = LevenbergMarquardtSolver.cost(px, py - stepSize, x, y, distance, count);
+            if (errorSouth < error) { error = errorSouth; bestX = px; bestY = py - stepSize; moved = true; }
+            double errorEast = LevenbergMarquardtSolver.cost(px + stepSize, py, x, y, distance, count);
+            if (errorEast < error) { error = errorEast; bestX = px + stepSize; bestY = py; moved = true; }
+            double errorWest = LevenbergMarquardtSolver.cost(px - stepSize, py, x, y, distance, count);
+            if (errorWest < error) { error = errorWest; bestX = px - stepSize; bestY = py; moved = true; }
+
+            px = bestX;
+            py = bestY;
+        }
+
+        position[0] = px;
+        position[1] = py;
+        return iteration;
+    }
+}
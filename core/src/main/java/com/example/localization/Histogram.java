@@ -0,0 +1,212 @@
+package com.example.localization;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records a distribution of non-negative long values, such as latencies in nanoseconds, in log-linear
+ * buckets like an HDR histogram. Values below 32 get a bucket each, above that every power of two is split in 32
+ * buckets, so any value is known within about 3% over the whole long range with a fixed 1888 buckets.
+ * Recording is lock free and does not allocate, so it can be called from any thread on a hot path.
+ */
+public final class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Create an empty histogram, use {@link Metrics#histogram(String, String)} to get a registered one.
+     * @param name name of the metric
+     * @param unit unit of the recorded values
+     */
+    Histogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * Records a value, negative values are recorded as 0
+     * @param value value to record
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        this.counts.incrementAndGet(bucketOf(value));
+        this.count.increment();
+        this.sum.add(value);
+        long current;
+        while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * Records the time passed since a start time
+     * @param start start time from {@link System#nanoTime()}
+     */
+    public void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * @return name of the metric
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return unit of the recorded values
+     */
+    public String getUnit() {
+        return this.unit;
+    }
+
+    /**
+     * Copies the counts. Values recorded during the copy may or may not be included.
+     * @return the distribution recorded so far
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.counts.get(i);
+        }
+        return new Snapshot(this.name, this.unit, counts, this.count.sum(), this.sum.sum(), this.max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return lowest value in the bucket
+     */
+    static long lowestOf(int bucket) {
+        int row = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        if (row == 0) return sub;
+        return (long) (SUB_BUCKETS + sub) << (row - 1);
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return highest value in the bucket
+     */
+    static long highestOf(int bucket) {
+        int row = bucket / SUB_BUCKETS;
+        if (row == 0) return bucket;
+        return lowestOf(bucket) + (1L << (row - 1)) - 1;
+    }
+
+    /**
+     * An immutable copy of the distribution of a histogram.
+     */
+    public static final class Snapshot {
+        private final String name;
+        private final String unit;
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(String name, String unit, long[] counts, long count, long sum, long max) {
+            this.name = name;
+            this.unit = unit;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns the distribution of the values recorded after an earlier snapshot of the same histogram.
+         * The maximum is the highest bucket recorded in between, within the precision of the histogram.
+         * @param earlier earlier snapshot, or null for everything recorded so far
+         * @return the values recorded in between
+         */
+        public Snapshot since(Snapshot earlier) {
+            if (earlier == null) return this;
+            long[] counts = new long[BUCKETS];
+            long max = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = this.counts[i] - earlier.counts[i];
+                if (counts[i] > 0) max = highestOf(i);
+            }
+            return new Snapshot(this.name, this.unit, counts, this.count - earlier.count, this.sum - earlier.sum,
+                    Math.min(max, this.max));
+        }
+
+        /**
+         * Returns the value below which the given share of the recorded values falls
+         * @param percentile percentile between 0 and 100
+         * @return highest value of the bucket holding the percentile, within about 3%, or 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            long total = 0;
+            for (long c : this.counts) total += c;
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) return Math.min(highestOf(i), this.max);
+            }
+            return this.max;
+        }
+
+        /**
+         * @return name of the metric
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return unit of the recorded values
+         */
+        public String getUnit() {
+            return this.unit;
+        }
+
+        /**
+         * @return number of values recorded
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return mean of the recorded values, 0 if nothing was recorded
+         */
+        public double getMean() {
+            return this.count == 0 ? 0 : (double) this.sum / this.count;
+        }
+
+        /**
+         * @return highest recorded value
+         */
+        public long getMax() {
+            return this.max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d %s",
+                    this.name, this.count, getMean(), getValueAtPercentile(50), getValueAtPercentile(90),
+                    getValueAtPercentile(99), this.max, this.unit);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.localization;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class is a streaming pull parser for the catalogue response of the API,
+ * a JSON array of rows [mac_address, longitude, latitude, floor].
+ * <p>
+ * The body is decoded in fixed size chunks straight into the sink, without building a tree or a
+ * String of the body. Numbers are decoded from their digits, so numeric fields never become Strings;
+ * quoted numbers are accepted as well. Whitespace is only skipped between tokens, and nothing but whitespace
+ * may follow the catalogue. The MAC address is handed to the sink as a reused CharSequence
+ * that is only valid during the call. Extra columns are skipped.
+ * <p>
+ * Numbers with up to 15 significant digits and a small exponent are decoded exactly. Longer mantissas
+ * are rounded within one ulp, far below the precision of a coordinate.
+ * The parser holds no state between calls and can be shared between threads.
+ */
+public class JsonCatalogueParser implements CatalogueParser {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int MAC_INDEX = 0;
+    private static final int LONGITUDE_INDEX = 1;
+    private static final int LATITUDE_INDEX = 2;
+    private static final int FLOOR_INDEX = 3;
+
+    // Powers of ten that are exact in a double
+    private static final double[] POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_DIGITS = 18;
+
+    @Override
+    public void parse(InputStream in, Sink sink) throws IOException {
+        new Cursor(in).catalogue(sink);
+    }
+
+    /**
+     * State of one parse
+     */
+    private static final class Cursor {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private long offset;    // bytes consumed before the buffer
+
+        private final Text text = new Text();
+        private boolean isNull;
+
+        Cursor(InputStream in) {
+            this.in = in;
+        }
+
+        void catalogue(Sink sink) throws IOException {
+            this.expect('[');
+            if (!this.consume(']')) {
+                do {
+                    this.row(sink);
+                } while (this.consume(','));
+                this.expect(']');
+            }
+            if (this.peek() >= 0) throw this.error("Unexpected data after the catalogue");
+        }
+
+        private void row(Sink sink) throws IOException {
+            this.expect('[');
+            double longitude = 0;
+            double latitude = 0;
+            int floor = 0;
+            boolean removed = false;
+            int column = 0;
+
+            if (!this.consume(']')) {
+                do {
+                    switch (column) {
+                        case MAC_INDEX:
+                            this.string();
+                            break;
+                        case LONGITUDE_INDEX:
+                            longitude = this.number();
+                            removed |= this.isNull;
+                            break;
+                        case LATITUDE_INDEX:
+                            latitude = this.number();
+                            removed |= this.isNull;
+                            break;
+                        case FLOOR_INDEX:
+                            double value = this.number();
+                            removed |= this.isNull;
+                            floor = (int) value;
+                            if (!this.isNull && floor != value) throw this.error("Floor is not an integer");
+                            break;
+                        default:
+                            this.skipValue();
+                    }
+                    column++;
+                } while (this.consume(','));
+                this.expect(']');
+            }
+
+            if (column <= FLOOR_INDEX) throw this.error("Row with " + column + " columns");
+            if (removed) {
+                sink.removed(this.text);
+            } else {
+                sink.beacon(this.text, longitude, latitude, floor);
+            }
+        }
+
+        /**
+         * Reads a string, or the literal text of any other scalar, into the text buffer
+         */
+        private void string() throws IOException {
+            this.text.clear();
+            int c = this.peek();
+            if (c != '"') {
+                this.literal();
+                return;
+            }
+            this.position++;
+            while (true) {
+                c = this.read();
+                if (c == '"') return;
+                if (c == '\\') {
+                    c = this.read();
+                    switch (c) {
+                        case 'b': c = '\b'; break;
+                        case 'f': c = '\f'; break;
+                        case 'n': c = '\n'; break;
+                        case 'r': c = '\r'; break;
+                        case 't': c = '\t'; break;
+                        case 'u':
+                            int code = 0;
+                            for (int i = 0; i < 4; i++) {
+                                int digit = Character.digit(this.read(), 16);
+                                if (digit < 0) throw this.error("Malformed unicode escape");
+                                code = (code << 4) | digit;
+                            }
+                            c = code;
+                            break;
+                        default:
+                            break;    // '"', '\\' and '/' stand for themselves
+                    }
+                }
+                // Non-ASCII bytes are kept as they are, a MAC address is plain ASCII anyway
+                this.text.append((char) c);
+            }
+        }
+
+        private void literal() throws IOException {
+            while (true) {
+                int c = this.lookahead();
+                if (c < 0 || c == ',' || c == ']' || c == '}' || isWhitespace(c)) return;
+                this.text.append((char) c);
+                this.position++;
+            }
+        }
+
+        /**
+         * Reads a number, a quoted number or null
+         * @return the number, 0 for null
+         */
+        private double number() throws IOException {
+            this.isNull = false;
+            int c = this.peek();
+            if (c == 'n') {
+                this.keyword("null");
+                this.isNull = true;
+                return 0;
+            }
+            boolean quoted = c == '"';
+            if (quoted) this.position++;
+            double value = this.digits();
+            if (quoted && this.read() != '"') throw this.error("Malformed quoted number");
+            return value;
+        }
+
+        /**
+         * Reads the body of a number byte by byte, whitespace ends it
+         */
+        private double digits() throws IOException {
+            boolean negative = this.lookahead() == '-';
+            if (negative) this.position++;
+
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean any = false;
+            boolean fraction = false;
+            int c;
+            while (true) {
+                c = this.lookahead();
+                if (c >= '0' && c <= '9') {
+                    any = true;
+                    this.position++;
+                    if (digits < MAX_DIGITS) {
+                        if (mantissa != 0 || c != '0') {
+                            mantissa = mantissa * 10 + (c - '0');
+                            digits++;
+                        }
+                        if (fraction) exponent--;
+                    } else if (!fraction) {
+                        exponent++;    // digits beyond the precision of a long are dropped
+                    }
+                } else if (c == '.' && !fraction) {
+                    fraction = true;
+                    this.position++;
+                } else {
+                    break;
+                }
+            }
+            if (!any) throw this.error("Expected a number");
+
+            if (c == 'e' || c == 'E') {
+                this.position++;
+                c = this.lookahead();
+                boolean negativeExponent = c == '-';
+                if (c == '-' || c == '+') this.position++;
+                int value = 0;
+                boolean anyExponent = false;
+                while ((c = this.lookahead()) >= '0' && c <= '9') {
+                    this.position++;
+                    anyExponent = true;
+                    if (value < 10000) value = value * 10 + (c - '0');
+                }
+                if (!anyExponent) throw this.error("Malformed exponent");
+                exponent += negativeExponent ? -value : value;
+            }
+
+            double result = scale(mantissa, exponent);
+            return negative ? -result : result;
+        }
+
+        private static double scale(long mantissa, int exponent) {
+            if (mantissa == 0) return 0;
+            if (exponent >= 0 && exponent < POWERS.length) {
+                return (double) mantissa * POWERS[exponent];
+            }
+            if (exponent < 0 && -exponent < POWERS.length) {
+                // Exact when the mantissa fits in a double, rounded once more otherwise
+                return (double) mantissa / POWERS[-exponent];
+            }
+            // Far outside the range of coordinates, correctness over speed
+            return Double.parseDouble(mantissa + "E" + exponent);
+        }
+
+        private void skipValue() throws IOException {
+            int c = this.peek();
+            if (c == '[' || c == '{') {
+                int depth = 0;
+                boolean inString = false;
+                do {
+                    c = this.read();
+                    if (inString) {
+                        if (c == '\\') this.read();
+                        else if (c == '"') inString = false;
+                    } else if (c == '"') {
+                        inString = true;
+                    } else if (c == '[' || c == '{') {
+                        depth++;
+                    } else if (c == ']' || c == '}') {
+                        depth--;
+                    }
+                } while (depth > 0);
+            } else if (c == '"') {
+                // Skipped without the text buffer, which still holds the MAC address of the row
+                this.position++;
+                while ((c = this.read()) != '"') {
+                    if (c == '\\') this.read();
+                }
+            } else {
+                while ((c = this.lookahead()) >= 0 && c != ',' && c != ']' && c != '}' && !isWhitespace(c)) {
+                    this.position++;
+                }
+            }
+        }
+
+        private void keyword(String keyword) throws IOException {
+            for (int i = 0; i < keyword.length(); i++) {
+                if (this.read() != keyword.charAt(i)) throw this.error("Expected " + keyword);
+            }
+        }
+
+        private void expect(char expected) throws IOException {
+            if (this.peek() != expected) throw this.error("Expected '" + expected + "'");
+            this.position++;
+        }
+
+        private boolean consume(char expected) throws IOException {
+            if (this.peek() != expected) return false;
+            this.position++;
+            return true;
+        }
+
+        /**
+         * @return next byte after whitespace without consuming it, -1 at the end
+         */
+        private int peek() throws IOException {
+            while (true) {
+                if (this.position == this.limit && !this.fill()) return -1;
+                int c = this.buffer[this.position] & 0xFF;
+                if (!isWhitespace(c)) return c;
+                this.position++;
+            }
+        }
+
+        /**
+         * @return next byte without consuming it, whitespace included, -1 at the end
+         */
+        private int lookahead() throws IOException {
+            if (this.position == this.limit && !this.fill()) return -1;
+            return this.buffer[this.position] & 0xFF;
+        }
+
+        /**
+         * @return next byte, whitespace included
+         */
+        private int read() throws IOException {
+            if (this.position == this.limit && !this.fill()) throw this.error("Unexpected end of catalogue");
+            return this.buffer[this.position++] & 0xFF;
+        }
+
+        private boolean fill() throws IOException {
+            this.offset += this.limit;
+            this.position = 0;
+            this.limit = Math.max(0, this.in.read(this.buffer));
+            return this.limit > 0;
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at byte " + (this.offset + this.position));
+        }
+
+        private static boolean isWhitespace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+        }
+    }
+
+    /**
+     * Reused character buffer exposed as a CharSequence
+     */
+    private static final class Text implements CharSequence {
+        private char[] chars = new char[32];
+        private int length;
+
+        void clear() {
+            this.length = 0;
+        }
+
+        void append(char c) {
+            if (this.length == this.chars.length) {
+                char[] grown = new char[this.length * 2];
+                System.arraycopy(this.chars, 0, grown, 0, this.length);
+                this.chars = grown;
+            }
+            this.chars[this.length++] = c;
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return this.chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return this.toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.chars, 0, this.length);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class smooths RSSI samples with a one-dimensional Kalman filter per beacon,
+ * modelling the signal strength as a constant disturbed by process noise.
+ */
+public class KalmanRssiFilter implements RssiFilter {
+    static final double DEFAULT_PROCESS_NOISE = 0.008;
+    static final double DEFAULT_MEASUREMENT_NOISE = 4;
+
+    private final double processNoise;
+    private final double measurementNoise;
+    private final double[] estimate;
+    private final double[] covariance;    // NaN if the slot has no estimate yet
+
+    /**
+     * Create a filter with the default noise parameters.
+     * @param capacity number of slots, the size of the registry
+     */
+    public KalmanRssiFilter(int capacity) {
+        this(capacity, DEFAULT_PROCESS_NOISE, DEFAULT_MEASUREMENT_NOISE);
+    }
+
+    /**
+     * Create a filter.
+     * @param capacity number of slots, the size of the registry
+     * @param processNoise variance added to the estimate per sample, higher follows changes faster
+     * @param measurementNoise variance of a single sample
+     */
+    public KalmanRssiFilter(int capacity, double processNoise, double measurementNoise) {
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+        this.estimate = new double[capacity];
+        this.covariance = new double[capacity];
+        Arrays.fill(this.covariance, Double.NaN);
+    }
+
+    @Override
+    public double update(int slot, double rssi) {
+        if (Double.isNaN(this.covariance[slot])) {
+            this.estimate[slot] = rssi;
+            this.covariance[slot] = this.measurementNoise;
+            return rssi;
+        }
+        double predicted = this.covariance[slot] + this.processNoise;
+        double gain = predicted / (predicted + this.measurementNoise);
+        this.estimate[slot] += gain * (rssi - this.estimate[slot]);
+        this.covariance[slot] = (1 - gain) * predicted;
+        return this.estimate[slot];
+    }
+
+    @Override
+    public void reset(int slot) {
+        this.covariance[slot] = Double.NaN;
+    }
+}
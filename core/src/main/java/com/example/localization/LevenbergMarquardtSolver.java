@@ -0,0 +1,123 @@
+package com.example.localization;
+
+/**
+ * This class solves the multilateration problem with the Levenberg-Marquardt method.
+ * The residual of beacon i is |p - b_i| - d_i, its Jacobian is the unit vector from the beacon to p,
+ * so every iteration only has to solve a damped 2x2 system in closed form.
+ * Instances hold configuration only and can be shared between threads.
+ */
+public class LevenbergMarquardtSolver implements PositionSolver {
+    static final int DEFAULT_MAX_ITERATIONS = 50;
+    static final double DEFAULT_TOLERANCE = 1e-3;    // metres
+    static final double DEFAULT_DAMPING = 1e-3;
+
+    private static final double MIN_DISTANCE = 1e-9;
+    private static final double MIN_DAMPING = 1e-9;
+    private static final double MAX_DAMPING = 1e12;
+
+    private final int maxIterations;
+    private final double tolerance;
+    private final double initialDamping;
+
+    /**
+     * Create a solver with the default iteration bound, tolerance and damping.
+     */
+    public LevenbergMarquardtSolver() {
+        this(DEFAULT_MAX_ITERATIONS, DEFAULT_TOLERANCE, DEFAULT_DAMPING);
+    }
+
+    /**
+     * Create a solver with the given convergence bounds.
+     * @param maxIterations maximum number of iterations per solve
+     * @param tolerance step length in metres below which the solve has converged
+     * @param initialDamping initial damping factor lambda
+     */
+    public LevenbergMarquardtSolver(int maxIterations, double tolerance, double initialDamping) {
+        if (maxIterations < 1 || tolerance <= 0 || initialDamping <= 0) {
+            throw new IllegalArgumentException("maxIterations, tolerance and initialDamping must be positive");
+        }
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.initialDamping = initialDamping;
+    }
+
+    /**
+     * Calculates the sum of squared residuals at the given point
+     * @param px east coordinate of the point
+     * @param py north coordinate of the point
+     * @param x east coordinate of each beacon
+     * @param y north coordinate of each beacon
+     * @param distance measured distance to each beacon
+     * @param count number of beacons
+     * @return sum of squared residuals in square metres
+     */
+    static double cost(double px, double py, double[] x, double[] y, double[] distance, int count) {
+        double cost = 0.0;
+        for (int i = 0; i < count; i++) {
+            double dx = px - x[i];
+            double dy = py - y[i];
+            double residual = Math.sqrt(dx * dx + dy * dy) - distance[i];
+            cost += residual * residual;
+        }
+        return cost;
+    }
+
+    @Override
+    public int solve(double[] x, double[] y, double[] distance, int count, double[] position) {
+        double px = position[0];
+        double py = position[1];
+        double cost = cost(px, py, x, y, distance, count);
+        double lambda = this.initialDamping;
+        int iteration = 0;
+
+        while (iteration < this.maxIterations && count > 0) {
+            iteration++;
+
+            // Accumulate the normal equations J^T J and J^T r
+            double a11 = 0, a12 = 0, a22 = 0, g1 = 0, g2 = 0;
+            for (int i = 0; i < count; i++) {
+                double dx = px - x[i];
+                double dy = py - y[i];
+                double range = Math.sqrt(dx * dx + dy * dy);
+                if (range < MIN_DISTANCE) continue;
+                double jx = dx / range;
+                double jy = dy / range;
+                double residual = range - distance[i];
+                a11 += jx * jx;
+                a12 += jx * jy;
+                a22 += jy * jy;
+                g1 += jx * residual;
+                g2 += jy * residual;
+            }
+
+            // Damp until a step lowers the cost or the damping runs away
+            boolean accepted = false;
+            double step = 0;
+            while (!accepted && lambda < MAX_DAMPING) {
+                double b11 = a11 + lambda * Math.max(a11, MIN_DAMPING);
+                double b22 = a22 + lambda * Math.max(a22, MIN_DAMPING);
+                double determinant = b11 * b22 - a12 * a12;
+                double stepX = -(b22 * g1 - a12 * g2) / determinant;
+                double stepY = -(b11 * g2 - a12 * g1) / determinant;
+                double newCost = cost(px + stepX, py + stepY, x, y, distance, count);
+
+                if (newCost < cost) {
+                    px += stepX;
+                    py += stepY;
+                    cost = newCost;
+                    lambda = Math.max(lambda / 10, MIN_DAMPING);
+                    step = Math.sqrt(stepX * stepX + stepY * stepY);
+                    accepted = true;
+                } else {
+                    lambda *= 10;
+                }
+            }
+
+            if (!accepted || step < this.tolerance) break;
+        }
+
+        position[0] = px;
+        position[1] = py;
+        return iteration;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.localization;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class represents a local east/north frame in metres anchored at a fixed location.
+ * Inside a single building the equirectangular approximation used here is accurate to millimetres.
+ */
+public class LocalFrame {
+    static final double EARTH_RADIUS = 6371000;
+    static final double METRES_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+    static final double FLOOR_HEIGHT = 3;
+
+    private final double originLongitude;
+    private final double originLatitude;
+    private final double metresPerDegreeLongitude;
+
+    /**
+     * Create a frame anchored at the given location.
+     * @param origin location that maps to (0, 0)
+     */
+    public LocalFrame(Location origin) {
+        this.originLongitude = origin.getLongitude();
+        this.originLatitude = origin.getLatitude();
+        this.metresPerDegreeLongitude = metresPerDegreeLongitude(this.originLatitude);
+    }
+
+    /**
+     * Creates a frame anchored at the centroid of the given beacons.
+     * @param beacons all beacons of the catalogue
+     * @return frame for the catalogue
+     */
+    public static LocalFrame around(Collection<iBeacon> beacons) {
+        double latitude = 0;
+        double longitude = 0;
+        for (iBeacon beacon : beacons) {
+            latitude += beacon.getLatitude();
+            longitude += beacon.getLongitude();
+        }
+        int N = Math.max(1, beacons.size());
+        return new LocalFrame(new Location(longitude / N, latitude / N));
+    }
+
+    /**
+     * Positions beacons in this frame. The given beacons are not changed, so a catalogue can be projected
+     * into another frame while it is in use. Called once when a beacon catalogue is loaded, typically as
+     * {@code LocalFrame.around(beacons).project(beacons)}.
+     * @param beacons all beacons of the catalogue
+     * @return projected copies of the beacons, in iteration order
+     */
+    public List<iBeacon> project(Collection<iBeacon> beacons) {
+        List<iBeacon> projected = new ArrayList<>(beacons.size());
+        for (iBeacon beacon : beacons) {
+            projected.add(beacon.inFrame(this));
+        }
+        return projected;
+    }
+
+    /**
+     * Calculates the length of one degree of longitude at the given latitude
+     * @param latitude latitude in degrees
+     * @return metres per degree of longitude
+     */
+    static double metresPerDegreeLongitude(double latitude) {
+        return METRES_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+
+    /**
+     * @param longitude longitude in degrees
+     * @return metres east of the origin
+     */
+    public double toX(double longitude) {
+        return (longitude - this.originLongitude) * this.metresPerDegreeLongitude;
+    }
+
+    /**
+     * @param latitude latitude in degrees
+     * @return metres north of the origin
+     */
+    public double toY(double latitude) {
+        return (latitude - this.originLatitude) * METRES_PER_DEGREE;
+    }
+
+    /**
+     * @param x metres east of the origin
+     * @return longitude in degrees
+     */
+    public double toLongitude(double x) {
+        return this.originLongitude + x / this.metresPerDegreeLongitude;
+    }
+
+    /**
+     * @param y metres north of the origin
+     * @return latitude in degrees
+     */
+    public double toLatitude(double y) {
+        return this.originLatitude + y / METRES_PER_DEGREE;
+    }
+
+    /**
+     * Converts a point of this frame back to a location
+     * @param x metres east of the origin
+     * @param y metres north of the origin
+     * @return location of the point
+     */
+    public Location toLocation(double x, double y) {
+        return new Location(toLongitude(x), toLatitude(y));
+    }
+}
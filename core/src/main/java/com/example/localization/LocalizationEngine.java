@@ -0,0 +1,201 @@
+package com.example.localization;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * This class runs the whole localization flow without any Android dependency: it keeps the catalogue,
+ * matches scanned beacons against it, keeps the active set and solves it on a {@link LocalizationPipeline}.
+ * Scan batches go in through {@link #scan}, estimated locations come out through a
+ * {@link LocalizationPipeline.Listener} on the listener executor. The listener gets backpressure by coalescing:
+ * while a solve is running only the freshest snapshot is kept, so a slow listener or solver skips snapshots
+ * instead of queueing them. The engine can be used from an activity, a foreground service or a plain JVM, and
+ * any number of engines can share one solver executor, as the solves of one engine never run concurrently.
+ * The localizer can be switched at runtime, for example from trilateration to fingerprinting with
+ * {@link #setLocalizers}. {@link #scan} is called from one thread at a time, the other methods may be called
+ * from any thread.
+ */
+public class LocalizationEngine {
+    public static final int DEFAULT_THRESHOLD = -90;
+    public static final int DEFAULT_MINIMUM = 3;
+    public static final double DEFAULT_MINIMUM_CHANGE = 0.25;    // metres a beacon has to move before solving again
+    public static final double DEFAULT_CANDIDATE_RADIUS = 40;    // metres, beyond the range of a beacon at the threshold
+    public static final long DEFAULT_TIME_TO_LIVE = 5000000000L;  // nanoseconds a beacon stays active without being heard
+    public static final int DEFAULT_MAX_BEACONS = 12;             // strongest beacons solved per fix
+
+    private final Function<BeaconRegistry, ActiveBeacons> activeSets;
+    private BiFunction<BeaconRegistry, BeaconGrid, Localizer> localizers;
+    private final Executor solverExecutor;
+    private final Executor listenerExecutor;
+    private final LocalizationPipeline.Listener listener;
+
+    private volatile Session session;
+
+    /**
+     * Objects that belong to one version of the catalogue, swapped as a whole
+     */
+    private static final class Session {
+        final BeaconRegistry registry;
+        final BeaconGrid grid;
+        final ActiveBeacons activeBeacons;
+        final LocalizationPipeline pipeline;
+
+        Session(BeaconRegistry registry, BeaconGrid grid, ActiveBeacons activeBeacons, LocalizationPipeline pipeline) {
+            this.registry = registry;
+            this.grid = grid;
+            this.activeBeacons = activeBeacons;
+            this.pipeline = pipeline;
+        }
+    }
+
+    /**
+     * Create an engine with the same configuration as the app, see {@link #defaultActiveSet} and
+     * {@link #defaultLocalizer}.
+     * @param solverExecutor executor running the solver
+     * @param listenerExecutor executor the listener is called on
+     * @param listener listener receiving the estimated locations
+     */
+    public LocalizationEngine(Executor solverExecutor, Executor listenerExecutor, LocalizationPipeline.Listener listener) {
+        this(LocalizationEngine::defaultActiveSet, LocalizationEngine::defaultLocalizer,
+                solverExecutor, listenerExecutor, listener);
+    }
+
+    /**
+     * Creates the active set the app uses: Kalman filtered samples, beacons dropped when not heard for 5 seconds
+     * and the 12 strongest ones solved.
+     * @param registry registry of the catalogue
+     * @return new active set
+     */
+    public static ActiveBeacons defaultActiveSet(BeaconRegistry registry) {
+        return new ActiveBeacons(registry, DEFAULT_THRESHOLD, DEFAULT_MINIMUM, new KalmanRssiFilter(registry.size()),
+                new PathLossModel(), DEFAULT_MINIMUM_CHANGE, DEFAULT_TIME_TO_LIVE, DEFAULT_MAX_BEACONS);
+    }
+
+    /**
+     * Creates the localizer the app uses: a {@link LocationFinder} solving robustly to outliers, from several
+     * starts when there are too few beacons to tell outliers apart, and tracking the floor.
+     * @param registry registry of the catalogue
+     * @param grid spatial index of the catalogue
+     * @return new localizer
+     */
+    public static Localizer defaultLocalizer(BeaconRegistry registry, BeaconGrid grid) {
+        return defaultLocalizer(registry, grid, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #defaultLocalizer(BeaconRegistry, BeaconGrid)} with the starts run on the given pool.
+     * @param registry registry of the catalogue
+     * @param grid spatial index of the catalogue
+     * @param pool pool running the starts in parallel, or null to run them on the calling thread when solves
+     *             are already spread over threads
+     * @return new localizer
+     */
+    public static Localizer defaultLocalizer(BeaconRegistry registry, BeaconGrid grid, ForkJoinPool pool) {
+        PositionSolver local = new MultiStartSolver(new LevenbergMarquardtSolver(), MultiStartSolver.DEFAULT_STARTS,
+                MultiStartSolver.DEFAULT_BUDGET, pool);
+        PositionSolver solver = new RobustSolver(local, RobustSolver.Loss.TUKEY,
+                RobustSolver.DEFAULT_THRESHOLD, RobustSolver.DEFAULT_MAX_SUBSETS);
+        return new LocationFinder(solver, DEFAULT_MINIMUM_CHANGE, grid, DEFAULT_CANDIDATE_RADIUS,
+                new FloorEstimator(registry));
+    }
+
+    /**
+     * Create an engine.
+     * @param activeSets creates the active set for a version of the catalogue
+     * @param localizers creates the localizer for a version of the catalogue and its spatial index
+     * @param solverExecutor executor running the solver
+     * @param listenerExecutor executor the listener is called on
+     * @param listener listener receiving the estimated locations
+     */
+    public LocalizationEngine(Function<BeaconRegistry, ActiveBeacons> activeSets,
+                              BiFunction<BeaconRegistry, BeaconGrid, Localizer> localizers,
+                              Executor solverExecutor, Executor listenerExecutor,
+                              LocalizationPipeline.Listener listener) {
+        this.activeSets = activeSets;
+        this.localizers = localizers;
+        this.solverExecutor = solverExecutor;
+        this.listenerExecutor = listenerExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * Swaps in a new version of the catalogue. The active set and the localizer refer to slots and a frame
+     * of the previous catalogue, so they are created again and start from scratch.
+     * @param beacons beacons of the catalogue, projected into one frame, see {@link LocalFrame#project}
+     */
+    public synchronized void setCatalogue(Collection<iBeacon> beacons) {
+        BeaconRegistry registry = new BeaconRegistry(beacons);
+        BeaconGrid grid = new BeaconGrid(registry);
+        this.session = new Session(registry, grid, this.activeSets.apply(registry), pipeline(registry, grid));
+    }
+
+    /**
+     * Switches the localizer, such as a {@link LocationFinder} or a {@link FingerprintLocalizer}. The current
+     * catalogue gets a new localizer right away and keeps its active set, a snapshot that is being solved
+     * still finishes on the previous localizer.
+     * @param localizers creates the localizer for a version of the catalogue and its spatial index
+     */
+    public synchronized void setLocalizers(BiFunction<BeaconRegistry, BeaconGrid, Localizer> localizers) {
+        this.localizers = localizers;
+        Session session = this.session;
+        if (session == null) return;
+        this.session = new Session(session.registry, session.grid, session.activeBeacons,
+                pipeline(session.registry, session.grid));
+    }
+
+    private LocalizationPipeline pipeline(BeaconRegistry registry, BeaconGrid grid) {
+        return new LocalizationPipeline(this.localizers.apply(registry, grid), this.solverExecutor,
+                this.listenerExecutor, this.listener);
+    }
+
+    /**
+     * Feeds the advertisements of one scan, drops the beacons that went silent and queues the active set for
+     * solving if it changed in a way that changes the solved beacons. Scans before the first catalogue are ignored.
+     * @param timestamp time of the scan in nanoseconds, from {@link System#nanoTime()} or a replayed clock
+     * @param addresses packed MAC address of each advertisement, see {@link MacAddress}
+     * @param rssi received signal strength of each advertisement
+     * @param distances distance estimated by the scanner for each advertisement
+     * @param count number of advertisements
+     * @return whether a snapshot was queued for solving
+     */
+    public boolean scan(long timestamp, long[] addresses, int[] rssi, double[] distances, int count) {
+        Session session = this.session;
+        if (session == null) return false;
+
+        ActiveBeacons activeBeacons = session.activeBeacons;
+        activeBeacons.expire(timestamp);
+        for (int i = 0; i < count; i++) {
+            activeBeacons.update(timestamp, addresses[i], rssi[i], distances[i]);
+        }
+        if (!activeBeacons.hasChanges() || activeBeacons.size() == 0) return false;
+        session.pipeline.submit(activeBeacons.snapshot(timestamp));
+        return true;
+    }
+
+    /**
+     * @return registry of the current catalogue, or null before the first catalogue
+     */
+    public BeaconRegistry getRegistry() {
+        Session session = this.session;
+        return session == null ? null : session.registry;
+    }
+
+    /**
+     * @return spatial index of the current catalogue, or null before the first catalogue
+     */
+    public BeaconGrid getGrid() {
+        Session session = this.session;
+        return session == null ? null : session.grid;
+    }
+
+    /**
+     * @return pipeline of the current catalogue for its statistics, or null before the first catalogue
+     */
+    public LocalizationPipeline getPipeline() {
+        Session session = this.session;
+        return session == null ? null : session.pipeline;
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.localization;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class moves localization off the thread that delivers scan results.
+ * Scan snapshots are put in a {@link CoalescingRingBuffer}, a single consumer on the solver executor
+ * only ever solves the freshest one, and the result is handed to the listener on the UI executor.
+ * Submitting never blocks, so a slow solve can not hold up later scans.
+ */
+public class LocalizationPipeline {
+
+    /**
+     * Receives the estimated locations, called on the UI executor. Snapshots that give no estimate are not passed on.
+     */
+    public interface Listener {
+        /**
+         * @param location estimated location
+         * @param floor estimated floor
+         * @param floorConfidence probability that the estimated floor is right
+         * @param error mean squared error of the estimate in square metres
+         * @param snapshot snapshot the estimate was solved from
+         */
+        void onLocation(Location location, int floor, double floorConfidence, double error, ScanSnapshot snapshot);
+    }
+
+    static final int DEFAULT_CAPACITY = 8;
+
+    private static final Histogram LOCATE_TIME = Metrics.shared().histogram("pipeline.locate", "ns");
+    private static final Histogram STALENESS = Metrics.shared().histogram("pipeline.staleness", "ns");
+    private static final Metrics.Counter UNLOCATED = Metrics.shared().counter("pipeline.unlocated");
+    private static final Metrics.Counter FAILED = Metrics.shared().counter("pipeline.failed");
+
+    private final Localizer localizer;
+    private final Executor solverExecutor;
+    private final Executor uiExecutor;
+    private final Listener listener;
+    private final CoalescingRingBuffer<ScanSnapshot> queue;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final AtomicLong solved = new AtomicLong();
+    private final AtomicLong lastQueueDepth = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong lastStaleness = new AtomicLong();
+    private final AtomicLong maxStaleness = new AtomicLong();
+
+    /**
+     * Create a pipeline.
+     * @param localizer localizer used to solve the snapshots
+     * @param solverExecutor executor running the solver, may be shared as the solves of one pipeline never overlap
+     * @param uiExecutor executor the listener is called on
+     * @param listener listener receiving the estimated locations
+     */
+    public LocalizationPipeline(Localizer localizer, Executor solverExecutor, Executor uiExecutor,
+                                Listener listener) {
+        this.localizer = localizer;
+        this.solverExecutor = solverExecutor;
+        this.uiExecutor = uiExecutor;
+        this.listener = listener;
+        this.queue = new CoalescingRingBuffer<>(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Queues a snapshot for solving and wakes up the solver if it is idle. Never blocks.
+     * @param snapshot snapshot of the active beacons
+     */
+    public void submit(ScanSnapshot snapshot) {
+        if (snapshot.getCount() == 0) return;
+        this.queue.offer(snapshot);
+        if (this.scheduled.compareAndSet(false, true)) {
+            this.solverExecutor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Solves the freshest snapshot until the queue is empty. Runs on the solver executor.
+     * A snapshot whose solve throws is counted and dropped, so one bad solve does not stop localization.
+     */
+    private void drain() {
+        try {
+            ScanSnapshot snapshot;
+            while ((snapshot = takeLatest()) != null) {
+                long staleness = System.nanoTime() - snapshot.getTimestamp();
+                this.lastStaleness.set(staleness);
+                updateMax(this.maxStaleness, staleness);
+                STALENESS.record(staleness);
+
+                Location location = new Location();
+                long start = System.nanoTime();
+                double error;
+                try {
+                    error = this.localizer.locate(snapshot, location);
+                } catch (RuntimeException e) {
+                    FAILED.increment();
+                    continue;
+                } finally {
+                    LOCATE_TIME.recordSince(start);
+                }
+                int floor = this.localizer.getFloor();
+                double floorConfidence = this.localizer.getFloorConfidence();
+                this.solved.incrementAndGet();
+                if (Double.isInfinite(error) || Double.isNaN(error)) {
+                    // No estimate, the location may still be the blank one it started as
+                    UNLOCATED.increment();
+                    continue;
+                }
+
+                ScanSnapshot solvedSnapshot = snapshot;
+                this.uiExecutor.execute(() -> this.listener.onLocation(location, floor, floorConfidence, error, solvedSnapshot));
+            }
+        } finally {
+            // Cleared even if the listener executor throws, otherwise no later submit would schedule a solver
+            this.scheduled.set(false);
+        }
+
+        // A snapshot submitted after the last poll but before the flag was cleared still needs a solver
+        if (this.queue.size() > 0 && this.scheduled.compareAndSet(false, true)) {
+            this.solverExecutor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Takes the freshest snapshot and records the queue depth it was taken at
+     * @return freshest snapshot, or null if the queue is empty
+     */
+    private ScanSnapshot takeLatest() {
+        int depth = this.queue.size();
+        ScanSnapshot snapshot = this.queue.pollLatest();
+        if (snapshot != null) {
+            this.lastQueueDepth.set(depth);
+            updateMax(this.maxQueueDepth, depth);
+        }
+        return snapshot;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * @return number of snapshots solved
+     */
+    public long getSolved() {
+        return this.solved.get();
+    }
+
+    /**
+     * @return number of snapshots skipped because a newer one was queued
+     */
+    public long getCoalesced() {
+        return this.queue.getCoalesced();
+    }
+
+    /**
+     * @return number of snapshots overwritten because the queue was full
+     */
+    public long getDropped() {
+        return this.queue.getDropped();
+    }
+
+    /**
+     * @return number of queued snapshots when the last one was taken
+     */
+    public long getLastQueueDepth() {
+        return this.lastQueueDepth.get();
+    }
+
+    /**
+     * @return highest number of queued snapshots seen when taking one
+     */
+    public long getMaxQueueDepth() {
+        return this.maxQueueDepth.get();
+    }
+
+    /**
+     * @return age in nanoseconds of the last snapshot when its solve started
+     */
+    public long getLastStaleness() {
+        return this.lastStaleness.get();
+    }
+
+    /**
+     * @return highest age in nanoseconds of a snapshot when its solve started
+     */
+    public long getMaxStaleness() {
+        return this.maxStaleness.get();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.localization;
+
+/**
+ * This interface represents anything that turns a snapshot of the active beacons into a location,
+ * such as the per-scan {@link LocationFinder} or the {@link ParticleFilterTracker}.
+ * A localizer may keep state between snapshots and is called from one thread at a time.
+ */
+public interface Localizer {
+
+    /**
+     * Estimates the current location.
+     * @param snapshot snapshot of the active beacons, must not be empty
+     * @param result location the estimate is written to
+     * @return error measure of the estimate in square metres, lower is better, or infinity if the snapshot gives
+     *         no estimate; the result then holds the previous estimate, or is left untouched if there is none
+     */
+    double locate(ScanSnapshot snapshot, Location result);
+
+    /**
+     * @return floor of the last estimate
+     */
+    int getFloor();
+
+    /**
+     * @return probability that the floor of the last estimate is right
+     */
+    double getFloorConfidence();
+}
@@ -0,0 +1,693 @@
+package com.example.localization;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class estimates the location from the distances to the active beacons.
+ * Its input is never modified: snapshots and catalogue beacons are only read, and the scratch arrays of a solve
+ * are per thread. What an instance keeps is the outcome of its last estimate and, when it starts from the
+ * previous fix, the state of one localization session, so an instance is used from one thread at a time.
+ * Any number of instances can solve concurrently without locks, sharing the catalogue, its registry and grid,
+ * and the solver.
+ */
+public class LocationFinder implements Localizer {
+
+    int myFloor = 0;
+    private double floorConfidence = 1;    // confidence of myFloor, 1 when it was found from one scan on its own
+    final double floorDistance = LocalFrame.FLOOR_HEIGHT;
+    private double lastError = 0.0;
+    private int lastIterations = 0;
+    private int[] rejected = new int[0];    // slots or indices of the beacons the solver rejected in the last solve
+    private int rejectedCount = 0;
+
+    private final PositionSolver solver;
+    private final WarmStartState warmStart;    // null if every fix starts from scratch
+    private final double earlyExitThreshold;
+    private final BeaconGrid grid;    // null if every active beacon is used
+    private final double candidateRadius;
+    private final FloorEstimator floors;    // null if the floor is found from every scan on its own
+
+    // Fewest beacons a candidate selection may keep, otherwise the previous fix is considered lost
+    private static final int MIN_CANDIDATES = 3;
+
+    // Grid search for the starting point of a solve without a previous fix
+    private static final int SEARCH_STEPS = 8;            // points per side of the search grid
+    private static final double SEARCH_MARGIN = 5;        // metres around the beacons
+    private final ResidualKernel kernel = ResidualKernels.get();
+
+    private static final Histogram SOLVE_TIME = Metrics.shared().histogram("solver.time", "ns");
+    private static final Histogram ITERATIONS = Metrics.shared().histogram("solver.iterations", "iterations");
+    private static final Histogram RESIDUAL = Metrics.shared().histogram("solver.residual", "mm");
+    private static final Histogram REJECTED = Metrics.shared().histogram("solver.rejected", "beacons");
+    private static final Metrics.Counter EARLY_EXITS = Metrics.shared().counter("solver.early_exits");
+
+    // Scratch arrays are per thread so a single LocationFinder stays allocation free on any caller
+    private static final ThreadLocal<SolverWorkspace> WORKSPACE = new ThreadLocal<SolverWorkspace>() {
+        @Override
+        protected SolverWorkspace initialValue() {
+            return new SolverWorkspace(SEARCH_STEPS * SEARCH_STEPS);
+        }
+    };
+
+    /**
+     * Create a location finder using the Levenberg-Marquardt solver.
+     */
+    public LocationFinder() {
+        this(new LevenbergMarquardtSolver());
+    }
+
+    /**
+     * Create a location finder using the given solver.
+     * @param solver solver used to estimate the position from the beacon distances
+     */
+    public LocationFinder(PositionSolver solver) {
+        this.solver = solver;
+        this.warmStart = null;
+        this.earlyExitThreshold = 0;
+        this.grid = null;
+        this.candidateRadius = 0;
+        this.floors = null;
+    }
+
+    /**
+     * Create a location finder that starts every snapshot solve from the previous fix.
+     * If no beacon's distance changed by the early exit threshold and the set of beacons is the same,
+     * the previous fix is returned without solving. Only applies to {@link #optimisation(ScanSnapshot, Location)},
+     * and since the previous fix is state of this finder it must be called from one thread at a time.
+     * @param solver solver used to estimate the position from the beacon distances
+     * @param earlyExitThreshold distance change in metres below which the previous fix is kept, 0 to always solve
+     */
+    public LocationFinder(PositionSolver solver, double earlyExitThreshold) {
+        this(solver, earlyExitThreshold, null, 0);
+    }
+
+    /**
+     * Create a location finder that starts every snapshot solve from the previous fix and only solves with
+     * the beacons that can plausibly be heard there. Active beacons further than the candidate radius from the
+     * previous fix, such as stale or reflected ones, are left out. If fewer than three beacons remain the
+     * previous fix is considered lost and all beacons are used.
+     * @param solver solver used to estimate the position from the beacon distances
+     * @param earlyExitThreshold distance change in metres below which the previous fix is kept, 0 to always solve
+     * @param grid spatial index of the catalogue, null to use all active beacons
+     * @param candidateRadius largest plausible distance in metres between the previous fix and a heard beacon
+     */
+    public LocationFinder(PositionSolver solver, double earlyExitThreshold, BeaconGrid grid, double candidateRadius) {
+        this(solver, earlyExitThreshold, grid, candidateRadius, null);
+    }
+
+    /**
+     * Create a location finder that starts every snapshot solve from the previous fix, only solves with the
+     * beacons that can plausibly be heard there and tracks the floor across snapshots instead of finding it
+     * from every snapshot on its own.
+     * @param solver solver used to estimate the position from the beacon distances
+     * @param earlyExitThreshold distance change in metres below which the previous fix is kept, 0 to always solve
+     * @param grid spatial index of the catalogue, null to use all active beacons
+     * @param candidateRadius largest plausible distance in metres between the previous fix and a heard beacon
+     * @param floors estimator tracking the floor, null to find the floor from every snapshot
+     */
+    public LocationFinder(PositionSolver solver, double earlyExitThreshold, BeaconGrid grid, double candidateRadius,
+                          FloorEstimator floors) {
+        this.solver = solver;
+        this.warmStart = new WarmStartState();
+        this.earlyExitThreshold = earlyExitThreshold;
+        this.grid = grid;
+        this.candidateRadius = candidateRadius;
+        this.floors = floors;
+    }
+
+    /**
+     * Calculates the distance between two coordinate pairs
+     * @param loc1 coordinate pair of the first beacon
+     * @param loc2 coordinate pair of the second beacon
+     * @return distance between two beacons
+     */
+    public double calculateDistance(Location loc1, Location loc2){
+        //calculate distance between two coordinates
+        final double R = 6371000;
+        double lat1 = Math.toRadians(loc1.getLatitude());
+        double lat2 = Math.toRadians(loc2.getLatitude());
+        double latDiff = Math.toRadians(loc2.getLatitude() - loc1.getLatitude());
+        double longDiff = Math.toRadians(loc2.getLongitude() - loc1.getLongitude());
+
+        double a = Math.pow(Math.sin(latDiff / 2), 2) + Math.pow(Math.sin(longDiff / 2), 2) *
+                Math.cos(lat1) * Math.cos(lat2);
+        double c = 2 * Math.asin(Math.sqrt(a));
+        return R * c;
+    }
+
+    private double calculateDistanceCircle(Location loc1, Location loc2, double radius){
+        double distance = calculateDistance(loc1, loc2);
+        return distance - radius;
+    }
+
+    /**
+     * Calculate the average location using the list with active beacons
+     * @param beacons list of active beacons
+     * @return average location derived from the list of active beacons
+     */
+    private Location averageLocation(List<iBeacon> beacons) {    // list of active beacons
+        Location thisLocation = new Location();
+        double avgLat = 0;
+        double avgLon = 0;
+        int N = beacons.size();
+
+        for(iBeacon beacon: beacons){
+            avgLat += beacon.getLatitude();
+            avgLon += beacon.getLongitude();
+        }
+        avgLat/=N;
+        avgLon/=N;
+        thisLocation.setLatitude(avgLat);
+        thisLocation.setLongitude(avgLon);
+
+        return thisLocation;
+    }
+
+    double calculateError(Location location, List<iBeacon> beacons, double[] distances) {
+        double error = 0.0;
+        int N = beacons.size();
+        for (int i = 0; i < N; i++) {
+            double distance = calculateDistanceCircle(location, beacons.get(i).getLocation(), distances[i]);
+            error += distance*distance;
+        }
+        error/= N;
+        return error;
+    }
+
+    /**
+     * Finds the floor with the highest summed received power
+     * @param beacons list of active beacons
+     * @param rssi received signal strength of each beacon
+     * @return floor with the highest power, the lowest one on a tie, or -1 if the list is empty
+     */
+    int findFloor(List<iBeacon> beacons, int[] rssi){
+        if (beacons.isEmpty()) return -1;
+        int lowestFloor = Integer.MAX_VALUE;
+        int highestFloor = Integer.MIN_VALUE;
+        for (iBeacon beacon: beacons) {
+            lowestFloor = Math.min(lowestFloor, beacon.getFloor());
+            highestFloor = Math.max(highestFloor, beacon.getFloor());
+        }
+
+        double[] power = WORKSPACE.get().floorPower(highestFloor - lowestFloor + 1);
+        for (int i = 0; i < beacons.size(); i++) {
+            power[beacons.get(i).getFloor() - lowestFloor] += Math.pow(10, rssi[i] / 10.0);
+        }
+
+        int bestFloor = 0;
+        for (int f = 1; f <= highestFloor - lowestFloor; f++) {
+            if (power[f] > power[bestFloor]) bestFloor = f;
+        }
+        return lowestFloor + bestFloor;
+    }
+
+    /**
+     * Estimates the current location from the list of active beacons and their measurements.
+     * The input is only read, the distances corrected for the floor are kept in the workspace.
+     * @param beacons list of currently available beacons
+     * @param distances measured distance in metres to each beacon
+     * @param rssi received signal strength of each beacon
+     * @return location with the lowest error
+     */
+    public Location optimisation(List<iBeacon> beacons, double[] distances, int[] rssi) {
+        //Find on which floor you are
+        myFloor = findFloor(beacons, rssi);
+        floorConfidence = 1;
+
+        //find average location of beacons to use as starting point
+        Location start = averageLocation(beacons);
+
+        //use the positions cached at load time, or project around the average location if there are none
+        LocalFrame frame = sharedFrame(beacons);
+        boolean projected = frame != null;
+        if (!projected) {
+            frame = new LocalFrame(start);
+        }
+
+        //correct the distance to other floors
+        int N = beacons.size();
+        SolverWorkspace workspace = WORKSPACE.get();
+        workspace.ensureCapacity(N);
+        for (int i = 0; i < N; i++) {
+            iBeacon beacon = beacons.get(i);
+            workspace.x[i] = projected ? beacon.getX() : frame.toX(beacon.getLongitude());
+            workspace.y[i] = projected ? beacon.getY() : frame.toY(beacon.getLatitude());
+            double height = (beacon.getFloor() - myFloor) * floorDistance;
+            double distance = distances[i];
+            workspace.distance[i] = Math.sqrt(Math.max(0, distance * distance - height * height));
+        }
+
+        //solve for the point with the lowest error
+        double[] position = workspace.position;
+        position[0] = frame.toX(start.getLongitude());
+        position[1] = frame.toY(start.getLatitude());
+        lastIterations = solver.solve(workspace.x, workspace.y, workspace.distance, N, position);
+
+        lastError = LevenbergMarquardtSolver.cost(position[0], position[1],
+                workspace.x, workspace.y, workspace.distance, N) / N;
+        return frame.toLocation(position[0], position[1]);
+    }
+
+    /**
+     * Returns the frame all given beacons were projected into at load time
+     * @param beacons list of beacons
+     * @return the common frame, or null if a beacon is not projected or the frames differ
+     */
+    private static LocalFrame sharedFrame(List<iBeacon> beacons) {
+        LocalFrame frame = beacons.isEmpty() ? null : beacons.get(0).getFrame();
+        for (iBeacon beacon : beacons) {
+            if (beacon.getFrame() != frame) return null;
+        }
+        return frame;
+    }
+
+    /**
+     * Estimates the current location from active beacons given as packed arrays.
+     * Unlike {@link #optimisation(List, double[], int[])} this does not allocate.
+     * @param latitude latitude of each beacon
+     * @param longitude longitude of each beacon
+     * @param distance measured distance to each beacon in metres
+     * @param rssi received signal strength of each beacon
+     * @param floor floor number of each beacon
+     * @param count number of beacons to use from the arrays
+     * @param result location the estimate is written to
+     * @return mean squared error of the estimate in square metres
+     */
+    public double optimisation(double[] latitude, double[] longitude, double[] distance, int[] rssi, int[] floor,
+                               int count, Location result) {
+        return optimisation(latitude, longitude, distance, rssi, floor, count, null, result);
+    }
+
+    /**
+     * Same as {@link #optimisation(double[], double[], double[], int[], int[], int, Location)}
+     * @param tracked snapshot the arrays come from, its floor is tracked by the floor estimator if there is one,
+     *                or null to find the floor from the arrays on their own
+     */
+    private double optimisation(double[] latitude, double[] longitude, double[] distance, int[] rssi, int[] floor,
+                                int count, ScanSnapshot tracked, Location result) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one beacon is needed, got " + count);
+        }
+        SolverWorkspace workspace = WORKSPACE.get();
+        workspace.ensureCapacity(count);
+
+        //find average location of beacons and use it as origin of the projection
+        double originLatitude = 0;
+        double originLongitude = 0;
+        for (int i = 0; i < count; i++) {
+            originLatitude += latitude[i];
+            originLongitude += longitude[i];
+        }
+        originLatitude /= count;
+        originLongitude /= count;
+        double metresPerDegreeLongitude = LocalFrame.metresPerDegreeLongitude(originLatitude);
+
+        for (int i = 0; i < count; i++) {
+            workspace.x[i] = (longitude[i] - originLongitude) * metresPerDegreeLongitude;
+            workspace.y[i] = (latitude[i] - originLatitude) * LocalFrame.METRES_PER_DEGREE;
+        }
+
+        double error = solve(workspace.x, workspace.y, distance, rssi, floor, null, count, tracked, workspace);
+        result.setLongitude(originLongitude + workspace.position[0] / metresPerDegreeLongitude);
+        result.setLatitude(originLatitude + workspace.position[1] / LocalFrame.METRES_PER_DEGREE);
+        return error;
+    }
+
+    /**
+     * Estimates the current location from active beacons given as packed arrays of coordinates
+     * that were projected at load time, see {@link LocalFrame#project}.
+     * This is the cheapest variant: no trigonometry is needed and the result is converted back linearly.
+     * @param frame frame the coordinates are in
+     * @param x metres east of the frame origin of each beacon
+     * @param y metres north of the frame origin of each beacon
+     * @param distance measured distance to each beacon in metres
+     * @param rssi received signal strength of each beacon
+     * @param floor floor number of each beacon
+     * @param count number of beacons to use from the arrays
+     * @param result location the estimate is written to
+     * @return mean squared error of the estimate in square metres
+     */
+    public double optimisation(LocalFrame frame, double[] x, double[] y, double[] distance, int[] rssi, int[] floor,
+                               int count, Location result) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one beacon is needed, got " + count);
+        }
+        return optimisation(frame, x, y, distance, rssi, floor, null, count, result);
+    }
+
+    /**
+     * Same as {@link #optimisation(LocalFrame, double[], double[], double[], int[], int[], int, Location)}
+     * @param slots registry slot of each beacon reported for rejected beacons, or null to report indices
+     */
+    private double optimisation(LocalFrame frame, double[] x, double[] y, double[] distance, int[] rssi, int[] floor,
+                                int[] slots, int count, Location result) {
+        SolverWorkspace workspace = WORKSPACE.get();
+        workspace.ensureCapacity(count);
+
+        double error = solve(x, y, distance, rssi, floor, slots, count, null, workspace);
+        result.setLongitude(frame.toLongitude(workspace.position[0]));
+        result.setLatitude(frame.toLatitude(workspace.position[1]));
+        return error;
+    }
+
+    /**
+     * Estimates the current location from a snapshot of the active beacons.
+     * Uses the projected coordinates when the snapshot has them, see {@link ScanSnapshot#getFrame()}.
+     * @param snapshot snapshot of the active beacons, must not be empty
+     * @param result location the estimate is written to
+     * @return mean squared error of the estimate in square metres
+     */
+    public double optimisation(ScanSnapshot snapshot, Location result) {
+        if (snapshot.getFrame() == null) {
+            if (this.warmStart != null) this.warmStart.invalidate();
+            return optimisation(snapshot.getLatitude(), snapshot.getLongitude(), snapshot.getDistance(),
+                    snapshot.getRssi(), snapshot.getFloor(), snapshot.getCount(), snapshot, result);
+        }
+        if (this.warmStart == null) {
+            if (snapshot.getCount() < 1) {
+                throw new IllegalArgumentException("At least one beacon is needed, got " + snapshot.getCount());
+            }
+            return optimisation(snapshot.getFrame(), snapshot.getX(), snapshot.getY(), snapshot.getDistance(),
+                    snapshot.getRssi(), snapshot.getFloor(), snapshot.getSlots(), snapshot.getCount(), result);
+        }
+        return warmOptimisation(snapshot, result);
+    }
+
+    @Override
+    public double locate(ScanSnapshot snapshot, Location result) {
+        return optimisation(snapshot, result);
+    }
+
+    /**
+     * Solves a snapshot starting from the previous fix, or keeps the previous fix if the input barely changed
+     * @param snapshot snapshot of the active beacons with projected coordinates
+     * @param result location the estimate is written to
+     * @return mean squared error of the estimate in square metres
+     */
+    private double warmOptimisation(ScanSnapshot snapshot, Location result) {
+        int count = snapshot.getCount();
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one beacon is needed, got " + count);
+        }
+        LocalFrame frame = snapshot.getFrame();
+        double[] x = snapshot.getX();
+        double[] y = snapshot.getY();
+        int[] floor = snapshot.getFloor();
+        int[] slots = snapshot.getSlots();
+        SolverWorkspace workspace = WORKSPACE.get();
+        workspace.ensureCapacity(count);
+
+        //Find on which floor you are and correct the distance to other floors
+        findFloor(snapshot.getRssi(), floor, count, snapshot, workspace);
+        for (int i = 0; i < count; i++) {
+            double height = (floor[i] - myFloor) * floorDistance;
+            double distance = snapshot.getDistance()[i];
+            workspace.distance[i] = Math.sqrt(Math.max(0, distance * distance - height * height));
+        }
+
+        double[] position = workspace.position;
+        if (this.warmStart.isWarm(frame, myFloor)) {
+            if (this.grid != null && this.grid.getFrame() == frame) {
+                int candidates = selectCandidates(snapshot, workspace);
+                if (candidates < count) {
+                    count = candidates;
+                    x = workspace.x;
+                    y = workspace.y;
+                    slots = workspace.slots;
+                }
+            }
+
+            //only the residuals of beacons that changed are recomputed at the previous fix
+            double delta = this.warmStart.update(slots, x, y, workspace.distance, count);
+            if (delta < this.earlyExitThreshold) {
+                EARLY_EXITS.increment();
+                lastIterations = 0;
+                lastError = this.warmStart.getCost() / count;
+                result.setLongitude(frame.toLongitude(this.warmStart.x));
+                result.setLatitude(frame.toLatitude(this.warmStart.y));
+                return lastError;
+            }
+            position[0] = this.warmStart.x;
+            position[1] = this.warmStart.y;
+        } else {
+            searchStart(x, y, workspace.distance, count, workspace);
+        }
+
+        long start = System.nanoTime();
+        lastIterations = solver.solve(x, y, workspace.distance, count, position, workspace.rejected);
+        SOLVE_TIME.recordSince(start);
+        collectRejected(slots, count, workspace);
+        this.warmStart.reset(frame, myFloor, position, slots, x, y, workspace.distance, count);
+
+        lastError = this.warmStart.getCost() / count;
+        record();
+        result.setLongitude(frame.toLongitude(position[0]));
+        result.setLatitude(frame.toLatitude(position[1]));
+        return lastError;
+    }
+
+    /**
+     * Keeps the active beacons within the candidate radius of the previous fix, on any floor of the snapshot.
+     * The grid query costs in proportion to the beacons around the fix, not to the catalogue.
+     * Kept beacons are compacted into the x, y, distance and slots arrays of the workspace,
+     * the distances must already be in the workspace.
+     * @param snapshot snapshot of the active beacons
+     * @param workspace workspace of the calling thread
+     * @return number of beacons kept, the snapshot count if the selection was not applied
+     */
+    private int selectCandidates(ScanSnapshot snapshot, SolverWorkspace workspace) {
+        int count = snapshot.getCount();
+        int[] slots = snapshot.getSlots();
+        int[] floor = snapshot.getFloor();
+        int lowestFloor = floor[0];
+        int highestFloor = floor[0];
+        for (int i = 1; i < count; i++) {
+            lowestFloor = Math.min(lowestFloor, floor[i]);
+            highestFloor = Math.max(highestFloor, floor[i]);
+        }
+
+        workspace.clearMarks();
+        for (int f = lowestFloor; f <= highestFloor; f++) {
+            int found;
+            while ((found = this.grid.radius(f, this.warmStart.x, this.warmStart.y, this.candidateRadius,
+                    workspace.candidates)) == workspace.candidates.length) {
+                workspace.growCandidates();
+            }
+            for (int i = 0; i < found; i++) {
+                workspace.mark(workspace.candidates[i]);
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (workspace.isMarked(slots[i])) kept++;
+        }
+        if (kept == count || kept < MIN_CANDIDATES) return count;
+
+        double[] x = snapshot.getX();
+        double[] y = snapshot.getY();
+        kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (!workspace.isMarked(slots[i])) continue;
+            workspace.x[kept] = x[i];
+            workspace.y[kept] = y[i];
+            workspace.distance[kept] = workspace.distance[i];
+            workspace.slots[kept] = slots[i];
+            kept++;
+        }
+        return kept;
+    }
+
+    /**
+     * Evaluates a grid of points over the area around the beacons in one kernel batch and puts the best one
+     * in the position of the workspace. Unlike the centroid it does not start the solver on the wrong side
+     * of a line of beacons, where it would converge to the mirror image of the fix.
+     * @param x metres east of each beacon
+     * @param y metres north of each beacon
+     * @param distance corrected distance to each beacon in metres
+     * @param count number of beacons
+     * @param workspace workspace of the calling thread
+     */
+    private void searchStart(double[] x, double[] y, double[] distance, int count, SolverWorkspace workspace) {
+        double minX = x[0], maxX = x[0], minY = y[0], maxY = y[0];
+        for (int i = 1; i < count; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        double stepX = (maxX - minX + 2 * SEARCH_MARGIN) / (SEARCH_STEPS - 1);
+        double stepY = (maxY - minY + 2 * SEARCH_MARGIN) / (SEARCH_STEPS - 1);
+        int points = 0;
+        for (int row = 0; row < SEARCH_STEPS; row++) {
+            for (int column = 0; column < SEARCH_STEPS; column++) {
+                workspace.searchX[points] = minX - SEARCH_MARGIN + column * stepX;
+                workspace.searchY[points] = minY - SEARCH_MARGIN + row * stepY;
+                points++;
+            }
+        }
+
+        this.kernel.rangeCost(x, y, distance, count, workspace.searchX, workspace.searchY, 0, points,
+                workspace.searchCost);
+        int best = 0;
+        for (int j = 1; j < points; j++) {
+            if (workspace.searchCost[j] < workspace.searchCost[best]) best = j;
+        }
+        workspace.position[0] = workspace.searchX[best];
+        workspace.position[1] = workspace.searchY[best];
+    }
+
+    /**
+     * Finds the floor, corrects the distances for it and solves starting from the best point of a grid search.
+     * The estimate is left in the position of the workspace.
+     * @param x metres east of each beacon
+     * @param y metres north of each beacon
+     * @param distance measured distance to each beacon in metres
+     * @param rssi received signal strength of each beacon
+     * @param floor floor number of each beacon
+     * @param slots registry slot of each beacon reported for rejected beacons, or null to report indices
+     * @param count number of beacons
+     * @param tracked snapshot the arrays come from, see {@link #findFloor(int[], int[], int, ScanSnapshot,
+     *                SolverWorkspace)}, or null
+     * @param workspace workspace of the calling thread
+     * @return mean squared error of the estimate in square metres
+     */
+    private double solve(double[] x, double[] y, double[] distance, int[] rssi, int[] floor, int[] slots, int count,
+                         ScanSnapshot tracked, SolverWorkspace workspace) {
+        //Find on which floor you are
+        findFloor(rssi, floor, count, tracked, workspace);
+
+        //correct the distance to other floors and search for a starting point
+        for (int i = 0; i < count; i++) {
+            double height = (floor[i] - myFloor) * floorDistance;
+            workspace.distance[i] = Math.sqrt(Math.max(0, distance[i] * distance[i] - height * height));
+        }
+
+        double[] position = workspace.position;
+        long start = System.nanoTime();
+        searchStart(x, y, workspace.distance, count, workspace);
+        lastIterations = solver.solve(x, y, workspace.distance, count, position, workspace.rejected);
+        SOLVE_TIME.recordSince(start);
+        collectRejected(slots, count, workspace);
+
+        lastError = LevenbergMarquardtSolver.cost(position[0], position[1], x, y, workspace.distance, count) / count;
+        record();
+        return lastError;
+    }
+
+    /**
+     * Keeps the beacons the solver rejected as outliers in the last solve
+     * @param slots registry slot of each beacon, or null to keep indices
+     * @param count number of beacons
+     * @param workspace workspace holding the rejection of each beacon
+     */
+    private void collectRejected(int[] slots, int count, SolverWorkspace workspace) {
+        rejectedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (!workspace.rejected[i]) continue;
+            if (rejectedCount == rejected.length) {
+                rejected = Arrays.copyOf(rejected, Math.max(4, rejected.length * 2));
+            }
+            rejected[rejectedCount++] = slots != null ? slots[i] : i;
+        }
+        REJECTED.record(rejectedCount);
+    }
+
+    /**
+     * Records the iterations and the root mean square residual of the last solve
+     */
+    private void record() {
+        ITERATIONS.record(lastIterations);
+        RESIDUAL.record(Math.round(Math.sqrt(lastError) * 1000));
+    }
+
+    /**
+     * Sets the floor of the estimate and its confidence. The floor estimator tracks the floor of a snapshot,
+     * otherwise the floor is the one with the highest summed received power and its confidence is 1.
+     * @param rssi received signal strength of each beacon
+     * @param floor floor number of each beacon
+     * @param count number of beacons
+     * @param tracked snapshot the arrays come from, or null if the floor is found from the arrays on their own
+     * @param workspace workspace providing the per floor accumulator
+     */
+    private void findFloor(int[] rssi, int[] floor, int count, ScanSnapshot tracked, SolverWorkspace workspace) {
+        if (tracked != null && this.floors != null) {
+            myFloor = this.floors.update(tracked);
+            floorConfidence = this.floors.getConfidence();
+        } else {
+            myFloor = findFloor(rssi, floor, count, workspace);
+            floorConfidence = 1;
+        }
+    }
+
+    /**
+     * Finds the floor with the highest summed received power, same as {@link #findFloor(List, int[])}
+     * but over packed arrays and without boxing
+     * @param rssi received signal strength of each beacon
+     * @param floor floor number of each beacon
+     * @param count number of beacons
+     * @param workspace workspace providing the per floor accumulator
+     * @return floor with the highest power, the lowest one on a tie
+     */
+    private int findFloor(int[] rssi, int[] floor, int count, SolverWorkspace workspace) {
+        int lowestFloor = floor[0];
+        int highestFloor = floor[0];
+        for (int i = 1; i < count; i++) {
+            lowestFloor = Math.min(lowestFloor, floor[i]);
+            highestFloor = Math.max(highestFloor, floor[i]);
+        }
+
+        double[] power = workspace.floorPower(highestFloor - lowestFloor + 1);
+        for (int i = 0; i < count; i++) {
+            power[floor[i] - lowestFloor] += Math.pow(10, rssi[i] / 10.0);
+        }
+
+        int bestFloor = 0;
+        for (int f = 1; f <= highestFloor - lowestFloor; f++) {
+            if (power[f] > power[bestFloor]) bestFloor = f;
+        }
+        return lowestFloor + bestFloor;
+    }
+
+    /**
+     * @return floor found for the last estimated location
+     */
+    @Override
+    public int getFloor() {
+        return myFloor;
+    }
+
+    /**
+     * @return probability of the floor of the last estimated location, 1 if the floor was found from the
+     * last scan on its own
+     */
+    @Override
+    public double getFloorConfidence() {
+        return floorConfidence;
+    }
+
+    /**
+     * @return mean squared error of the last estimated location in square metres
+     */
+    public double getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return number of solver iterations used for the last estimated location
+     */
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    /**
+     * Returns the beacons the solver rejected as outliers in the last solve, see {@link RobustSolver}.
+     * Solvers that use every beacon never reject any.
+     * @return registry slot of each rejected beacon for a snapshot with projected coordinates,
+     * otherwise the index of each rejected beacon in the input
+     */
+    public int[] getRejected() {
+        return Arrays.copyOf(rejected, rejectedCount);
+    }
+}
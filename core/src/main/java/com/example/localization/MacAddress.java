@@ -0,0 +1,53 @@
+package com.example.localization;
+
+/**
+ * This class converts between textual MAC addresses and a packed 48-bit long.
+ */
+public final class MacAddress {
+    /** Value returned for text that is not a MAC address, never a valid packed address. */
+    public static final long INVALID = -1;
+
+    private static final int OCTETS = 6;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private MacAddress() {}
+
+    /**
+     * Parses a MAC address such as "AA:BB:CC:DD:EE:FF" without allocating.
+     * Separators may be ':', '-' or absent and hex digits may be of either case.
+     * @param mac textual MAC address
+     * @return the 48-bit address packed in the low bits, or {@link #INVALID}
+     */
+    public static long parse(CharSequence mac) {
+        if (mac == null) return INVALID;
+        long address = 0;
+        int digits = 0;
+        for (int i = 0; i < mac.length(); i++) {
+            char c = mac.charAt(i);
+            int value = Character.digit(c, 16);
+            if (value >= 0) {
+                if (++digits > OCTETS * 2) return INVALID;
+                address = (address << 4) | value;
+            } else if ((c != ':' && c != '-') || digits % 2 != 0) {
+                return INVALID;
+            }
+        }
+        return digits == OCTETS * 2 ? address : INVALID;
+    }
+
+    /**
+     * Formats a packed address as upper case, colon separated text
+     * @param address packed 48-bit address
+     * @return textual MAC address
+     */
+    public static String format(long address) {
+        char[] text = new char[OCTETS * 3 - 1];
+        for (int octet = 0; octet < OCTETS; octet++) {
+            int value = (int) (address >>> ((OCTETS - 1 - octet) * 8)) & 0xFF;
+            text[octet * 3] = HEX[value >>> 4];
+            text[octet * 3 + 1] = HEX[value & 0xF];
+            if (octet < OCTETS - 1) text[octet * 3 + 2] = ':';
+        }
+        return new String(text);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.localization;
+
+/**
+ * This class smooths RSSI samples with the median of a sliding window per beacon,
+ * which removes the short multipath spikes a moving average would smear out.
+ */
+public class MedianRssiFilter implements RssiFilter {
+    static final int DEFAULT_WINDOW = 5;
+
+    private final int window;
+    private final double[] samples;    // window samples per slot, used as a ring
+    private final int[] count;         // number of samples per slot, at most window
+    private final int[] next;          // ring position of the next sample per slot
+    private final double[] sorted;     // scratch space for the median
+
+    /**
+     * Create a filter with the default window of 5 samples.
+     * @param capacity number of slots, the size of the registry
+     */
+    public MedianRssiFilter(int capacity) {
+        this(capacity, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Create a filter.
+     * @param capacity number of slots, the size of the registry
+     * @param window number of samples the median is taken over
+     */
+    public MedianRssiFilter(int capacity, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive, got " + window);
+        }
+        this.window = window;
+        this.samples = new double[capacity * window];
+        this.count = new int[capacity];
+        this.next = new int[capacity];
+        this.sorted = new double[window];
+    }
+
+    @Override
+    public double update(int slot, double rssi) {
+        int offset = slot * this.window;
+        this.samples[offset + this.next[slot]] = rssi;
+        this.next[slot] = (this.next[slot] + 1) % this.window;
+        if (this.count[slot] < this.window) this.count[slot]++;
+
+        // Insertion sort, the window is small
+        int n = this.count[slot];
+        for (int i = 0; i < n; i++) {
+            double value = this.samples[offset + i];
+            int j = i - 1;
+            while (j >= 0 && this.sorted[j] > value) {
+                this.sorted[j + 1] = this.sorted[j];
+                j--;
+            }
+            this.sorted[j + 1] = value;
+        }
+        return n % 2 == 1 ? this.sorted[n / 2] : (this.sorted[n / 2 - 1] + this.sorted[n / 2]) / 2;
+    }
+
+    @Override
+    public void reset(int slot) {
+        this.count[slot] = 0;
+        this.next[slot] = 0;
+    }
+}
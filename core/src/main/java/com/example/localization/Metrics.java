@@ -0,0 +1,119 @@
+package com.example.localization;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a registry of named counters and {@link Histogram}s.
+ * Components look up their metrics once, usually in a static field, and record into them on the hot path without
+ * locks or allocation. A {@link MetricsReporter} periodically hands a {@link MetricsSnapshot} of all metrics to a
+ * {@link MetricsSink}. The localization core records into {@link #shared()}.
+ */
+public final class Metrics {
+    private static final Metrics SHARED = new Metrics();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Create an empty registry, for metrics kept apart from the shared ones.
+     */
+    public Metrics() {
+    }
+
+    /**
+     * @return the registry the localization core records into
+     */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use
+     * @param name name of the metric
+     * @return the counter
+     */
+    public Counter counter(String name) {
+        Counter counter = this.counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = this.counters.putIfAbsent(name, created);
+            if (counter == null) counter = created;
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it on first use
+     * @param name name of the metric
+     * @param unit unit of the recorded values, only used when it is created
+     * @return the histogram
+     */
+    public Histogram histogram(String name, String unit) {
+        Histogram histogram = this.histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name, unit);
+            histogram = this.histograms.putIfAbsent(name, created);
+            if (histogram == null) histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * @return the current value of all metrics, sorted by name
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (Counter counter : this.counters.values()) {
+            counters.put(counter.getName(), counter.get());
+        }
+        Map<String, Histogram.Snapshot> histograms = new TreeMap<>();
+        for (Histogram histogram : this.histograms.values()) {
+            histograms.put(histogram.getName(), histogram.snapshot());
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), counters, histograms);
+    }
+
+    /**
+     * A monotonic counter, striped so concurrent increments do not contend.
+     */
+    public static final class Counter {
+        private final String name;
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds one to the counter
+         */
+        public void increment() {
+            this.value.increment();
+        }
+
+        /**
+         * @param amount amount to add to the counter
+         */
+        public void add(long amount) {
+            this.value.add(amount);
+        }
+
+        /**
+         * @return the sum of all increments so far
+         */
+        public long get() {
+            return this.value.sum();
+        }
+
+        /**
+         * @return name of the metric
+         */
+        public String getName() {
+            return this.name;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.localization;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class periodically takes a snapshot of a {@link Metrics} registry and hands the values of the past interval
+ * to a {@link MetricsSink}, on a daemon thread of its own. Reporting is the only place where metrics are formatted,
+ * so the recording side stays free of I/O.
+ */
+public class MetricsReporter implements Closeable {
+    private final Metrics metrics;
+    private final MetricsSink sink;
+    private final ScheduledExecutorService executor;
+    private MetricsSnapshot previous;
+
+    /**
+     * Create a reporter and start reporting.
+     * @param metrics registry to report
+     * @param sink destination of the reports
+     * @param period time between reports
+     * @param unit unit of the period
+     */
+    public MetricsReporter(Metrics metrics, MetricsSink sink, long period, TimeUnit unit) {
+        this.metrics = metrics;
+        this.sink = sink;
+        this.previous = metrics.snapshot();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    /**
+     * Reports the values recorded since the previous report
+     */
+    public synchronized void report() {
+        MetricsSnapshot current = this.metrics.snapshot();
+        try {
+            this.sink.report(current.since(this.previous));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.previous = current;
+    }
+
+    /**
+     * Stops reporting after a last report of the values not reported yet, which is made on the thread of the
+     * reporter so closing never blocks on the sink.
+     */
+    @Override
+    public void close() {
+        this.executor.execute(this::report);
+        this.executor.shutdown();
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.localization;
+
+import java.io.IOException;
+
+/**
+ * This interface receives the periodic reports of a {@link MetricsReporter}, such as logcat, a file or a
+ * telemetry upload. It is called on the thread of the reporter.
+ */
+public interface MetricsSink {
+
+    /**
+     * @param interval values recorded since the previous report
+     * @throws IOException if the report can not be written
+     */
+    void report(MetricsSnapshot interval) throws IOException;
+}
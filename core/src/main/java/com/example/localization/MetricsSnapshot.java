@@ -0,0 +1,93 @@
+package com.example.localization;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class is an immutable copy of all metrics of a {@link Metrics} registry at one moment.
+ * Counters and histograms are cumulative; {@link #since(MetricsSnapshot)} turns two snapshots into the values of
+ * the interval in between, which is what a periodic report shows.
+ */
+public final class MetricsSnapshot {
+    private final long time;
+    private final Map<String, Long> counters;
+    private final Map<String, Histogram.Snapshot> histograms;
+
+    /**
+     * @param time wall clock time of the snapshot in milliseconds
+     * @param counters value per counter name
+     * @param histograms distribution per histogram name
+     */
+    MetricsSnapshot(long time, Map<String, Long> counters, Map<String, Histogram.Snapshot> histograms) {
+        this.time = time;
+        this.counters = Collections.unmodifiableMap(counters);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Returns the values recorded after an earlier snapshot of the same registry
+     * @param earlier earlier snapshot, or null for everything recorded so far
+     * @return the values recorded in between, at the time of this snapshot
+     */
+    public MetricsSnapshot since(MetricsSnapshot earlier) {
+        if (earlier == null) return this;
+        Map<String, Long> counters = new TreeMap<>();
+        for (Map.Entry<String, Long> counter : this.counters.entrySet()) {
+            Long before = earlier.counters.get(counter.getKey());
+            counters.put(counter.getKey(), counter.getValue() - (before != null ? before : 0));
+        }
+        Map<String, Histogram.Snapshot> histograms = new TreeMap<>();
+        for (Map.Entry<String, Histogram.Snapshot> histogram : this.histograms.entrySet()) {
+            histograms.put(histogram.getKey(), histogram.getValue().since(earlier.histograms.get(histogram.getKey())));
+        }
+        return new MetricsSnapshot(this.time, counters, histograms);
+    }
+
+    /**
+     * Writes one line per metric
+     * @param out destination of the lines
+     * @throws IOException if writing fails
+     */
+    public void format(Appendable out) throws IOException {
+        for (Map.Entry<String, Long> counter : this.counters.entrySet()) {
+            out.append(counter.getKey()).append(" count=").append(String.valueOf(counter.getValue())).append('\n');
+        }
+        for (Histogram.Snapshot histogram : this.histograms.values()) {
+            out.append(histogram.toString()).append('\n');
+        }
+    }
+
+    /**
+     * @return wall clock time of the snapshot in milliseconds
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return value per counter name, sorted by name
+     */
+    public Map<String, Long> getCounters() {
+        return this.counters;
+    }
+
+    /**
+     * @return distribution per histogram name, sorted by name
+     */
+    public Map<String, Histogram.Snapshot> getHistograms() {
+        return this.histograms;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            format(builder);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.localization;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class escapes the local minima of a local solver by solving from several starting points and keeping the
+ * one with the lowest residual. With nearly collinear beacons, as in a corridor, the cost has a minimum on either
+ * side of the line and a single solve converges to whichever is closest to its start.
+ * Seeds are the given starting point (the previous fix or a grid search result), a coarse grid over the beacons and
+ * the intersections of the range circles of pairs of the closest beacons. All seeds are moved downhill by a few
+ * gradient steps in one {@link ResidualKernel} batch, after which the best distinct ones are solved by the local
+ * solver, in parallel on a {@link ForkJoinPool} if one is given.
+ * Starts that have not begun when the time budget runs out are skipped and the caller does not wait for them, so the
+ * latency stays bounded; the given starting point is always solved, on the calling thread. Starts the pool rejects,
+ * for example because it was shut down, are solved on the calling thread as well.
+ * Fixes whose cost is within the ambiguity margin of the best one are considered equally good and the one closest
+ * to the given starting point wins, so the estimate does not jump between mirror images.
+ * Instances hold configuration only and can be shared between threads.
+ */
+public class MultiStartSolver implements PositionSolver {
+    static final int DEFAULT_STARTS = 4;
+    static final long DEFAULT_BUDGET = 5000000;    // nanoseconds
+    static final double DEFAULT_AMBIGUITY = 0.25;  // square metres of cost per beacon
+
+    private static final int GRID_STEPS = 4;            // seeds per side of the grid
+    private static final double GRID_MARGIN = 5;        // metres around the beacons
+    private static final int PAIR_BEACONS = 8;          // closest beacons whose circles are intersected
+    private static final int DESCENT_STEPS = 3;
+    private static final double MIN_SEPARATION = 1;     // metres between the seeds that are solved
+    private static final double MIN_DISTANCE = 1e-9;
+
+    private final PositionSolver local;
+    private final int starts;
+    private final long budget;
+    private final ForkJoinPool pool;    // null to solve the starts on the calling thread
+    private final double ambiguity;
+    private final ResidualKernel kernel = ResidualKernels.get();
+
+    private static final Metrics.Counter POOL_REJECTIONS = Metrics.shared().counter("solver.pool_rejections");
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Create a solver that runs the default number of Levenberg-Marquardt starts on the common pool.
+     */
+    public MultiStartSolver() {
+        this(new LevenbergMarquardtSolver(), DEFAULT_STARTS, DEFAULT_BUDGET, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a solver with the default ambiguity margin.
+     * @param local solver run from every start, must be safe to share between threads
+     * @param starts number of starts to solve, including the given starting point
+     * @param budget time in nanoseconds after which no new start is begun
+     * @param pool pool to solve the starts on in parallel, or null to solve them on the calling thread
+     */
+    public MultiStartSolver(PositionSolver local, int starts, long budget, ForkJoinPool pool) {
+        this(local, starts, budget, pool, DEFAULT_AMBIGUITY);
+    }
+
+    /**
+     * Create a solver.
+     * @param local solver run from every start, must be safe to share between threads
+     * @param starts number of starts to solve, including the given starting point
+     * @param budget time in nanoseconds after which no new start is begun
+     * @param pool pool to solve the starts on in parallel, or null to solve them on the calling thread
+     * @param ambiguity cost per beacon in square metres within which fixes are considered equally good
+     */
+    public MultiStartSolver(PositionSolver local, int starts, long budget, ForkJoinPool pool, double ambiguity) {
+        if (starts < 1) {
+            throw new IllegalArgumentException("At least one start is needed, got " + starts);
+        }
+        this.local = local;
+        this.starts = starts;
+        this.budget = budget;
+        this.pool = pool;
+        this.ambiguity = ambiguity;
+    }
+
+    @Override
+    public int solve(double[] x, double[] y, double[] distance, int count, double[] position) {
+        long deadline = System.nanoTime() + this.budget;
+        Scratch scratch = SCRATCH.get();
+        scratch.begin(x, y, distance, count, deadline, this.starts);
+
+        int seeds = seed(scratch, position[0], position[1]);
+        descend(scratch, seeds);
+        int chosen = choose(scratch, seeds);
+
+        Start first = scratch.starts[0];
+        first.prepare(this.local, scratch, position[0], position[1]);
+        for (int k = 1; k < chosen; k++) {
+            int seed = scratch.chosen[k];
+            scratch.starts[k].prepare(this.local, scratch, scratch.seedX[seed], scratch.seedY[seed]);
+        }
+
+        if (this.pool == null || chosen == 1) {
+            for (int k = 0; k < chosen; k++) {
+                scratch.starts[k].run(k > 0);
+            }
+        } else {
+            int submitted = 1;
+            try {
+                for (; submitted < chosen; submitted++) {
+                    scratch.starts[submitted].reinitialize();
+                    this.pool.execute(scratch.starts[submitted]);
+                }
+            } catch (RejectedExecutionException e) {
+                POOL_REJECTIONS.increment();
+            }
+            first.run(false);
+            for (int k = submitted; k < chosen; k++) {
+                scratch.starts[k].run(true);
+            }
+            await(scratch, submitted);
+        }
+        return pick(scratch, chosen, position);
+    }
+
+    /**
+     * Fills the seeds of the scratch: the given starting point, a grid over the beacons and circle intersections
+     * @return number of seeds
+     */
+    private int seed(Scratch scratch, double startX, double startY) {
+        double[] x = scratch.x;
+        double[] y = scratch.y;
+        double[] distance = scratch.distance;
+        int count = scratch.count;
+        int pairBeacons = closest(scratch);
+        scratch.ensureSeeds(1 + GRID_STEPS * GRID_STEPS + pairBeacons * (pairBeacons - 1));
+
+        int seeds = 0;
+        scratch.seedX[seeds] = startX;
+        scratch.seedY[seeds] = startY;
+        seeds++;
+
+        double minX = x[0], maxX = x[0], minY = y[0], maxY = y[0];
+        for (int i = 1; i < count; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        double stepX = (maxX - minX + 2 * GRID_MARGIN) / (GRID_STEPS - 1);
+        double stepY = (maxY - minY + 2 * GRID_MARGIN) / (GRID_STEPS - 1);
+        for (int row = 0; row < GRID_STEPS; row++) {
+            for (int column = 0; column < GRID_STEPS; column++) {
+                scratch.seedX[seeds] = minX - GRID_MARGIN + column * stepX;
+                scratch.seedY[seeds] = minY - GRID_MARGIN + row * stepY;
+                seeds++;
+            }
+        }
+
+        for (int a = 0; a < pairBeacons; a++) {
+            int i = scratch.pairs[a];
+            for (int b = a + 1; b < pairBeacons; b++) {
+                int j = scratch.pairs[b];
+                double dx = x[j] - x[i];
+                double dy = y[j] - y[i];
+                double separation = Math.sqrt(dx * dx + dy * dy);
+                if (separation < MIN_DISTANCE) continue;
+                // Distance from beacon i along the line to the chord, clamped when the circles do not meet
+                double along = (separation * separation + distance[i] * distance[i] - distance[j] * distance[j])
+                        / (2 * separation);
+                double across = Math.sqrt(Math.max(0, distance[i] * distance[i] - along * along));
+                double ux = dx / separation;
+                double uy = dy / separation;
+                double cx = x[i] + along * ux;
+                double cy = y[i] + along * uy;
+                scratch.seedX[seeds] = cx - across * uy;
+                scratch.seedY[seeds] = cy + across * ux;
+                seeds++;
+                if (across > 0) {
+                    scratch.seedX[seeds] = cx + across * uy;
+                    scratch.seedY[seeds] = cy - across * ux;
+                    seeds++;
+                }
+            }
+        }
+        return seeds;
+    }
+
+    /**
+     * Selects the beacons with the shortest distances, whose circles are the most reliable, into the pairs array
+     * @return number of beacons selected
+     */
+    private static int closest(Scratch scratch) {
+        int selected = 0;
+        for (int i = 0; i < scratch.count; i++) {
+            // Insertion into the short sorted list of the closest beacons so far
+            int at = selected;
+            while (at > 0 && scratch.distance[scratch.pairs[at - 1]] > scratch.distance[i]) at--;
+            if (at >= PAIR_BEACONS) continue;
+            int end = Math.min(selected, PAIR_BEACONS - 1);
+            System.arraycopy(scratch.pairs, at, scratch.pairs, at + 1, end - at);
+            scratch.pairs[at] = i;
+            if (selected < PAIR_BEACONS) selected++;
+        }
+        return selected;
+    }
+
+    /**
+     * Moves all seeds downhill in one kernel batch per step. A step of minus the gradient over twice the
+     * beacon count moves a seed by the mean of the residuals along the directions to the beacons.
+     * Leaves the cost at the moved seeds in the scratch.
+     */
+    private void descend(Scratch scratch, int seeds) {
+        double rate = 0.5 / scratch.count;
+        for (int step = 0; step < DESCENT_STEPS; step++) {
+            this.kernel.rangeCostAndGradient(scratch.x, scratch.y, scratch.distance, scratch.count,
+                    scratch.seedX, scratch.seedY, 1, seeds, scratch.seedCost, scratch.gradientX, scratch.gradientY);
+            for (int s = 1; s < seeds; s++) {
+                scratch.seedX[s] -= rate * scratch.gradientX[s];
+                scratch.seedY[s] -= rate * scratch.gradientY[s];
+            }
+        }
+        this.kernel.rangeCost(scratch.x, scratch.y, scratch.distance, scratch.count,
+                scratch.seedX, scratch.seedY, 1, seeds, scratch.seedCost);
+    }
+
+    /**
+     * Chooses the seeds to solve: the given starting point first, then the cheapest seeds that lie further
+     * than the minimum separation from the ones already chosen
+     * @return number of seeds chosen
+     */
+    private int choose(Scratch scratch, int seeds) {
+        scratch.chosen[0] = 0;
+        int chosen = 1;
+        while (chosen < this.starts) {
+            int best = -1;
+            for (int s = 1; s < seeds; s++) {
+                if (scratch.seedCost[s] != scratch.seedCost[s]) continue;
+                if (best >= 0 && scratch.seedCost[s] >= scratch.seedCost[best]) continue;
+                if (isNearChosen(scratch, chosen, s)) continue;
+                best = s;
+            }
+            if (best < 0) break;
+            scratch.chosen[chosen++] = best;
+        }
+        return chosen;
+    }
+
+    private static boolean isNearChosen(Scratch scratch, int chosen, int seed) {
+        for (int k = 0; k < chosen; k++) {
+            double dx = scratch.seedX[seed] - scratch.seedX[scratch.chosen[k]];
+            double dy = scratch.seedY[seed] - scratch.seedY[scratch.chosen[k]];
+            if (dx * dx + dy * dy < MIN_SEPARATION * MIN_SEPARATION) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the starts running on the pool until the deadline. Starts that are still running by then are
+     * abandoned: they are cancelled and replaced, so a late one never writes into the scratch of a later call.
+     */
+    private static void await(Scratch scratch, int chosen) {
+        for (int k = 1; k < chosen; k++) {
+            Start start = scratch.starts[k];
+            long remaining = scratch.deadline - System.nanoTime();
+            try {
+                start.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                scratch.abandon(k);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int l = k; l < chosen; l++) {
+                    if (!scratch.starts[l].isDone()) scratch.abandon(l);
+                }
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Copies the chosen fix into the position
+     * @return total number of iterations of all starts that ran
+     */
+    private int pick(Scratch scratch, int chosen, double[] position) {
+        double startX = position[0];
+        double startY = position[1];
+        double lowest = Double.POSITIVE_INFINITY;
+        int iterations = 0;
+        for (int k = 0; k < chosen; k++) {
+            Start start = scratch.starts[k];
+            if (!start.solved) continue;
+            iterations += start.iterations;
+            lowest = Math.min(lowest, start.cost);
+        }
+
+        double margin = lowest + this.ambiguity * scratch.count;
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < chosen; k++) {
+            Start start = scratch.starts[k];
+            if (!start.solved || start.cost > margin) continue;
+            double dx = start.position[0] - startX;
+            double dy = start.position[1] - startY;
+            if (dx * dx + dy * dy < nearest) {
+                nearest = dx * dx + dy * dy;
+                position[0] = start.position[0];
+                position[1] = start.position[1];
+            }
+        }
+        return iterations;
+    }
+
+    /**
+     * One start of the local solver. Reused between calls on the same thread unless it was abandoned.
+     * Holds its own references to the input, so an abandoned start never mixes the input of two calls.
+     */
+    private static final class Start extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final double[] position = new double[2];
+        volatile boolean cancelled;
+        private PositionSolver local;
+        private double[] x;
+        private double[] y;
+        private double[] distance;
+        private int count;
+        private long deadline;
+        boolean solved;
+        int iterations;
+        double cost;
+
+        void prepare(PositionSolver local, Scratch scratch, double startX, double startY) {
+            this.local = local;
+            this.x = scratch.x;
+            this.y = scratch.y;
+            this.distance = scratch.distance;
+            this.count = scratch.count;
+            this.deadline = scratch.deadline;
+            this.position[0] = startX;
+            this.position[1] = startY;
+            this.solved = false;
+        }
+
+        /**
+         * @param optional whether the start is skipped once the time budget has run out
+         */
+        void run(boolean optional) {
+            if (this.cancelled || optional && System.nanoTime() > this.deadline) return;
+            this.iterations = this.local.solve(this.x, this.y, this.distance, this.count, this.position);
+            this.cost = LevenbergMarquardtSolver.cost(this.position[0], this.position[1],
+                    this.x, this.y, this.distance, this.count);
+            this.solved = true;
+        }
+
+        @Override
+        protected void compute() {
+            run(true);
+        }
+    }
+
+    /**
+     * Per thread input and buffers of a call
+     */
+    private static final class Scratch {
+        double[] x;
+        double[] y;
+        double[] distance;
+        int count;
+        long deadline;
+
+        final int[] pairs = new int[PAIR_BEACONS];
+        double[] seedX = new double[0];
+        double[] seedY = new double[0];
+        double[] seedCost = new double[0];
+        double[] gradientX = new double[0];
+        double[] gradientY = new double[0];
+        int[] chosen = new int[0];
+        Start[] starts = new Start[0];
+
+        void begin(double[] x, double[] y, double[] distance, int count, long deadline, int starts) {
+            this.x = x;
+            this.y = y;
+            this.distance = distance;
+            this.count = count;
+            this.deadline = deadline;
+            if (this.chosen.length < starts) {
+                this.chosen = new int[starts];
+                int created = this.starts.length;
+                this.starts = Arrays.copyOf(this.starts, starts);
+                for (int k = created; k < starts; k++) {
+                    this.starts[k] = new Start();
+                }
+            }
+        }
+
+        void ensureSeeds(int seeds) {
+            if (this.seedX.length >= seeds) return;
+            this.seedX = new double[seeds];
+            this.seedY = new double[seeds];
+            this.seedCost = new double[seeds];
+            this.gradientX = new double[seeds];
+            this.gradientY = new double[seeds];
+        }
+
+        /**
+         * Cancels a start that is still running and gives its place a fresh one
+         */
+        void abandon(int k) {
+            this.starts[k].cancelled = true;
+            this.starts[k] = new Start();
+        }
+    }
+}
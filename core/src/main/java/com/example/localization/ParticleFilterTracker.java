@@ -0,0 +1,395 @@
+package com.example.localization;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class tracks the user with a particle filter instead of solving every scan on its own.
+ * Each particle is a hypothesis (x, y, floor) in the catalogue's local frame. Every snapshot the particles
+ * are moved by a pedestrian random walk model, weighted by how well the RSSI they predict through the
+ * {@link PathLossModel} matches the measured RSSI, and resampled systematically when the weights degenerate.
+ * Particle state is kept in parallel primitive arrays and all buffers are allocated up front, so a step does not
+ * allocate. The prediction and weighting are split in chunks that can run on a {@link ForkJoinPool}, and each chunk
+ * weighs its particles in one batch through the {@link ResidualKernel} of the platform.
+ */
+public class ParticleFilterTracker implements Localizer {
+    static final int DEFAULT_PARTICLES = 1000;
+    static final double DEFAULT_SPEED = 1.4;              // metres per second, standard deviation of the walk
+    static final double DEFAULT_RSSI_SIGMA = 4;           // dBm
+    static final double DEFAULT_FLOOR_CHANGE = 0.02;      // probability per second of changing floor
+    static final double DEFAULT_INITIAL_MARGIN = 5;       // metres around the beacons particles start in
+
+    private static final int CHUNK_SIZE = 256;
+    private static final double MAX_STEP_TIME = 2;        // seconds, longer gaps are treated as 2 s of walking
+    private static final double MIN_SQUARED_RANGE = 0.01;
+
+    private final int particles;
+    private final double speed;
+    private final double rssiSigma;
+    private final double floorChange;
+    private final PathLossModel model;
+    private final int lowestFloor;
+    private final int highestFloor;
+    private final ForkJoinPool pool;    // null to run the chunks on the calling thread
+    private final ResidualKernel kernel;
+
+    // Particle state, structure of arrays, swapped with the next arrays when resampling
+    private double[] x;
+    private double[] y;
+    private int[] floor;
+    private final double[] z;    // height of each particle, derived from its floor for the kernel
+    private double[] nextX;
+    private double[] nextY;
+    private int[] nextFloor;
+    private final double[] weight;
+    private final double[] logLikelihood;
+    private final double[] floorWeight;
+
+    private final Chunk[] chunks;
+    private final RecursiveAction step;
+
+    // Input of the current step, read by the chunks
+    private ScanSnapshot snapshot;
+    private double stepTime;
+    private double[] beaconZ = new double[16];
+    private double[] beaconRssi = new double[16];
+
+    private boolean initialised;
+    private LocalFrame frame;
+    private long lastTimestamp;
+    private int estimatedFloor;
+    private double floorConfidence;
+
+    /**
+     * Create a sequential tracker with the default parameters.
+     * @param registry registry of all known beacons, provides the floor range
+     */
+    public ParticleFilterTracker(BeaconRegistry registry) {
+        this(registry, DEFAULT_PARTICLES, new PathLossModel(), null);
+    }
+
+    /**
+     * Create a tracker with the default motion and measurement parameters.
+     * @param registry registry of all known beacons, provides the floor range
+     * @param particles number of particles, trades accuracy for time per step
+     * @param model model predicting the RSSI at a distance
+     * @param pool pool to weigh the particles on in parallel, or null to run on the calling thread
+     */
+    public ParticleFilterTracker(BeaconRegistry registry, int particles, PathLossModel model, ForkJoinPool pool) {
+        this(registry, particles, model, pool, DEFAULT_SPEED, DEFAULT_RSSI_SIGMA, DEFAULT_FLOOR_CHANGE, 42);
+    }
+
+    /**
+     * Create a tracker.
+     * @param registry registry of all known beacons, provides the floor range
+     * @param particles number of particles, trades accuracy for time per step
+     * @param model model predicting the RSSI at a distance
+     * @param pool pool to weigh the particles on in parallel, or null to run on the calling thread
+     * @param speed standard deviation of the walking speed in metres per second
+     * @param rssiSigma standard deviation of the measured RSSI around the predicted RSSI in dBm
+     * @param floorChange probability per second that a particle moves to an adjacent floor
+     * @param seed random seed, the same seed and input give the same track
+     */
+    public ParticleFilterTracker(BeaconRegistry registry, int particles, PathLossModel model, ForkJoinPool pool,
+                                 double speed, double rssiSigma, double floorChange, long seed) {
+        if (particles < 1) {
+            throw new IllegalArgumentException("At least one particle is needed, got " + particles);
+        }
+        this.particles = particles;
+        this.speed = speed;
+        this.rssiSigma = rssiSigma;
+        this.floorChange = floorChange;
+        this.model = model;
+        this.lowestFloor = registry.getLowestFloor();
+        this.highestFloor = Math.max(registry.getLowestFloor(), registry.getHighestFloor());
+        this.pool = pool;
+        this.kernel = ResidualKernels.get();
+
+        this.x = new double[particles];
+        this.y = new double[particles];
+        this.floor = new int[particles];
+        this.z = new double[particles];
+        this.nextX = new double[particles];
+        this.nextY = new double[particles];
+        this.nextFloor = new int[particles];
+        this.weight = new double[particles];
+        this.logLikelihood = new double[particles];
+        this.floorWeight = new double[this.highestFloor - this.lowestFloor + 1];
+
+        int chunkCount = (particles + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunks = new Chunk[chunkCount];
+        for (int c = 0; c < chunkCount; c++) {
+            this.chunks[c] = new Chunk(c * CHUNK_SIZE, Math.min(particles, (c + 1) * CHUNK_SIZE), seed + c);
+        }
+        this.step = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(ParticleFilterTracker.this.chunks);
+            }
+        };
+    }
+
+    @Override
+    public double locate(ScanSnapshot snapshot, Location result) {
+        if (snapshot.getCount() < 1) {
+            throw new IllegalArgumentException("At least one beacon is needed, got " + snapshot.getCount());
+        }
+        if (snapshot.getFrame() == null) {
+            throw new IllegalArgumentException("The particle filter needs beacons projected into one frame");
+        }
+
+        if (!this.initialised || snapshot.getFrame() != this.frame) {
+            initialise(snapshot);
+            this.stepTime = 0;
+        } else {
+            this.stepTime = Math.min(MAX_STEP_TIME, Math.max(0, (snapshot.getTimestamp() - this.lastTimestamp) / 1e9));
+        }
+        this.lastTimestamp = snapshot.getTimestamp();
+
+        // Move and weigh the particles
+        this.snapshot = snapshot;
+        prepareBeacons(snapshot);
+        if (this.pool != null && this.chunks.length > 1) {
+            this.step.reinitialize();
+            for (Chunk chunk : this.chunks) {
+                chunk.reinitialize();
+            }
+            this.pool.invoke(this.step);
+        } else {
+            for (Chunk chunk : this.chunks) {
+                chunk.run();
+            }
+        }
+        this.snapshot = null;
+
+        double spread = normaliseAndEstimate(result);
+        resampleIfDegenerate();
+        return spread;
+    }
+
+    @Override
+    public int getFloor() {
+        return this.estimatedFloor;
+    }
+
+    /**
+     * @return share of the particle weight on the estimated floor
+     */
+    @Override
+    public double getFloorConfidence() {
+        return this.floorConfidence;
+    }
+
+    /**
+     * Converts the beacon floors and RSSI of the snapshot into the arrays the kernel takes
+     * @param snapshot snapshot of the current step
+     */
+    private void prepareBeacons(ScanSnapshot snapshot) {
+        int count = snapshot.getCount();
+        if (count > this.beaconZ.length) {
+            this.beaconZ = new double[Math.max(count, this.beaconZ.length * 2)];
+            this.beaconRssi = new double[this.beaconZ.length];
+        }
+        for (int i = 0; i < count; i++) {
+            this.beaconZ[i] = snapshot.getFloor()[i] * LocalFrame.FLOOR_HEIGHT;
+            this.beaconRssi[i] = snapshot.getRssi()[i];
+        }
+    }
+
+    /**
+     * Spreads the particles uniformly over the area around the beacons, on the floor of the strongest beacon
+     * @param snapshot first snapshot
+     */
+    private void initialise(ScanSnapshot snapshot) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int strongest = 0;
+        for (int i = 0; i < snapshot.getCount(); i++) {
+            minX = Math.min(minX, snapshot.getX()[i]);
+            maxX = Math.max(maxX, snapshot.getX()[i]);
+            minY = Math.min(minY, snapshot.getY()[i]);
+            maxY = Math.max(maxY, snapshot.getY()[i]);
+            if (snapshot.getRssi()[i] > snapshot.getRssi()[strongest]) strongest = i;
+        }
+        minX -= DEFAULT_INITIAL_MARGIN;
+        minY -= DEFAULT_INITIAL_MARGIN;
+        maxX += DEFAULT_INITIAL_MARGIN;
+        maxY += DEFAULT_INITIAL_MARGIN;
+
+        Chunk random = this.chunks[0];
+        int startFloor = snapshot.getFloor()[strongest];
+        for (int p = 0; p < this.particles; p++) {
+            this.x[p] = minX + random.nextDouble() * (maxX - minX);
+            this.y[p] = minY + random.nextDouble() * (maxY - minY);
+            this.floor[p] = startFloor;
+            this.weight[p] = 1.0 / this.particles;
+        }
+        this.frame = snapshot.getFrame();
+        this.estimatedFloor = startFloor;
+        this.floorConfidence = 1;
+        this.initialised = true;
+    }
+
+    /**
+     * Turns the log-likelihoods into normalised weights and writes the weighted mean to the result
+     * @param result location the estimate is written to
+     * @return weighted spread of the particles around the estimate in square metres
+     */
+    private double normaliseAndEstimate(Location result) {
+        double maxLogLikelihood = Double.NEGATIVE_INFINITY;
+        for (Chunk chunk : this.chunks) {
+            maxLogLikelihood = Math.max(maxLogLikelihood, chunk.maxLogLikelihood);
+        }
+
+        double total = 0;
+        for (int p = 0; p < this.particles; p++) {
+            this.weight[p] *= Math.exp(this.logLikelihood[p] - maxLogLikelihood);
+            total += this.weight[p];
+        }
+        if (!(total > 0)) {
+            // Every particle is impossible, start over from the uniform weights
+            total = this.particles;
+            for (int p = 0; p < this.particles; p++) this.weight[p] = 1;
+        }
+
+        double meanX = 0, meanY = 0;
+        Arrays.fill(this.floorWeight, 0);
+        for (int p = 0; p < this.particles; p++) {
+            this.weight[p] /= total;
+            meanX += this.weight[p] * this.x[p];
+            meanY += this.weight[p] * this.y[p];
+            this.floorWeight[this.floor[p] - this.lowestFloor] += this.weight[p];
+        }
+
+        int bestFloor = 0;
+        for (int f = 1; f < this.floorWeight.length; f++) {
+            if (this.floorWeight[f] > this.floorWeight[bestFloor]) bestFloor = f;
+        }
+        this.estimatedFloor = this.lowestFloor + bestFloor;
+        this.floorConfidence = this.floorWeight[bestFloor];
+
+        double spread = 0;
+        for (int p = 0; p < this.particles; p++) {
+            double dx = this.x[p] - meanX;
+            double dy = this.y[p] - meanY;
+            spread += this.weight[p] * (dx * dx + dy * dy);
+        }
+
+        result.setLongitude(this.frame.toLongitude(meanX));
+        result.setLatitude(this.frame.toLatitude(meanY));
+        return spread;
+    }
+
+    /**
+     * Resamples systematically when the effective number of particles drops below half
+     */
+    private void resampleIfDegenerate() {
+        double sumOfSquares = 0;
+        for (int p = 0; p < this.particles; p++) {
+            sumOfSquares += this.weight[p] * this.weight[p];
+        }
+        if (1 / sumOfSquares >= this.particles / 2.0) return;
+
+        double step = 1.0 / this.particles;
+        double position = this.chunks[0].nextDouble() * step;
+        double cumulative = this.weight[0];
+        int source = 0;
+        for (int p = 0; p < this.particles; p++) {
+            while (position > cumulative && source < this.particles - 1) {
+                cumulative += this.weight[++source];
+            }
+            this.nextX[p] = this.x[source];
+            this.nextY[p] = this.y[source];
+            this.nextFloor[p] = this.floor[source];
+            position += step;
+        }
+
+        double[] swapX = this.x;
+        this.x = this.nextX;
+        this.nextX = swapX;
+        double[] swapY = this.y;
+        this.y = this.nextY;
+        this.nextY = swapY;
+        int[] swapFloor = this.floor;
+        this.floor = this.nextFloor;
+        this.nextFloor = swapFloor;
+        Arrays.fill(this.weight, step);
+    }
+
+    /**
+     * A range of particles that is moved and weighed as one task, with its own random number generator.
+     */
+    private final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private long state;
+        double maxLogLikelihood;
+
+        Chunk(int from, int to, long seed) {
+            this.from = from;
+            this.to = to;
+            this.state = seed * 0x9E3779B97F4A7C15L + 1;
+        }
+
+        @Override
+        protected void compute() {
+            run();
+        }
+
+        /**
+         * Applies the motion model and computes the log-likelihood of the snapshot for each particle
+         */
+        void run() {
+            ScanSnapshot snapshot = ParticleFilterTracker.this.snapshot;
+            int count = snapshot.getCount();
+
+            double stepTime = ParticleFilterTracker.this.stepTime;
+            double sigma = speed * Math.sqrt(stepTime);
+            double changeFloor = floorChange * stepTime;
+
+            for (int p = this.from; p < this.to; p++) {
+                // Pedestrian random walk, occasionally taking the stairs
+                x[p] += sigma * nextGaussian();
+                y[p] += sigma * nextGaussian();
+                if (changeFloor > 0 && nextDouble() < changeFloor) {
+                    int pFloor = floor[p] + (nextDouble() < 0.5 ? -1 : 1);
+                    floor[p] = Math.max(lowestFloor, Math.min(highestFloor, pFloor));
+                }
+                z[p] = floor[p] * LocalFrame.FLOOR_HEIGHT;
+            }
+
+            // Compare the RSSI predicted at the particles with the measured RSSI
+            kernel.rssiCost(snapshot.getX(), snapshot.getY(), beaconZ, beaconRssi, count,
+                    x, y, z, this.from, this.to, model, MIN_SQUARED_RANGE, logLikelihood);
+
+            double scale = -0.5 / (rssiSigma * rssiSigma);
+            double max = Double.NEGATIVE_INFINITY;
+            for (int p = this.from; p < this.to; p++) {
+                logLikelihood[p] *= scale;
+                max = Math.max(max, logLikelihood[p]);
+            }
+            this.maxLogLikelihood = max;
+        }
+
+        /**
+         * @return uniform random number in [0, 1), xorshift64*
+         */
+        double nextDouble() {
+            this.state ^= this.state >>> 12;
+            this.state ^= this.state << 25;
+            this.state ^= this.state >>> 27;
+            return ((this.state * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-53;
+        }
+
+        /**
+         * @return standard normal random number, Box-Muller
+         */
+        double nextGaussian() {
+            double u = 1 - nextDouble();
+            return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * nextDouble());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.localization;
+
+/**
+ * This class converts signal strength to distance with the log-distance path loss model:
+ * rssi = txPower - 10 * n * log10(distance).
+ */
+public class PathLossModel {
+    static final double DEFAULT_TX_POWER = -59;    // dBm at 1 metre, typical for iBeacons
+    static final double DEFAULT_EXPONENT = 2;      // free space
+
+    private final double txPower;
+    private final double exponent;
+
+    /**
+     * Create a model with -59 dBm at 1 metre and the free space exponent.
+     */
+    public PathLossModel() {
+        this(DEFAULT_TX_POWER, DEFAULT_EXPONENT);
+    }
+
+    /**
+     * Create a model.
+     * @param txPower received signal strength at 1 metre in dBm
+     * @param exponent path loss exponent, 2 in free space and typically 2 to 4 indoors
+     */
+    public PathLossModel(double txPower, double exponent) {
+        if (exponent <= 0) {
+            throw new IllegalArgumentException("exponent must be positive, got " + exponent);
+        }
+        this.txPower = txPower;
+        this.exponent = exponent;
+    }
+
+    /**
+     * @param rssi received signal strength in dBm
+     * @return estimated distance in metres
+     */
+    public double distance(double rssi) {
+        return Math.pow(10, (this.txPower - rssi) / (10 * this.exponent));
+    }
+
+    /**
+     * @param distance distance in metres
+     * @return expected received signal strength in dBm
+     */
+    public double rssi(double distance) {
+        return this.txPower - 10 * this.exponent * Math.log10(distance);
+    }
+
+    /**
+     * Same as {@link #rssi(double)} but from the squared distance, which saves a square root
+     * @param squaredDistance squared distance in square metres
+     * @return expected received signal strength in dBm
+     */
+    public double rssiFromSquared(double squaredDistance) {
+        return this.txPower - 5 * this.exponent * Math.log10(squaredDistance);
+    }
+
+    /**
+     * @return received signal strength at 1 metre in dBm
+     */
+    public double getTxPower() {
+        return this.txPower;
+    }
+
+    /**
+     * @return path loss exponent
+     */
+    public double getExponent() {
+        return this.exponent;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This interface represents a multilateration solver working in a local metric frame.
+ * Beacon positions and the estimated position are expressed in metres east (x) and north (y)
+ * of an arbitrary origin, see {@link LocalFrame}.
+ */
+public interface PositionSolver {
+
+    /**
+     * Estimates the position that best fits the measured distances to the given beacons.
+     * @param x east coordinate of each beacon in metres
+     * @param y north coordinate of each beacon in metres
+     * @param distance measured distance to each beacon in metres
+     * @param count number of beacons to use from the arrays
+     * @param position initial guess {x, y} on input, estimated position {x, y} on output
+     * @return number of iterations used
+     */
+    int solve(double[] x, double[] y, double[] distance, int count, double[] position);
+
+    /**
+     * Same as {@link #solve(double[], double[], double[], int, double[])} and also reports the beacons the solver
+     * rejected as outliers. Solvers that use every beacon reject none.
+     * @param x east coordinate of each beacon in metres
+     * @param y north coordinate of each beacon in metres
+     * @param distance measured distance to each beacon in metres
+     * @param count number of beacons to use from the arrays
+     * @param position initial guess {x, y} on input, estimated position {x, y} on output
+     * @param rejected set to whether each beacon was rejected
+     * @return number of iterations used
+     */
+    default int solve(double[] x, double[] y, double[] distance, int count, double[] position, boolean[] rejected) {
+        Arrays.fill(rejected, 0, count, false);
+        return solve(x, y, distance, count, position);
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.localization;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class is a surveyed radio map: reference points with the signal strength of every beacon heard there.
+ * It is stored in a columnar big endian binary file that is used straight from a memory map:
+ * <pre>
+ * header:     int magic 'LRMP', short version, short 0, int beacons, int points, int partitions, int entries
+ * beacons:    long packed MAC per column, ascending
+ * partitions: int column, int floor, int start, int count, sorted by column and floor
+ * points:     int longitude in 1e-7 degrees for every point, then int latitude, then int first entry,
+ *             followed by the entry count
+ * entries:    unsigned short column for every entry, then byte rssi in dBm from -99 to 0
+ * </pre>
+ * A point only has entries for the beacons heard there, so the file grows with the beacons heard per point
+ * instead of the size of the venue. Points are sorted by their strongest beacon and then by floor, so a
+ * partition is a range of points. Only the header, beacons and partitions are copied to the heap.
+ * The map is not modified after loading and can be read from any thread.
+ */
+public final class RadioMap {
+    static final int MAGIC = 0x4C524D50;
+    static final short VERSION = 1;
+    static final int MISSING_RSSI = -100;    // dBm a beacon that was not heard counts as
+    static final double DEGREES_PER_UNIT = 1e-7;
+
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 4 + 4 + 4 + 4;
+    private static final int MAX_BEACONS = 0xFFFF;
+
+    private final MappedByteBuffer buffer;
+    private final long[] addresses;
+    private final int points;
+    private final int[] partitionColumn;
+    private final int[] partitionFloor;
+    private final int[] partitionStart;
+    private final int[] partitionCount;
+    private final int[] columnPartitions;    // first partition per column, columnPartitions[beacons] is the count
+    private final int longitudeOffset;
+    private final int latitudeOffset;
+    private final int firstOffset;
+    private final int columnOffset;
+    private final int rssiOffset;
+
+    private RadioMap(MappedByteBuffer buffer, long[] addresses, int points, int entries, int[] partitionColumn,
+                     int[] partitionFloor, int[] partitionStart, int[] partitionCount, int pointsOffset) {
+        this.buffer = buffer;
+        this.addresses = addresses;
+        this.points = points;
+        this.partitionColumn = partitionColumn;
+        this.partitionFloor = partitionFloor;
+        this.partitionStart = partitionStart;
+        this.partitionCount = partitionCount;
+        this.longitudeOffset = pointsOffset;
+        this.latitudeOffset = pointsOffset + 4 * points;
+        this.firstOffset = pointsOffset + 8 * points;
+        this.columnOffset = this.firstOffset + 4 * (points + 1);
+        this.rssiOffset = this.columnOffset + 2 * entries;
+
+        this.columnPartitions = new int[addresses.length + 1];
+        int partition = 0;
+        for (int column = 0; column <= addresses.length; column++) {
+            while (partition < partitionColumn.length && partitionColumn[partition] < column) partition++;
+            this.columnPartitions[column] = partition;
+        }
+    }
+
+    /**
+     * Maps a radio map file
+     * @param file radio map file
+     * @return the radio map
+     * @throws IOException if the file can not be read or is not a radio map
+     */
+    public static RadioMap read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return read(raf.getChannel(), 0, raf.length());
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Maps a radio map stored in a region of a file, such as an uncompressed asset inside an APK.
+     * The mapping stays valid after the channel is closed.
+     * @param channel channel of the file
+     * @param offset start of the radio map in the file
+     * @param length length of the radio map
+     * @return the radio map
+     * @throws IOException if the region can not be read or is not a radio map
+     */
+    public static RadioMap read(FileChannel channel, long offset, long length) throws IOException {
+        if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+            throw new IOException("Not a radio map");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a radio map");
+        }
+        short version = buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported radio map version " + version);
+        }
+        int beacons = buffer.getInt(8);
+        int points = buffer.getInt(12);
+        int partitions = buffer.getInt(16);
+        int entries = buffer.getInt(20);
+        if (beacons < 0 || beacons > MAX_BEACONS || points < 0 || partitions < 0 || entries < 0) {
+            throw new IOException("Corrupt radio map");
+        }
+        long pointsOffset = HEADER_SIZE + 8L * beacons + 16L * partitions;
+        if (pointsOffset + 12L * points + 4 + 3L * entries != length) {
+            throw new IOException("Truncated radio map");
+        }
+
+        long[] addresses = new long[beacons];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < beacons; i++, position += 8) {
+            addresses[i] = buffer.getLong(position);
+        }
+        int[] column = new int[partitions];
+        int[] floor = new int[partitions];
+        int[] start = new int[partitions];
+        int[] count = new int[partitions];
+        for (int i = 0; i < partitions; i++, position += 16) {
+            column[i] = buffer.getInt(position);
+            floor[i] = buffer.getInt(position + 4);
+            start[i] = buffer.getInt(position + 8);
+            count[i] = buffer.getInt(position + 12);
+            if (column[i] < 0 || column[i] >= beacons || start[i] < 0 || count[i] < 0 || start[i] + count[i] > points
+                    || i > 0 && column[i] < column[i - 1]) {
+                throw new IOException("Corrupt radio map partition " + i);
+            }
+        }
+        int firstOffset = (int) pointsOffset + 8 * points;
+        if (buffer.getInt(firstOffset) != 0 || buffer.getInt(firstOffset + 4 * points) != entries) {
+            throw new IOException("Corrupt radio map entries");
+        }
+        return new RadioMap(buffer, addresses, points, entries, column, floor, start, count, (int) pointsOffset);
+    }
+
+    /**
+     * Writes a radio map to a temporary file and renames it over the target, so a crash never leaves a half
+     * written map behind. The survey is given per reference point as a range of (column, rssi) samples.
+     * Signal strengths are rounded to whole dBm and clamped to 0, samples at or below -100 dBm count as not
+     * heard, and reference points that heard no beacon are left out.
+     * @param file radio map file
+     * @param addresses packed MAC address of each beacon column
+     * @param longitudes longitude of each reference point
+     * @param latitudes latitude of each reference point
+     * @param floors floor of each reference point
+     * @param first index of the first sample of each reference point, first[count] is the number of samples
+     * @param columns beacon column of each sample, at most one sample per column and point
+     * @param rssi signal strength of each sample in dBm
+     * @param count number of reference points
+     * @throws IOException if the file can not be written
+     */
+    public static void write(File file, long[] addresses, double[] longitudes, double[] latitudes, int[] floors,
+                             int[] first, int[] columns, double[] rssi, int count) throws IOException {
+        int beacons = addresses.length;
+        if (beacons > MAX_BEACONS) {
+            throw new IllegalArgumentException("At most " + MAX_BEACONS + " beacons, got " + beacons);
+        }
+        // Columns in address order, so a beacon is found by a binary search
+        Integer[] byAddress = new Integer[beacons];
+        for (int i = 0; i < beacons; i++) byAddress[i] = i;
+        Arrays.sort(byAddress, (a, b) -> Long.compare(addresses[a], addresses[b]));
+        int[] renumbered = new int[beacons];
+        for (int c = 0; c < beacons; c++) renumbered[byAddress[c]] = c;
+
+        int[] strongest = new int[count];
+        Integer[] sorted = new Integer[count];
+        int points = 0;
+        for (int p = 0; p < count; p++) {
+            int best = -1;
+            for (int e = first[p]; e < first[p + 1]; e++) {
+                if (quantise(rssi[e]) > MISSING_RSSI && (best < 0 || rssi[e] > rssi[best])) best = e;
+            }
+            strongest[p] = best < 0 ? -1 : renumbered[columns[best]];
+            if (best >= 0) sorted[points++] = p;
+        }
+        sorted = Arrays.copyOf(sorted, points);
+        Arrays.sort(sorted, (a, b) -> strongest[a] != strongest[b]
+                ? Integer.compare(strongest[a], strongest[b]) : Integer.compare(floors[a], floors[b]));
+
+        // One partition per run of points with the same strongest beacon and floor
+        int[] partitionColumn = new int[points];
+        int[] partitionFloor = new int[points];
+        int[] partitionStart = new int[points];
+        int partitions = 0;
+        int entries = 0;
+        for (int i = 0; i < points; i++) {
+            int p = sorted[i];
+            if (partitions == 0 || strongest[p] != partitionColumn[partitions - 1]
+                    || floors[p] != partitionFloor[partitions - 1]) {
+                partitionColumn[partitions] = strongest[p];
+                partitionFloor[partitions] = floors[p];
+                partitionStart[partitions] = i;
+                partitions++;
+            }
+            for (int e = first[p]; e < first[p + 1]; e++) {
+                if (quantise(rssi[e]) > MISSING_RSSI) entries++;
+            }
+        }
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(beacons);
+            out.writeInt(points);
+            out.writeInt(partitions);
+            out.writeInt(entries);
+            for (int c = 0; c < beacons; c++) {
+                out.writeLong(addresses[byAddress[c]]);
+            }
+            for (int i = 0; i < partitions; i++) {
+                int end = i + 1 < partitions ? partitionStart[i + 1] : points;
+                out.writeInt(partitionColumn[i]);
+                out.writeInt(partitionFloor[i]);
+                out.writeInt(partitionStart[i]);
+                out.writeInt(end - partitionStart[i]);
+            }
+            for (int i = 0; i < points; i++) {
+                out.writeInt((int) Math.round(longitudes[sorted[i]] / DEGREES_PER_UNIT));
+            }
+            for (int i = 0; i < points; i++) {
+                out.writeInt((int) Math.round(latitudes[sorted[i]] / DEGREES_PER_UNIT));
+            }
+            int entry = 0;
+            for (int i = 0; i < points; i++) {
+                out.writeInt(entry);
+                int p = sorted[i];
+                for (int e = first[p]; e < first[p + 1]; e++) {
+                    if (quantise(rssi[e]) > MISSING_RSSI) entry++;
+                }
+            }
+            out.writeInt(entry);
+            for (int i = 0; i < points; i++) {
+                int p = sorted[i];
+                for (int e = first[p]; e < first[p + 1]; e++) {
+                    if (quantise(rssi[e]) > MISSING_RSSI) out.writeShort(renumbered[columns[e]]);
+                }
+            }
+            for (int i = 0; i < points; i++) {
+                int p = sorted[i];
+                for (int e = first[p]; e < first[p + 1]; e++) {
+                    int value = quantise(rssi[e]);
+                    if (value > MISSING_RSSI) out.writeByte(value);
+                }
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * @param rssi signal strength in dBm
+     * @return signal strength rounded to whole dBm and clamped to -100..0
+     */
+    private static int quantise(double rssi) {
+        return (int) Math.max(MISSING_RSSI, Math.min(0, Math.round(rssi)));
+    }
+
+    /**
+     * @param address packed MAC address
+     * @return column of the beacon, or -1 if it was not surveyed
+     */
+    int columnOf(long address) {
+        int column = Arrays.binarySearch(this.addresses, address);
+        return column >= 0 ? column : -1;
+    }
+
+    /**
+     * @return number of beacon columns
+     */
+    public int getBeaconCount() {
+        return this.addresses.length;
+    }
+
+    /**
+     * @return number of reference points
+     */
+    public int size() {
+        return this.points;
+    }
+
+    /**
+     * @return number of partitions
+     */
+    public int getPartitionCount() {
+        return this.partitionColumn.length;
+    }
+
+    int firstPartition(int column) {
+        return this.columnPartitions[column];
+    }
+
+    int endPartition(int column) {
+        return this.columnPartitions[column + 1];
+    }
+
+    int partitionFloor(int partition) {
+        return this.partitionFloor[partition];
+    }
+
+    int partitionStart(int partition) {
+        return this.partitionStart[partition];
+    }
+
+    int partitionCount(int partition) {
+        return this.partitionCount[partition];
+    }
+
+    double longitude(int point) {
+        return this.buffer.getInt(this.longitudeOffset + 4 * point) * DEGREES_PER_UNIT;
+    }
+
+    double latitude(int point) {
+        return this.buffer.getInt(this.latitudeOffset + 4 * point) * DEGREES_PER_UNIT;
+    }
+
+    /**
+     * @param point reference point
+     * @return index of the first entry of the point, the entries of point p end at firstEntry(p + 1)
+     */
+    int firstEntry(int point) {
+        return this.buffer.getInt(this.firstOffset + 4 * point);
+    }
+
+    int entryColumn(int entry) {
+        return this.buffer.getChar(this.columnOffset + 2 * entry);
+    }
+
+    int entryRssi(int entry) {
+        return this.buffer.get(this.rssiOffset + entry);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.localization;
+
+/**
+ * This interface evaluates the residuals of many candidate points against all active beacons at once.
+ * Beacons and points are passed as structure of arrays; implementations loop over the points in the inner
+ * dimension so they can be unrolled or vectorised. Get the fastest implementation for the running platform
+ * through {@link ResidualKernels#get()}. Implementations hold no state and can be shared between threads.
+ */
+public interface ResidualKernel {
+    /**
+     * Sum of squared range residuals per point: cost[j] = sum over i of (|p[j] - b[i]| - distance[i])^2
+     * @param bx metres east of each beacon
+     * @param by metres north of each beacon
+     * @param distance measured distance to each beacon in metres
+     * @param count number of beacons
+     * @param px metres east of each point
+     * @param py metres north of each point
+     * @param from first point to evaluate
+     * @param to end of the points to evaluate, exclusive
+     * @param cost cost per point in square metres, written at the point indices
+     */
+    void rangeCost(double[] bx, double[] by, double[] distance, int count,
+                   double[] px, double[] py, int from, int to, double[] cost);
+
+    /**
+     * Same as {@link #rangeCost} and also the gradient of the cost per point
+     * @param bx metres east of each beacon
+     * @param by metres north of each beacon
+     * @param distance measured distance to each beacon in metres
+     * @param count number of beacons
+     * @param px metres east of each point
+     * @param py metres north of each point
+     * @param from first point to evaluate
+     * @param to end of the points to evaluate, exclusive
+     * @param cost cost per point in square metres, written at the point indices
+     * @param gradientX derivative of the cost to the east coordinate per point
+     * @param gradientY derivative of the cost to the north coordinate per point
+     */
+    void rangeCostAndGradient(double[] bx, double[] by, double[] distance, int count,
+                              double[] px, double[] py, int from, int to,
+                              double[] cost, double[] gradientX, double[] gradientY);
+
+    /**
+     * Sum of squared RSSI residuals per point under a log-distance path loss model:
+     * cost[j] = sum over i of (rssi[i] - txPower + 5 * exponent * log10(max(minSquaredRange, |p[j] - b[i]|^2)))^2
+     * @param bx metres east of each beacon
+     * @param by metres north of each beacon
+     * @param bz metres above the lowest floor of each beacon
+     * @param rssi measured signal strength of each beacon in dBm
+     * @param count number of beacons
+     * @param px metres east of each point
+     * @param py metres north of each point
+     * @param pz metres above the lowest floor of each point
+     * @param from first point to evaluate
+     * @param to end of the points to evaluate, exclusive
+     * @param model path loss model predicting the RSSI at a distance
+     * @param minSquaredRange smallest squared range in square metres, keeps the logarithm finite
+     * @param cost cost per point in square dBm, written at the point indices
+     */
+    void rssiCost(double[] bx, double[] by, double[] bz, double[] rssi, int count,
+                  double[] px, double[] py, double[] pz, int from, int to,
+                  PathLossModel model, double minSquaredRange, double[] cost);
+}
@@ -0,0 +1,40 @@
+package com.example.localization;
+
+/**
+ * This class picks the {@link ResidualKernel} for the running platform.
+ * The Vector API kernel lives in the separate vector module, which needs Java 17 and
+ * --add-modules jdk.incubator.vector. It is looked up by name so the core does not depend on it and
+ * Android, where it does not exist, falls back to the scalar kernel.
+ * Set the system property localization.kernel to "scalar" to force the scalar kernel.
+ */
+public final class ResidualKernels {
+    static final String VECTOR_KERNEL = "com.example.localization.vector.VectorResidualKernel";
+    private static final ResidualKernel SCALAR = new ScalarResidualKernel();
+    private static final ResidualKernel BEST = load();
+
+    private ResidualKernels() {}
+
+    /**
+     * @return the fastest kernel available
+     */
+    public static ResidualKernel get() {
+        return BEST;
+    }
+
+    /**
+     * @return the portable kernel
+     */
+    public static ResidualKernel scalar() {
+        return SCALAR;
+    }
+
+    private static ResidualKernel load() {
+        if ("scalar".equals(System.getProperty("localization.kernel"))) return SCALAR;
+        try {
+            return (ResidualKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Not on the class path, or the incubator module was not added
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class solves the multilateration problem so that a few beacons with bogus distances, such as a multipath
+ * reflection, do not drag the fix away. It works in three stages:
+ * <ol>
+ * <li>RANSAC: positions are solved in closed form from minimal subsets of three beacons and scored in batches by
+ * their truncated cost over all beacons (MSAC), where a beacon further than the threshold from its range counts
+ * as the threshold. Sampling stops as soon as enough subsets were tried to have drawn an all-inlier subset with
+ * 99% probability for the best inlier ratio so far, after at most the configured number of subsets.
+ * A subset only counts when a fourth beacon agrees with it, as any three ranges fit their own fix.</li>
+ * <li>The inliers of the best subset are solved with the local solver, which averages out the noise of the
+ * three sampled ranges, and again while that gains inliers.</li>
+ * <li>IRLS: the position is refined over all beacons by iteratively reweighted least squares with a Huber or
+ * Tukey loss. Tukey gives beacons beyond the threshold no weight at all, Huber only lets their pull grow
+ * linearly instead of quadratically.</li>
+ * </ol>
+ * Beacons whose residual at the final position is beyond the threshold are reported as rejected.
+ * With fewer than 4 beacons, or when no subset has a consensus, an outlier can not be told apart and the
+ * local solver is used from the given initial guess.
+ * Instances hold configuration only and can be shared between threads.
+ */
+public class RobustSolver implements PositionSolver {
+
+    /**
+     * Loss applied to the residuals in the refinement.
+     */
+    public enum Loss {
+        /** Quadratic up to the threshold, linear beyond it */
+        HUBER,
+        /** Tukey's biweight, constant beyond the threshold */
+        TUKEY
+    }
+
+    public static final double DEFAULT_THRESHOLD = 3;     // metres of residual beyond which a beacon is an outlier
+    public static final int DEFAULT_MAX_SUBSETS = 64;
+
+    private static final int MIN_BEACONS = 4;
+    private static final int BATCH = 8;                    // subsets scored together
+    private static final double CONFIDENCE = 0.99;         // probability of having drawn an all-inlier subset
+    private static final int INLIER_ROUNDS = 3;            // local solves over a growing inlier set
+    private static final int MAX_ITERATIONS = 20;
+    private static final int MAX_HALVINGS = 8;
+    private static final double TOLERANCE = 1e-3;          // metres
+    private static final double DAMPING = 1e-6;
+    private static final double MIN_DISTANCE = 1e-9;
+    private static final double MIN_DETERMINANT = 1e-6;   // square metres, subsets closer to a line are skipped
+
+    private final PositionSolver local;
+    private final Loss loss;
+    private final double threshold;
+    private final int maxSubsets;
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Scratch arrays of the calling thread
+     */
+    private static final class Scratch {
+        final double[] hypothesisX = new double[BATCH];
+        final double[] hypothesisY = new double[BATCH];
+        final double[] hypothesisCost = new double[BATCH];
+        final int[] hypothesisInliers = new int[BATCH];
+        double[] inlierX = new double[16];
+        double[] inlierY = new double[16];
+        double[] inlierDistance = new double[16];
+        long random;
+
+        void ensureCapacity(int count) {
+            if (this.inlierX.length < count) {
+                int capacity = Math.max(count, this.inlierX.length * 2);
+                this.inlierX = new double[capacity];
+                this.inlierY = new double[capacity];
+                this.inlierDistance = new double[capacity];
+            }
+        }
+
+        /**
+         * @param bound exclusive upper bound
+         * @return next pseudo random index below the bound, xorshift so a solve does not allocate
+         */
+        int next(int bound) {
+            long r = this.random;
+            r ^= r << 13;
+            r ^= r >>> 7;
+            r ^= r << 17;
+            this.random = r;
+            return (int) ((r >>> 33) % bound);
+        }
+    }
+
+    /**
+     * Create a solver with a Tukey loss, a threshold of 3 metres and at most 64 subsets,
+     * falling back to Levenberg-Marquardt with fewer than 4 beacons.
+     */
+    public RobustSolver() {
+        this(new LevenbergMarquardtSolver(), Loss.TUKEY, DEFAULT_THRESHOLD, DEFAULT_MAX_SUBSETS);
+    }
+
+    /**
+     * Create a solver.
+     * @param local solver used with fewer than 4 beacons or when no subset can be solved, must be safe to share
+     *              between threads
+     * @param loss loss of the refinement
+     * @param threshold residual in metres beyond which a beacon is an outlier
+     * @param maxSubsets maximum number of subsets of three beacons to try
+     */
+    public RobustSolver(PositionSolver local, Loss loss, double threshold, int maxSubsets) {
+        if (!(threshold > 0) || maxSubsets < 1) {
+            throw new IllegalArgumentException("Threshold and maximum subsets must be positive");
+        }
+        this.local = local;
+        this.loss = loss;
+        this.threshold = threshold;
+        this.maxSubsets = maxSubsets;
+    }
+
+    @Override
+    public int solve(double[] x, double[] y, double[] distance, int count, double[] position) {
+        Scratch scratch = SCRATCH.get();
+        scratch.ensureCapacity(count);
+        return solve(x, y, distance, count, position, scratch);
+    }
+
+    @Override
+    public int solve(double[] x, double[] y, double[] distance, int count, double[] position, boolean[] rejected) {
+        Scratch scratch = SCRATCH.get();
+        scratch.ensureCapacity(count);
+        int iterations = solve(x, y, distance, count, position, scratch);
+        for (int i = 0; i < count; i++) {
+            double dx = position[0] - x[i];
+            double dy = position[1] - y[i];
+            rejected[i] = count >= MIN_BEACONS
+                    && Math.abs(Math.sqrt(dx * dx + dy * dy) - distance[i]) > this.threshold;
+        }
+        return iterations;
+    }
+
+    private int solve(double[] x, double[] y, double[] distance, int count, double[] position, Scratch scratch) {
+        if (count < MIN_BEACONS) {
+            return this.local.solve(x, y, distance, count, position);
+        }
+        int iterations = 0;
+        if (sample(x, y, distance, count, position, scratch)) {
+            iterations += solveInliers(x, y, distance, count, position, scratch);
+        } else {
+            iterations += this.local.solve(x, y, distance, count, position);
+        }
+        return iterations + refine(x, y, distance, count, position);
+    }
+
+    /**
+     * Tries subsets of three beacons and moves the position to the fix of the best one
+     * @param x metres east of each beacon
+     * @param y metres north of each beacon
+     * @param distance measured distance to each beacon in metres
+     * @param count number of beacons, at least 4
+     * @param position best subset fix on output, unchanged if no subset has a consensus
+     * @param scratch scratch of the calling thread
+     * @return whether a subset has a consensus, a fourth beacon agreeing with the three ranges it was solved from
+     */
+    private boolean sample(double[] x, double[] y, double[] distance, int count, double[] position,
+                           Scratch scratch) {
+        // Same subsets for the same input, so a replay gives the same fixes
+        scratch.random = 0x9E3779B97F4A7C15L ^ count ^ Double.doubleToLongBits(distance[0]);
+        if (scratch.random == 0) scratch.random = 1;
+
+        double bestCost = Double.POSITIVE_INFINITY;
+        double bestX = 0, bestY = 0;
+        int bestInliers = 0;
+        double required = this.maxSubsets;
+        int tried = 0;
+        while (tried < Math.min(this.maxSubsets, required)) {
+            // Solve a batch of subsets, then score them all in one pass over the beacons
+            int batch = 0;
+            while (batch < BATCH && tried < this.maxSubsets) {
+                tried++;
+                int a = scratch.next(count);
+                int b = scratch.next(count - 1);
+                int c = scratch.next(count - 2);
+                // Three distinct indices from a uniform draw of each remaining index
+                if (b >= a) b++;
+                int low = Math.min(a, b);
+                int high = Math.max(a, b);
+                if (c >= low) c++;
+                if (c >= high) c++;
+                if (trilaterate(x, y, distance, a, b, c, scratch.hypothesisX, scratch.hypothesisY, batch)) {
+                    batch++;
+                }
+            }
+            score(x, y, distance, count, scratch, batch);
+
+            for (int h = 0; h < batch; h++) {
+                if (scratch.hypothesisCost[h] < bestCost) {
+                    bestCost = scratch.hypothesisCost[h];
+                    bestInliers = scratch.hypothesisInliers[h];
+                    bestX = scratch.hypothesisX[h];
+                    bestY = scratch.hypothesisY[h];
+                }
+            }
+            if (bestInliers == count) break;
+            if (bestInliers >= MIN_BEACONS) {
+                // Subsets needed to draw three inliers at once with the wanted confidence
+                double ratio = (double) bestInliers / count;
+                required = Math.log(1 - CONFIDENCE) / Math.log(1 - ratio * ratio * ratio);
+            }
+        }
+        // Any three ranges fit their own fix, so without a fourth agreeing beacon nothing is known
+        if (bestInliers < MIN_BEACONS) return false;
+        position[0] = bestX;
+        position[1] = bestY;
+        return true;
+    }
+
+    /**
+     * Solves the position at the given ranges of three beacons in closed form, by subtracting the circle equation
+     * of the first beacon from the other two, which leaves a 2x2 linear system
+     * @return whether the beacons are far enough from a line to solve
+     */
+    private static boolean trilaterate(double[] x, double[] y, double[] distance, int a, int b, int c,
+                                       double[] outX, double[] outY, int index) {
+        double a11 = 2 * (x[b] - x[a]);
+        double a12 = 2 * (y[b] - y[a]);
+        double a21 = 2 * (x[c] - x[a]);
+        double a22 = 2 * (y[c] - y[a]);
+        double determinant = a11 * a22 - a12 * a21;
+        if (Math.abs(determinant) < MIN_DETERMINANT) return false;
+
+        double squaredA = x[a] * x[a] + y[a] * y[a] - distance[a] * distance[a];
+        double r1 = x[b] * x[b] + y[b] * y[b] - distance[b] * distance[b] - squaredA;
+        double r2 = x[c] * x[c] + y[c] * y[c] - distance[c] * distance[c] - squaredA;
+        outX[index] = (r1 * a22 - r2 * a12) / determinant;
+        outY[index] = (a11 * r2 - a21 * r1) / determinant;
+        return true;
+    }
+
+    /**
+     * Scores the subset fixes of a batch by their truncated cost and inlier count over all beacons
+     */
+    private void score(double[] x, double[] y, double[] distance, int count, Scratch scratch, int batch) {
+        double squaredThreshold = this.threshold * this.threshold;
+        Arrays.fill(scratch.hypothesisCost, 0, batch, 0);
+        Arrays.fill(scratch.hypothesisInliers, 0, batch, 0);
+        for (int i = 0; i < count; i++) {
+            for (int h = 0; h < batch; h++) {
+                double dx = scratch.hypothesisX[h] - x[i];
+                double dy = scratch.hypothesisY[h] - y[i];
+                double residual = Math.sqrt(dx * dx + dy * dy) - distance[i];
+                double squared = residual * residual;
+                if (squared <= squaredThreshold) {
+                    scratch.hypothesisCost[h] += squared;
+                    scratch.hypothesisInliers[h]++;
+                } else {
+                    scratch.hypothesisCost[h] += squaredThreshold;
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves the inliers of the position with the local solver, so the noise of the three sampled ranges is
+     * averaged out, and repeats while that gains inliers
+     * @return number of iterations used
+     */
+    private int solveInliers(double[] x, double[] y, double[] distance, int count, double[] position,
+                             Scratch scratch) {
+        int iterations = 0;
+        int previous = 0;
+        for (int round = 0; round < INLIER_ROUNDS; round++) {
+            int inliers = 0;
+            for (int i = 0; i < count; i++) {
+                double dx = position[0] - x[i];
+                double dy = position[1] - y[i];
+                if (Math.abs(Math.sqrt(dx * dx + dy * dy) - distance[i]) > this.threshold) continue;
+                scratch.inlierX[inliers] = x[i];
+                scratch.inlierY[inliers] = y[i];
+                scratch.inlierDistance[inliers] = distance[i];
+                inliers++;
+            }
+            if (inliers < 3 || inliers <= previous) break;
+            previous = inliers;
+            iterations += this.local.solve(scratch.inlierX, scratch.inlierY, scratch.inlierDistance, inliers,
+                    position);
+        }
+        return iterations;
+    }
+
+    /**
+     * Refines the position over all beacons with iteratively reweighted, lightly damped Gauss-Newton steps.
+     * A step that does not lower the robust cost is halved, so beacons dropping out of the weights can not
+     * throw the position off.
+     * @return number of iterations used
+     */
+    private int refine(double[] x, double[] y, double[] distance, int count, double[] position) {
+        double px = position[0];
+        double py = position[1];
+        double cost = cost(x, y, distance, count, px, py);
+        int iteration = 0;
+        while (iteration < MAX_ITERATIONS) {
+            iteration++;
+            double a11 = 0, a12 = 0, a22 = 0, g1 = 0, g2 = 0;
+            for (int i = 0; i < count; i++) {
+                double dx = px - x[i];
+                double dy = py - y[i];
+                double range = Math.max(MIN_DISTANCE, Math.sqrt(dx * dx + dy * dy));
+                double residual = range - distance[i];
+                double weight = weight(residual);
+                double jx = dx / range;
+                double jy = dy / range;
+                a11 += weight * jx * jx;
+                a12 += weight * jx * jy;
+                a22 += weight * jy * jy;
+                g1 += weight * jx * residual;
+                g2 += weight * jy * residual;
+            }
+            a11 += DAMPING * (1 + a11);
+            a22 += DAMPING * (1 + a22);
+            double determinant = a11 * a22 - a12 * a12;
+            if (!(Math.abs(determinant) > 0)) break;
+
+            double stepX = -(a22 * g1 - a12 * g2) / determinant;
+            double stepY = -(a11 * g2 - a12 * g1) / determinant;
+            double next = cost(x, y, distance, count, px + stepX, py + stepY);
+            for (int halving = 0; halving < MAX_HALVINGS && !(next <= cost); halving++) {
+                stepX *= 0.5;
+                stepY *= 0.5;
+                next = cost(x, y, distance, count, px + stepX, py + stepY);
+            }
+            if (!(next <= cost)) break;
+            px += stepX;
+            py += stepY;
+            cost = next;
+            if (Math.sqrt(stepX * stepX + stepY * stepY) < TOLERANCE) break;
+        }
+        position[0] = px;
+        position[1] = py;
+        return iteration;
+    }
+
+    /**
+     * @return robust cost of the position over all beacons under the loss
+     */
+    private double cost(double[] x, double[] y, double[] distance, int count, double px, double py) {
+        double cost = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = px - x[i];
+            double dy = py - y[i];
+            cost += loss(Math.sqrt(dx * dx + dy * dy) - distance[i]);
+        }
+        return cost;
+    }
+
+    /**
+     * @param residual range residual in metres
+     * @return loss of the residual, half its square near zero for both losses
+     */
+    private double loss(double residual) {
+        double r = Math.abs(residual);
+        double c = this.threshold;
+        if (this.loss == Loss.HUBER) {
+            return r <= c ? 0.5 * r * r : c * (r - 0.5 * c);
+        }
+        if (r >= c) return c * c / 6;
+        double v = 1 - (r / c) * (r / c);
+        return c * c / 6 * (1 - v * v * v);
+    }
+
+    /**
+     * @param residual range residual in metres
+     * @return weight of the residual under the loss
+     */
+    private double weight(double residual) {
+        double r = Math.abs(residual);
+        if (this.loss == Loss.HUBER) {
+            return r <= this.threshold ? 1 : this.threshold / r;
+        }
+        if (r >= this.threshold) return 0;
+        double u = r / this.threshold;
+        return (1 - u * u) * (1 - u * u);
+    }
+}
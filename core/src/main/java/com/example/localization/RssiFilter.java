@@ -0,0 +1,24 @@
+package com.example.localization;
+
+/**
+ * This interface represents a smoothing filter over the RSSI samples of many beacons.
+ * The state of every beacon is kept in primitive arrays indexed by its registry slot,
+ * so an update takes constant time and memory and does not allocate.
+ * Implementations are not thread-safe and are confined to the thread delivering the scan results.
+ */
+public interface RssiFilter {
+
+    /**
+     * Adds a sample for a beacon.
+     * @param slot registry slot of the beacon
+     * @param rssi received signal strength in dBm
+     * @return filtered signal strength in dBm
+     */
+    double update(int slot, double rssi);
+
+    /**
+     * Forgets all samples of a beacon, the next sample starts a new estimate.
+     * @param slot registry slot of the beacon
+     */
+    void reset(int slot);
+}
@@ -0,0 +1,132 @@
+package com.example.localization;
+
+/**
+ * This class is the portable {@link ResidualKernel}, used on Android and on JVMs without the Vector API.
+ * Four points are evaluated per pass over the beacons, which loads every beacon once per four points and
+ * gives the CPU four independent dependency chains to overlap.
+ */
+public final class ScalarResidualKernel implements ResidualKernel {
+    private static final double LOG10_TO_LN = 1 / Math.log(10);
+    static final double MIN_RANGE = 1e-9;    // metres, keeps the gradient finite on top of a beacon
+
+    @Override
+    public void rangeCost(double[] bx, double[] by, double[] distance, int count,
+                          double[] px, double[] py, int from, int to, double[] cost) {
+        int j = from;
+        for (; j + 3 < to; j += 4) {
+            double x0 = px[j], x1 = px[j + 1], x2 = px[j + 2], x3 = px[j + 3];
+            double y0 = py[j], y1 = py[j + 1], y2 = py[j + 2], y3 = py[j + 3];
+            double c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+            for (int i = 0; i < count; i++) {
+                double x = bx[i];
+                double y = by[i];
+                double d = distance[i];
+                double r0 = Math.sqrt((x0 - x) * (x0 - x) + (y0 - y) * (y0 - y)) - d;
+                double r1 = Math.sqrt((x1 - x) * (x1 - x) + (y1 - y) * (y1 - y)) - d;
+                double r2 = Math.sqrt((x2 - x) * (x2 - x) + (y2 - y) * (y2 - y)) - d;
+                double r3 = Math.sqrt((x3 - x) * (x3 - x) + (y3 - y) * (y3 - y)) - d;
+                c0 += r0 * r0;
+                c1 += r1 * r1;
+                c2 += r2 * r2;
+                c3 += r3 * r3;
+            }
+            cost[j] = c0;
+            cost[j + 1] = c1;
+            cost[j + 2] = c2;
+            cost[j + 3] = c3;
+        }
+        for (; j < to; j++) {
+            double c = 0;
+            for (int i = 0; i < count; i++) {
+                double r = Math.sqrt((px[j] - bx[i]) * (px[j] - bx[i]) + (py[j] - by[i]) * (py[j] - by[i])) - distance[i];
+                c += r * r;
+            }
+            cost[j] = c;
+        }
+    }
+
+    @Override
+    public void rangeCostAndGradient(double[] bx, double[] by, double[] distance, int count,
+                                     double[] px, double[] py, int from, int to,
+                                     double[] cost, double[] gradientX, double[] gradientY) {
+        int j = from;
+        for (; j + 1 < to; j += 2) {
+            double x0 = px[j], x1 = px[j + 1];
+            double y0 = py[j], y1 = py[j + 1];
+            double c0 = 0, c1 = 0, gx0 = 0, gx1 = 0, gy0 = 0, gy1 = 0;
+            for (int i = 0; i < count; i++) {
+                double dx0 = x0 - bx[i], dy0 = y0 - by[i];
+                double dx1 = x1 - bx[i], dy1 = y1 - by[i];
+                double range0 = Math.max(MIN_RANGE, Math.sqrt(dx0 * dx0 + dy0 * dy0));
+                double range1 = Math.max(MIN_RANGE, Math.sqrt(dx1 * dx1 + dy1 * dy1));
+                double r0 = range0 - distance[i];
+                double r1 = range1 - distance[i];
+                c0 += r0 * r0;
+                c1 += r1 * r1;
+                // d/dp (range - d)^2 = 2 (range - d) (p - b) / range
+                double s0 = 2 * r0 / range0;
+                double s1 = 2 * r1 / range1;
+                gx0 += s0 * dx0;
+                gy0 += s0 * dy0;
+                gx1 += s1 * dx1;
+                gy1 += s1 * dy1;
+            }
+            cost[j] = c0;
+            cost[j + 1] = c1;
+            gradientX[j] = gx0;
+            gradientX[j + 1] = gx1;
+            gradientY[j] = gy0;
+            gradientY[j + 1] = gy1;
+        }
+        for (; j < to; j++) {
+            double c = 0, gx = 0, gy = 0;
+            for (int i = 0; i < count; i++) {
+                double dx = px[j] - bx[i], dy = py[j] - by[i];
+                double range = Math.max(MIN_RANGE, Math.sqrt(dx * dx + dy * dy));
+                double r = range - distance[i];
+                c += r * r;
+                gx += 2 * r / range * dx;
+                gy += 2 * r / range * dy;
+            }
+            cost[j] = c;
+            gradientX[j] = gx;
+            gradientY[j] = gy;
+        }
+    }
+
+    @Override
+    public void rssiCost(double[] bx, double[] by, double[] bz, double[] rssi, int count,
+                         double[] px, double[] py, double[] pz, int from, int to,
+                         PathLossModel model, double minSquaredRange, double[] cost) {
+        double txPower = model.getTxPower();
+        // rssi - (txPower - 5 n log10(r2)) = (rssi - txPower) + 5 n / ln(10) * ln(r2)
+        double slope = 5 * model.getExponent() * LOG10_TO_LN;
+        int j = from;
+        for (; j + 1 < to; j += 2) {
+            double x0 = px[j], x1 = px[j + 1];
+            double y0 = py[j], y1 = py[j + 1];
+            double z0 = pz[j], z1 = pz[j + 1];
+            double c0 = 0, c1 = 0;
+            for (int i = 0; i < count; i++) {
+                double offset = rssi[i] - txPower;
+                double dx0 = x0 - bx[i], dy0 = y0 - by[i], dz0 = z0 - bz[i];
+                double dx1 = x1 - bx[i], dy1 = y1 - by[i], dz1 = z1 - bz[i];
+                double r0 = offset + slope * Math.log(Math.max(minSquaredRange, dx0 * dx0 + dy0 * dy0 + dz0 * dz0));
+                double r1 = offset + slope * Math.log(Math.max(minSquaredRange, dx1 * dx1 + dy1 * dy1 + dz1 * dz1));
+                c0 += r0 * r0;
+                c1 += r1 * r1;
+            }
+            cost[j] = c0;
+            cost[j + 1] = c1;
+        }
+        for (; j < to; j++) {
+            double c = 0;
+            for (int i = 0; i < count; i++) {
+                double dx = px[j] - bx[i], dy = py[j] - by[i], dz = pz[j] - bz[i];
+                double r = rssi[i] - txPower + slope * Math.log(Math.max(minSquaredRange, dx * dx + dy * dy + dz * dz));
+                c += r * r;
+            }
+            cost[j] = c;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.localization;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class represents the active beacons at one moment, copied into packed arrays.
+ * A snapshot is created on the scan thread and handed to the solver thread, it is never modified afterwards.
+ * The arrays returned by the getters are shared and must not be modified either.
+ */
+public class ScanSnapshot {
+    private final long timestamp;
+    private final int count;
+    private final int[] slots;
+    private final long[] address;
+    private final double[] latitude;
+    private final double[] longitude;
+    private final LocalFrame frame;
+    private final double[] x;
+    private final double[] y;
+    private final double[] distance;
+    private final int[] rssi;
+    private final int[] floor;
+
+    /**
+     * Copies the catalogue data of the given beacons together with their measurements.
+     * @param timestamp time of the scan in nanoseconds, see {@link System#nanoTime()}
+     * @param beacons active beacons
+     * @param distance measured distance in metres per beacon, in list order
+     * @param rssi received signal strength per beacon, in list order
+     * @param registry registry the beacons belong to, used to record their slots
+     */
+    public ScanSnapshot(long timestamp, List<iBeacon> beacons, double[] distance, int[] rssi,
+                        BeaconRegistry registry) {
+        this.timestamp = timestamp;
+        this.count = beacons.size();
+        this.slots = new int[count];
+        this.address = new long[count];
+        this.latitude = new double[count];
+        this.longitude = new double[count];
+        this.x = new double[count];
+        this.y = new double[count];
+        this.distance = new double[count];
+        this.rssi = new int[count];
+        this.floor = new int[count];
+
+        LocalFrame frame = count > 0 ? beacons.get(0).getFrame() : null;
+        for (int i = 0; i < count; i++) {
+            iBeacon beacon = beacons.get(i);
+            this.address[i] = beacon.getAddress();
+            this.slots[i] = registry.slotOf(this.address[i]);
+            this.latitude[i] = beacon.getLatitude();
+            this.longitude[i] = beacon.getLongitude();
+            this.x[i] = beacon.getX();
+            this.y[i] = beacon.getY();
+            this.distance[i] = distance[i];
+            this.rssi[i] = rssi[i];
+            this.floor[i] = beacon.getFloor();
+            if (beacon.getFrame() != frame) frame = null;
+        }
+        this.frame = frame;
+    }
+
+    /**
+     * Copies the catalogue data of the beacons in the given slots together with their measurements.
+     * @param timestamp time of the scan in nanoseconds, see {@link System#nanoTime()}
+     * @param registry registry the slots belong to
+     * @param slots registry slot of each beacon in the snapshot
+     * @param count number of slots to use from the array
+     * @param distance measured distance in metres per registry slot
+     * @param rssi received signal strength per registry slot
+     */
+    public ScanSnapshot(long timestamp, BeaconRegistry registry, int[] slots, int count, double[] distance,
+                        int[] rssi) {
+        this.timestamp = timestamp;
+        this.count = count;
+        this.slots = Arrays.copyOf(slots, count);
+        this.address = new long[count];
+        this.latitude = new double[count];
+        this.longitude = new double[count];
+        this.x = new double[count];
+        this.y = new double[count];
+        this.distance = new double[count];
+        this.rssi = new int[count];
+        this.floor = new int[count];
+
+        LocalFrame frame = count > 0 ? registry.get(slots[0]).getFrame() : null;
+        for (int i = 0; i < count; i++) {
+            int slot = slots[i];
+            iBeacon beacon = registry.get(slot);
+            this.address[i] = beacon.getAddress();
+            this.latitude[i] = beacon.getLatitude();
+            this.longitude[i] = beacon.getLongitude();
+            this.x[i] = beacon.getX();
+            this.y[i] = beacon.getY();
+            this.distance[i] = distance[slot];
+            this.rssi[i] = rssi[slot];
+            this.floor[i] = beacon.getFloor();
+            if (beacon.getFrame() != frame) frame = null;
+        }
+        this.frame = frame;
+    }
+
+    /**
+     * @return time of the scan in nanoseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return number of beacons in this snapshot
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return registry slot of each beacon
+     */
+    public int[] getSlots() {
+        return slots;
+    }
+
+    /**
+     * @return packed MAC address of each beacon, stays the same across catalogue versions unlike the slot
+     */
+    public long[] getAddress() {
+        return address;
+    }
+
+    public double[] getLatitude() {
+        return latitude;
+    }
+
+    public double[] getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return frame the x and y coordinates are in, or null if the beacons were not projected into one frame
+     */
+    public LocalFrame getFrame() {
+        return frame;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getDistance() {
+        return distance;
+    }
+
+    public int[] getRssi() {
+        return rssi;
+    }
+
+    public int[] getFloor() {
+        return floor;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.localization;
+
+/**
+ * This class describes the binary scan trace format written by {@link ScanTraceWriter}
+ * and read by {@link ScanTraceReader}. All values are big endian.
+ * <pre>
+ * header:       int magic 'LTRC', short version, short reserved
+ * scan record:  byte 1, long timestamp (ns), long packed MAC, short rssi (dBm), float distance (m)
+ * truth record: byte 2, long timestamp (ns), double latitude, double longitude, int floor
+ * </pre>
+ * Scan records with the same timestamp were delivered in the same ranging callback.
+ * Truth records annotate where the user actually was from their timestamp on.
+ */
+public final class ScanTrace {
+    static final int MAGIC = 0x4C545243;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    public static final byte SCAN = 1;
+    public static final byte TRUTH = 2;
+
+    static final int SCAN_SIZE = 1 + 8 + 8 + 2 + 4;
+    static final int TRUTH_SIZE = 1 + 8 + 8 + 8 + 4;
+
+    private ScanTrace() {}
+}
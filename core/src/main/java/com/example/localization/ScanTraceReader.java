@@ -0,0 +1,118 @@
+package com.example.localization;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads a file in the {@link ScanTrace} format through a memory map.
+ * It is a cursor: {@link #next()} moves to the next record and the getters return its fields,
+ * so reading a trace does not allocate per record.
+ */
+public class ScanTraceReader implements Closeable {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    private byte type;
+    private long timestamp;
+    private long address;
+    private int rssi;
+    private double distance;
+    private double latitude;
+    private double longitude;
+    private int floor;
+
+    /**
+     * Open a trace file.
+     * @param file file to read
+     * @throws IOException if the file can not be read or is not a trace
+     */
+    public ScanTraceReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        FileChannel channel = this.file.getChannel();
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (this.buffer.remaining() < ScanTrace.HEADER_SIZE || this.buffer.getInt() != ScanTrace.MAGIC) {
+            this.file.close();
+            throw new IOException(file + " is not a scan trace");
+        }
+        short version = this.buffer.getShort();
+        this.buffer.getShort();
+        if (version != ScanTrace.VERSION) {
+            this.file.close();
+            throw new IOException(file + " has unsupported trace version " + version);
+        }
+    }
+
+    /**
+     * Moves to the next record
+     * @return whether there is a next record, false at the end of the trace
+     * @throws IOException if the trace is corrupt
+     */
+    public boolean next() throws IOException {
+        if (!this.buffer.hasRemaining()) return false;
+        this.type = this.buffer.get();
+        switch (this.type) {
+            case ScanTrace.SCAN:
+                if (this.buffer.remaining() < ScanTrace.SCAN_SIZE - 1) return false;    // cut off while recording
+                this.timestamp = this.buffer.getLong();
+                this.address = this.buffer.getLong();
+                this.rssi = this.buffer.getShort();
+                this.distance = this.buffer.getFloat();
+                return true;
+            case ScanTrace.TRUTH:
+                if (this.buffer.remaining() < ScanTrace.TRUTH_SIZE - 1) return false;
+                this.timestamp = this.buffer.getLong();
+                this.latitude = this.buffer.getDouble();
+                this.longitude = this.buffer.getDouble();
+                this.floor = this.buffer.getInt();
+                return true;
+            case 0:
+                return false;    // unused space of a trace that was not closed
+            default:
+                throw new IOException("Unknown record type " + this.type + " at " + (this.buffer.position() - 1));
+        }
+    }
+
+    /**
+     * @return type of the current record, {@link ScanTrace#SCAN} or {@link ScanTrace#TRUTH}
+     */
+    public byte getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public int getFloor() {
+        return floor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.localization;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class records scan results to a file in the {@link ScanTrace} format.
+ * Records are written into a memory-mapped window of the file that moves along as it fills up,
+ * so a write is a few stores into memory and the operating system does the actual I/O.
+ * Instances are not thread-safe and are meant to be used from the thread delivering the scan results,
+ * a writer closed from another thread must be synchronized on by both sides.
+ * Writes after {@link #close()} fail with an IOException instead of touching the unmapped file.
+ */
+public class ScanTraceWriter implements Closeable {
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean closed;
+
+    /**
+     * Create a trace file, replacing an existing one.
+     * @param file file to write to
+     * @throws IOException if the file can not be created
+     */
+    public ScanTraceWriter(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+        this.window = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, WINDOW_SIZE);
+        this.window.putInt(ScanTrace.MAGIC);
+        this.window.putShort(ScanTrace.VERSION);
+        this.window.putShort((short) 0);
+    }
+
+    /**
+     * Records one advertisement.
+     * @param timestamp time of the ranging callback in nanoseconds
+     * @param address packed MAC address, see {@link MacAddress#parse(CharSequence)}
+     * @param rssi received signal strength in dBm
+     * @param distance distance estimated by the scanner in metres
+     * @throws IOException if the file can not be extended
+     */
+    public void writeScan(long timestamp, long address, int rssi, double distance) throws IOException {
+        ensureOpen();
+        ensureRemaining(ScanTrace.SCAN_SIZE);
+        this.window.put(ScanTrace.SCAN);
+        this.window.putLong(timestamp);
+        this.window.putLong(address);
+        this.window.putShort((short) rssi);
+        this.window.putFloat((float) distance);
+    }
+
+    /**
+     * Records where the user actually is.
+     * @param timestamp time of the annotation in nanoseconds, on the same clock as the scans
+     * @param location true location
+     * @param floor true floor
+     * @throws IOException if the file can not be extended
+     */
+    public void writeGroundTruth(long timestamp, Location location, int floor) throws IOException {
+        ensureOpen();
+        ensureRemaining(ScanTrace.TRUTH_SIZE);
+        this.window.put(ScanTrace.TRUTH);
+        this.window.putLong(timestamp);
+        this.window.putDouble(location.getLatitude());
+        this.window.putDouble(location.getLongitude());
+        this.window.putInt(floor);
+    }
+
+    /**
+     * The window may still be mapped after close, but the file behind it was cut, so writing to it would fault
+     * @throws IOException if the writer is closed
+     */
+    private void ensureOpen() throws IOException {
+        if (this.closed) throw new IOException("Trace writer is closed");
+    }
+
+    /**
+     * Moves the mapped window forward if the next record does not fit
+     * @param size size of the next record in bytes
+     * @throws IOException if the file can not be extended
+     */
+    private void ensureRemaining(int size) throws IOException {
+        if (this.window.remaining() < size) {
+            this.windowStart += this.window.position();
+            this.window = this.channel.map(FileChannel.MapMode.READ_WRITE, this.windowStart, WINDOW_SIZE);
+        }
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    public long size() {
+        return this.windowStart + this.window.position();
+    }
+
+    /**
+     * Flushes the records and cuts the file to the written length, closing again has no effect.
+     * @throws IOException if the file can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        long size = size();
+        this.window.force();
+        this.channel.truncate(size);
+        this.file.close();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the scratch arrays of a solve so the steady-state path does not allocate.
+ * A workspace is confined to one thread; the arrays only grow, they are never shrunk.
+ */
+final class SolverWorkspace {
+    private static final int INITIAL_CAPACITY = 16;
+
+    double[] x = new double[INITIAL_CAPACITY];
+    double[] y = new double[INITIAL_CAPACITY];
+    double[] distance = new double[INITIAL_CAPACITY];
+    double[] floorPower = new double[INITIAL_CAPACITY];
+    int[] slots = new int[INITIAL_CAPACITY];
+    boolean[] rejected = new boolean[INITIAL_CAPACITY];
+    final double[] position = new double[2];
+
+    // Candidate points of the grid search initialisation
+    final double[] searchX;
+    final double[] searchY;
+    final double[] searchCost;
+
+    // Candidate selection through a BeaconGrid
+    int[] candidates = new int[INITIAL_CAPACITY * 4];
+    private int[] marks = new int[0];    // generation that marked each slot
+    private int generation;
+
+    SolverWorkspace(int searchPoints) {
+        this.searchX = new double[searchPoints];
+        this.searchY = new double[searchPoints];
+        this.searchCost = new double[searchPoints];
+    }
+
+    /**
+     * Makes sure the beacon arrays can hold the given number of beacons
+     * @param count number of beacons
+     */
+    void ensureCapacity(int count) {
+        if (count > this.x.length) {
+            int capacity = Math.max(count, this.x.length * 2);
+            this.x = new double[capacity];
+            this.y = new double[capacity];
+            this.distance = new double[capacity];
+            this.slots = new int[capacity];
+            this.rejected = new boolean[capacity];
+        }
+    }
+
+    /**
+     * Starts a new set of marked slots, clearing the previous one in constant time
+     */
+    void clearMarks() {
+        if (++this.generation == 0) {
+            Arrays.fill(this.marks, 0);
+            this.generation = 1;
+        }
+    }
+
+    /**
+     * @param slot slot to mark
+     */
+    void mark(int slot) {
+        if (slot >= this.marks.length) {
+            this.marks = Arrays.copyOf(this.marks, Math.max(slot + 1, this.marks.length * 2));
+        }
+        this.marks[slot] = this.generation;
+    }
+
+    /**
+     * @param slot slot to check
+     * @return whether the slot was marked since the last {@link #clearMarks()}
+     */
+    boolean isMarked(int slot) {
+        return slot < this.marks.length && this.marks[slot] == this.generation;
+    }
+
+    /**
+     * Doubles the candidate array after a query filled it
+     */
+    void growCandidates() {
+        this.candidates = new int[this.candidates.length * 2];
+    }
+
+    /**
+     * Returns the floor power array cleared for the given number of floors
+     * @param floors number of floors
+     * @return array with at least the given length, the first floors entries are zero
+     */
+    double[] floorPower(int floors) {
+        if (floors > this.floorPower.length) {
+            this.floorPower = new double[Math.max(floors, this.floorPower.length * 2)];
+        } else {
+            Arrays.fill(this.floorPower, 0, floors, 0.0);
+        }
+        return this.floorPower;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.localization;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * This class writes every report as a block of text lines headed by its UTC time, to a file or any writer.
+ */
+public class TextMetricsSink implements MetricsSink {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Writer writer;
+    private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+
+    /**
+     * Create a sink appending to a file.
+     * @param file file the reports are appended to
+     * @throws IOException if the file can not be opened
+     */
+    public TextMetricsSink(File file) throws IOException {
+        this(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+    }
+
+    /**
+     * Create a sink writing to a writer, which is flushed after every report.
+     * @param writer destination of the reports
+     */
+    public TextMetricsSink(Writer writer) {
+        this.writer = writer;
+        this.format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    @Override
+    public void report(MetricsSnapshot interval) throws IOException {
+        this.writer.write("# " + this.format.format(new Date(interval.getTime())) + "\n");
+        interval.format(this.writer);
+        this.writer.flush();
+    }
+}
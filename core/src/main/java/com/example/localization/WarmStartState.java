@@ -0,0 +1,158 @@
+package com.example.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class remembers the previous fix of a LocationFinder together with the residual of every beacon at it,
+ * indexed by registry slot. When a new snapshot comes in, only the residuals of beacons whose distance changed
+ * are recomputed, which tells cheaply whether the previous fix is still good enough.
+ * Distance changes are measured against the distances of the last solve, not of the last snapshot, so a device
+ * moving a little at every scan still gets a new fix once it moved far enough.
+ */
+final class WarmStartState {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private boolean valid;
+    private LocalFrame frame;
+    private int floor;
+    double x;
+    double y;
+    private double cost;        // sum of squared residuals at (x, y)
+
+    private int[] slots = new int[INITIAL_CAPACITY];    // slots of the beacons in the previous fix
+    private int count;
+    private int generation;
+    private int[] stamp = new int[INITIAL_CAPACITY];           // generation in which a slot was last part of a fix
+    private double[] distance = new double[INITIAL_CAPACITY];  // corrected distance per slot
+    private double[] solved = new double[INITIAL_CAPACITY];    // corrected distance per slot at the last solve
+    private double[] residual = new double[INITIAL_CAPACITY];  // residual per slot at (x, y)
+
+    /**
+     * @param frame frame of the new snapshot
+     * @param floor floor found for the new snapshot
+     * @return whether the previous fix can be used as a starting point
+     */
+    boolean isWarm(LocalFrame frame, int floor) {
+        return this.valid && this.frame == frame && this.floor == floor;
+    }
+
+    /**
+     * Forgets the previous fix.
+     */
+    void invalidate() {
+        this.valid = false;
+    }
+
+    /**
+     * @return sum of squared residuals at the previous fix for the distances of the last update
+     */
+    double getCost() {
+        return this.cost;
+    }
+
+    /**
+     * Updates the residuals at the previous fix for new distances, recomputing only the terms that changed
+     * @param slots registry slot of each beacon
+     * @param x metres east of each beacon
+     * @param y metres north of each beacon
+     * @param distance corrected distance to each beacon
+     * @param count number of beacons
+     * @return largest distance change since the last {@link #reset}, or infinity if the set of beacons changed
+     */
+    double update(int[] slots, double[] x, double[] y, double[] distance, int count) {
+        int previous = this.generation++;
+        double delta = count == this.count ? 0 : Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < count; i++) {
+            int slot = slots[i];
+            if (slot < 0) return Double.POSITIVE_INFINITY;
+            ensureCapacity(slot + 1);
+            if (this.stamp[slot] == previous) {
+                // Any change of the set forces a solve, so a beacon of the last update was also in the last solve
+                delta = Math.max(delta, Math.abs(distance[i] - this.solved[slot]));
+                if (distance[i] == this.distance[slot]) {
+                    this.stamp[slot] = this.generation;
+                    continue;
+                }
+                this.cost -= this.residual[slot] * this.residual[slot];
+            } else {
+                delta = Double.POSITIVE_INFINITY;
+            }
+            double dx = this.x - x[i];
+            double dy = this.y - y[i];
+            this.residual[slot] = Math.sqrt(dx * dx + dy * dy) - distance[i];
+            this.cost += this.residual[slot] * this.residual[slot];
+            this.distance[slot] = distance[i];
+            this.stamp[slot] = this.generation;
+        }
+
+        // Drop the terms of beacons that are no longer there
+        for (int i = 0; i < this.count; i++) {
+            int slot = this.slots[i];
+            if (this.stamp[slot] == previous) {
+                this.cost -= this.residual[slot] * this.residual[slot];
+                delta = Double.POSITIVE_INFINITY;
+            }
+        }
+        rememberSlots(slots, count);
+        return delta;
+    }
+
+    /**
+     * Stores a new fix and recomputes all residuals at it
+     * @param frame frame of the fix
+     * @param floor floor of the fix
+     * @param position the fix {x, y}
+     * @param slots registry slot of each beacon
+     * @param x metres east of each beacon
+     * @param y metres north of each beacon
+     * @param distance corrected distance to each beacon
+     * @param count number of beacons
+     */
+    void reset(LocalFrame frame, int floor, double[] position, int[] slots, double[] x, double[] y,
+               double[] distance, int count) {
+        this.frame = frame;
+        this.floor = floor;
+        this.x = position[0];
+        this.y = position[1];
+        this.cost = 0;
+        this.generation++;
+        this.valid = true;
+
+        for (int i = 0; i < count; i++) {
+            int slot = slots[i];
+            if (slot < 0) {
+                this.valid = false;
+                continue;
+            }
+            ensureCapacity(slot + 1);
+            double dx = this.x - x[i];
+            double dy = this.y - y[i];
+            this.residual[slot] = Math.sqrt(dx * dx + dy * dy) - distance[i];
+            this.cost += this.residual[slot] * this.residual[slot];
+            this.distance[slot] = distance[i];
+            this.solved[slot] = distance[i];
+            this.stamp[slot] = this.generation;
+        }
+        rememberSlots(slots, count);
+    }
+
+    private void rememberSlots(int[] slots, int count) {
+        if (count > this.slots.length) {
+            this.slots = new int[Math.max(count, this.slots.length * 2)];
+        }
+        System.arraycopy(slots, 0, this.slots, 0, count);
+        this.count = count;
+    }
+
+    private void ensureCapacity(int slots) {
+        if (slots > this.stamp.length) {
+            // New stamps are 0, generations start at 1 once a fix is stored so they never match
+            int capacity = Math.max(slots, this.stamp.length * 2);
+            this.stamp = Arrays.copyOf(this.stamp, capacity);
+            this.distance = Arrays.copyOf(this.distance, capacity);
+            this.residual = Arrays.copyOf(this.residual, capacity);
+            this.solved = Arrays.copyOf(this.solved, capacity);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.localization;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class represents an iBeacon object from the Excel document.
+ * A beacon can not be changed once it is created, so catalogue beacons can be shared by any number of threads.
+ * Its position in the frame of a catalogue is fixed as well: projecting creates a copy, see {@link #inFrame}.
+ * Measurements are never held by a beacon, they are kept per registry slot, see {@link ActiveBeacons}, or passed
+ * next to the beacons, see {@link LocationFinder#optimisation(List, double[], int[])}.
+ */
+public class iBeacon {
+    private final int id;
+    private final String name;
+    private final String mac;
+    private final long address;    // packed MAC address, see MacAddress
+    private final double longitude;
+    private final double latitude;
+    private final int floor;
+
+    // Position in the catalogue's local frame, null and 0 if the beacon is not projected
+    private final LocalFrame frame;
+    private final double x;
+    private final double y;
+    private final double z;
+
+    /**
+     * This constructor initializes a beacon with the given properties.
+     * Mainly used by the ExcelReader class.
+     * @param id device_id
+     * @param name device_name
+     * @param mac mac_address
+     * @param location Location object contains longitude and latitude
+     * @param floor floor number
+     */
+    public iBeacon(int id, String name, String mac, Location location, int floor) {
+        this.id = id;
+        this.name = name;
+        this.mac = mac;
+        this.address = MacAddress.parse(mac);
+        this.longitude = location.getLongitude();
+        this.latitude = location.getLatitude();
+        this.floor = floor;
+        this.frame = null;
+        this.x = 0;
+        this.y = 0;
+        this.z = 0;
+    }
+
+    /**
+     * This constructor initializes a beacon with the given properties.
+     * Mainly used by the API class.
+     * @param mac mac_address
+     * @param location Location object contains longitude and latitude
+     * @param floor floor number
+     */
+    public iBeacon(String mac, Location location, int floor) {
+        this(0, null, mac, location, floor);
+    }
+
+    /**
+     * Copies a beacon and caches its position in the given frame so solvers can work in metres without
+     * trigonometry.
+     * @param beacon beacon to copy
+     * @param frame local frame of the catalogue the copy belongs to
+     */
+    private iBeacon(iBeacon beacon, LocalFrame frame) {
+        this.id = beacon.id;
+        this.name = beacon.name;
+        this.mac = beacon.mac;
+        this.address = beacon.address;
+        this.longitude = beacon.longitude;
+        this.latitude = beacon.latitude;
+        this.floor = beacon.floor;
+        this.frame = frame;
+        this.x = frame.toX(this.longitude);
+        this.y = frame.toY(this.latitude);
+        this.z = this.floor * LocalFrame.FLOOR_HEIGHT;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMac() {
+        return mac;
+    }
+
+    /**
+     * @return MAC address packed in a long, or {@link MacAddress#INVALID}
+     */
+    public long getAddress() {
+        return address;
+    }
+
+    /**
+     * @return copy of the location, changing it does not change the beacon
+     */
+    public Location getLocation() {
+        return new Location(this.longitude, this.latitude);
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public int getFloor() {
+        return floor;
+    }
+
+    /**
+     * Creates a copy of this beacon positioned in the given frame, this beacon itself is not changed.
+     * @param frame local frame of the catalogue the copy belongs to
+     * @return projected copy, equal to this beacon
+     */
+    public iBeacon inFrame(LocalFrame frame) {
+        return new iBeacon(this, frame);
+    }
+
+    /**
+     * @return frame the cached coordinates are in, or null if this beacon is not projected
+     */
+    public LocalFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return metres east of the frame origin
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * @return metres north of the frame origin
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return metres above the frame origin, derived from the floor number
+     */
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * Two beacons are equal when they have the same MAC address
+     * @param o object to compare with
+     * @return whether o is a beacon with the same MAC address
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof iBeacon)) return false;
+        iBeacon other = (iBeacon) o;
+        return this.address == other.address
+                && (this.address != MacAddress.INVALID || Objects.equals(this.mac, other.mac));
+    }
+
+    @Override
+    public int hashCode() {
+        return this.address != MacAddress.INVALID ? Long.hashCode(this.address) : Objects.hashCode(this.mac);
+    }
+}
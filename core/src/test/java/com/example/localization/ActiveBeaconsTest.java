@@ -0,0 +1,110 @@
+package com.example.localization;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ActiveBeaconsTest {
+    private static final long SECOND = 1000000000L;
+
+    private BeaconRegistry registry;
+
+    @Before
+    public void setUp() {
+        List<iBeacon> beacons = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            beacons.add(new iBeacon(MacAddress.format(i + 1), new Location(4, 52), 0));
+        }
+        this.registry = new BeaconRegistry(beacons);
+    }
+
+    private long address(int slot) {
+        return this.registry.get(slot).getAddress();
+    }
+
+    /**
+     * @return registry slots in the snapshot, sorted
+     */
+    private static int[] slots(ScanSnapshot snapshot) {
+        int[] slots = Arrays.copyOf(snapshot.getSlots(), snapshot.getCount());
+        Arrays.sort(slots);
+        return slots;
+    }
+
+    @Test
+    public void dropsBeaconsThatWereNotHeardForTheTimeToLive() {
+        ActiveBeacons active = new ActiveBeacons(this.registry, -90, 3, null, null, 0, 5 * SECOND, 0);
+        for (int slot = 0; slot < 5; slot++) {
+            active.update(slot * SECOND, address(slot), -60, 2);
+        }
+        active.snapshot(4 * SECOND);
+        long expired = Metrics.shared().counter("beacons.expired").get();
+
+        // At 6.5 s the beacons heard at 0 s and 1 s are older than 5 s, even though that leaves fewer than 3
+        assertEquals(2, active.expire(6 * SECOND + SECOND / 2));
+        assertEquals(3, active.size());
+        assertEquals(ActiveBeacons.REMOVED, active.getChange(0));
+        assertEquals(ActiveBeacons.REMOVED, active.getChange(1));
+        assertEquals(0, active.getChange(2));
+        assertArrayEquals(new int[]{2, 3, 4}, slots(active.snapshot(6 * SECOND + SECOND / 2)));
+        assertEquals(expired + 2, Metrics.shared().counter("beacons.expired").get());
+
+        // Hearing a beacon again keeps it alive
+        active.update(8 * SECOND, address(2), -60, 2);
+        assertEquals(2, active.expire(9 * SECOND + SECOND / 2));
+        assertArrayEquals(new int[]{2}, slots(active.snapshot(9 * SECOND + SECOND / 2)));
+        assertEquals(1, active.expire(20 * SECOND));
+        assertEquals(0, active.size());
+    }
+
+    @Test
+    public void keepsBeaconsWithoutATimeToLive() {
+        ActiveBeacons active = new ActiveBeacons(this.registry, -90, 3, null, null, 0, 0, 0);
+        active.update(0, address(0), -60, 2);
+
+        assertEquals(0, active.expire(Long.MAX_VALUE / 2));
+        assertEquals(1, active.size());
+    }
+
+    @Test
+    public void snapshotHoldsOnlyTheStrongestBeacons() {
+        ActiveBeacons active = new ActiveBeacons(this.registry, -100, 3, null, null, 0, 0, 4);
+        int[] rssi = {-70, -55, -80, -62, -90, -50, -75, -58, -85, -66};
+        for (int slot = 0; slot < rssi.length; slot++) {
+            active.update(0, address(slot), rssi[slot], 2);
+        }
+
+        ScanSnapshot snapshot = active.snapshot(0);
+        assertEquals(10, active.size());
+        assertArrayEquals(new int[]{1, 3, 5, 7}, slots(snapshot));
+        for (int i = 0; i < snapshot.getCount(); i++) {
+            assertEquals(rssi[snapshot.getSlots()[i]], snapshot.getRssi()[i]);
+        }
+
+        // A beacon that stays weaker than the weakest one in the snapshot is not a change
+        assertFalse(active.update(0, address(4), -70, 2));
+        assertFalse(active.hasChanges());
+
+        // One that becomes stronger takes the place of the weakest
+        assertTrue(active.update(0, address(4), -52, 2));
+        assertArrayEquals(new int[]{1, 4, 5, 7}, slots(active.snapshot(0)));
+    }
+
+    @Test
+    public void snapshotHoldsEveryBeaconBelowTheLimit() {
+        ActiveBeacons active = new ActiveBeacons(this.registry, -100, 3, null, null, 0, 0, 4);
+        for (int slot = 0; slot < 3; slot++) {
+            active.update(0, address(slot), -60 - slot, 2);
+        }
+
+        assertArrayEquals(new int[]{0, 1, 2}, slots(active.snapshot(0)));
+    }
+}
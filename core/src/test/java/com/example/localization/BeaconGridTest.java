@@ -0,0 +1,161 @@
+package com.example.localization;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BeaconGridTest {
+    private static final double CELL = 10;
+
+    private BeaconRegistry registry;
+    private BeaconGrid grid;
+    private final Random random = new Random(5);
+
+    @Before
+    public void setUp() {
+        LocalFrame frame = new LocalFrame(new Location(4, 52));
+        List<iBeacon> beacons = new ArrayList<>();
+        // Random beacons on floors 0 and 2, none on floor 1
+        for (int i = 0; i < 400; i++) {
+            double x = -50 + 100 * this.random.nextDouble();
+            double y = -30 + 60 * this.random.nextDouble();
+            beacons.add(new iBeacon(MacAddress.format(i + 1), frame.toLocation(x, y), i % 2 == 0 ? 0 : 2));
+        }
+        // Beacons on the corners of cells of floor 0
+        for (int i = 0; i < 30; i++) {
+            double x = -50 + CELL * (i % 10);
+            double y = -30 + CELL * (i / 10);
+            beacons.add(new iBeacon(MacAddress.format(1000 + i), frame.toLocation(x, y), 0));
+        }
+        this.registry = new BeaconRegistry(frame.project(beacons));
+        this.grid = new BeaconGrid(this.registry, CELL);
+    }
+
+    /**
+     * @return slots on the floor inside the rectangle by checking every beacon, sorted
+     */
+    private int[] scanWithin(int floor, double minX, double minY, double maxX, double maxY) {
+        int[] found = new int[this.registry.size()];
+        int count = 0;
+        for (int slot = 0; slot < this.registry.size(); slot++) {
+            iBeacon beacon = this.registry.get(slot);
+            if (beacon.getFloor() == floor && beacon.getX() >= minX && beacon.getX() <= maxX
+                    && beacon.getY() >= minY && beacon.getY() <= maxY) {
+                found[count++] = slot;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private int[] within(int floor, double minX, double minY, double maxX, double maxY) {
+        int[] out = new int[this.registry.size()];
+        int[] found = Arrays.copyOf(out, this.grid.within(floor, minX, minY, maxX, maxY, out));
+        Arrays.sort(found);
+        return found;
+    }
+
+    private void assertWithin(int floor, double minX, double minY, double maxX, double maxY) {
+        String query = floor + " [" + minX + ", " + maxX + "] x [" + minY + ", " + maxY + "]";
+        assertArrayEquals(query, scanWithin(floor, minX, minY, maxX, maxY), within(floor, minX, minY, maxX, maxY));
+    }
+
+    @Test
+    public void withinMatchesAScanOfEveryBeacon() {
+        for (int q = 0; q < 500; q++) {
+            double x = -70 + 140 * this.random.nextDouble();
+            double y = -50 + 100 * this.random.nextDouble();
+            double width = 40 * this.random.nextDouble();
+            double height = 40 * this.random.nextDouble();
+            assertWithin(q % 3, x, y, x + width, y + height);
+        }
+    }
+
+    @Test
+    public void withinIncludesBeaconsOnTheEdges() {
+        // Rectangles whose edges run exactly through beacons, many of them on cell boundaries
+        for (int slot = 0; slot < this.registry.size(); slot += 7) {
+            iBeacon a = this.registry.get(slot);
+            iBeacon b = this.registry.get((slot * 31 + 11) % this.registry.size());
+            double minX = Math.min(a.getX(), b.getX());
+            double maxX = Math.max(a.getX(), b.getX());
+            double minY = Math.min(a.getY(), b.getY());
+            double maxY = Math.max(a.getY(), b.getY());
+            assertWithin(a.getFloor(), minX, minY, maxX, maxY);
+            // A rectangle of a single point finds the beacon on it
+            assertWithin(a.getFloor(), a.getX(), a.getY(), a.getX(), a.getY());
+        }
+    }
+
+    @Test
+    public void withinCoversTheWholeFloorAndNothingElse() {
+        assertWithin(0, -1000, -1000, 1000, 1000);
+        assertEquals(230, within(0, -1000, -1000, 1000, 1000).length);
+        assertEquals(200, within(2, -1000, -1000, 1000, 1000).length);
+        assertEquals(0, within(1, -1000, -1000, 1000, 1000).length);
+        assertEquals(0, within(5, -1000, -1000, 1000, 1000).length);
+        assertEquals(0, within(0, 10, 10, -10, -10).length);
+        assertEquals(0, within(0, Double.NaN, -10, 10, 10).length);
+    }
+
+    @Test
+    public void withinStopsWhenTheOutputIsFull() {
+        int[] out = new int[5];
+        assertEquals(5, this.grid.within(0, -1000, -1000, 1000, 1000, out));
+    }
+
+    @Test
+    public void radiusMatchesAScanOfEveryBeacon() {
+        int[] out = new int[this.registry.size()];
+        for (int q = 0; q < 300; q++) {
+            int floor = q % 2 == 0 ? 0 : 2;
+            double x = -70 + 140 * this.random.nextDouble();
+            double y = -50 + 100 * this.random.nextDouble();
+            double radius = 25 * this.random.nextDouble();
+
+            int[] expected = new int[this.registry.size()];
+            int count = 0;
+            for (int slot = 0; slot < this.registry.size(); slot++) {
+                iBeacon beacon = this.registry.get(slot);
+                double dx = beacon.getX() - x;
+                double dy = beacon.getY() - y;
+                if (beacon.getFloor() == floor && dx * dx + dy * dy <= radius * radius) expected[count++] = slot;
+            }
+            int[] found = Arrays.copyOf(out, this.grid.radius(floor, x, y, radius, out));
+            Arrays.sort(found);
+            assertArrayEquals(Arrays.copyOf(expected, count), found);
+        }
+    }
+
+    @Test
+    public void nearestMatchesAScanOfEveryBeacon() {
+        int k = 6;
+        int[] slots = new int[k];
+        double[] squaredDistances = new double[k];
+        for (int q = 0; q < 300; q++) {
+            int floor = q % 2 == 0 ? 0 : 2;
+            double x = -90 + 180 * this.random.nextDouble();
+            double y = -70 + 140 * this.random.nextDouble();
+
+            List<Double> all = new ArrayList<>();
+            for (int slot = 0; slot < this.registry.size(); slot++) {
+                iBeacon beacon = this.registry.get(slot);
+                double dx = beacon.getX() - x;
+                double dy = beacon.getY() - y;
+                if (beacon.getFloor() == floor) all.add(dx * dx + dy * dy);
+            }
+            all.sort(null);
+
+            assertEquals(k, this.grid.nearest(floor, x, y, k, slots, squaredDistances));
+            for (int i = 0; i < k; i++) {
+                assertEquals(all.get(i), squaredDistances[i], 1e-9);
+            }
+        }
+    }
+}
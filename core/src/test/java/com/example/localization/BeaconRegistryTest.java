@@ -0,0 +1,113 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BeaconRegistryTest {
+    private static iBeacon beacon(long address, int floor) {
+        return new iBeacon(MacAddress.format(address), new Location(4, 52), floor);
+    }
+
+    /**
+     * Same hash as the registry uses, so the test can pick addresses that land on a chosen table position
+     */
+    private static int mix(long address) {
+        long h = address * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the first count addresses from start on whose hash lands on the given position of a table
+     */
+    private static long[] addressesAt(int position, int mask, int count, long start) {
+        long[] addresses = new long[count];
+        int found = 0;
+        for (long address = start; found < count; address++) {
+            if ((mix(address) & mask) == position) addresses[found++] = address;
+        }
+        return addresses;
+    }
+
+    @Test
+    public void findsEveryBeaconOfALargeCatalogue() {
+        List<iBeacon> catalogue = new ArrayList<>();
+        for (long address = 0; address < 5000; address++) {
+            catalogue.add(beacon(0x00AA00000000L + address, (int) (address % 3)));
+        }
+        BeaconRegistry registry = new BeaconRegistry(catalogue);
+
+        assertEquals(catalogue.size(), registry.size());
+        for (iBeacon beacon : catalogue) {
+            assertSame(beacon, registry.get(registry.slotOf(beacon.getMac())));
+            assertSame(beacon, registry.find(beacon.getMac().toLowerCase()));
+        }
+    }
+
+    @Test
+    public void findsCollidingAddressesAcrossTheEndOfTheTable() {
+        // Four beacons give a table of eight positions, all four hash to the last one and wrap around to the start
+        long[] colliding = addressesAt(7, 7, 5, 1);
+        List<iBeacon> catalogue = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            catalogue.add(beacon(colliding[i], 0));
+        }
+        BeaconRegistry registry = new BeaconRegistry(catalogue);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, registry.slotOf(colliding[i]));
+        }
+        // Probes past all of them before it reaches an empty position
+        assertEquals(-1, registry.slotOf(colliding[4]));
+    }
+
+    @Test
+    public void missesUnknownAndInvalidAddresses() {
+        BeaconRegistry registry = new BeaconRegistry(Arrays.asList(beacon(1, 0), beacon(2, 0)));
+
+        assertEquals(-1, registry.slotOf(3));
+        assertEquals(-1, registry.slotOf("00:00:00:00:00:03"));
+        assertEquals(-1, registry.slotOf(MacAddress.INVALID));
+        assertEquals(-1, registry.slotOf("not a mac"));
+        assertNull(registry.find("00:00:00:00:00:03"));
+
+        BeaconRegistry empty = new BeaconRegistry(Collections.<iBeacon>emptyList());
+        assertEquals(0, empty.size());
+        assertEquals(-1, empty.slotOf(1));
+    }
+
+    @Test
+    public void skipsInvalidAddressesAndKeepsTheLastDuplicate() {
+        iBeacon first = beacon(1, 0);
+        iBeacon invalid = new iBeacon("nope", new Location(4, 52), 0);
+        iBeacon second = beacon(2, 1);
+        iBeacon duplicate = beacon(1, 1);
+        BeaconRegistry registry = new BeaconRegistry(Arrays.asList(first, invalid, second, duplicate));
+
+        assertEquals(2, registry.size());
+        assertSame(duplicate, registry.get(registry.slotOf(1)));
+        assertSame(second, registry.get(registry.slotOf(2)));
+    }
+
+    @Test
+    public void indexesSlotsPerFloor() {
+        BeaconRegistry registry = new BeaconRegistry(Arrays.asList(
+                beacon(1, -1), beacon(2, 2), beacon(3, -1), beacon(4, 0)));
+
+        assertEquals(-1, registry.getLowestFloor());
+        assertEquals(2, registry.getHighestFloor());
+        assertArrayEquals(new int[]{0, 2}, registry.slotsOnFloor(-1));
+        assertArrayEquals(new int[]{3}, registry.slotsOnFloor(0));
+        assertArrayEquals(new int[0], registry.slotsOnFloor(1));
+        assertArrayEquals(new int[]{1}, registry.slotsOnFloor(2));
+        assertArrayEquals(new int[0], registry.slotsOnFloor(5));
+    }
+}
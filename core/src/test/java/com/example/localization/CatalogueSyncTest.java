@@ -0,0 +1,207 @@
+package com.example.localization;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Runs CatalogueSync against a stub of the catalogue API on localhost.
+ */
+public class CatalogueSyncTest {
+    private static final String FULL = "[[\"00:00:00:00:00:01\", 4.0001, 52.0001, 0],"
+            + "[\"00:00:00:00:00:02\", 4.0002, 52.0002, 1],"
+            + "[\"00:00:00:00:00:03\", 4.0003, 52.0003, 2]]";
+    private static final String DELTA = "[[\"00:00:00:00:00:02\", null, null, null],"
+            + "[\"00:00:00:00:00:04\", 4.0004, 52.0004, 3]]";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private URL url;
+    private File file;
+    private final Queue<Response> responses = new ArrayDeque<>();
+    private final List<Request> requests = new ArrayList<>();
+
+    /**
+     * A canned answer of the stub
+     */
+    private static final class Response {
+        final int status;
+        final String etag;
+        final String body;
+
+        Response(int status, String etag, String body) {
+            this.status = status;
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    /**
+     * The validators of a request the stub received
+     */
+    private static final class Request {
+        final String ifNoneMatch;
+        final String instanceManipulation;
+
+        Request(String ifNoneMatch, String instanceManipulation) {
+            this.ifNoneMatch = ifNoneMatch;
+            this.instanceManipulation = instanceManipulation;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/beacons", this::handle);
+        this.server.start();
+        this.url = new URL("http://localhost:" + this.server.getAddress().getPort() + "/beacons");
+        this.file = new File(folder.getRoot(), "catalogue.lcat");
+    }
+
+    @After
+    public void tearDown() {
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Response response;
+        synchronized (this) {
+            this.requests.add(new Request(exchange.getRequestHeaders().getFirst("If-None-Match"),
+                    exchange.getRequestHeaders().getFirst("A-IM")));
+            response = this.responses.remove();
+        }
+        if (response.etag != null) exchange.getResponseHeaders().set("ETag", response.etag);
+        if (response.body == null) {
+            exchange.sendResponseHeaders(response.status, -1);
+        } else {
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    private CatalogueSync sync() {
+        return new CatalogueSync(this.url, this.file, new JsonCatalogueParser());
+    }
+
+    private static Set<Long> addresses(CatalogueSnapshot snapshot) {
+        Set<Long> addresses = new HashSet<>();
+        for (int i = 0; i < snapshot.size(); i++) addresses.add(snapshot.getAddress(i));
+        return addresses;
+    }
+
+    private static Set<Long> addresses(long... addresses) {
+        Set<Long> set = new HashSet<>();
+        for (long address : addresses) set.add(address);
+        return set;
+    }
+
+    @Test
+    public void fetchesTheFullCatalogueWithoutValidators() throws IOException {
+        this.responses.add(new Response(HttpURLConnection.HTTP_OK, "\"v1\"", FULL));
+        CatalogueSync sync = sync();
+
+        CatalogueSnapshot snapshot = sync.sync();
+
+        assertEquals(HttpURLConnection.HTTP_OK, sync.getLastStatus());
+        assertNull(this.requests.get(0).ifNoneMatch);
+        assertNull(this.requests.get(0).instanceManipulation);
+        assertEquals("\"v1\"", snapshot.getETag());
+        assertEquals(addresses(1, 2, 3), addresses(snapshot));
+        assertSame(snapshot, sync.getSnapshot());
+    }
+
+    @Test
+    public void appliesADeltaWithARemoval() throws IOException {
+        this.responses.add(new Response(HttpURLConnection.HTTP_OK, "\"v1\"", FULL));
+        this.responses.add(new Response(CatalogueSync.IM_USED, "\"v2\"", DELTA));
+        CatalogueSync sync = sync();
+        sync.sync();
+
+        CatalogueSnapshot snapshot = sync.sync();
+
+        assertEquals(CatalogueSync.IM_USED, sync.getLastStatus());
+        assertEquals("\"v1\"", this.requests.get(1).ifNoneMatch);
+        assertEquals("delta", this.requests.get(1).instanceManipulation);
+        assertEquals("\"v2\"", snapshot.getETag());
+        assertEquals(addresses(1, 3, 4), addresses(snapshot));
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.getAddress(i) == 4) {
+                assertEquals(4.0004, snapshot.getLongitude(i), 1e-9);
+                assertEquals(52.0004, snapshot.getLatitude(i), 1e-9);
+                assertEquals(3, snapshot.getFloor(i));
+            }
+        }
+    }
+
+    @Test
+    public void keepsTheSnapshotWhenNotModified() throws IOException {
+        this.responses.add(new Response(HttpURLConnection.HTTP_OK, "\"v1\"", FULL));
+        this.responses.add(new Response(HttpURLConnection.HTTP_NOT_MODIFIED, "\"v1\"", null));
+        CatalogueSync sync = sync();
+        CatalogueSnapshot first = sync.sync();
+
+        assertNull(sync.sync());
+
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, sync.getLastStatus());
+        assertEquals("\"v1\"", this.requests.get(1).ifNoneMatch);
+        assertSame(first, sync.getSnapshot());
+    }
+
+    @Test
+    public void reloadsThePersistedSnapshot() throws IOException {
+        this.responses.add(new Response(HttpURLConnection.HTTP_OK, "\"v1\"", FULL));
+        this.responses.add(new Response(CatalogueSync.IM_USED, "\"v2\"", DELTA));
+        this.responses.add(new Response(HttpURLConnection.HTTP_NOT_MODIFIED, "\"v2\"", null));
+        CatalogueSync first = sync();
+        first.sync();
+        first.sync();
+
+        // A new start uses the snapshot without the network and revalidates it with its ETag
+        CatalogueSync restarted = sync();
+        CatalogueSnapshot loaded = restarted.load();
+        assertEquals(2, this.requests.size());
+        assertEquals("\"v2\"", loaded.getETag());
+        assertEquals(addresses(1, 3, 4), addresses(loaded));
+
+        assertNull(restarted.sync());
+        assertEquals("\"v2\"", this.requests.get(2).ifNoneMatch);
+    }
+
+    @Test
+    public void treatsACorruptSnapshotAsMissing() throws IOException {
+        try (OutputStream out = new java.io.FileOutputStream(this.file)) {
+            out.write("not a snapshot".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        assertSame(CatalogueSnapshot.EMPTY, sync().load());
+    }
+}
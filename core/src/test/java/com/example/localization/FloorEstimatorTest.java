@@ -0,0 +1,73 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FloorEstimatorTest {
+    private static final long SECOND = 1000000000L;
+
+    // Two beacons on each of floors 0, 1 and 2
+    private static final int[] FLOOR = {0, 0, 1, 1, 2, 2};
+
+    /**
+     * @return signal strength of the beacons heard on a floor, strong on it and weaker a floor away
+     */
+    private static int[] heardOn(int floor) {
+        int[] rssi = new int[FLOOR.length];
+        for (int i = 0; i < FLOOR.length; i++) {
+            rssi[i] = -60 - 15 * Math.abs(FLOOR[i] - floor);
+        }
+        return rssi;
+    }
+
+    @Test
+    public void publishesTheFloorOfTheFirstScan() {
+        FloorEstimator estimator = new FloorEstimator(0, 2);
+
+        assertEquals(1, estimator.update(heardOn(1), FLOOR, FLOOR.length, 0));
+    }
+
+    @Test
+    public void ignoresASingleNoisyScan() {
+        FloorEstimator estimator = new FloorEstimator(0, 2);
+        long time = 0;
+        for (int i = 0; i < 10; i++) {
+            estimator.update(heardOn(0), FLOOR, FLOOR.length, time += SECOND);
+        }
+        double settled = estimator.getConfidence();
+        assertTrue("Confidence " + settled, settled > 0.9);
+
+        assertEquals(0, estimator.update(heardOn(1), FLOOR, FLOOR.length, time += SECOND));
+        assertTrue(estimator.getConfidence() < settled);
+        assertEquals(0, estimator.update(heardOn(0), FLOOR, FLOOR.length, time + SECOND));
+    }
+
+    @Test
+    public void followsASustainedChange() {
+        FloorEstimator estimator = new FloorEstimator(0, 2);
+        long time = 0;
+        for (int i = 0; i < 10; i++) {
+            estimator.update(heardOn(0), FLOOR, FLOOR.length, time += SECOND);
+        }
+
+        int scans = 0;
+        while (estimator.update(heardOn(1), FLOOR, FLOOR.length, time += SECOND) != 1) {
+            scans++;
+            assertTrue("Still on floor " + estimator.getFloor() + " after " + scans + " scans", scans < 10);
+        }
+        assertTrue(scans > 0);
+        assertTrue(estimator.getConfidence() >= FloorEstimator.DEFAULT_SWITCH_PROBABILITY);
+        assertTrue(estimator.getProbability(1) > estimator.getProbability(0));
+    }
+
+    @Test
+    public void ignoresBeaconsOutsideItsFloors() {
+        FloorEstimator estimator = new FloorEstimator(0, 1);
+        estimator.update(heardOn(0), FLOOR, FLOOR.length, 0);
+
+        assertEquals(0, estimator.getFloor());
+        assertEquals(0, estimator.getProbability(2), 0);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+    // Every bucket above the exact ones is 1/32 of the power of two it splits
+    private static final double PRECISION = 1.0 / 32;
+
+    @Test
+    public void bucketsTileTheLongRange() {
+        assertEquals(0, Histogram.lowestOf(0));
+        assertEquals(Long.MAX_VALUE, Histogram.highestOf(Histogram.BUCKETS - 1));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucketOf(Long.MAX_VALUE));
+        for (int bucket = 0; bucket < Histogram.BUCKETS; bucket++) {
+            long lowest = Histogram.lowestOf(bucket);
+            long highest = Histogram.highestOf(bucket);
+            assertEquals(bucket, Histogram.bucketOf(lowest));
+            assertEquals(bucket, Histogram.bucketOf(highest));
+            if (bucket + 1 < Histogram.BUCKETS) assertEquals(highest + 1, Histogram.lowestOf(bucket + 1));
+            assertTrue("bucket " + bucket, highest - lowest <= PRECISION * lowest);
+        }
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram("test", "ns");
+        for (long value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(33, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(0));
+        assertEquals(15, snapshot.getValueAtPercentile(50));
+        assertEquals(31, snapshot.getValueAtPercentile(100));
+        assertEquals(31, snapshot.getMax());
+    }
+
+    @Test
+    public void percentilesAreWithinThePrecision() {
+        Histogram histogram = new Histogram("test", "ns");
+        long[] values = new long[100000];
+        Random random = new Random(13);
+        for (int i = 0; i < values.length; i++) {
+            // Log-uniform from 1 us to 1 s, like latencies
+            values[i] = (long) Math.pow(10, 3 + 6 * random.nextDouble());
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        for (double percentile : new double[]{1, 10, 50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = snapshot.getValueAtPercentile(percentile);
+            // The estimate is the top of the bucket holding the exact value
+            assertTrue(percentile + ": " + estimate + " < " + exact, estimate >= exact);
+            assertTrue(percentile + ": " + estimate + " vs " + exact, estimate - exact <= PRECISION * exact);
+        }
+        assertEquals(values[values.length - 1], snapshot.getValueAtPercentile(100));
+        assertEquals(values[values.length - 1], snapshot.getMax());
+    }
+
+    @Test
+    public void sinceHoldsOnlyTheLaterValues() {
+        Histogram histogram = new Histogram("test", "ns");
+        for (int i = 0; i < 100; i++) {
+            histogram.record(1000000);
+        }
+        Histogram.Snapshot earlier = histogram.snapshot();
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000);
+        }
+
+        Histogram.Snapshot delta = histogram.snapshot().since(earlier);
+        assertEquals(10, delta.getCount());
+        assertEquals(1000, delta.getMean(), 0);
+        long p99 = delta.getValueAtPercentile(99);
+        assertTrue(p99 >= 1000 && p99 <= 1000 * (1 + PRECISION));
+        assertTrue(delta.getMax() >= 1000 && delta.getMax() <= 1000 * (1 + PRECISION));
+    }
+}
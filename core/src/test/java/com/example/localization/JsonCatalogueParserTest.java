@@ -0,0 +1,164 @@
+package com.example.localization;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares the streaming parser with the org.json tree that Api used before it.
+ */
+public class JsonCatalogueParserTest {
+
+    /**
+     * A decoded row, longitude, latitude and floor are unset for a removal
+     */
+    private static final class Row {
+        final String mac;
+        final boolean removed;
+        final double longitude;
+        final double latitude;
+        final int floor;
+
+        Row(String mac, boolean removed, double longitude, double latitude, int floor) {
+            this.mac = mac;
+            this.removed = removed;
+            this.longitude = longitude;
+            this.latitude = latitude;
+            this.floor = floor;
+        }
+    }
+
+    private static List<Row> parse(String json) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        new JsonCatalogueParser().parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                new CatalogueParser.Sink() {
+                    @Override
+                    public void beacon(CharSequence mac, double longitude, double latitude, int floor) {
+                        rows.add(new Row(mac.toString(), false, longitude, latitude, floor));
+                    }
+
+                    @Override
+                    public void removed(CharSequence mac) {
+                        rows.add(new Row(mac.toString(), true, 0, 0, 0));
+                    }
+                });
+        return rows;
+    }
+
+    /**
+     * The old path: a JSONArray and numbers through toString and Double.parseDouble
+     */
+    private static List<Row> parseTree(String json) {
+        List<Row> rows = new ArrayList<>();
+        JSONArray array = new JSONArray(json);
+        for (int i = 0; i < array.length(); i++) {
+            JSONArray row = array.getJSONArray(i);
+            String mac = row.get(0).toString();
+            if (row.isNull(1) || row.isNull(2) || row.isNull(3)) {
+                rows.add(new Row(mac, true, 0, 0, 0));
+            } else {
+                rows.add(new Row(mac, false, Double.parseDouble(row.get(1).toString()),
+                        Double.parseDouble(row.get(2).toString()), (int) Double.parseDouble(row.get(3).toString())));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Asserts that both parsers decode the same rows, coordinates within the given number of ulps
+     */
+    private static void assertSameAsTree(String json, int ulps) throws IOException {
+        List<Row> expected = parseTree(json);
+        List<Row> actual = parse(json);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Row e = expected.get(i);
+            Row a = actual.get(i);
+            assertEquals(e.mac, a.mac);
+            assertEquals(e.removed, a.removed);
+            assertEquals(e.longitude, a.longitude, ulps * Math.ulp(e.longitude));
+            assertEquals(e.latitude, a.latitude, ulps * Math.ulp(e.latitude));
+            assertEquals(e.floor, a.floor);
+        }
+    }
+
+    private static void assertRejected(String json) {
+        try {
+            parse(json);
+            fail("Accepted " + json);
+        } catch (IOException expected) {
+            // Rejected
+        }
+    }
+
+    @Test
+    public void decodesLikeTheTreeParser() throws IOException {
+        assertSameAsTree("[]", 0);
+        assertSameAsTree(" [ [ \"00:00:00:00:00:01\" , 4.3 , 52 , 0 ] ,\n\t[\"00:00:00:00:00:02\",-4.25,-52.5,-1] ] ", 0);
+        // Quoted numbers, as some backends send them
+        assertSameAsTree("[[\"00:00:00:00:00:01\", \"4.3125\", \"52.0625\", \"2\"]]", 0);
+        // A null coordinate removes the beacon
+        assertSameAsTree("[[\"00:00:00:00:00:01\", null, 52.1, 0], [\"00:00:00:00:00:02\", 4.1, 52.1, null]]", 0);
+        assertSameAsTree("[[\"00:00:00:00:00:01\", 4.3e0, 5.21E1, 3e0], [\"00:00:00:00:00:02\", 430e-2, "
+                + "0.0521e+3, 1E1]]", 0);
+        // Extra columns are skipped
+        assertSameAsTree("[[\"00:00:00:00:00:01\", 4.3, 52.1, 1, {\"name\": \"hall, east\"}, [1, [2]], \"x\"]]", 0);
+    }
+
+    @Test
+    public void roundsLongMantissasWithinAnUlp() throws IOException {
+        assertSameAsTree("[[\"00:00:00:00:00:01\", 4.30000000000000071054273576010018587112427, "
+                + "52.123456789012345678901234567890, 0], [\"00:00:00:00:00:02\", 12345678901234567890123, "
+                + "0.000000000000000000001234567890123456789, 0]]", 1);
+    }
+
+    @Test
+    public void decodesShortNumbersExactly() throws IOException {
+        // Coordinates as a JSON serializer writes them, larger than one buffer
+        Random random = new Random(7);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0) json.append(",\n");
+            json.append(String.format(Locale.ROOT, "[\"%s\", %.9f, %.9f, %d]", MacAddress.format(i),
+                    4.3 + random.nextDouble() * 0.01, 52 + random.nextDouble() * 0.01, random.nextInt(10) - 2));
+        }
+        assertSameAsTree(json.append(']').toString(), 0);
+    }
+
+    @Test
+    public void rejectsWhitespaceInsideNumbers() {
+        assertRejected("[[\"00:00:00:00:00:01\", 4 3, 52, 0]]");
+        assertRejected("[[\"00:00:00:00:00:01\", -  4.3, 52, 0]]");
+        assertRejected("[[\"00:00:00:00:00:01\", 4. 3, 52, 0]]");
+        assertRejected("[[\"00:00:00:00:00:01\", 4.3e 1, 52, 0]]");
+        assertRejected("[[\"00:00:00:00:00:01\", \" 4.3\", 52, 0]]");
+        assertRejected("[[\"00:00:00:00:00:01\", \"4.3 \", 52, 0]]");
+    }
+
+    @Test
+    public void rejectsMalformedRows() {
+        assertRejected("[[\"00:00:00:00:00:01\", 4.3, 52]]");
+        assertRejected("[[\"00:00:00:00:00:01\", 4.3, 52, 0.5]]");
+        assertRejected("[[\"00:00:00:00:00:01\", nul, 52, 0]]");
+        assertRejected("[[\"00:00:00:00:00:01\", 4.3, 52, 0]");
+        assertRejected("");
+    }
+
+    @Test
+    public void rejectsDataAfterTheCatalogue() throws IOException {
+        assertRejected("[] x");
+        assertRejected("[[\"00:00:00:00:00:01\", 4.3, 52, 0]],");
+        assertRejected("[[\"00:00:00:00:00:01\", 4.3, 52, 0]][[\"00:00:00:00:00:02\", 4.3, 52, 0]]");
+        assertEquals(1, parse("[[\"00:00:00:00:00:01\", 4.3, 52, 0]] \r\n\t").size());
+    }
+}
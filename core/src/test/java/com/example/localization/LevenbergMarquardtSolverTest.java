@@ -0,0 +1,76 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LevenbergMarquardtSolverTest {
+    private static final double[] X = {0, 20, 20, 0, 10};
+    private static final double[] Y = {0, 0, 15, 15, 25};
+
+    /**
+     * @return exact distances from every beacon to the point
+     */
+    private static double[] ranges(double px, double py) {
+        double[] distance = new double[X.length];
+        for (int i = 0; i < X.length; i++) {
+            distance[i] = Math.hypot(px - X[i], py - Y[i]);
+        }
+        return distance;
+    }
+
+    @Test
+    public void recoversAPositionFromExactRanges() {
+        PositionSolver solver = new LevenbergMarquardtSolver();
+        Random random = new Random(9);
+        for (int t = 0; t < 100; t++) {
+            double px = -5 + 30 * random.nextDouble();
+            double py = -5 + 35 * random.nextDouble();
+            double[] position = {10, 7};    // centroid of the first four beacons
+
+            int iterations = solver.solve(X, Y, ranges(px, py), X.length, position);
+
+            assertTrue(iterations <= LevenbergMarquardtSolver.DEFAULT_MAX_ITERATIONS);
+            assertEquals(px, position[0], 1e-3);
+            assertEquals(py, position[1], 1e-3);
+        }
+    }
+
+    @Test
+    public void recoversAPositionFromThreeBeacons() {
+        double[] position = {10, 5};
+
+        new LevenbergMarquardtSolver().solve(X, Y, ranges(4, 11), 3, position);
+
+        assertEquals(4, position[0], 1e-3);
+        assertEquals(11, position[1], 1e-3);
+    }
+
+    @Test
+    public void stopsAtTheStartOnExactRanges() {
+        double[] position = {7, 3};
+
+        new LevenbergMarquardtSolver().solve(X, Y, ranges(7, 3), X.length, position);
+
+        assertEquals(0, LevenbergMarquardtSolver.cost(7, 3, X, Y, ranges(7, 3), X.length), 0);
+        assertEquals(7, position[0], 0);
+        assertEquals(3, position[1], 0);
+    }
+
+    @Test
+    public void leavesThePositionWithoutBeacons() {
+        double[] position = {7, 3};
+
+        assertEquals(0, new LevenbergMarquardtSolver().solve(X, Y, new double[X.length], 0, position));
+        assertEquals(7, position[0], 0);
+        assertEquals(3, position[1], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANonPositiveTolerance() {
+        new LevenbergMarquardtSolver(50, 0, 1e-3);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LocalFrameTest {
+    private final List<iBeacon> catalogue = Arrays.asList(
+            new iBeacon("00:00:00:00:00:01", new Location(4.0000, 52.0000), 0),
+            new iBeacon("00:00:00:00:00:02", new Location(4.0002, 52.0002), 1));
+
+    @Test
+    public void anchorsAtTheCentroid() {
+        LocalFrame frame = LocalFrame.around(this.catalogue);
+
+        assertEquals(4.0001, frame.toLongitude(0), 1e-12);
+        assertEquals(52.0001, frame.toLatitude(0), 1e-12);
+    }
+
+    @Test
+    public void projectsCopiesAndLeavesTheCatalogueUntouched() {
+        LocalFrame frame = LocalFrame.around(this.catalogue);
+        List<iBeacon> projected = frame.project(this.catalogue);
+
+        assertEquals(this.catalogue, projected);
+        for (int i = 0; i < projected.size(); i++) {
+            iBeacon beacon = projected.get(i);
+            assertSame(frame, beacon.getFrame());
+            assertEquals(frame.toX(beacon.getLongitude()), beacon.getX(), 0);
+            assertEquals(frame.toY(beacon.getLatitude()), beacon.getY(), 0);
+            assertEquals(beacon.getFloor() * LocalFrame.FLOOR_HEIGHT, beacon.getZ(), 0);
+            assertNull(this.catalogue.get(i).getFrame());
+        }
+    }
+
+    @Test
+    public void projectingIntoAnotherFrameDoesNotMoveSharedBeacons() {
+        List<iBeacon> first = LocalFrame.around(this.catalogue).project(this.catalogue);
+        double x = first.get(0).getX();
+
+        List<iBeacon> second = new LocalFrame(new Location(4.001, 52.001)).project(first);
+
+        assertEquals(x, first.get(0).getX(), 0);
+        assertNotEquals(x, second.get(0).getX(), 1);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LocalizationPipelineTest {
+
+    /**
+     * Returns the given errors in turn and writes a location only for finite ones, throws for NaN
+     */
+    private static final class ScriptedLocalizer implements Localizer {
+        private final double[] errors;
+        private int next;
+
+        ScriptedLocalizer(double... errors) {
+            this.errors = errors;
+        }
+
+        @Override
+        public double locate(ScanSnapshot snapshot, Location result) {
+            double error = this.errors[this.next++];
+            if (Double.isNaN(error)) throw new IllegalStateException("Solver failed");
+            if (!Double.isInfinite(error)) {
+                result.setLongitude(4);
+                result.setLatitude(52);
+            }
+            return error;
+        }
+
+        @Override
+        public int getFloor() {
+            return 0;
+        }
+
+        @Override
+        public double getFloorConfidence() {
+            return 1;
+        }
+    }
+
+    private static ScanSnapshot snapshot(long timestamp) {
+        iBeacon beacon = new iBeacon("00:00:00:00:00:01", new Location(4, 52), 0);
+        BeaconRegistry registry = new BeaconRegistry(Collections.singletonList(beacon));
+        return new ScanSnapshot(timestamp, registry, new int[]{0}, 1, new double[]{2}, new int[]{-60});
+    }
+
+    @Test
+    public void dropsSnapshotsWithoutAnEstimate() {
+        List<Location> published = new ArrayList<>();
+        LocalizationPipeline pipeline = new LocalizationPipeline(
+                new ScriptedLocalizer(Double.POSITIVE_INFINITY, 1.5), Runnable::run, Runnable::run,
+                (location, floor, floorConfidence, error, snapshot) -> published.add(location));
+
+        pipeline.submit(snapshot(System.nanoTime()));
+        assertEquals(0, published.size());
+
+        pipeline.submit(snapshot(System.nanoTime()));
+        assertEquals(1, published.size());
+        assertEquals(52, published.get(0).getLatitude(), 0);
+        assertEquals(2, pipeline.getSolved());
+    }
+
+    @Test
+    public void keepsSolvingAfterASolveThrows() {
+        List<Location> published = new ArrayList<>();
+        long failed = Metrics.shared().counter("pipeline.failed").get();
+        LocalizationPipeline pipeline = new LocalizationPipeline(
+                new ScriptedLocalizer(Double.NaN, 1.5), Runnable::run, Runnable::run,
+                (location, floor, floorConfidence, error, snapshot) -> published.add(location));
+
+        pipeline.submit(snapshot(System.nanoTime()));
+        assertEquals(0, published.size());
+        assertEquals(failed + 1, Metrics.shared().counter("pipeline.failed").get());
+
+        pipeline.submit(snapshot(System.nanoTime()));
+        assertEquals(1, published.size());
+        assertEquals(1, pipeline.getSolved());
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.localization;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocationFinderTest {
+    private static final double EARLY_EXIT = 0.25;
+
+    private BeaconRegistry registry;
+    private LocalFrame frame;
+    private final int[] slots = {0, 1, 2, 3};
+    private double[] distance;
+    private int[] rssi;
+
+    @Before
+    public void setUp() {
+        List<iBeacon> beacons = new ArrayList<>();
+        beacons.add(new iBeacon("00:00:00:00:00:00", new Location(4.0000, 52.0000), 0));
+        beacons.add(new iBeacon("00:00:00:00:00:01", new Location(4.0003, 52.0000), 0));
+        beacons.add(new iBeacon("00:00:00:00:00:02", new Location(4.0000, 52.0002), 0));
+        beacons.add(new iBeacon("00:00:00:00:00:03", new Location(4.0003, 52.0002), 0));
+        this.frame = LocalFrame.around(beacons);
+        this.registry = new BeaconRegistry(this.frame.project(beacons));
+        this.distance = new double[this.registry.size()];
+        this.rssi = new int[this.registry.size()];
+    }
+
+    private ScanSnapshot scan(long timestamp, double x, double y) {
+        for (int slot : this.slots) {
+            iBeacon beacon = this.registry.get(slot);
+            this.distance[slot] = Math.hypot(beacon.getX() - x, beacon.getY() - y);
+            this.rssi[slot] = -60;
+        }
+        return new ScanSnapshot(timestamp, this.registry, this.slots, this.slots.length, this.distance, this.rssi);
+    }
+
+    @Test
+    public void keepsFixWhileDistancesBarelyChange() {
+        LocationFinder finder = new LocationFinder(new LevenbergMarquardtSolver(), EARLY_EXIT);
+        Location fix = new Location();
+        finder.locate(scan(0, 5, 5), fix);
+        finder.locate(scan(1, 5.01, 5), fix);
+
+        assertEquals(0, finder.getLastIterations());
+        assertEquals(5, this.frame.toX(fix.getLongitude()), 0.01);
+    }
+
+    @Test
+    public void followsSlowMovementAcrossEarlyExits() {
+        LocationFinder finder = new LocationFinder(new LevenbergMarquardtSolver(), EARLY_EXIT);
+        Location fix = new Location();
+        double x = 5;
+        for (int i = 0; i < 60; i++) {
+            finder.locate(scan(i, x, 5), fix);
+            x += 0.1;
+        }
+        x -= 0.1;
+
+        // Every scan moves less than the threshold, the drift since the last solve must still trigger solves
+        double error = Math.abs(this.frame.toX(fix.getLongitude()) - x);
+        assertTrue("Fix lags the truth by " + error + " m", error < 2 * EARLY_EXIT);
+    }
+
+    @Test
+    public void tracksTheFloorOfSnapshotsWithoutAFrame() {
+        // Unprojected beacons give snapshots without a frame
+        List<iBeacon> beacons = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            beacons.add(new iBeacon(String.format("00:00:00:00:01:%02X", i),
+                    new Location(4 + 0.0001 * (i % 2), 52 + 0.0001 * (i / 2 % 2)), i / 4));
+        }
+        BeaconRegistry registry = new BeaconRegistry(beacons);
+        FloorEstimator estimator = new FloorEstimator(registry);
+        LocationFinder finder = new LocationFinder(new LevenbergMarquardtSolver(), EARLY_EXIT, null, 0, estimator);
+        double[] distance = {5, 5, 5, 5, 6, 6, 6, 6};
+        int[] ground = {-60, -60, -60, -60, -80, -80, -80, -80};
+        int[] noisy = {-80, -80, -80, -80, -60, -60, -60, -60};
+        Location fix = new Location();
+
+        for (int i = 0; i < 10; i++) {
+            finder.locate(new ScanSnapshot(i * 1000000000L, beacons, distance, ground, registry), fix);
+        }
+        finder.locate(new ScanSnapshot(10 * 1000000000L, beacons, distance, noisy, registry), fix);
+
+        // The summed power of this scan alone says floor 1, the tracked floor stays 0 with a lower confidence
+        assertEquals(0, finder.getFloor());
+        assertEquals(estimator.getConfidence(), finder.getFloorConfidence(), 0);
+        assertTrue(finder.getFloorConfidence() < 1);
+
+        LocationFinder untracked = new LocationFinder(new LevenbergMarquardtSolver(), EARLY_EXIT);
+        untracked.locate(new ScanSnapshot(0, beacons, distance, noisy, registry), fix);
+        assertEquals(1, untracked.getFloor());
+        assertEquals(1, untracked.getFloorConfidence(), 0);
+    }
+}
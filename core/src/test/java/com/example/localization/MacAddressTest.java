@@ -0,0 +1,46 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MacAddressTest {
+    @Test
+    public void parsesEverySeparatorAndCase() {
+        long expected = 0xAABBCCDDEEFFL;
+        assertEquals(expected, MacAddress.parse("AA:BB:CC:DD:EE:FF"));
+        assertEquals(expected, MacAddress.parse("aa-bb-cc-dd-ee-ff"));
+        assertEquals(expected, MacAddress.parse("aAbBcCdDeEfF"));
+        assertEquals(expected, MacAddress.parse(new StringBuilder("aa:BB:cc:DD:ee:FF")));
+    }
+
+    @Test
+    public void formatAndParseRoundTrip() {
+        long[] addresses = {0, 1, 0xFFFFFFFFFFFFL, 0x0123456789ABL, 0x800000000001L};
+        for (long address : addresses) {
+            String text = MacAddress.format(address);
+            assertEquals(17, text.length());
+            assertEquals(text, address, MacAddress.parse(text));
+        }
+        assertEquals("01:23:45:67:89:AB", MacAddress.format(0x0123456789ABL));
+        assertEquals("00:00:00:00:00:00", MacAddress.format(0));
+    }
+
+    @Test
+    public void rejectsMalformedAddresses() {
+        String[] malformed = {
+                "",
+                "AA:BB:CC:DD:EE",           // too short
+                "AA:BB:CC:DD:EE:FF:00",     // too long
+                "AA:BB:CC:DD:EE:FG",        // not hex
+                "AA:BB:CC:DD:EE:F",         // odd number of digits
+                "A:AB:BC:CD:DE:EF:F",       // separator inside an octet
+                "AA BB CC DD EE FF",        // unknown separator
+                "AA:BB:CC:DD:EE:FF ",
+        };
+        for (String mac : malformed) {
+            assertEquals(mac, MacAddress.INVALID, MacAddress.parse(mac));
+        }
+        assertEquals(MacAddress.INVALID, MacAddress.parse(null));
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.localization;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MultiStartSolverTest {
+    private static final long GENEROUS = TimeUnit.SECONDS.toNanos(5);
+
+    // A corridor of nearly collinear beacons with one beacon off to the side, the cost has a local minimum
+    // on the far side of the corridor from the true position
+    private static final double[] X = {0, 10, 20, 30, 14};
+    private static final double[] Y = {0, 0.3, 0, 0.3, -2};
+    private static final double TRUE_X = 15;
+    private static final double TRUE_Y = 4;
+    private static final double START_X = 15;
+    private static final double START_Y = -4;
+
+    private double[] distance;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        this.distance = new double[X.length];
+        for (int i = 0; i < X.length; i++) {
+            this.distance[i] = Math.hypot(X[i] - TRUE_X, Y[i] - TRUE_Y);
+        }
+        this.pool = new ForkJoinPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * Solves from the wrong side of the corridor
+     * @return the fix
+     */
+    private double[] solve(PositionSolver solver) {
+        double[] position = {START_X, START_Y};
+        solver.solve(X, Y, this.distance, X.length, position);
+        return position;
+    }
+
+    private static void assertTrueFix(double[] position) {
+        assertEquals(TRUE_X, position[0], 0.01);
+        assertEquals(TRUE_Y, position[1], 0.01);
+    }
+
+    /**
+     * Sleeps on every solve, so only the starts that begin within the budget finish in time
+     */
+    private static final class SlowSolver implements PositionSolver {
+        private final long sleep;
+        private final PositionSolver solver = new LevenbergMarquardtSolver();
+
+        SlowSolver(long sleep) {
+            this.sleep = sleep;
+        }
+
+        @Override
+        public int solve(double[] x, double[] y, double[] distance, int count, double[] position) {
+            try {
+                Thread.sleep(this.sleep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return this.solver.solve(x, y, distance, count, position);
+        }
+    }
+
+    @Test
+    public void singleSolveEndsInTheLocalMinimum() {
+        double[] position = solve(new LevenbergMarquardtSolver());
+
+        assertTrue("Plain solve found the true fix", position[1] < 0);
+    }
+
+    @Test
+    public void findsTheGlobalMinimumSequentially() {
+        assertTrueFix(solve(new MultiStartSolver(new LevenbergMarquardtSolver(), MultiStartSolver.DEFAULT_STARTS,
+                GENEROUS, null)));
+    }
+
+    @Test
+    public void findsTheGlobalMinimumOnAPool() {
+        MultiStartSolver solver = new MultiStartSolver(new LevenbergMarquardtSolver(), MultiStartSolver.DEFAULT_STARTS,
+                GENEROUS, this.pool);
+        for (int i = 0; i < 20; i++) {
+            assertTrueFix(solve(solver));
+        }
+    }
+
+    @Test
+    public void solvesOnTheCallerWhenThePoolRejects() {
+        this.pool.shutdown();
+        long rejections = Metrics.shared().counter("solver.pool_rejections").get();
+
+        assertTrueFix(solve(new MultiStartSolver(new LevenbergMarquardtSolver(), MultiStartSolver.DEFAULT_STARTS,
+                GENEROUS, this.pool)));
+        assertEquals(rejections + 1, Metrics.shared().counter("solver.pool_rejections").get());
+    }
+
+    @Test
+    public void skipsStartsBeyondTheBudget() {
+        long sleep = TimeUnit.MILLISECONDS.toNanos(100);
+        MultiStartSolver solver = new MultiStartSolver(new SlowSolver(TimeUnit.NANOSECONDS.toMillis(sleep)),
+                MultiStartSolver.DEFAULT_STARTS, sleep / 2, null);
+
+        long start = System.nanoTime();
+        double[] position = solve(solver);
+        long elapsed = System.nanoTime() - start;
+
+        // Only the given start is solved, so the fix is the local minimum it leads to
+        assertTrue("Took " + elapsed / 1000000 + " ms", elapsed < 2 * sleep);
+        assertTrue(position[1] < 0);
+    }
+
+    @Test
+    public void doesNotWaitForStartsBeyondTheBudget() {
+        long sleep = TimeUnit.MILLISECONDS.toNanos(300);
+        MultiStartSolver solver = new MultiStartSolver(new SlowSolver(TimeUnit.NANOSECONDS.toMillis(sleep)),
+                MultiStartSolver.DEFAULT_STARTS, sleep / 3, this.pool);
+
+        long start = System.nanoTime();
+        solve(solver);
+        long elapsed = System.nanoTime() - start;
+
+        // The caller solves the given start and abandons the starts still running on the pool
+        assertTrue("Took " + elapsed / 1000000 + " ms", elapsed < 2 * sleep);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.localization;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParticleFilterTrackerTest {
+    private static final int PARTICLES = 2000;    // several chunks, so the pool has work to split
+    private static final int SCANS = 60;
+    private static final long SECOND = 1000000000L;
+
+    private final PathLossModel model = new PathLossModel();
+    private BeaconRegistry registry;
+    private LocalFrame frame;
+    private ForkJoinPool pool;
+
+    // Ground truth of the walk, one point per scan
+    private final double[] walkX = new double[SCANS];
+    private final double[] walkY = new double[SCANS];
+    private final List<ScanSnapshot> scans = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        // A 4 x 4 grid of beacons 10 m apart
+        List<iBeacon> beacons = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            beacons.add(new iBeacon(String.format("00:00:00:00:02:%02X", i),
+                    new Location(4 + 0.000146 * (i % 4), 52 + 0.00009 * (i / 4)), 0));
+        }
+        this.frame = LocalFrame.around(beacons);
+        this.registry = new BeaconRegistry(this.frame.project(beacons));
+        this.pool = new ForkJoinPool(2);
+
+        // Walks at 1 m/s around the room and hears every beacon with 2 dB of noise
+        Random random = new Random(3);
+        int[] slots = new int[this.registry.size()];
+        double[] distance = new double[this.registry.size()];
+        int[] rssi = new int[this.registry.size()];
+        for (int s = 0; s < SCANS; s++) {
+            double angle = 2 * Math.PI * s / SCANS;
+            this.walkX[s] = 8 * Math.cos(angle);
+            this.walkY[s] = 8 * Math.sin(angle);
+            for (int slot = 0; slot < this.registry.size(); slot++) {
+                iBeacon beacon = this.registry.get(slot);
+                double range = Math.hypot(beacon.getX() - this.walkX[s], beacon.getY() - this.walkY[s]);
+                slots[slot] = slot;
+                rssi[slot] = (int) Math.round(this.model.rssi(range) + 2 * random.nextGaussian());
+                distance[slot] = this.model.distance(rssi[slot]);
+            }
+            this.scans.add(new ScanSnapshot(s * SECOND, this.registry, slots, slots.length, distance, rssi));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    private ParticleFilterTracker tracker(ForkJoinPool pool, long seed) {
+        return new ParticleFilterTracker(this.registry, PARTICLES, this.model, pool,
+                ParticleFilterTracker.DEFAULT_SPEED, ParticleFilterTracker.DEFAULT_RSSI_SIGMA,
+                ParticleFilterTracker.DEFAULT_FLOOR_CHANGE, seed);
+    }
+
+    /**
+     * @return x and y in metres of every fix, interleaved
+     */
+    private double[] track(ParticleFilterTracker tracker) {
+        double[] track = new double[2 * SCANS];
+        Location fix = new Location();
+        for (int s = 0; s < SCANS; s++) {
+            tracker.locate(this.scans.get(s), fix);
+            track[2 * s] = this.frame.toX(fix.getLongitude());
+            track[2 * s + 1] = this.frame.toY(fix.getLatitude());
+        }
+        return track;
+    }
+
+    /**
+     * @return mean distance between the fixes and the walk once the filter had ten scans to converge
+     */
+    private double meanError(double[] track) {
+        double error = 0;
+        for (int s = 10; s < SCANS; s++) {
+            error += Math.hypot(track[2 * s] - this.walkX[s], track[2 * s + 1] - this.walkY[s]);
+        }
+        return error / (SCANS - 10);
+    }
+
+    @Test
+    public void sameSeedGivesTheSameTrack() {
+        assertArrayEquals(track(tracker(null, 7)), track(tracker(null, 7)), 0);
+    }
+
+    @Test
+    public void poolGivesTheSameTrackAsSequential() {
+        // Every chunk has its own generator, so how the chunks are scheduled does not matter
+        assertArrayEquals(track(tracker(null, 7)), track(tracker(this.pool, 7)), 0);
+    }
+
+    @Test
+    public void convergesOnAWalkSequentially() {
+        ParticleFilterTracker tracker = tracker(null, 7);
+        double error = meanError(track(tracker));
+
+        assertTrue("Mean error " + error + " m", error < 2);
+        assertEquals(0, tracker.getFloor());
+        assertEquals(1, tracker.getFloorConfidence(), 1e-9);
+    }
+
+    @Test
+    public void convergesOnAWalkOnAPool() {
+        double error = meanError(track(tracker(this.pool, 11)));
+
+        assertTrue("Mean error " + error + " m", error < 2);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RobustSolverTest {
+    private static final double TRUE_X = 12;
+    private static final double TRUE_Y = 7;
+
+    // Eight beacons around a 30 x 20 m room
+    private static final double[] X = {0, 15, 30, 30, 30, 15, 0, 0};
+    private static final double[] Y = {0, 0, 0, 10, 20, 20, 20, 10};
+
+    /**
+     * @return ranges to the true position with centimetres of noise, the given beacons reporting far too long
+     */
+    private static double[] ranges(int... outliers) {
+        Random random = new Random(5);
+        double[] distance = new double[X.length];
+        for (int i = 0; i < X.length; i++) {
+            distance[i] = Math.hypot(X[i] - TRUE_X, Y[i] - TRUE_Y) + 0.05 * random.nextGaussian();
+        }
+        double extra = 15;
+        for (int i : outliers) {
+            distance[i] += extra;
+            extra += 5;
+        }
+        return distance;
+    }
+
+    /**
+     * @return metres between the solved and the true position
+     */
+    private static double solve(PositionSolver solver, double[] distance, boolean[] rejected) {
+        // Start at the centre of the room, as a solve without a previous fix does
+        double[] position = {15, 10};
+        if (rejected != null) {
+            solver.solve(X, Y, distance, X.length, position, rejected);
+        } else {
+            solver.solve(X, Y, distance, X.length, position);
+        }
+        return Math.hypot(position[0] - TRUE_X, position[1] - TRUE_Y);
+    }
+
+    /**
+     * Asserts that the outliers, and only they, are rejected and that the fix is within the bound of the truth
+     */
+    private static void assertRejectsOutliers(RobustSolver.Loss loss, double bound, int... outliers) {
+        double[] distance = ranges(outliers);
+        RobustSolver robust = new RobustSolver(new LevenbergMarquardtSolver(), loss,
+                RobustSolver.DEFAULT_THRESHOLD, RobustSolver.DEFAULT_MAX_SUBSETS);
+        boolean[] rejected = new boolean[X.length];
+
+        double error = solve(robust, distance, rejected);
+
+        boolean[] expected = new boolean[X.length];
+        for (int i : outliers) expected[i] = true;
+        assertArrayEquals(expected, rejected);
+        assertTrue(loss + " fix is " + error + " m off", error < bound);
+    }
+
+    @Test
+    public void plainLeastSquaresIsDraggedByOutliers() {
+        double error = solve(new LevenbergMarquardtSolver(), ranges(2, 5), null);
+
+        assertTrue("Plain fix is only " + error + " m off", error > 3);
+    }
+
+    @Test
+    public void tukeyRejectsOneOutlier() {
+        assertRejectsOutliers(RobustSolver.Loss.TUKEY, 0.25, 4);
+    }
+
+    @Test
+    public void tukeyRejectsTwoOutliers() {
+        assertRejectsOutliers(RobustSolver.Loss.TUKEY, 0.25, 2, 5);
+    }
+
+    @Test
+    public void huberRejectsTwoOutliers() {
+        // Huber still lets the outliers pull linearly, so its fix stays further off than Tukey's
+        assertRejectsOutliers(RobustSolver.Loss.HUBER, 2, 2, 5);
+    }
+
+    @Test
+    public void keepsEveryBeaconWithoutOutliers() {
+        assertRejectsOutliers(RobustSolver.Loss.TUKEY, 0.25);
+    }
+}
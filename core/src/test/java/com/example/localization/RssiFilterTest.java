@@ -0,0 +1,94 @@
+package com.example.localization;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RssiFilterTest {
+    private static final double[] SAMPLES = {-60, -70, -70, -50};
+
+    /**
+     * Feeds the samples to slot 1 of the filter and checks every output
+     */
+    private static void assertSteps(RssiFilter filter, double... expected) {
+        for (int i = 0; i < SAMPLES.length; i++) {
+            assertEquals("sample " + i, expected[i], filter.update(1, SAMPLES[i]), 1e-9);
+        }
+    }
+
+    @Test
+    public void emaSteps() {
+        EmaRssiFilter filter = new EmaRssiFilter(3, 0.5);
+        assertSteps(filter, -60, -65, -67.5, -58.75);
+
+        // Other slots and a reset slot start from their first sample
+        assertEquals(-80, filter.update(0, -80), 0);
+        filter.reset(1);
+        assertEquals(-90, filter.update(1, -90), 0);
+    }
+
+    @Test
+    public void emaWithAlphaOneFollowsTheSamples() {
+        assertSteps(new EmaRssiFilter(3, 1), SAMPLES);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emaRejectsAlphaAboveOne() {
+        new EmaRssiFilter(3, 1.5);
+    }
+
+    @Test
+    public void kalmanSteps() {
+        KalmanRssiFilter filter = new KalmanRssiFilter(3);
+        // The gain starts near 1/2 as the first estimate is as uncertain as a sample, then shrinks
+        assertSteps(filter, -60, -65.00499500499501, -66.67553633572297, -62.47755732308553);
+
+        assertEquals(-80, filter.update(0, -80), 0);
+        filter.reset(1);
+        assertEquals(-90, filter.update(1, -90), 0);
+    }
+
+    @Test
+    public void medianSteps() {
+        MedianRssiFilter filter = new MedianRssiFilter(3, 3);
+        assertSteps(filter, -60, -65, -70, -70);
+
+        // A single spike does not get through
+        assertEquals(-70, filter.update(1, -95), 0);
+        assertEquals(-50, filter.update(1, -40), 0);
+
+        assertEquals(-80, filter.update(0, -80), 0);
+        filter.reset(1);
+        assertEquals(-90, filter.update(1, -90), 0);
+        assertEquals(-85, filter.update(1, -80), 0);
+    }
+
+    @Test
+    public void pathLossModelInvertsItself() {
+        PathLossModel model = new PathLossModel();
+        assertEquals(1, model.distance(-59), 1e-12);
+        assertEquals(10, model.distance(-79), 1e-12);
+        assertEquals(-79, model.rssi(10), 1e-12);
+        assertEquals(-79, model.rssiFromSquared(100), 1e-12);
+
+        PathLossModel indoor = new PathLossModel(-65, 3);
+        assertEquals(10, indoor.distance(-95), 1e-12);
+        for (double distance = 0.5; distance < 50; distance *= 1.7) {
+            assertEquals(distance, indoor.distance(indoor.rssi(distance)), 1e-9);
+            assertEquals(indoor.rssi(distance), indoor.rssiFromSquared(distance * distance), 1e-9);
+        }
+    }
+
+    @Test
+    public void filteredSamplesGiveTheModelDistance() {
+        // Samples that are all the expected signal strength at 4 m stay at 4 m through every filter
+        PathLossModel model = new PathLossModel();
+        double rssi = model.rssi(4);
+        RssiFilter[] filters = {new EmaRssiFilter(1), new KalmanRssiFilter(1), new MedianRssiFilter(1)};
+        for (RssiFilter filter : filters) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(4, model.distance(filter.update(0, rssi)), 1e-9);
+            }
+        }
+    }
+}
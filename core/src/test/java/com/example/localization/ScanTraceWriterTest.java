@@ -0,0 +1,57 @@
+package com.example.localization;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScanTraceWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        File file = folder.newFile("trace.ltrc");
+        try (ScanTraceWriter writer = new ScanTraceWriter(file)) {
+            writer.writeScan(1000, 0x0A0B0C0D0E0FL, -71, 3.5);
+        }
+
+        try (ScanTraceReader reader = new ScanTraceReader(file)) {
+            assertTrue(reader.next());
+            assertEquals(ScanTrace.SCAN, reader.getType());
+            assertEquals(1000, reader.getTimestamp());
+            assertEquals(0x0A0B0C0D0E0FL, reader.getAddress());
+            assertEquals(-71, reader.getRssi());
+            assertEquals(3.5, reader.getDistance(), 1e-6);
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void rejectsWritesAfterClose() throws IOException {
+        ScanTraceWriter writer = new ScanTraceWriter(folder.newFile("closed.ltrc"));
+        writer.writeScan(1000, 1, -60, 2);
+        writer.close();
+        writer.close();
+
+        try {
+            writer.writeScan(2000, 1, -60, 2);
+            fail("Write after close must fail");
+        } catch (IOException expected) {
+            // The file behind the mapped window was cut, writing to it would crash the process
+        }
+        try {
+            writer.writeGroundTruth(2000, new Location(4, 52), 0);
+            fail("Write after close must fail");
+        } catch (IOException expected) {
+            // Same for ground truth
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.localization.server;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class defines the binary protocol of the localization server, all values are big endian.
+ * A request carries the scan reports of any number of devices, one report per ranging callback:
+ * <pre>
+ * request:        int magic 'LBAT', int version, int reports, then the reports
+ * report:         long device, long timestamp (ns), int advertisements, then the advertisements
+ * advertisement:  long packed MAC, short rssi (dBm), float distance (m)
+ * </pre>
+ * The response has one fix per report, in the order of the request:
+ * <pre>
+ * response:       int magic 'LFIX', int version, int fixes, then the fixes
+ * fix:            long device, long timestamp (ns), byte status, double latitude, double longitude, int floor,
+ *                 float error (mean squared, m^2)
+ * </pre>
+ * Reports of one device must be sent in the order they were scanned, within a request and across requests.
+ */
+public final class BatchProtocol {
+    public static final int REQUEST_MAGIC = 0x4C424154;     // 'LBAT'
+    public static final int RESPONSE_MAGIC = 0x4C464958;    // 'LFIX'
+    public static final int VERSION = 1;
+
+    /** The report was solved */
+    public static final byte SOLVED = 0;
+    /** The report did not change the solved beacons, the fix is the previous one */
+    public static final byte UNCHANGED = 1;
+    /** The device has not heard enough beacons for a fix yet, the fix fields are 0 */
+    public static final byte NO_FIX = 2;
+
+    static final int HEADER_BYTES = 12;
+    static final int REPORT_BYTES = 20;
+    static final int ADVERTISEMENT_BYTES = 14;
+    static final int FIX_BYTES = 41;
+    static final int MAX_REPORTS = 1 << 16;
+    static final int MAX_ADVERTISEMENTS = 1 << 10;    // per report, far beyond what a phone hears at once
+
+    private BatchProtocol() {}
+
+    /**
+     * Scan reports of one request in packed arrays, the advertisements of report i are the entries
+     * from first[i] up to first[i + 1].
+     */
+    public static final class Batch {
+        public final int count;
+        public final long[] device;
+        public final long[] timestamp;
+        public final int[] first;
+        public final long[] address;
+        public final int[] rssi;
+        public final double[] distance;
+
+        Batch(int count, long[] device, long[] timestamp, int[] first, long[] address, int[] rssi,
+              double[] distance) {
+            this.count = count;
+            this.device = device;
+            this.timestamp = timestamp;
+            this.first = first;
+            this.address = address;
+            this.rssi = rssi;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Fixes of one response in packed arrays, index i belongs to report i of the request.
+     */
+    public static final class Fixes {
+        public final int count;
+        public final long[] device;
+        public final long[] timestamp;
+        public final byte[] status;
+        public final double[] latitude;
+        public final double[] longitude;
+        public final int[] floor;
+        public final float[] error;
+
+        /**
+         * Create fixes for the reports of a batch, all without a fix
+         * @param count number of reports
+         */
+        public Fixes(int count) {
+            this.count = count;
+            this.device = new long[count];
+            this.timestamp = new long[count];
+            this.status = new byte[count];
+            this.latitude = new double[count];
+            this.longitude = new double[count];
+            this.floor = new int[count];
+            this.error = new float[count];
+            Arrays.fill(this.status, NO_FIX);
+        }
+    }
+
+    /**
+     * Decodes a request
+     * @param buffer buffer positioned at the request
+     * @return the scan reports
+     * @throws IOException if the request is malformed or exceeds the limits
+     */
+    public static Batch readRequest(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != REQUEST_MAGIC) throw new IOException("Not a batch request");
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported batch version " + version);
+            int count = buffer.getInt();
+            if (count < 0 || count > MAX_REPORTS) throw new IOException("Invalid number of reports " + count);
+
+            long[] device = new long[count];
+            long[] timestamp = new long[count];
+            int[] first = new int[count + 1];
+            // Every byte after the reports is an advertisement at most, which bounds the arrays by the request
+            int capacity = Math.max(0, (buffer.remaining() - count * REPORT_BYTES) / ADVERTISEMENT_BYTES);
+            long[] address = new long[capacity];
+            int[] rssi = new int[capacity];
+            double[] distance = new double[capacity];
+            int entries = 0;
+            for (int i = 0; i < count; i++) {
+                device[i] = buffer.getLong();
+                timestamp[i] = buffer.getLong();
+                int advertisements = buffer.getInt();
+                if (advertisements < 0 || advertisements > MAX_ADVERTISEMENTS
+                        || entries + advertisements > capacity) {
+                    throw new IOException("Invalid number of advertisements " + advertisements + " in report " + i);
+                }
+                first[i] = entries;
+                for (int j = 0; j < advertisements; j++) {
+                    address[entries] = buffer.getLong();
+                    rssi[entries] = buffer.getShort();
+                    distance[entries] = buffer.getFloat();
+                    entries++;
+                }
+            }
+            first[count] = entries;
+            if (buffer.hasRemaining()) throw new IOException(buffer.remaining() + " bytes after the last report");
+            return new Batch(count, device, timestamp, first, address, rssi, distance);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated batch request", e);
+        }
+    }
+
+    /**
+     * Writes the header of a request
+     * @param buffer buffer to write to
+     * @param reports number of reports that follow
+     */
+    public static void writeRequestHeader(ByteBuffer buffer, int reports) {
+        buffer.putInt(REQUEST_MAGIC).putInt(VERSION).putInt(reports);
+    }
+
+    /**
+     * Writes the start of a report, its advertisements follow
+     * @param buffer buffer to write to
+     * @param device identifier of the device
+     * @param timestamp time of the ranging callback in nanoseconds, on the clock of the device
+     * @param advertisements number of advertisements that follow
+     */
+    public static void writeReport(ByteBuffer buffer, long device, long timestamp, int advertisements) {
+        buffer.putLong(device).putLong(timestamp).putInt(advertisements);
+    }
+
+    /**
+     * Writes one advertisement of a report
+     * @param buffer buffer to write to
+     * @param address packed MAC address of the beacon
+     * @param rssi received signal strength in dBm
+     * @param distance distance estimated by the scanner in metres
+     */
+    public static void writeAdvertisement(ByteBuffer buffer, long address, int rssi, double distance) {
+        buffer.putLong(address).putShort((short) rssi).putFloat((float) distance);
+    }
+
+    /**
+     * @param reports number of reports
+     * @param advertisements number of advertisements over all reports
+     * @return size of a request in bytes
+     */
+    public static int requestSize(int reports, int advertisements) {
+        return HEADER_BYTES + reports * REPORT_BYTES + advertisements * ADVERTISEMENT_BYTES;
+    }
+
+    /**
+     * Encodes a response
+     * @param fixes fixes of the reports of a request
+     * @return the response
+     */
+    public static byte[] writeResponse(Fixes fixes) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + fixes.count * FIX_BYTES);
+        buffer.putInt(RESPONSE_MAGIC).putInt(VERSION).putInt(fixes.count);
+        for (int i = 0; i < fixes.count; i++) {
+            buffer.putLong(fixes.device[i]).putLong(fixes.timestamp[i]).put(fixes.status[i])
+                    .putDouble(fixes.latitude[i]).putDouble(fixes.longitude[i]).putInt(fixes.floor[i])
+                    .putFloat(fixes.error[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a response
+     * @param buffer buffer positioned at the response
+     * @return the fixes
+     * @throws IOException if the response is malformed
+     */
+    public static Fixes readResponse(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != RESPONSE_MAGIC) throw new IOException("Not a batch response");
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported batch version " + version);
+            int count = buffer.getInt();
+            if (count < 0 || count > MAX_REPORTS || buffer.remaining() != count * FIX_BYTES) {
+                throw new IOException("Invalid number of fixes " + count);
+            }
+            Fixes fixes = new Fixes(count);
+            for (int i = 0; i < count; i++) {
+                fixes.device[i] = buffer.getLong();
+                fixes.timestamp[i] = buffer.getLong();
+                fixes.status[i] = buffer.get();
+                fixes.latitude[i] = buffer.getDouble();
+                fixes.longitude[i] = buffer.getDouble();
+                fixes.floor[i] = buffer.getInt();
+                fixes.error[i] = buffer.getFloat();
+            }
+            return fixes;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated batch response", e);
+        }
+    }
+}
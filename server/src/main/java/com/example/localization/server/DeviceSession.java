@@ -0,0 +1,89 @@
+package com.example.localization.server;
+
+import com.example.localization.ActiveBeacons;
+import com.example.localization.Localizer;
+import com.example.localization.Location;
+import com.example.localization.Metrics;
+
+/**
+ * This class holds the localization state of one device: its active set, its localizer with the warm start and
+ * floor tracking, and its last fix. Reports of a device are solved one at a time, in the order they arrive.
+ * The active set, its filter and the warm start keep their state per registry slot, so a session grows with the
+ * catalogue, not with the beacons the device heard, see {@link #estimateBytes(int)}.
+ */
+final class DeviceSession {
+    // Per slot: 54 bytes in the active set, 16 in the Kalman filter and 28 in the warm start once it has grown
+    static final long BYTES_PER_BEACON = 98;
+    // Solvers with their scratch, the floor estimator and the entry in the session cache
+    static final long BYTES_PER_SESSION = 4 << 10;
+
+    private static final Metrics.Counter UNLOCATED = Metrics.shared().counter("server.fixes.unlocated");
+
+    private final ActiveBeacons activeBeacons;
+    private final Localizer localizer;
+    private final Location estimate = new Location();
+    private final Location fix = new Location();
+    private boolean located;
+    private int floor;
+    private double error;
+
+    /**
+     * Create the session of a device that has not reported yet.
+     * @param activeBeacons active set of the device
+     * @param localizer localizer of the device
+     */
+    DeviceSession(ActiveBeacons activeBeacons, Localizer localizer) {
+        this.activeBeacons = activeBeacons;
+        this.localizer = localizer;
+    }
+
+    /**
+     * Estimates the heap taken by a session once its device heard the whole catalogue
+     * @param beacons number of beacons in the catalogue
+     * @return bytes per session
+     */
+    static long estimateBytes(int beacons) {
+        return BYTES_PER_SESSION + BYTES_PER_BEACON * beacons;
+    }
+
+    /**
+     * Feeds one report and writes the resulting fix
+     * @param batch batch holding the report
+     * @param report index of the report in the batch
+     * @param fixes fixes of the batch, the fix of the report is written at the same index
+     * @return whether the report was solved
+     */
+    synchronized boolean solve(BatchProtocol.Batch batch, int report, BatchProtocol.Fixes fixes) {
+        long timestamp = batch.timestamp[report];
+        this.activeBeacons.expire(timestamp);
+        for (int i = batch.first[report]; i < batch.first[report + 1]; i++) {
+            this.activeBeacons.update(timestamp, batch.address[i], batch.rssi[i], batch.distance[i]);
+        }
+
+        boolean solved = this.activeBeacons.hasChanges() && this.activeBeacons.size() > 0;
+        if (solved) {
+            double error = this.localizer.locate(this.activeBeacons.snapshot(timestamp), this.estimate);
+            if (Double.isInfinite(error) || Double.isNaN(error)) {
+                // No estimate, the device keeps its previous fix if it has one
+                UNLOCATED.increment();
+                solved = false;
+            } else {
+                this.fix.setLongitude(this.estimate.getLongitude());
+                this.fix.setLatitude(this.estimate.getLatitude());
+                this.error = error;
+                this.floor = this.localizer.getFloor();
+                this.located = true;
+            }
+        }
+
+        fixes.device[report] = batch.device[report];
+        fixes.timestamp[report] = timestamp;
+        if (!this.located) return false;
+        fixes.status[report] = solved ? BatchProtocol.SOLVED : BatchProtocol.UNCHANGED;
+        fixes.latitude[report] = this.fix.getLatitude();
+        fixes.longitude[report] = this.fix.getLongitude();
+        fixes.floor[report] = this.floor;
+        fixes.error[report] = (float) this.error;
+        return solved;
+    }
+}
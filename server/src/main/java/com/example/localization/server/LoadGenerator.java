@@ -0,0 +1,404 @@
+package com.example.localization.server;
+
+import com.example.localization.BeaconGrid;
+import com.example.localization.BeaconRegistry;
+import com.example.localization.CatalogueSnapshot;
+import com.example.localization.LocalFrame;
+import com.example.localization.PathLossModel;
+import com.example.localization.iBeacon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class drives a {@link LocalizationServer} with simulated devices and checks what comes back.
+ * Every device walks randomly on one floor of the catalogue and reports once per simulated second what it hears
+ * within range, with the path loss model and noise. Client threads own a share of the devices and post their
+ * reports in batches. Each response is checked against its request, and the fixes against the simulated truth.
+ * Without --url an embedded server is started on localhost, which makes this an end to end check of the server:
+ * it exits with 1 if a response is malformed or nothing was solved.
+ * Usage: LoadGenerator --catalogue beacons.lcat [--url http://host:port/localize] [--devices n] [--batch n]
+ *        [--clients n] [--seconds n]
+ */
+public class LoadGenerator {
+    private static final double HEARING_RANGE = 20;    // metres
+    private static final int WEAKEST_RSSI = -90;
+    private static final double RSSI_NOISE = 3;        // dB
+    private static final double STEP = 1.2;            // metres per report, walking speed
+    private static final long REPORT_INTERVAL = 1_000_000_000L;
+
+    private final BeaconRegistry registry;
+    private final BeaconGrid grid;
+    private final LocalFrame frame;
+    private final PathLossModel model = new PathLossModel();
+    private final URL url;
+    private final int batchSize;
+
+    /**
+     * Create a load generator.
+     * @param beacons beacons of the catalogue the server uses, projected into one frame
+     * @param url endpoint of the server
+     * @param batchSize reports per request
+     */
+    public LoadGenerator(List<iBeacon> beacons, URL url, int batchSize) {
+        this.registry = new BeaconRegistry(beacons);
+        this.grid = new BeaconGrid(this.registry);
+        this.frame = this.grid.getFrame();
+        this.url = url;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs the devices for a while
+     * @param devices number of simulated devices
+     * @param clients number of client threads, each posting batches of its own devices
+     * @param seconds wall clock time to run for
+     * @return results of all clients
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public Result run(int devices, int clients, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Client[] workers = new Client[clients];
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            List<Device> owned = new ArrayList<>();
+            Random random = new Random(c);
+            for (int d = c; d < devices; d += clients) owned.add(new Device(d + 1, random));
+            workers[c] = new Client(owned, random, deadline);
+            threads[c] = new Thread(workers[c], "load-client-" + c);
+            threads[c].start();
+        }
+
+        Result result = new Result();
+        for (int c = 0; c < clients; c++) {
+            threads[c].join();
+            result.add(workers[c].result);
+        }
+        return result;
+    }
+
+    /**
+     * A simulated device walking on one floor
+     */
+    private final class Device {
+        final long id;
+        final int floor;
+        final double minX, minY, maxX, maxY;
+        final int[] heard = new int[registry.size()];
+        double x, y, heading;
+        long timestamp;
+
+        Device(long id, Random random) {
+            this.id = id;
+            iBeacon start = registry.get(random.nextInt(registry.size()));
+            this.floor = start.getFloor();
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int slot : registry.slotsOnFloor(this.floor)) {
+                iBeacon beacon = registry.get(slot);
+                minX = Math.min(minX, beacon.getX());
+                minY = Math.min(minY, beacon.getY());
+                maxX = Math.max(maxX, beacon.getX());
+                maxY = Math.max(maxY, beacon.getY());
+            }
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.x = start.getX();
+            this.y = start.getY();
+            this.heading = random.nextDouble() * 2 * Math.PI;
+            this.timestamp = random.nextInt(1000) * 1_000_000L;
+        }
+
+        /**
+         * Walks one step, turning around at the bounds of the floor
+         */
+        void walk(Random random) {
+            this.heading += random.nextGaussian() * 0.3;
+            double nextX = this.x + STEP * Math.cos(this.heading);
+            double nextY = this.y + STEP * Math.sin(this.heading);
+            if (nextX < this.minX || nextX > this.maxX || nextY < this.minY || nextY > this.maxY) {
+                this.heading += Math.PI;
+                nextX = Math.max(this.minX, Math.min(this.maxX, nextX));
+                nextY = Math.max(this.minY, Math.min(this.maxY, nextY));
+            }
+            this.x = nextX;
+            this.y = nextY;
+            this.timestamp += REPORT_INTERVAL;
+        }
+    }
+
+    /**
+     * A client thread posting the reports of its devices
+     */
+    private final class Client implements Runnable {
+        private final List<Device> devices;
+        private final Random random;
+        private final long deadline;
+        private final int[] rssi;
+        private final double[] distance;
+        final Result result = new Result();
+
+        Client(List<Device> devices, Random random, long deadline) {
+            this.devices = devices;
+            this.random = random;
+            this.deadline = deadline;
+            this.rssi = new int[registry.size()];
+            this.distance = new double[registry.size()];
+        }
+
+        @Override
+        public void run() {
+            int next = 0;
+            Device[] sent = new Device[batchSize];
+            double[] truthX = new double[batchSize];
+            double[] truthY = new double[batchSize];
+            int[] heardCount = new int[batchSize];
+            while (System.nanoTime() < this.deadline && !this.devices.isEmpty()) {
+                // Every device reports before any reports again, so the timestamps of a device keep increasing
+                int reports = Math.min(batchSize, this.devices.size());
+                int advertisements = 0;
+                for (int r = 0; r < reports; r++) {
+                    Device device = this.devices.get(next);
+                    next = (next + 1) % this.devices.size();
+                    device.walk(this.random);
+                    sent[r] = device;
+                    truthX[r] = device.x;
+                    truthY[r] = device.y;
+                    heardCount[r] = grid.radius(device.floor, device.x, device.y, HEARING_RANGE, device.heard);
+                    advertisements += heardCount[r];
+                }
+
+                ByteBuffer request = ByteBuffer.allocate(BatchProtocol.requestSize(reports, advertisements));
+                BatchProtocol.writeRequestHeader(request, reports);
+                for (int r = 0; r < reports; r++) {
+                    Device device = sent[r];
+                    int heard = 0;
+                    for (int i = 0; i < heardCount[r]; i++) {
+                        iBeacon beacon = registry.get(device.heard[i]);
+                        double dx = beacon.getX() - device.x;
+                        double dy = beacon.getY() - device.y;
+                        int level = (int) Math.round(model.rssiFromSquared(dx * dx + dy * dy)
+                                + this.random.nextGaussian() * RSSI_NOISE);
+                        if (level <= WEAKEST_RSSI) continue;
+                        device.heard[heard] = device.heard[i];
+                        this.rssi[heard] = level;
+                        this.distance[heard] = model.distance(level);
+                        heard++;
+                    }
+                    BatchProtocol.writeReport(request, device.id, device.timestamp, heard);
+                    for (int i = 0; i < heard; i++) {
+                        BatchProtocol.writeAdvertisement(request, registry.get(device.heard[i]).getAddress(),
+                                this.rssi[i], this.distance[i]);
+                    }
+                }
+                request.flip();
+
+                long start = System.nanoTime();
+                BatchProtocol.Fixes fixes;
+                try {
+                    fixes = post(request);
+                } catch (IOException e) {
+                    this.result.fail(e.getMessage());
+                    continue;
+                }
+                this.result.latency(System.nanoTime() - start);
+                check(fixes, sent, reports, truthX, truthY);
+            }
+        }
+
+        private void check(BatchProtocol.Fixes fixes, Device[] sent, int reports, double[] truthX, double[] truthY) {
+            if (fixes.count != reports) {
+                this.result.fail("Expected " + reports + " fixes but got " + fixes.count);
+                return;
+            }
+            for (int r = 0; r < reports; r++) {
+                if (fixes.device[r] != sent[r].id || fixes.timestamp[r] != sent[r].timestamp) {
+                    this.result.fail("Fix " + r + " is for device " + fixes.device[r] + " at " + fixes.timestamp[r]
+                            + " instead of device " + sent[r].id + " at " + sent[r].timestamp);
+                    return;
+                }
+                if (fixes.status[r] == BatchProtocol.NO_FIX) {
+                    this.result.missed++;
+                    continue;
+                }
+                if (fixes.status[r] == BatchProtocol.SOLVED) this.result.solved++;
+                else this.result.unchanged++;
+                double dx = frame.toX(fixes.longitude[r]) - truthX[r];
+                double dy = frame.toY(fixes.latitude[r]) - truthY[r];
+                this.result.error += Math.sqrt(dx * dx + dy * dy);
+                if (fixes.floor[r] == sent[r].floor) this.result.floorHits++;
+            }
+        }
+    }
+
+    private BatchProtocol.Fixes post(ByteBuffer request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/octet-stream");
+        connection.setFixedLengthStreamingMode(request.remaining());
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(request.array(), 0, request.remaining());
+        }
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            InputStream error = connection.getErrorStream();
+            String message = error == null ? "" : new String(readAll(error), "UTF-8").trim();
+            throw new IOException("Server answered " + status + " " + message);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return BatchProtocol.readResponse(ByteBuffer.wrap(readAll(in)));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) > 0) bytes.write(chunk, 0, read);
+        in.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Counts of a run
+     */
+    public static final class Result {
+        long requests;
+        long solved;
+        long unchanged;
+        long missed;
+        long floorHits;
+        double error;
+        long failures;
+        String firstFailure;
+        long[] latencies = new long[1024];
+
+        void latency(long nanos) {
+            if (this.requests == this.latencies.length) {
+                this.latencies = Arrays.copyOf(this.latencies, this.latencies.length * 2);
+            }
+            this.latencies[(int) this.requests++] = nanos;
+        }
+
+        void fail(String message) {
+            if (this.firstFailure == null) this.firstFailure = message;
+            this.failures++;
+        }
+
+        void add(Result other) {
+            for (int i = 0; i < other.requests; i++) latency(other.latencies[i]);
+            this.solved += other.solved;
+            this.unchanged += other.unchanged;
+            this.missed += other.missed;
+            this.floorHits += other.floorHits;
+            this.error += other.error;
+            if (this.firstFailure == null) this.firstFailure = other.firstFailure;
+            this.failures += other.failures;
+        }
+
+        /**
+         * @return whether every response was well formed and at least one report was solved
+         */
+        public boolean isHealthy() {
+            return this.failures == 0 && this.solved > 0;
+        }
+
+        private double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) return 0;
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1)] / 1e6;
+        }
+
+        /**
+         * @param seconds wall clock time of the run
+         * @return summary of the run
+         */
+        public String summary(double seconds) {
+            long[] sorted = Arrays.copyOf(this.latencies, (int) this.requests);
+            Arrays.sort(sorted);
+            long located = this.solved + this.unchanged;
+            String summary = String.format(Locale.ROOT,
+                    "requests %d (%.0f/s), fixes %d (%.0f/s), solved %d, unchanged %d, no fix %d%n"
+                            + "latency p50 %.2f ms, p99 %.2f ms, mean error %.2f m, floor hits %.1f%%",
+                    this.requests, this.requests / seconds, located, located / seconds, this.solved,
+                    this.unchanged, this.missed, percentile(sorted, 50), percentile(sorted, 99),
+                    located == 0 ? 0 : this.error / located, located == 0 ? 0 : 100.0 * this.floorHits / located);
+            if (this.failures > 0) summary += "\nfailures " + this.failures + ", first: " + this.firstFailure;
+            return summary;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File catalogueFile = null;
+        String url = null;
+        int devices = 1000;
+        int batch = 100;
+        int clients = 4;
+        int seconds = 10;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--catalogue":
+                    catalogueFile = new File(args[++i]);
+                    break;
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--devices":
+                    devices = Integer.parseInt(args[++i]);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(args[++i]);
+                    break;
+                case "--clients":
+                    clients = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    catalogueFile = null;
+                    i = args.length;
+            }
+        }
+        if (catalogueFile == null) {
+            System.err.println("Usage: LoadGenerator --catalogue beacons.lcat [--url http://host:port/localize] "
+                    + "[--devices n] [--batch n] [--clients n] [--seconds n]");
+            System.exit(2);
+        }
+
+        List<iBeacon> beacons = CatalogueSnapshot.read(catalogueFile).beacons();
+        beacons = LocalFrame.around(beacons).project(beacons);
+        LocalizationServer server = null;
+        if (url == null) {
+            server = new LocalizationServer(beacons, Math.max(devices, LocalizationServer.DEFAULT_MAX_SESSIONS),
+                    LocalizationServer.DEFAULT_SESSION_MEMORY, new ForkJoinPool());
+            server.start(new InetSocketAddress("localhost", 0));
+            url = "http://localhost:" + server.getPort() + LocalizationServer.PATH;
+        }
+
+        LoadGenerator generator = new LoadGenerator(beacons, new URL(url), batch);
+        long start = System.nanoTime();
+        Result result = generator.run(devices, clients, seconds);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        if (server != null) server.close();
+
+        System.out.println(result.summary(elapsed));
+        if (!result.isHealthy()) System.exit(1);
+    }
+}
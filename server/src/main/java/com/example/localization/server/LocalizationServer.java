@@ -0,0 +1,319 @@
+package com.example.localization.server;
+
+import com.example.localization.BeaconGrid;
+import com.example.localization.BeaconRegistry;
+import com.example.localization.CatalogueSnapshot;
+import com.example.localization.Histogram;
+import com.example.localization.LocalFrame;
+import com.example.localization.LocalizationEngine;
+import com.example.localization.Metrics;
+import com.example.localization.MetricsReporter;
+import com.example.localization.TextMetricsSink;
+import com.example.localization.iBeacon;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class serves batched localization over HTTP for devices that leave solving to a backend.
+ * A POST to {@link #PATH} carries the scan reports of any number of devices in the {@link BatchProtocol} and is
+ * answered with one fix per report. Every device has a session with the same active set and localizer as the
+ * app, kept in an LRU bounded by number and by memory, see {@link SessionCache}. The reports of a request are grouped by device
+ * and the devices are solved in parallel on a work-stealing pool, the reports of one device in order.
+ * The catalogue, its registry and grid are shared by all sessions, a solve only writes the state of its own
+ * session and the scratch of its thread. Requests are read and written on a separate set of threads, so a slow
+ * client never holds a solver thread.
+ * Usage: LocalizationServer --catalogue beacons.lcat [--port n] [--sessions n] [--memory MiB] [--threads n]
+ * [--metrics seconds]
+ */
+public class LocalizationServer implements Closeable {
+    public static final String PATH = "/localize";
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_SESSIONS = 10000;
+    public static final long DEFAULT_SESSION_MEMORY = 512L << 20;
+
+    private static final int MAX_REQUEST_BYTES = 16 << 20;
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_BAD_METHOD = 405;
+    private static final int STATUS_TOO_LARGE = 413;
+    private static final int STATUS_SERVER_ERROR = 500;
+
+    private static final Histogram BATCH_TIME = Metrics.shared().histogram("server.batch.time", "ns");
+    private static final Histogram BATCH_REPORTS = Metrics.shared().histogram("server.batch.reports", "reports");
+    private static final Metrics.Counter SOLVED = Metrics.shared().counter("server.fixes.solved");
+    private static final Metrics.Counter REJECTED = Metrics.shared().counter("server.requests.rejected");
+    private static final Metrics.Counter FAILED = Metrics.shared().counter("server.requests.failed");
+
+    private final SessionCache sessions;
+    private final ForkJoinPool pool;
+    private final ExecutorService io;
+    private HttpServer server;
+
+    /**
+     * Create a server, it does not accept requests before {@link #start}.
+     * @param beacons beacons of the catalogue, projected into one frame, see {@link LocalFrame#project}
+     * @param maxSessions maximum number of device sessions kept
+     * @param sessionMemory maximum heap in bytes taken by the device sessions kept, each holds per beacon state
+     *                      of the catalogue
+     * @param pool pool solving the devices of a request in parallel
+     */
+    public LocalizationServer(Collection<iBeacon> beacons, int maxSessions, long sessionMemory, ForkJoinPool pool) {
+        BeaconRegistry registry = new BeaconRegistry(beacons);
+        BeaconGrid grid = new BeaconGrid(registry);
+        // Devices are already solved in parallel, so the starts of one solve run on its own thread
+        this.sessions = new SessionCache(maxSessions, sessionMemory, DeviceSession.estimateBytes(registry.size()),
+                () -> new DeviceSession(
+                LocalizationEngine.defaultActiveSet(registry),
+                LocalizationEngine.defaultLocalizer(registry, grid, null)));
+        this.pool = pool;
+        AtomicInteger threads = new AtomicInteger();
+        this.io = Executors.newFixedThreadPool(2 * pool.getParallelism(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "localization-io-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts accepting requests
+     * @param address address to listen on, port 0 for any free port
+     * @throws IOException if the address can not be bound
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(this.io);
+        this.server.start();
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public synchronized int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * @return maximum number of device sessions kept, the smaller of the session and memory bounds
+     */
+    public int getSessionCapacity() {
+        return this.sessions.capacity();
+    }
+
+    /**
+     * @return number of device sessions kept
+     */
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Stops accepting requests and waits up to a second for the requests being handled
+     */
+    @Override
+    public synchronized void close() {
+        if (this.server != null) this.server.stop(1);
+        this.io.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply(exchange, STATUS_BAD_METHOD, "Only POST is supported\n");
+                return;
+            }
+            byte[] body = read(exchange.getRequestBody());
+            if (body == null) {
+                REJECTED.increment();
+                reply(exchange, STATUS_TOO_LARGE, "Requests are limited to " + MAX_REQUEST_BYTES + " bytes\n");
+                return;
+            }
+            byte[] response;
+            try {
+                response = localize(ByteBuffer.wrap(body));
+            } catch (IOException e) {
+                REJECTED.increment();
+                reply(exchange, STATUS_BAD_REQUEST, e.getMessage() + "\n");
+                return;
+            } catch (RuntimeException e) {
+                FAILED.increment();
+                reply(exchange, STATUS_SERVER_ERROR, "Localization failed: " + e + "\n");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(STATUS_OK, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads a request body
+     * @param in body of the request
+     * @return the body, or null if it is larger than allowed
+     */
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            if (body.size() + read > MAX_REQUEST_BYTES) return null;
+            body.write(chunk, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private static void reply(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Solves the reports of one request
+     * @param request request in the batch protocol
+     * @return response in the batch protocol
+     * @throws IOException if the request is malformed
+     */
+    byte[] localize(ByteBuffer request) throws IOException {
+        long start = System.nanoTime();
+        BatchProtocol.Batch batch = BatchProtocol.readRequest(request);
+        BatchProtocol.Fixes fixes = new BatchProtocol.Fixes(batch.count);
+
+        // Group the reports by device, a stable sort keeps the reports of a device in order
+        Integer[] order = new Integer[batch.count];
+        for (int i = 0; i < batch.count; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(batch.device[a], batch.device[b]));
+        List<DeviceTask> tasks = new ArrayList<>();
+        int from = 0;
+        for (int i = 1; i <= batch.count; i++) {
+            if (i == batch.count || batch.device[order[i]] != batch.device[order[from]]) {
+                tasks.add(new DeviceTask(batch, order, from, i, fixes));
+                from = i;
+            }
+        }
+        this.pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        BATCH_TIME.recordSince(start);
+        BATCH_REPORTS.record(batch.count);
+        return BatchProtocol.writeResponse(fixes);
+    }
+
+    /**
+     * Solves the reports of one device in a request
+     */
+    private final class DeviceTask extends RecursiveAction {
+        private final BatchProtocol.Batch batch;
+        private final Integer[] order;
+        private final int from;
+        private final int to;
+        private final BatchProtocol.Fixes fixes;
+
+        DeviceTask(BatchProtocol.Batch batch, Integer[] order, int from, int to, BatchProtocol.Fixes fixes) {
+            this.batch = batch;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.fixes = fixes;
+        }
+
+        @Override
+        protected void compute() {
+            DeviceSession session = sessions.get(this.batch.device[this.order[this.from]]);
+            int solved = 0;
+            for (int i = this.from; i < this.to; i++) {
+                if (session.solve(this.batch, this.order[i], this.fixes)) solved++;
+            }
+            SOLVED.add(solved);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File catalogueFile = null;
+        int port = DEFAULT_PORT;
+        int maxSessions = DEFAULT_MAX_SESSIONS;
+        long sessionMemory = DEFAULT_SESSION_MEMORY;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int metricsPeriod = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--catalogue":
+                    catalogueFile = new File(args[++i]);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--sessions":
+                    maxSessions = Integer.parseInt(args[++i]);
+                    break;
+                case "--memory":
+                    sessionMemory = Long.parseLong(args[++i]) << 20;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--metrics":
+                    metricsPeriod = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    catalogueFile = null;
+                    i = args.length;
+            }
+        }
+        if (catalogueFile == null) {
+            System.err.println("Usage: LocalizationServer --catalogue beacons.lcat [--port n] [--sessions n] "
+                    + "[--memory MiB] [--threads n] [--metrics seconds]");
+            System.exit(2);
+        }
+
+        List<iBeacon> beacons = CatalogueSnapshot.read(catalogueFile).beacons();
+        beacons = LocalFrame.around(beacons).project(beacons);
+        LocalizationServer server = new LocalizationServer(beacons, maxSessions, sessionMemory,
+                new ForkJoinPool(threads));
+        server.start(new InetSocketAddress(port));
+        if (metricsPeriod > 0) {
+            new MetricsReporter(Metrics.shared(),
+                    new TextMetricsSink(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)),
+                    metricsPeriod, TimeUnit.SECONDS);
+        }
+        System.out.println("Serving " + beacons.size() + " beacons on port " + server.getPort() + PATH + " for up to "
+                + server.getSessionCapacity() + " devices");
+    }
+}
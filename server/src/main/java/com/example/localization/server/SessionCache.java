@@ -0,0 +1,80 @@
+package com.example.localization.server;
+
+import com.example.localization.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * This class keeps the sessions of the most recently seen devices, up to a number of sessions and an amount of
+ * memory. As sessions keep state per catalogue beacon, the memory bound usually decides how many devices fit,
+ * see {@link DeviceSession#estimateBytes(int)}. When a new device does not fit, the session of the device that was seen least recently is evicted, and that device starts from
+ * scratch if it reports again. A session still being solved when it is evicted finishes normally.
+ * Lookups are short and made once per device and request, so a single lock is enough.
+ */
+final class SessionCache {
+    private static final Metrics.Counter EVICTIONS = Metrics.shared().counter("server.sessions.evicted");
+    private static final Metrics.Counter CREATED = Metrics.shared().counter("server.sessions.created");
+
+    private final int capacity;
+    private final Supplier<DeviceSession> sessions;
+    private final LinkedHashMap<Long, DeviceSession> map;
+
+    /**
+     * Create an empty cache.
+     * @param maxSessions maximum number of sessions kept
+     * @param maxBytes maximum heap taken by the sessions kept
+     * @param sessionBytes heap taken by one session
+     * @param sessions creates the session of a new device
+     */
+    SessionCache(int maxSessions, long maxBytes, long sessionBytes, Supplier<DeviceSession> sessions) {
+        if (maxSessions < 1 || sessionBytes < 1) {
+            throw new IllegalArgumentException("Sessions and bytes per session must be positive");
+        }
+        if (maxBytes < sessionBytes) {
+            throw new IllegalArgumentException("Sessions of " + sessionBytes + " bytes do not fit in " + maxBytes
+                    + " bytes");
+        }
+        this.capacity = (int) Math.min(maxSessions, maxBytes / sessionBytes);
+        this.sessions = sessions;
+        // Access order, so the eldest entry is the least recently seen device
+        this.map = new LinkedHashMap<Long, DeviceSession>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, DeviceSession> eldest) {
+                if (size() <= SessionCache.this.capacity) return false;
+                EVICTIONS.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the session of a device, creating it if the device is new or was evicted
+     * @param device identifier of the device
+     * @return session of the device
+     */
+    synchronized DeviceSession get(long device) {
+        DeviceSession session = this.map.get(device);
+        if (session == null) {
+            session = this.sessions.get();
+            this.map.put(device, session);
+            CREATED.increment();
+        }
+        return session;
+    }
+
+    /**
+     * @return maximum number of sessions kept
+     */
+    int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return number of sessions kept
+     */
+    synchronized int size() {
+        return this.map.size();
+    }
+}
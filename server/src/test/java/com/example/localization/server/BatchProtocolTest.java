@@ -0,0 +1,143 @@
+package com.example.localization.server;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BatchProtocolTest {
+
+    /**
+     * Two reports of one device and one of another, the second without advertisements
+     */
+    private static ByteBuffer request() {
+        ByteBuffer buffer = ByteBuffer.allocate(BatchProtocol.requestSize(3, 3));
+        BatchProtocol.writeRequestHeader(buffer, 3);
+        BatchProtocol.writeReport(buffer, 7, 1000, 2);
+        BatchProtocol.writeAdvertisement(buffer, 0x0A0B0C0D0E0FL, -61, 2.5);
+        BatchProtocol.writeAdvertisement(buffer, 0x010203040506L, -87, 12.25);
+        BatchProtocol.writeReport(buffer, 9, 1500, 0);
+        BatchProtocol.writeReport(buffer, 7, 2000, 1);
+        BatchProtocol.writeAdvertisement(buffer, 0x0A0B0C0D0E0FL, -64, 3);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer response() {
+        BatchProtocol.Fixes fixes = new BatchProtocol.Fixes(2);
+        fixes.device[0] = 7;
+        fixes.timestamp[0] = 1000;
+        fixes.status[0] = BatchProtocol.SOLVED;
+        fixes.latitude[0] = 52.0001;
+        fixes.longitude[0] = 4.0002;
+        fixes.floor[0] = -1;
+        fixes.error[0] = 0.75f;
+        fixes.device[1] = 9;
+        fixes.timestamp[1] = 1500;
+        return ByteBuffer.wrap(BatchProtocol.writeResponse(fixes));
+    }
+
+    private static ByteBuffer truncated(ByteBuffer buffer) {
+        return ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.limit() - 1));
+    }
+
+    private static void assertRequestRejected(ByteBuffer buffer) {
+        try {
+            BatchProtocol.readRequest(buffer);
+            fail("Malformed request was accepted");
+        } catch (IOException expected) {
+            // Rejected
+        }
+    }
+
+    private static void assertResponseRejected(ByteBuffer buffer) {
+        try {
+            BatchProtocol.readResponse(buffer);
+            fail("Malformed response was accepted");
+        } catch (IOException expected) {
+            // Rejected
+        }
+    }
+
+    @Test
+    public void roundTripsARequest() throws IOException {
+        BatchProtocol.Batch batch = BatchProtocol.readRequest(request());
+
+        assertEquals(3, batch.count);
+        assertArrayEquals(new long[]{7, 9, 7}, batch.device);
+        assertArrayEquals(new long[]{1000, 1500, 2000}, batch.timestamp);
+        assertArrayEquals(new int[]{0, 2, 2, 3}, batch.first);
+        assertArrayEquals(new long[]{0x0A0B0C0D0E0FL, 0x010203040506L, 0x0A0B0C0D0E0FL},
+                Arrays.copyOf(batch.address, 3));
+        assertArrayEquals(new int[]{-61, -87, -64}, Arrays.copyOf(batch.rssi, 3));
+        assertArrayEquals(new double[]{2.5, 12.25, 3}, Arrays.copyOf(batch.distance, 3), 0);
+    }
+
+    @Test
+    public void roundTripsAResponse() throws IOException {
+        BatchProtocol.Fixes fixes = BatchProtocol.readResponse(response());
+
+        assertEquals(2, fixes.count);
+        assertArrayEquals(new long[]{7, 9}, fixes.device);
+        assertArrayEquals(new long[]{1000, 1500}, fixes.timestamp);
+        assertArrayEquals(new byte[]{BatchProtocol.SOLVED, BatchProtocol.NO_FIX}, fixes.status);
+        assertArrayEquals(new double[]{52.0001, 0}, fixes.latitude, 0);
+        assertArrayEquals(new double[]{4.0002, 0}, fixes.longitude, 0);
+        assertArrayEquals(new int[]{-1, 0}, fixes.floor);
+        assertArrayEquals(new float[]{0.75f, 0}, fixes.error, 0);
+    }
+
+    @Test
+    public void rejectsMalformedRequests() {
+        ByteBuffer magic = request();
+        magic.putInt(0, BatchProtocol.RESPONSE_MAGIC);
+        assertRequestRejected(magic);
+
+        ByteBuffer version = request();
+        version.putInt(4, BatchProtocol.VERSION + 1);
+        assertRequestRejected(version);
+
+        ByteBuffer negative = request();
+        negative.putInt(8, -1);
+        assertRequestRejected(negative);
+
+        ByteBuffer tooMany = request();
+        tooMany.putInt(8, BatchProtocol.MAX_REPORTS + 1);
+        assertRequestRejected(tooMany);
+
+        // The first report claims more advertisements than the request holds
+        ByteBuffer overrun = request();
+        overrun.putInt(BatchProtocol.HEADER_BYTES + 16, 40);
+        assertRequestRejected(overrun);
+
+        ByteBuffer trailing = ByteBuffer.allocate(request().limit() + 1);
+        trailing.put(request().array());
+        trailing.rewind();
+        assertRequestRejected(trailing);
+
+        assertRequestRejected(truncated(request()));
+        assertRequestRejected(ByteBuffer.allocate(0));
+    }
+
+    @Test
+    public void rejectsMalformedResponses() {
+        ByteBuffer magic = response();
+        magic.putInt(0, BatchProtocol.REQUEST_MAGIC);
+        assertResponseRejected(magic);
+
+        ByteBuffer version = response();
+        version.putInt(4, BatchProtocol.VERSION + 1);
+        assertResponseRejected(version);
+
+        ByteBuffer count = response();
+        count.putInt(8, 3);
+        assertResponseRejected(count);
+
+        assertResponseRejected(truncated(response()));
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.localization.server;
+
+import com.example.localization.LocalFrame;
+import com.example.localization.Location;
+import com.example.localization.Metrics;
+import com.example.localization.PathLossModel;
+import com.example.localization.iBeacon;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs a LocalizationServer on localhost with a grid of beacons on one floor 10 m apart.
+ */
+public class LocalizationServerTest {
+    private static final double SPACING = 10;
+    private static final int SIDE = 3;
+
+    private final PathLossModel model = new PathLossModel();
+    private List<iBeacon> beacons;
+    private LocalFrame frame;
+    private ForkJoinPool pool;
+    private LocalizationServer server;
+
+    @Before
+    public void setUp() {
+        List<iBeacon> catalogue = new ArrayList<>();
+        for (int i = 0; i < SIDE * SIDE; i++) {
+            Location location = new Location(4 + 0.0001 * (i % SIDE), 52 + 0.0001 * (i / SIDE));
+            catalogue.add(new iBeacon(String.format("00:00:00:00:00:%02X", i + 1), location, 0));
+        }
+        this.frame = LocalFrame.around(catalogue);
+        this.beacons = this.frame.project(catalogue);
+        this.pool = new ForkJoinPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        if (this.server != null) this.server.close();
+        this.pool.shutdown();
+    }
+
+    private void start(int maxSessions) throws IOException {
+        this.server = new LocalizationServer(this.beacons, maxSessions, LocalizationServer.DEFAULT_SESSION_MEMORY,
+                this.pool);
+        this.server.start(new InetSocketAddress("localhost", 0));
+    }
+
+    private URL url() throws IOException {
+        return new URL("http://localhost:" + this.server.getPort() + LocalizationServer.PATH);
+    }
+
+    /**
+     * Writes a report of a device standing at (x, y) that hears every beacon, or none if it hears nothing
+     */
+    private void writeReport(ByteBuffer buffer, long device, long timestamp, double x, double y, boolean hears) {
+        BatchProtocol.writeReport(buffer, device, timestamp, hears ? this.beacons.size() : 0);
+        if (!hears) return;
+        for (iBeacon beacon : this.beacons) {
+            double dx = beacon.getX() - x;
+            double dy = beacon.getY() - y;
+            int rssi = (int) Math.round(this.model.rssiFromSquared(dx * dx + dy * dy));
+            BatchProtocol.writeAdvertisement(buffer, beacon.getAddress(), rssi, this.model.distance(rssi));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) > 0) out.write(chunk, 0, read);
+        return out.toByteArray();
+    }
+
+    /**
+     * Sends a request
+     * @return connection with the response
+     */
+    private HttpURLConnection send(String method, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url().openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        return connection;
+    }
+
+    private BatchProtocol.Fixes post(ByteBuffer request) throws IOException {
+        HttpURLConnection connection = send("POST", request.array());
+        assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            return BatchProtocol.readResponse(ByteBuffer.wrap(readAll(in)));
+        }
+    }
+
+    @Test
+    public void answersEveryReportInOrder() throws IOException {
+        start(LocalizationServer.DEFAULT_MAX_SESSIONS);
+        int advertisements = this.beacons.size();
+        ByteBuffer request = ByteBuffer.allocate(BatchProtocol.requestSize(4, 3 * advertisements));
+        BatchProtocol.writeRequestHeader(request, 4);
+        writeReport(request, 1, 100, 2, 3, true);
+        writeReport(request, 2, 100, 0, 0, false);
+        writeReport(request, 1, 200, 2, 3, true);
+        writeReport(request, 2, 200, -4, -6, true);
+
+        BatchProtocol.Fixes fixes = post(request);
+
+        assertEquals(4, fixes.count);
+        assertArrayEquals(new long[]{1, 2, 1, 2}, fixes.device);
+        assertArrayEquals(new long[]{100, 100, 200, 200}, fixes.timestamp);
+        // The repeated report of device 1 changes nothing, device 2 heard nothing at first
+        assertArrayEquals(new byte[]{BatchProtocol.SOLVED, BatchProtocol.NO_FIX, BatchProtocol.UNCHANGED,
+                BatchProtocol.SOLVED}, fixes.status);
+        assertEquals(2, this.frame.toX(fixes.longitude[0]), 1);
+        assertEquals(3, this.frame.toY(fixes.latitude[0]), 1);
+        assertEquals(fixes.latitude[0], fixes.latitude[2], 0);
+        assertEquals(fixes.longitude[0], fixes.longitude[2], 0);
+        assertEquals(-4, this.frame.toX(fixes.longitude[3]), 1);
+        assertEquals(-6, this.frame.toY(fixes.latitude[3]), 1);
+        assertEquals(0, fixes.floor[3]);
+        assertEquals(2, this.server.getSessionCount());
+    }
+
+    @Test
+    public void rejectsOtherMethods() throws IOException {
+        start(LocalizationServer.DEFAULT_MAX_SESSIONS);
+
+        assertEquals(HttpURLConnection.HTTP_BAD_METHOD, send("GET", null).getResponseCode());
+    }
+
+    @Test
+    public void rejectsMalformedRequests() throws IOException {
+        start(LocalizationServer.DEFAULT_MAX_SESSIONS);
+        long rejected = Metrics.shared().counter("server.requests.rejected").get();
+
+        HttpURLConnection connection = send("POST", "not a batch".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, connection.getResponseCode());
+        assertEquals(rejected + 1, Metrics.shared().counter("server.requests.rejected").get());
+        assertEquals(0, this.server.getSessionCount());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlySeenDevices() throws IOException {
+        start(2);
+        Metrics.Counter evicted = Metrics.shared().counter("server.sessions.evicted");
+        long before = evicted.get();
+        int devices = 5;
+        ByteBuffer request = ByteBuffer.allocate(BatchProtocol.requestSize(devices, devices * this.beacons.size()));
+        BatchProtocol.writeRequestHeader(request, devices);
+        for (int device = 1; device <= devices; device++) {
+            writeReport(request, device, 100, 0, 0, true);
+        }
+        post(request);
+
+        assertEquals(2, this.server.getSessionCount());
+        assertEquals(devices - 2, evicted.get() - before);
+
+        // An evicted device starts from scratch, so the same report is solved again rather than unchanged
+        ByteBuffer again = ByteBuffer.allocate(BatchProtocol.requestSize(1, this.beacons.size()));
+        BatchProtocol.writeRequestHeader(again, 1);
+        writeReport(again, 1, 200, 0, 0, true);
+        assertEquals(BatchProtocol.SOLVED, post(again).status[0]);
+        assertEquals(2, this.server.getSessionCount());
+    }
+
+    @Test
+    public void boundsTheSessionsByMemory() {
+        long session = DeviceSession.estimateBytes(this.beacons.size());
+
+        this.server = new LocalizationServer(this.beacons, LocalizationServer.DEFAULT_MAX_SESSIONS, 3 * session + 1,
+                this.pool);
+
+        assertEquals(3, this.server.getSessionCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAMemoryBoundBelowOneSession() {
+        new LocalizationServer(this.beacons, LocalizationServer.DEFAULT_MAX_SESSIONS,
+                DeviceSession.estimateBytes(this.beacons.size()) - 1, this.pool);
+    }
+}
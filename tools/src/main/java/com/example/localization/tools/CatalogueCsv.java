@@ -0,0 +1,72 @@
+package com.example.localization.tools;
+
+import com.example.localization.Location;
+import com.example.localization.MacAddress;
+import com.example.localization.iBeacon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads a beacon catalogue from a CSV file with the columns of the API:
+ * mac_address, longitude, latitude, floor. A header line is skipped.
+ */
+public class CatalogueCsv {
+    private static final int MAC_INDEX = 0;
+    private static final int LONGITUDE_INDEX = 1;
+    private static final int LATITUDE_INDEX = 2;
+    private static final int FLOOR_INDEX = 3;
+
+    private final List<String> macs = new ArrayList<>();
+    private final List<double[]> coordinates = new ArrayList<>();
+    private final List<Integer> floors = new ArrayList<>();
+
+    /**
+     * Reads the catalogue.
+     * @param file CSV file
+     * @throws IOException if the file can not be read or a row is malformed
+     */
+    public CatalogueCsv(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                String[] columns = line.trim().split("\\s*,\\s*");
+                if (columns.length < 4 || MacAddress.parse(columns[MAC_INDEX]) == MacAddress.INVALID) {
+                    if (number == 1 || line.trim().isEmpty()) continue;    // header or blank line
+                    throw new IOException(file + ":" + number + ": not a beacon row: " + line);
+                }
+                try {
+                    this.coordinates.add(new double[]{
+                            Double.parseDouble(columns[LONGITUDE_INDEX]),
+                            Double.parseDouble(columns[LATITUDE_INDEX])});
+                    this.floors.add(Integer.parseInt(columns[FLOOR_INDEX]));
+                    this.macs.add(columns[MAC_INDEX]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates new beacon objects for the catalogue, so every caller gets beacons of its own
+     * @return list of all beacons
+     */
+    public List<iBeacon> beacons() {
+        List<iBeacon> beacons = new ArrayList<>(this.macs.size());
+        for (int i = 0; i < this.macs.size(); i++) {
+            double[] coordinate = this.coordinates.get(i);
+            beacons.add(new iBeacon(this.macs.get(i), new Location(coordinate[0], coordinate[1]), this.floors.get(i)));
+        }
+        return beacons;
+    }
+}
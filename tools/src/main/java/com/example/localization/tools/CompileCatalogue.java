@@ -0,0 +1,34 @@
+package com.example.localization.tools;
+
+import com.example.localization.CatalogueSnapshot;
+import com.example.localization.ExcelReader;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compiles the beacon list workbook into a {@link CatalogueSnapshot} the app memory-maps at startup.
+ * Usage: CompileCatalogue beacon_list.xlsx beacon_list.lcat
+ */
+public class CompileCatalogue {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompileCatalogue beacon_list.xlsx beacon_list.lcat");
+            System.exit(2);
+        }
+        File workbook = new File(args[0]);
+        File table = new File(args[1]);
+
+        ExcelReader reader = new ExcelReader(workbook);
+        // The workbook's modification time versions the bundled table
+        CatalogueSnapshot snapshot = CatalogueSnapshot.of("xlsx-" + workbook.lastModified(), reader.getAllBeacons());
+
+        File directory = table.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        snapshot.write(table);
+        System.out.println(workbook.getName() + ": " + snapshot.size() + " beacons, " + table.length() + " bytes");
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.localization.tools;
+
+import com.example.localization.MacAddress;
+import com.example.localization.RadioMap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a site survey into the {@link RadioMap} used for fingerprinting.
+ * The survey is a CSV file with one sample per row: longitude, latitude, floor, mac_address, rssi.
+ * Samples taken at the same coordinates and floor form one reference point, the signal strength of each
+ * beacon is averaged over its samples there. A header line is skipped.
+ * Usage: CompileRadioMap survey.csv radio_map.lrmp
+ */
+public class CompileRadioMap {
+    private static final int LONGITUDE_INDEX = 0;
+    private static final int LATITUDE_INDEX = 1;
+    private static final int FLOOR_INDEX = 2;
+    private static final int MAC_INDEX = 3;
+    private static final int RSSI_INDEX = 4;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompileRadioMap survey.csv radio_map.lrmp");
+            System.exit(2);
+        }
+        File survey = new File(args[0]);
+        File map = new File(args[1]);
+
+        // Sum and number of samples per reference point and beacon column
+        Map<String, Integer> points = new LinkedHashMap<>();
+        Map<Long, Integer> columns = new HashMap<>();
+        List<String[]> coordinates = new ArrayList<>();
+        List<double[]> sums = new ArrayList<>();
+        List<int[]> samples = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(survey), StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                String[] fields = line.trim().split("\\s*,\\s*");
+                long address = fields.length >= 5 ? MacAddress.parse(fields[MAC_INDEX]) : MacAddress.INVALID;
+                if (address == MacAddress.INVALID) {
+                    if (number == 1 || line.trim().isEmpty()) continue;    // header or blank line
+                    throw new IOException(survey + ":" + number + ": not a sample row: " + line);
+                }
+                String key = fields[LONGITUDE_INDEX] + "," + fields[LATITUDE_INDEX] + "," + fields[FLOOR_INDEX];
+                Integer point = points.get(key);
+                if (point == null) {
+                    point = points.size();
+                    points.put(key, point);
+                    coordinates.add(fields);
+                }
+                Integer column = columns.get(address);
+                if (column == null) {
+                    column = columns.size();
+                    columns.put(address, column);
+                }
+                while (sums.size() <= point) {
+                    sums.add(new double[0]);
+                    samples.add(new int[0]);
+                }
+                if (sums.get(point).length <= column) {
+                    sums.set(point, Arrays.copyOf(sums.get(point), columns.size() + 16));
+                    samples.set(point, Arrays.copyOf(samples.get(point), columns.size() + 16));
+                }
+                try {
+                    sums.get(point)[column] += Double.parseDouble(fields[RSSI_INDEX]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(survey + ":" + number + ": " + e.getMessage(), e);
+                }
+                samples.get(point)[column]++;
+            }
+        }
+
+        int count = points.size();
+        long[] addresses = new long[columns.size()];
+        for (Map.Entry<Long, Integer> entry : columns.entrySet()) {
+            addresses[entry.getValue()] = entry.getKey();
+        }
+        double[] longitudes = new double[count];
+        double[] latitudes = new double[count];
+        int[] floors = new int[count];
+        // Beacons heard per reference point, one sample each with the mean signal strength
+        int[] first = new int[count + 1];
+        int entries = 0;
+        for (int[] n : samples) {
+            for (int c : n) if (c > 0) entries++;
+        }
+        int[] sampleColumns = new int[entries];
+        double[] rssi = new double[entries];
+        int entry = 0;
+        try {
+            for (int p = 0; p < count; p++) {
+                String[] fields = coordinates.get(p);
+                longitudes[p] = Double.parseDouble(fields[LONGITUDE_INDEX]);
+                latitudes[p] = Double.parseDouble(fields[LATITUDE_INDEX]);
+                floors[p] = Integer.parseInt(fields[FLOOR_INDEX]);
+                first[p] = entry;
+                int[] n = samples.get(p);
+                for (int c = 0; c < n.length; c++) {
+                    if (n[c] == 0) continue;
+                    sampleColumns[entry] = c;
+                    rssi[entry] = sums.get(p)[c] / n[c];
+                    entry++;
+                }
+            }
+            first[count] = entry;
+        } catch (NumberFormatException e) {
+            throw new IOException(survey + ": " + e.getMessage(), e);
+        }
+
+        File directory = map.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        RadioMap.write(map, addresses, longitudes, latitudes, floors, first, sampleColumns, rssi, count);
+        RadioMap written = RadioMap.read(map);
+        System.out.println(survey.getName() + ": " + written.size() + " reference points, "
+                + written.getBeaconCount() + " beacons, " + written.getPartitionCount() + " partitions, "
+                + map.length() + " bytes");
+    }
+}
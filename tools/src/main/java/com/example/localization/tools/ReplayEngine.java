@@ -0,0 +1,188 @@
+package com.example.localization.tools;
+
+import com.example.localization.ActiveBeacons;
+import com.example.localization.BeaconRegistry;
+import com.example.localization.LocalFrame;
+import com.example.localization.Localizer;
+import com.example.localization.Location;
+import com.example.localization.LocationFinder;
+import com.example.localization.ScanSnapshot;
+import com.example.localization.ScanTrace;
+import com.example.localization.ScanTraceReader;
+import com.example.localization.iBeacon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * This class replays recorded scan traces through the localization core as fast as possible.
+ * Advertisements with the same timestamp are fed to an {@link ActiveBeacons} set as one ranging callback,
+ * and every callback that changes the set is solved by a {@link Localizer}, like the app does.
+ * The catalogue is projected once and shared by all traces, every trace gets its own active set and localizer,
+ * so traces can be replayed in parallel.
+ */
+public class ReplayEngine {
+    private final BeaconRegistry registry;
+    private final Function<BeaconRegistry, ActiveBeacons> activeSets;
+    private final Function<BeaconRegistry, Localizer> localizers;
+
+    /**
+     * Create a replay engine.
+     * @param catalogue beacons of the catalogue
+     * @param activeSets creates the active set for a trace
+     * @param localizers creates the localizer for a trace
+     */
+    public ReplayEngine(Collection<iBeacon> catalogue, Function<BeaconRegistry, ActiveBeacons> activeSets,
+                        Function<BeaconRegistry, Localizer> localizers) {
+        this.registry = new BeaconRegistry(LocalFrame.around(catalogue).project(catalogue));
+        this.activeSets = activeSets;
+        this.localizers = localizers;
+    }
+
+    /**
+     * Replays one trace on the calling thread.
+     * @param trace trace file
+     * @return report of the replay
+     * @throws IOException if the trace can not be read
+     */
+    public ReplayReport replay(File trace) throws IOException {
+        Replay replay = new Replay(this.activeSets.apply(this.registry), this.localizers.apply(this.registry));
+
+        long start = System.nanoTime();
+        try (ScanTraceReader reader = new ScanTraceReader(trace)) {
+            while (reader.next()) {
+                replay.accept(reader);
+            }
+            replay.finish();
+        }
+        return new ReplayReport(trace.getName(), System.nanoTime() - start, replay.latencies.toArray(),
+                replay.errors.toArray(), replay.floorHits);
+    }
+
+    /**
+     * Replays traces in parallel, one task per trace.
+     * @param traces trace files
+     * @param pool pool to replay on
+     * @return report per trace followed by the combined report
+     * @throws IOException if a trace can not be read
+     */
+    public List<ReplayReport> replayAll(List<File> traces, ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        List<ForkJoinTask<ReplayReport>> tasks = new ArrayList<>();
+        for (File trace : traces) {
+            tasks.add(pool.submit(() -> replay(trace)));
+        }
+
+        List<ReplayReport> reports = new ArrayList<>();
+        for (ForkJoinTask<ReplayReport> task : tasks) {
+            try {
+                reports.add(task.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Replay interrupted", e);
+            }
+        }
+        reports.add(ReplayReport.combine("total", new ArrayList<>(reports), System.nanoTime() - start));
+        return reports;
+    }
+
+    /**
+     * State of the replay of one trace.
+     */
+    private static final class Replay {
+        private final ActiveBeacons activeBeacons;
+        private final Localizer localizer;
+        private final LocationFinder haversine = new LocationFinder();
+        private final Location fix = new Location();
+
+        private long cycle = Long.MIN_VALUE;
+        private Location truth;
+        private int truthFloor;
+
+        final LongList latencies = new LongList();
+        final DoubleList errors = new DoubleList();
+        int floorHits;
+
+        Replay(ActiveBeacons activeBeacons, Localizer localizer) {
+            this.activeBeacons = activeBeacons;
+            this.localizer = localizer;
+        }
+
+        /**
+         * Feeds the current record of the reader
+         * @param reader reader positioned at a record
+         */
+        void accept(ScanTraceReader reader) {
+            if (reader.getType() == ScanTrace.TRUTH) {
+                // The truth applies from here on, the callback before it is solved with the old truth
+                finish();
+                this.truth = new Location(reader.getLongitude(), reader.getLatitude());
+                this.truthFloor = reader.getFloor();
+                return;
+            }
+            if (reader.getTimestamp() != this.cycle) {
+                finish();
+                this.cycle = reader.getTimestamp();
+                this.activeBeacons.expire(this.cycle);
+            }
+            this.activeBeacons.update(this.cycle, reader.getAddress(), reader.getRssi(), reader.getDistance());
+        }
+
+        /**
+         * Solves the pending ranging callback if it changed the active set
+         */
+        void finish() {
+            if (!this.activeBeacons.hasChanges() || this.activeBeacons.size() == 0) return;
+
+            ScanSnapshot snapshot = this.activeBeacons.snapshot(this.cycle);
+            long start = System.nanoTime();
+            double error = this.localizer.locate(snapshot, this.fix);
+            this.latencies.add(System.nanoTime() - start);
+
+            // A callback without an estimate leaves the fix blank or stale, the app does not show it either
+            if (this.truth != null && !Double.isInfinite(error) && !Double.isNaN(error)) {
+                this.errors.add(this.haversine.calculateDistance(this.fix, this.truth));
+                if (this.localizer.getFloor() == this.truthFloor) this.floorHits++;
+            }
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class DoubleList {
+        private double[] values = new double[1024];
+        private int size;
+
+        void add(double value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
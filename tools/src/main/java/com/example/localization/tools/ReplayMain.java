@@ -0,0 +1,117 @@
+package com.example.localization.tools;
+
+import com.example.localization.ActiveBeacons;
+import com.example.localization.FingerprintLocalizer;
+import com.example.localization.FloorEstimator;
+import com.example.localization.KalmanRssiFilter;
+import com.example.localization.LevenbergMarquardtSolver;
+import com.example.localization.LocalizationEngine;
+import com.example.localization.LocationFinder;
+import com.example.localization.Metrics;
+import com.example.localization.MultiStartSolver;
+import com.example.localization.ParticleFilterTracker;
+import com.example.localization.PathLossModel;
+import com.example.localization.PositionSolver;
+import com.example.localization.RadioMap;
+import com.example.localization.RobustSolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line entry point of the replay engine.
+ * Usage: ReplayMain --catalogue beacons.csv [--tracker | --radio-map map.lrmp] [--multi-start] [--robust]
+ * [--ttl seconds] [--max-beacons k] [--threads n] trace...
+ * A time to live or maximum of 0 disables aging or the limit.
+ */
+public class ReplayMain {
+    // Same active set configuration as MapsActivity
+    private static final int THRESHOLD = -90;
+    private static final int MINIMUM_BEACONS = 3;
+    private static final double MINIMUM_CHANGE = 0.25;
+    // Traces are already replayed in parallel, so the starts run on the replaying thread
+    private static final int STARTS = 4;
+    private static final long START_BUDGET = 5000000;    // nanoseconds
+
+    public static void main(String[] args) throws IOException {
+        File catalogueFile = null;
+        File radioMapFile = null;
+        boolean tracker = false;
+        boolean multiStart = false;
+        boolean robust = false;
+        long timeToLive = LocalizationEngine.DEFAULT_TIME_TO_LIVE;
+        int maxBeacons = LocalizationEngine.DEFAULT_MAX_BEACONS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> traces = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--catalogue":
+                    catalogueFile = new File(args[++i]);
+                    break;
+                case "--tracker":
+                    tracker = true;
+                    break;
+                case "--radio-map":
+                    radioMapFile = new File(args[++i]);
+                    break;
+                case "--multi-start":
+                    multiStart = true;
+                    break;
+                case "--robust":
+                    robust = true;
+                    break;
+                case "--ttl":
+                    timeToLive = (long) (Double.parseDouble(args[++i]) * 1e9);
+                    break;
+                case "--max-beacons":
+                    maxBeacons = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    traces.add(new File(args[i]));
+            }
+        }
+        if (catalogueFile == null || traces.isEmpty()) {
+            System.err.println("Usage: ReplayMain --catalogue beacons.csv [--tracker | --radio-map map.lrmp] "
+                    + "[--multi-start] [--robust] [--ttl seconds] [--max-beacons k] [--threads n] trace...");
+            System.exit(2);
+        }
+
+        CatalogueCsv catalogue = new CatalogueCsv(catalogueFile);
+        boolean useTracker = tracker;
+        long ttl = timeToLive;
+        int limit = maxBeacons;
+        // The map is shared by all traces, every trace gets a localizer of its own
+        RadioMap radioMap = radioMapFile != null ? RadioMap.read(radioMapFile) : null;
+        PositionSolver local = multiStart
+                ? new MultiStartSolver(new LevenbergMarquardtSolver(), STARTS, START_BUDGET, null)
+                : new LevenbergMarquardtSolver();
+        PositionSolver solver = robust
+                ? new RobustSolver(local, RobustSolver.Loss.TUKEY, RobustSolver.DEFAULT_THRESHOLD,
+                        RobustSolver.DEFAULT_MAX_SUBSETS)
+                : local;
+        ReplayEngine engine = new ReplayEngine(catalogue.beacons(),
+                registry -> new ActiveBeacons(registry, THRESHOLD, MINIMUM_BEACONS,
+                        new KalmanRssiFilter(registry.size()), new PathLossModel(), MINIMUM_CHANGE, ttl, limit),
+                registry -> useTracker ? new ParticleFilterTracker(registry)
+                        : radioMap != null ? new FingerprintLocalizer(radioMap)
+                        : new LocationFinder(solver, MINIMUM_CHANGE, null, 0, new FloorEstimator(registry)));
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (ReplayReport report : engine.replayAll(traces, pool)) {
+                System.out.println(report);
+            }
+            // Solver and pipeline metrics over all traces, to size devices
+            System.out.print(Metrics.shared().snapshot());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.localization.tools;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class holds the results of replaying one or more traces: throughput, solve latency
+ * and, where the trace has ground truth annotations, position and floor error.
+ */
+public class ReplayReport {
+    private final String name;
+    private final long elapsed;          // nanoseconds
+    private final long[] latencies;      // nanoseconds per fix
+    private final double[] errors;       // metres per fix with ground truth
+    private final int floorHits;
+
+    /**
+     * Create a report.
+     * @param name name of the trace or group of traces
+     * @param elapsed wall clock time of the replay in nanoseconds
+     * @param latencies solve time of every fix in nanoseconds
+     * @param errors position error of every fix with ground truth in metres
+     * @param floorHits number of fixes with ground truth on the right floor
+     */
+    ReplayReport(String name, long elapsed, long[] latencies, double[] errors, int floorHits) {
+        this.name = name;
+        this.elapsed = elapsed;
+        this.latencies = latencies.clone();
+        this.errors = errors.clone();
+        this.floorHits = floorHits;
+        Arrays.sort(this.latencies);
+        Arrays.sort(this.errors);
+    }
+
+    /**
+     * Combines the reports of traces that were replayed together
+     * @param name name of the group
+     * @param reports reports of the traces
+     * @param elapsed wall clock time of the whole replay in nanoseconds
+     * @return combined report
+     */
+    static ReplayReport combine(String name, List<ReplayReport> reports, long elapsed) {
+        int fixes = 0;
+        int truths = 0;
+        int floorHits = 0;
+        for (ReplayReport report : reports) {
+            fixes += report.latencies.length;
+            truths += report.errors.length;
+            floorHits += report.floorHits;
+        }
+        long[] latencies = new long[fixes];
+        double[] errors = new double[truths];
+        fixes = 0;
+        truths = 0;
+        for (ReplayReport report : reports) {
+            System.arraycopy(report.latencies, 0, latencies, fixes, report.latencies.length);
+            System.arraycopy(report.errors, 0, errors, truths, report.errors.length);
+            fixes += report.latencies.length;
+            truths += report.errors.length;
+        }
+        return new ReplayReport(name, elapsed, latencies, errors, floorHits);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of fixes
+     */
+    public int getFixes() {
+        return latencies.length;
+    }
+
+    /**
+     * @return fixes per second of wall clock time
+     */
+    public double getThroughput() {
+        return elapsed == 0 ? 0 : latencies.length * 1e9 / elapsed;
+    }
+
+    /**
+     * @param percentile percentile in [0, 100]
+     * @return solve latency at the percentile in nanoseconds
+     */
+    public long getLatency(double percentile) {
+        return latencies.length == 0 ? 0 : latencies[index(percentile, latencies.length)];
+    }
+
+    /**
+     * @param percentile percentile in [0, 100]
+     * @return position error at the percentile in metres, NaN without ground truth
+     */
+    public double getError(double percentile) {
+        return errors.length == 0 ? Double.NaN : errors[index(percentile, errors.length)];
+    }
+
+    /**
+     * @return mean position error in metres, NaN without ground truth
+     */
+    public double getMeanError() {
+        double sum = 0;
+        for (double error : errors) sum += error;
+        return errors.length == 0 ? Double.NaN : sum / errors.length;
+    }
+
+    /**
+     * @return share of fixes with ground truth on the right floor, NaN without ground truth
+     */
+    public double getFloorAccuracy() {
+        return errors.length == 0 ? Double.NaN : (double) floorHits / errors.length;
+    }
+
+    private static int index(double percentile, int length) {
+        return (int) Math.min(length - 1, Math.max(0, Math.ceil(percentile / 100 * length) - 1));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%s: %d fixes, %.0f fixes/s, latency p50 %.1f us p90 %.1f us p99 %.1f us"
+                        + ", error mean %.2f m p50 %.2f m p90 %.2f m, floor %.1f%%",
+                name, getFixes(), getThroughput(),
+                getLatency(50) / 1e3, getLatency(90) / 1e3, getLatency(99) / 1e3,
+                getMeanError(), getError(50), getError(90), getFloorAccuracy() * 100);
+    }
+}
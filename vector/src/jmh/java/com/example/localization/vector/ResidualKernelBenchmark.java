@@ -0,0 +1,88 @@
+package com.example.localization.vector;
+
+import com.example.localization.PathLossModel;
+import com.example.localization.ResidualKernel;
+import com.example.localization.ResidualKernels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks evaluating 1000 candidate points against the active beacons, scalar versus Vector API kernel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResidualKernelBenchmark {
+    private static final int POINTS = 1000;
+    private static final double AREA = 60;
+
+    @Param({"8", "32"})
+    int beacons;
+
+    @Param({"scalar", "vector"})
+    String kernel;
+
+    private ResidualKernel implementation;
+    private final PathLossModel model = new PathLossModel();
+
+    private double[] bx, by, bz, distance, rssi;
+    private final double[] px = new double[POINTS];
+    private final double[] py = new double[POINTS];
+    private final double[] pz = new double[POINTS];
+    private final double[] cost = new double[POINTS];
+    private final double[] gradientX = new double[POINTS];
+    private final double[] gradientY = new double[POINTS];
+
+    @Setup
+    public void setup() {
+        this.implementation = "vector".equals(this.kernel) ? new VectorResidualKernel() : ResidualKernels.scalar();
+        Random random = new Random(42);
+        this.bx = new double[this.beacons];
+        this.by = new double[this.beacons];
+        this.bz = new double[this.beacons];
+        this.distance = new double[this.beacons];
+        this.rssi = new double[this.beacons];
+        for (int i = 0; i < this.beacons; i++) {
+            this.bx[i] = random.nextDouble() * AREA;
+            this.by[i] = random.nextDouble() * AREA;
+            this.bz[i] = random.nextInt(3) * 3;
+            this.distance[i] = 1 + random.nextDouble() * 20;
+            this.rssi[i] = this.model.rssi(this.distance[i]);
+        }
+        for (int j = 0; j < POINTS; j++) {
+            this.px[j] = random.nextDouble() * AREA;
+            this.py[j] = random.nextDouble() * AREA;
+            this.pz[j] = random.nextInt(3) * 3;
+        }
+    }
+
+    @Benchmark
+    public double[] rangeCost() {
+        this.implementation.rangeCost(this.bx, this.by, this.distance, this.beacons, this.px, this.py, 0, POINTS, this.cost);
+        return this.cost;
+    }
+
+    @Benchmark
+    public double[] rangeCostAndGradient() {
+        this.implementation.rangeCostAndGradient(this.bx, this.by, this.distance, this.beacons, this.px, this.py,
+                0, POINTS, this.cost, this.gradientX, this.gradientY);
+        return this.cost;
+    }
+
+    @Benchmark
+    public double[] rssiCost() {
+        this.implementation.rssiCost(this.bx, this.by, this.bz, this.rssi, this.beacons, this.px, this.py, this.pz,
+                0, POINTS, this.model, 0.01, this.cost);
+        return this.cost;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.localization.vector;
+
+import com.example.localization.PathLossModel;
+import com.example.localization.ResidualKernel;
+import com.example.localization.ResidualKernels;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class is the {@link ResidualKernel} on the Java Vector API. Each pass evaluates one vector of points
+ * against every beacon, with the beacon broadcast to all lanes. Points left over after the last full vector
+ * are handed to the scalar kernel. Found by {@link ResidualKernels#get()} when this module is on the class path
+ * and the JVM runs with --add-modules jdk.incubator.vector.
+ */
+public final class VectorResidualKernel implements ResidualKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double LOG10_TO_LN = 1 / Math.log(10);
+    private static final double MIN_RANGE = 1e-9;
+
+    private final ResidualKernel tail = ResidualKernels.scalar();
+
+    @Override
+    public void rangeCost(double[] bx, double[] by, double[] distance, int count,
+                          double[] px, double[] py, int from, int to, double[] cost) {
+        int j = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; j < bound; j += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, px, j);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, py, j);
+            DoubleVector c = DoubleVector.zero(SPECIES);
+            for (int i = 0; i < count; i++) {
+                DoubleVector dx = x.sub(bx[i]);
+                DoubleVector dy = y.sub(by[i]);
+                DoubleVector r = dx.fma(dx, dy.mul(dy)).sqrt().sub(distance[i]);
+                c = r.fma(r, c);
+            }
+            c.intoArray(cost, j);
+        }
+        if (j < to) this.tail.rangeCost(bx, by, distance, count, px, py, j, to, cost);
+    }
+
+    @Override
+    public void rangeCostAndGradient(double[] bx, double[] by, double[] distance, int count,
+                                     double[] px, double[] py, int from, int to,
+                                     double[] cost, double[] gradientX, double[] gradientY) {
+        int j = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; j < bound; j += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, px, j);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, py, j);
+            DoubleVector c = DoubleVector.zero(SPECIES);
+            DoubleVector gx = DoubleVector.zero(SPECIES);
+            DoubleVector gy = DoubleVector.zero(SPECIES);
+            for (int i = 0; i < count; i++) {
+                DoubleVector dx = x.sub(bx[i]);
+                DoubleVector dy = y.sub(by[i]);
+                DoubleVector range = dx.fma(dx, dy.mul(dy)).sqrt().max(MIN_RANGE);
+                DoubleVector r = range.sub(distance[i]);
+                c = r.fma(r, c);
+                DoubleVector s = r.add(r).div(range);
+                gx = s.fma(dx, gx);
+                gy = s.fma(dy, gy);
+            }
+            c.intoArray(cost, j);
+            gx.intoArray(gradientX, j);
+            gy.intoArray(gradientY, j);
+        }
+        if (j < to) this.tail.rangeCostAndGradient(bx, by, distance, count, px, py, j, to, cost, gradientX, gradientY);
+    }
+
+    @Override
+    public void rssiCost(double[] bx, double[] by, double[] bz, double[] rssi, int count,
+                         double[] px, double[] py, double[] pz, int from, int to,
+                         PathLossModel model, double minSquaredRange, double[] cost) {
+        double txPower = model.getTxPower();
+        double slope = 5 * model.getExponent() * LOG10_TO_LN;
+        int j = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; j < bound; j += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, px, j);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, py, j);
+            DoubleVector z = DoubleVector.fromArray(SPECIES, pz, j);
+            DoubleVector c = DoubleVector.zero(SPECIES);
+            for (int i = 0; i < count; i++) {
+                DoubleVector dx = x.sub(bx[i]);
+                DoubleVector dy = y.sub(by[i]);
+                DoubleVector dz = z.sub(bz[i]);
+                DoubleVector squaredRange = dx.fma(dx, dy.fma(dy, dz.mul(dz))).max(minSquaredRange);
+                DoubleVector r = squaredRange.lanewise(VectorOperators.LOG).fma(slope, rssi[i] - txPower);
+                c = r.fma(r, c);
+            }
+            c.intoArray(cost, j);
+        }
+        if (j < to) this.tail.rssiCost(bx, by, bz, rssi, count, px, py, pz, j, to, model, minSquaredRange, cost);
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.localization.vector;
+
+import com.example.localization.PathLossModel;
+import com.example.localization.ResidualKernel;
+import com.example.localization.ResidualKernels;
+
+import jdk.incubator.vector.DoubleVector;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the vector kernel agrees with the scalar one on random input, including the points after the
+ * last full vector that go to the scalar tail.
+ */
+public class VectorResidualKernelTest {
+    private static final double TOLERANCE = 1e-9;    // relative, fused multiply-adds round differently
+    private static final int LANES = DoubleVector.SPECIES_PREFERRED.length();
+    private static final int[] BEACONS = {1, 3, 8, 12, 40};
+    private static final int FROM = 3;
+
+    private final ResidualKernel scalar = ResidualKernels.scalar();
+    private final ResidualKernel vector = new VectorResidualKernel();
+    private final Random random = new Random(2024);
+
+    private double[] random(int length, double scale) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) values[i] = (this.random.nextDouble() - 0.5) * scale;
+        return values;
+    }
+
+    /**
+     * @return numbers of points covering full vectors, only a tail and every tail length
+     */
+    private static int[] pointCounts() {
+        int[] counts = new int[2 * LANES + 2];
+        for (int i = 0; i < counts.length; i++) counts[i] = i;
+        counts[counts.length - 1] = 7 * LANES + 5;
+        return counts;
+    }
+
+    private static double[] unset(int length) {
+        double[] values = new double[length];
+        Arrays.fill(values, Double.NaN);
+        return values;
+    }
+
+    private static void assertAgree(String what, double[] expected, double[] actual, int from, int to) {
+        for (int j = 0; j < expected.length; j++) {
+            if (j < from || j >= to) {
+                assertTrue(what + " written outside the range at " + j, Double.isNaN(actual[j]));
+                continue;
+            }
+            double tolerance = TOLERANCE * Math.max(1, Math.abs(expected[j]));
+            assertEquals(what + " of point " + j, expected[j], actual[j], tolerance);
+        }
+    }
+
+    @Test
+    public void rangeCostMatchesTheScalarKernel() {
+        for (int beacons : BEACONS) {
+            double[] bx = random(beacons, 60);
+            double[] by = random(beacons, 60);
+            double[] distance = random(beacons, 40);
+            for (int i = 0; i < beacons; i++) distance[i] = Math.abs(distance[i]);
+            for (int points : pointCounts()) {
+                int to = FROM + points;
+                double[] px = random(to + 2, 80);
+                double[] py = random(to + 2, 80);
+                double[] expected = unset(px.length);
+                double[] actual = unset(px.length);
+
+                this.scalar.rangeCost(bx, by, distance, beacons, px, py, FROM, to, expected);
+                this.vector.rangeCost(bx, by, distance, beacons, px, py, FROM, to, actual);
+
+                assertAgree("Cost", expected, actual, FROM, to);
+            }
+        }
+    }
+
+    @Test
+    public void rangeCostAndGradientMatchesTheScalarKernel() {
+        for (int beacons : BEACONS) {
+            double[] bx = random(beacons, 60);
+            double[] by = random(beacons, 60);
+            double[] distance = random(beacons, 40);
+            for (int i = 0; i < beacons; i++) distance[i] = Math.abs(distance[i]);
+            for (int points : pointCounts()) {
+                int to = FROM + points;
+                double[] px = random(to + 2, 80);
+                double[] py = random(to + 2, 80);
+                // A point on a beacon, where the gradient needs the minimum range
+                if (points > 0) {
+                    px[FROM] = bx[0];
+                    py[FROM] = by[0];
+                }
+                double[] cost = unset(px.length);
+                double[] gradientX = unset(px.length);
+                double[] gradientY = unset(px.length);
+                double[] vectorCost = unset(px.length);
+                double[] vectorGradientX = unset(px.length);
+                double[] vectorGradientY = unset(px.length);
+
+                this.scalar.rangeCostAndGradient(bx, by, distance, beacons, px, py, FROM, to,
+                        cost, gradientX, gradientY);
+                this.vector.rangeCostAndGradient(bx, by, distance, beacons, px, py, FROM, to,
+                        vectorCost, vectorGradientX, vectorGradientY);
+
+                assertAgree("Cost", cost, vectorCost, FROM, to);
+                assertAgree("Gradient x", gradientX, vectorGradientX, FROM, to);
+                assertAgree("Gradient y", gradientY, vectorGradientY, FROM, to);
+            }
+        }
+    }
+
+    @Test
+    public void rssiCostMatchesTheScalarKernel() {
+        PathLossModel model = new PathLossModel(-59, 2.2);
+        for (int beacons : BEACONS) {
+            double[] bx = random(beacons, 60);
+            double[] by = random(beacons, 60);
+            double[] bz = new double[beacons];
+            double[] rssi = new double[beacons];
+            for (int i = 0; i < beacons; i++) {
+                bz[i] = 3 * this.random.nextInt(4);
+                rssi[i] = -100 + 45 * this.random.nextDouble();
+            }
+            for (int points : pointCounts()) {
+                int to = FROM + points;
+                double[] px = random(to + 2, 80);
+                double[] py = random(to + 2, 80);
+                double[] pz = new double[to + 2];
+                for (int j = 0; j < pz.length; j++) pz[j] = 3 * this.random.nextInt(4);
+                // A point on a beacon, where the minimum range applies
+                if (points > 0) {
+                    px[FROM] = bx[0];
+                    py[FROM] = by[0];
+                    pz[FROM] = bz[0];
+                }
+                double[] expected = unset(px.length);
+                double[] actual = unset(px.length);
+
+                this.scalar.rssiCost(bx, by, bz, rssi, beacons, px, py, pz, FROM, to, model, 0.25, expected);
+                this.vector.rssiCost(bx, by, bz, rssi, beacons, px, py, pz, FROM, to, model, 0.25, actual);
+
+                assertAgree("RSSI cost", expected, actual, FROM, to);
+            }
+        }
+    }
+}